@@ -11,6 +11,7 @@ import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import javax.swing.JInternalFrame;
@@ -63,6 +64,7 @@ import fr.umlv.unitex.frames.InternalFrameManager;
 import fr.umlv.unitex.frames.TextDicFrame;
 import fr.umlv.unitex.frames.TextFrame;
 import fr.umlv.unitex.frames.TokensFrame;
+import fr.umlv.unitex.graphtools.Grf2Fst2Cache;
 import fr.umlv.unitex.io.Encoding;
 import fr.umlv.unitex.listeners.TextFrameListener;
 import fr.umlv.unitex.process.Launcher;
@@ -282,6 +284,11 @@ public class GramlabProject implements Project, Comparable<GramlabProject> {
 		return new File(getTargetDirectory(), "Preprocessing");
 	}
 
+	public Grf2Fst2Cache getGrf2Fst2Cache() {
+		return Grf2Fst2Cache.getCache(new File(getTargetDirectory(),
+				"grf2fst2.cache"));
+	}
+
 	public Pom getPom() {
 		return POM;
 	}
@@ -1613,6 +1620,7 @@ public class GramlabProject implements Project, Comparable<GramlabProject> {
 		if (debug) {
 			c = c.debug();
 		}
+		c = c.cache(getGrf2Fst2Cache());
 		if (monitor) {
 			monitor(c);
 		}
@@ -1627,9 +1635,16 @@ public class GramlabProject implements Project, Comparable<GramlabProject> {
 		monitor(c, null);
 	}
 
+	/*
+	 * Commands built within the same millisecond may now run concurrently, so
+	 * the time file name must be unique
+	 */
+	private static final AtomicInteger timeFileCounter = new AtomicInteger();
+
 	public void monitor(final CommandBuilder c, final File regexpFst2) {
 		final File f = new File(getProjectDirectory(), ConsoleUtil.TIME_PFX
-				+ System.currentTimeMillis());
+				+ System.currentTimeMillis() + "."
+				+ timeFileCounter.incrementAndGet());
 		final GramlabProject p = this;
 		c.time(f);
 		c.setWhatToDoBefore(new ToDoBeforeSingleCommand() {
@@ -0,0 +1,281 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.umlv.unitex.config.ConfigManager;
+import fr.umlv.unitex.config.Preferences;
+import fr.umlv.unitex.config.PreferencesManager;
+import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.frames.GraphExportDialog;
+import fr.umlv.unitex.graphrendering.DrawGraphParams;
+import fr.umlv.unitex.graphrendering.GraphicalZone;
+import fr.umlv.unitex.graphrendering.TextField;
+import fr.umlv.unitex.io.GraphBitmapExporter;
+import fr.umlv.unitex.io.GraphIO;
+import fr.umlv.unitex.io.SVG;
+
+/**
+ * This class exports graphs as images from the command line, without any
+ * window. Directories are explored recursively, and graphs are exported in
+ * parallel.
+ */
+public class ExportGraphs {
+	private static final String USAGE = "Usage: ExportGraphs [OPTIONS] <grf|dir>...\n"
+			+ "\n"
+			+ "Exports graphs as images. Directories are explored recursively.\n"
+			+ "\n"
+			+ "  -f FMT, --format=FMT: png (default), jpeg or svg\n"
+			+ "  -o DIR, --output=DIR: writes the images in DIR, following the tree of\n"
+			+ "                        the input directories, instead of next to the graphs\n"
+			+ "  -j N, --threads=N: number of graphs exported at the same time (default:\n"
+			+ "                     number of processors)\n"
+			+ "  --config=FILE: Unitex configuration file (e.g. <user dir>/French/Config)\n"
+			+ "                 giving the default presentation and encoding of graphs\n"
+			+ "\n"
+			+ "Options for PNG and JPEG images:\n"
+			+ "  --zoom=N: zoom in percent (default: 100)\n"
+			+ "  --dpi=N: resolution (default: 72)\n"
+			+ "  --quality=Q: JPEG compression quality, between 0 and 1 (default: 0.95)\n"
+			+ "  --antialiasing / --no-antialiasing (default: antialiasing)\n"
+			+ "  --crop / --no-crop: crops images to the graph (default: crop)\n"
+			+ "  --margin-w=N, --margin-h=N: crop margins in pixels (default: 0)\n";
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		Locale.setDefault(Locale.ENGLISH);
+		int format = GraphExportDialog.FORMAT_PNG;
+		File outputDir = null;
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		File config = null;
+		final DrawGraphParams settings = new DrawGraphParams();
+		settings.setScaleFactor(1.0);
+		settings.setDpi(DrawGraphParams.BASE_DPI);
+		settings.setCompressionQuality(0.95f);
+		settings.setAntialiasing(true);
+		settings.setCrop(true);
+		final ArrayList<File> inputs = new ArrayList<File>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				String value = null;
+				if (arg.equals("-f") || arg.equals("-o") || arg.equals("-j")) {
+					if (i + 1 == args.length) {
+						throw new IllegalArgumentException("Missing value for "
+								+ arg);
+					}
+					value = args[++i];
+				} else if (arg.startsWith("--") && arg.indexOf('=') != -1) {
+					value = arg.substring(arg.indexOf('=') + 1);
+					arg = arg.substring(0, arg.indexOf('='));
+				}
+				if (arg.equals("-f") || arg.equals("--format")) {
+					format = getFormat(value);
+				} else if (arg.equals("-o") || arg.equals("--output")) {
+					outputDir = new File(value);
+				} else if (arg.equals("-j") || arg.equals("--threads")) {
+					nThreads = Integer.parseInt(value);
+					if (nThreads < 1) {
+						throw new IllegalArgumentException(
+								"Invalid number of threads: " + value);
+					}
+				} else if (arg.equals("--config")) {
+					config = new File(value);
+				} else if (arg.equals("--zoom")) {
+					settings.setScaleFactor(Integer.parseInt(value) / 100.0);
+				} else if (arg.equals("--dpi")) {
+					settings.setDpi(Integer.parseInt(value));
+				} else if (arg.equals("--quality")) {
+					settings.setCompressionQuality(Float.parseFloat(value));
+				} else if (arg.equals("--antialiasing")) {
+					settings.setAntialiasing(true);
+				} else if (arg.equals("--no-antialiasing")) {
+					settings.setAntialiasing(false);
+				} else if (arg.equals("--crop")) {
+					settings.setCrop(true);
+				} else if (arg.equals("--no-crop")) {
+					settings.setCrop(false);
+				} else if (arg.equals("--margin-w")) {
+					settings.setCropMarginW(Integer.parseInt(value));
+				} else if (arg.equals("--margin-h")) {
+					settings.setCropMarginH(Integer.parseInt(value));
+				} else if (arg.equals("-h") || arg.equals("--help")) {
+					System.out.print(USAGE);
+					return;
+				} else if (arg.startsWith("-")) {
+					throw new IllegalArgumentException("Invalid option: "
+							+ args[i]);
+				} else {
+					inputs.add(new File(arg));
+				}
+			}
+		} catch (final IllegalArgumentException e) {
+			/* NumberFormatException is an IllegalArgumentException */
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+		}
+		if (inputs.isEmpty()) {
+			System.err.print(USAGE);
+			System.exit(2);
+		}
+		final Preferences preferences = (config != null) ? PreferencesManager
+				.loadPreferences(config, null) : new Preferences();
+		ConfigManager.setManager(new HeadlessConfigManager(preferences));
+		final ArrayList<File> graphs = new ArrayList<File>();
+		final ArrayList<File> outputs = new ArrayList<File>();
+		boolean missing = false;
+		for (final File input : inputs) {
+			if (input.isDirectory()) {
+				for (final File grf : FileUtil.getGraphs(input)) {
+					graphs.add(grf);
+					outputs.add(getOutput(input, grf, outputDir, format));
+				}
+			} else if (input.isFile()) {
+				graphs.add(input);
+				outputs.add(getOutput(input.getAbsoluteFile().getParentFile(),
+						input, outputDir, format));
+			} else {
+				System.err.println("Cannot find " + input.getPath());
+				missing = true;
+			}
+		}
+		final int errors = exportGraphs(graphs, outputs, format, settings,
+				nThreads);
+		System.out.println((graphs.size() - errors) + " graph(s) exported, "
+				+ errors + " error(s)");
+		System.exit((errors == 0 && !missing) ? 0 : 1);
+	}
+
+	private static int getFormat(String s) {
+		if (s.equalsIgnoreCase("png")) {
+			return GraphExportDialog.FORMAT_PNG;
+		}
+		if (s.equalsIgnoreCase("jpeg") || s.equalsIgnoreCase("jpg")) {
+			return GraphExportDialog.FORMAT_JPEG;
+		}
+		if (s.equalsIgnoreCase("svg")) {
+			return GraphExportDialog.FORMAT_SVG;
+		}
+		throw new IllegalArgumentException("Invalid format: " + s);
+	}
+
+	/**
+	 * @return the image file for the given graph found in the given input
+	 *         directory
+	 */
+	private static File getOutput(File inputDir, File grf, File outputDir,
+			int format) {
+		final File image = GraphBitmapExporter.getImageFile(grf, format);
+		if (outputDir == null) {
+			return image;
+		}
+		final String dir = inputDir.getAbsolutePath();
+		String path = image.getAbsolutePath();
+		if (path.startsWith(dir + File.separator)) {
+			path = path.substring(dir.length() + 1);
+		} else {
+			path = image.getName();
+		}
+		return new File(outputDir, path);
+	}
+
+	/**
+	 * Exports the given graphs on a pool of the given number of threads.
+	 * 
+	 * @return the number of graphs that could not be exported
+	 */
+	public static int exportGraphs(final ArrayList<File> graphs,
+			final ArrayList<File> outputs, final int format,
+			final DrawGraphParams settings, int nThreads) {
+		final ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		final ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int i = 0; i < graphs.size(); i++) {
+			final File grf = graphs.get(i);
+			final File output = outputs.get(i);
+			futures.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					exportGraph(grf, output, format, settings);
+					return null;
+				}
+			}));
+		}
+		pool.shutdown();
+		int errors = 0;
+		for (int i = 0; i < graphs.size(); i++) {
+			try {
+				futures.get(i).get();
+				System.out.println(graphs.get(i).getPath() + " -> "
+						+ outputs.get(i).getPath());
+			} catch (final ExecutionException e) {
+				errors++;
+				System.err.println("Cannot export " + graphs.get(i).getPath()
+						+ ": " + e.getCause());
+			} catch (final InterruptedException e) {
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+				return errors + graphs.size() - i;
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Exports the given graph as a PNG, JPEG or SVG image.
+	 */
+	public static void exportGraph(File grf, File output, int format,
+			DrawGraphParams settings) throws IOException {
+		final File dir = output.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create directory " + dir);
+		}
+		if (GraphExportDialog.isBitmapFormat(format)) {
+			if (!GraphBitmapExporter.exportGraph(grf, output, format, settings)) {
+				throw new IOException("Cannot load graph");
+			}
+			return;
+		}
+		final GraphIO gio = GraphIO.loadGraph(grf, false);
+		if (gio == null) {
+			throw new IOException("Cannot load graph");
+		}
+		final GraphicalZone zone = new GraphicalZone(gio,
+				new TextField(0, null), null, null);
+		final OutputStreamWriter writer = ConfigManager.getManager()
+				.getEncoding(null).getOutputStreamWriter(output);
+		try {
+			new SVG(writer, zone, grf).save();
+		} finally {
+			writer.close();
+		}
+	}
+}
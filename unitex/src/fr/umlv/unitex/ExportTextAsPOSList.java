@@ -0,0 +1,167 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.tfst.POSListExporter;
+import fr.umlv.unitex.tfst.TagFilter;
+
+/**
+ * This class exports a text automaton as a POS list from the command line,
+ * like the "Export text as POS list" menu of the text automaton frame.
+ */
+public class ExportTextAsPOSList {
+	private static final String USAGE = "Usage: ExportTextAsPOSList [OPTIONS] <text.tfst> <output>\n"
+			+ "\n"
+			+ "Exports the tags of a text automaton, one {S} delimited sentence after\n"
+			+ "the other.\n"
+			+ "\n"
+			+ "  --delaf: DELAF style tags (default: {form,lemma.codes} tags)\n"
+			+ "  --filter=REGEXP: only keeps the grammatical codes matching REGEXP\n"
+			+ "  --always-show-codes: keeps the tags with no code matching the filter\n"
+			+ "  --only-show-codes: only shows the matching codes\n"
+			+ "  -e ENC, --encoding=ENC: output encoding: utf16le (default), utf16be\n"
+			+ "                          or utf8\n"
+			+ "  -j N, --threads=N: number of threads (default: number of processors)\n";
+
+	public static void main(String[] args) {
+		Locale.setDefault(Locale.ENGLISH);
+		boolean delafStyle = false;
+		Pattern pattern = null;
+		boolean alwaysShowCodes = false;
+		boolean onlyShowCodes = false;
+		Encoding encoding = Encoding.UTF16LE;
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		final ArrayList<File> files = new ArrayList<File>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				String value = null;
+				if (arg.equals("-e") || arg.equals("-j")) {
+					if (i + 1 == args.length) {
+						throw new IllegalArgumentException("Missing value for "
+								+ arg);
+					}
+					value = args[++i];
+				} else if (arg.startsWith("--") && arg.indexOf('=') != -1) {
+					value = arg.substring(arg.indexOf('=') + 1);
+					arg = arg.substring(0, arg.indexOf('='));
+				}
+				if (value == null
+						&& (arg.equals("--filter") || arg.equals("--encoding") || arg
+								.equals("--threads"))) {
+					throw new IllegalArgumentException("Missing value for "
+							+ arg);
+				}
+				if (arg.equals("--delaf")) {
+					delafStyle = true;
+				} else if (arg.equals("--filter")) {
+					try {
+						pattern = Pattern.compile(value);
+					} catch (final PatternSyntaxException e) {
+						throw new IllegalArgumentException(
+								"Invalid filter: " + value);
+					}
+				} else if (arg.equals("--always-show-codes")) {
+					alwaysShowCodes = true;
+				} else if (arg.equals("--only-show-codes")) {
+					onlyShowCodes = true;
+				} else if (arg.equals("-e") || arg.equals("--encoding")) {
+					encoding = getEncoding(value);
+				} else if (arg.equals("-j") || arg.equals("--threads")) {
+					nThreads = Integer.parseInt(value);
+					if (nThreads < 1) {
+						throw new IllegalArgumentException(
+								"Invalid number of threads: " + value);
+					}
+				} else if (arg.equals("-h") || arg.equals("--help")) {
+					System.out.print(USAGE);
+					return;
+				} else if (arg.startsWith("-")) {
+					throw new IllegalArgumentException("Invalid option: "
+							+ args[i]);
+				} else {
+					files.add(new File(arg));
+				}
+			}
+			if (onlyShowCodes && pattern != null) {
+				throw new IllegalArgumentException(
+						"--only-show-codes cannot be used with --filter");
+			}
+		} catch (final IllegalArgumentException e) {
+			/* NumberFormatException is an IllegalArgumentException */
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+		}
+		if (files.size() != 2) {
+			System.err.print(USAGE);
+			System.exit(2);
+		}
+		final TagFilter filter = new TagFilter();
+		filter.setFilter(pattern, alwaysShowCodes, onlyShowCodes);
+		final POSListExporter exporter = new POSListExporter(filter,
+				delafStyle);
+		final ArrayList<Integer> errors;
+		try {
+			final OutputStreamWriter writer = encoding
+					.getOutputStreamWriter(files.get(1));
+			if (writer == null) {
+				throw new IOException("Cannot write " + files.get(1));
+			}
+			try {
+				errors = exporter.export(files.get(0), writer, nThreads, null);
+			} finally {
+				writer.close();
+			}
+		} catch (final IOException e) {
+			System.err.println("Cannot export " + files.get(0).getPath()
+					+ ": " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		for (final Integer n : errors) {
+			System.err.println("Sentence #" + n + " couldn't be exported");
+		}
+		System.exit(errors.isEmpty() ? 0 : 1);
+	}
+
+	private static Encoding getEncoding(String s) {
+		if (s.equalsIgnoreCase("utf16le")) {
+			return Encoding.UTF16LE;
+		}
+		if (s.equalsIgnoreCase("utf16be")) {
+			return Encoding.UTF16BE;
+		}
+		if (s.equalsIgnoreCase("utf8")) {
+			return Encoding.UTF8;
+		}
+		throw new IllegalArgumentException("Invalid encoding: " + s);
+	}
+}
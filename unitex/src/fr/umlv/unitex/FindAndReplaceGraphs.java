@@ -0,0 +1,200 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+
+import fr.umlv.unitex.config.ConfigManager;
+import fr.umlv.unitex.config.Preferences;
+import fr.umlv.unitex.config.PreferencesManager;
+import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.graphtools.BatchFindAndReplace;
+
+/**
+ * This class finds and replaces box contents in many graphs from the command
+ * line, without opening them. Directories are explored recursively.
+ * 
+ * @see BatchFindAndReplace
+ */
+public class FindAndReplaceGraphs {
+	private static final String USAGE = "Usage: FindAndReplaceGraphs [OPTIONS] <search> <grf|dir>...\n"
+			+ "\n"
+			+ "Looks for <search> in the boxes of graphs. Directories are explored\n"
+			+ "recursively.\n"
+			+ "\n"
+			+ "  -r TEXT, --replace=TEXT: replaces the matches with TEXT and saves the\n"
+			+ "                           modified graphs\n"
+			+ "  --dry-run: with --replace, shows the replacements without saving\n"
+			+ "  --closure: also looks in the graphs called by the given graphs,\n"
+			+ "             directly or not\n"
+			+ "  --regex: <search> is a regular expression\n"
+			+ "  --case-sensitive: the search is case sensitive\n"
+			+ "  --whole-line: <search> must match a whole box line\n"
+			+ "  --ignore-comments: ignores comment boxes\n"
+			+ "  --config=FILE: Unitex configuration file (e.g. <user dir>/French/Config)\n"
+			+ "                 giving the graph repository used by subgraph calls\n";
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		Locale.setDefault(Locale.ENGLISH);
+		String search = null;
+		String replace = null;
+		boolean dryRun = false;
+		boolean closure = false;
+		boolean useRegex = false;
+		boolean caseSensitive = false;
+		boolean wholeLine = false;
+		boolean ignoreComment = false;
+		File config = null;
+		final ArrayList<File> inputs = new ArrayList<File>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				String value = null;
+				if (arg.equals("-r")) {
+					if (i + 1 == args.length) {
+						throw new IllegalArgumentException("Missing value for "
+								+ arg);
+					}
+					value = args[++i];
+				} else if (arg.startsWith("--") && arg.indexOf('=') != -1) {
+					value = arg.substring(arg.indexOf('=') + 1);
+					arg = arg.substring(0, arg.indexOf('='));
+				}
+				if (arg.equals("-r") || arg.equals("--replace")) {
+					replace = value;
+				} else if (arg.equals("--dry-run")) {
+					dryRun = true;
+				} else if (arg.equals("--closure")) {
+					closure = true;
+				} else if (arg.equals("--regex")) {
+					useRegex = true;
+				} else if (arg.equals("--case-sensitive")) {
+					caseSensitive = true;
+				} else if (arg.equals("--whole-line")) {
+					wholeLine = true;
+				} else if (arg.equals("--ignore-comments")) {
+					ignoreComment = true;
+				} else if (arg.equals("--config")) {
+					config = new File(value);
+				} else if (arg.equals("-h") || arg.equals("--help")) {
+					System.out.print(USAGE);
+					return;
+				} else if (arg.startsWith("-")) {
+					throw new IllegalArgumentException("Invalid option: "
+							+ args[i]);
+				} else if (search == null) {
+					search = arg;
+				} else {
+					inputs.add(new File(arg));
+				}
+			}
+			if (dryRun && replace == null) {
+				throw new IllegalArgumentException(
+						"--dry-run is only valid with --replace");
+			}
+		} catch (final IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+		}
+		if (search == null || search.length() == 0 || inputs.isEmpty()) {
+			System.err.print(USAGE);
+			System.exit(2);
+		}
+		final Preferences preferences = (config != null) ? PreferencesManager
+				.loadPreferences(config, null) : new Preferences();
+		ConfigManager.setManager(new HeadlessConfigManager(preferences));
+		final LinkedHashSet<File> graphs = new LinkedHashSet<File>();
+		boolean missing = false;
+		for (final File input : inputs) {
+			if (input.isDirectory()) {
+				graphs.addAll(FileUtil.getGraphs(input.getAbsoluteFile()));
+			} else if (input.isFile()) {
+				graphs.add(input.getAbsoluteFile());
+			} else {
+				System.err.println("Cannot find " + input.getPath());
+				missing = true;
+			}
+		}
+		if (closure) {
+			for (final File grf : new ArrayList<File>(graphs)) {
+				graphs.addAll(BatchFindAndReplace.getGraphClosure(grf));
+			}
+		}
+		final BatchFindAndReplace engine = new BatchFindAndReplace(search,
+				replace, useRegex, caseSensitive, wholeLine, ignoreComment);
+		final int[] counts = new int[3];
+		try {
+			engine.run(new ArrayList<File>(graphs), dryRun,
+					new BatchFindAndReplace.Listener() {
+						@Override
+						public void graphProcessed(
+								BatchFindAndReplace.GraphResult result) {
+							print(result, counts);
+						}
+					});
+		} catch (final InterruptedException e) {
+			System.exit(1);
+		}
+		System.out.println(counts[0] + " match(es) in " + graphs.size()
+				+ " graph(s), " + counts[1] + " graph(s) saved, " + counts[2]
+				+ " error(s)");
+		System.exit((counts[2] == 0 && !missing) ? 0 : 1);
+	}
+
+	/**
+	 * Prints the matches of a graph as grf:box:line: content, followed by the
+	 * new content in replace mode. counts holds the number of matches, of
+	 * saved graphs and of errors.
+	 */
+	static void print(BatchFindAndReplace.GraphResult result, int[] counts) {
+		final String path = result.getGrf().getPath();
+		for (final BatchFindAndReplace.Match m : result.getMatches()) {
+			counts[0]++;
+			final StringBuilder b = new StringBuilder(path);
+			b.append(':').append(m.getBox());
+			if (m.getLine() != -1) {
+				b.append(':').append(m.getLine());
+			}
+			b.append(": ").append(m.getContent());
+			if (m.getNewContent() != null) {
+				b.append(" -> ").append(m.getNewContent());
+			}
+			System.out.println(b);
+			if (m.getError() != null) {
+				counts[2]++;
+				System.err.println(path + ":" + m.getBox() + ": "
+						+ m.getError());
+			}
+		}
+		if (result.isSaved()) {
+			counts[1]++;
+		}
+		if (result.getError() != null) {
+			counts[2]++;
+			System.err.println(result.getError());
+		}
+	}
+}
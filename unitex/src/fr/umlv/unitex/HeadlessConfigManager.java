@@ -0,0 +1,77 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex;
+
+import java.io.File;
+
+import fr.umlv.unitex.config.ConfigManager;
+import fr.umlv.unitex.config.Preferences;
+import fr.umlv.unitex.grf.GraphPresentationInfo;
+import fr.umlv.unitex.io.Encoding;
+
+/**
+ * This configuration manager gives the same preferences for every
+ * language, without asking anything to the user, for the command line
+ * tools.
+ */
+class HeadlessConfigManager extends ConfigManager {
+	private final Preferences preferences;
+
+	HeadlessConfigManager(Preferences preferences) {
+		this.preferences = preferences;
+	}
+
+	@Override
+	public String getCurrentLanguage() {
+		return "";
+	}
+
+	@Override
+	public Preferences getPreferences(String language) {
+		return preferences;
+	}
+
+	@Override
+	public Encoding getEncoding(String language) {
+		return preferences.getEncoding();
+	}
+
+	@Override
+	public GraphPresentationInfo getGraphPresentationPreferences(
+			String language) {
+		return preferences.getInfo().clone();
+	}
+
+	@Override
+	public boolean isRightToLeftForGraphs(String language) {
+		return preferences.isRightToLeftForGraphs();
+	}
+
+	@Override
+	public boolean isRightToLeftForText(String language) {
+		return preferences.isRightToLeftForText();
+	}
+
+	@Override
+	public File getDefaultGraphRepositoryPath(String language) {
+		return preferences.getGraphRepositoryPath();
+	}
+}
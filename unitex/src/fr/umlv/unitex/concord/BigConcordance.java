@@ -20,10 +20,8 @@
  */
 package fr.umlv.unitex.concord;
 
-import java.awt.Component;
 import java.io.File;
 
-import javax.swing.DefaultListCellRenderer;
 import javax.swing.JList;
 
 import fr.umlv.unitex.config.ConfigManager;
@@ -38,22 +36,7 @@ public class BigConcordance extends JList {
 	private BigConcordance(ConcordanceAsListModel m) {
 		super(m);
 		setFont(ConfigManager.getManager().getConcordanceFont(null));
-		setCellRenderer(new DefaultListCellRenderer() {
-			@Override
-			public Component getListCellRendererComponent(JList list,
-					Object value, int index, boolean isSelected,
-					boolean cellHasFocus) {
-				super.getListCellRendererComponent(list, value, index,
-						isSelected, cellHasFocus);
-				final StringBuilder builder = new StringBuilder();
-				builder.append("<html><body>");
-				final String s = (String) value;
-				builder.append(s);
-				builder.append("</body></html>");
-				setText(builder.toString());
-				return this;
-			}
-		});
+		setCellRenderer(new ConcordanceLineRenderer());
 	}
 
 	public BigConcordance() {
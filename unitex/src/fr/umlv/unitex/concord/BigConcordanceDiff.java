@@ -21,10 +21,8 @@
 package fr.umlv.unitex.concord;
 
 import java.awt.Color;
-import java.awt.Component;
 import java.io.File;
 
-import javax.swing.DefaultListCellRenderer;
 import javax.swing.JList;
 
 import fr.umlv.unitex.config.ConfigManager;
@@ -39,23 +37,14 @@ public class BigConcordanceDiff extends JList {
 	private BigConcordanceDiff(ConcordanceDiffAsListModel m) {
 		super(m);
 		setFont(ConfigManager.getManager().getConcordanceFont(null));
-		setCellRenderer(new DefaultListCellRenderer() {
+		setCellRenderer(new ConcordanceLineRenderer() {
 			private final Color[] bg = new Color[] { new Color(210, 210, 210),
 					Color.WHITE };
 
 			@Override
-			public Component getListCellRendererComponent(JList list,
-					Object value, int index, boolean isSelected,
-					boolean cellHasFocus) {
-				final String s = (String) value;
-				final StringBuilder builder = new StringBuilder();
-				builder.append("<html><body>");
-				builder.append(s);
-				builder.append("</body></html>");
-				super.getListCellRendererComponent(list, builder.toString(),
-						index, isSelected, cellHasFocus);
-				setBackground(bg[index % 2]);
-				return this;
+			protected Color getRowBackground(JList<?> list, int index,
+					boolean isSelected) {
+				return bg[Math.abs(index) % 2];
 			}
 		});
 	}
@@ -21,19 +21,16 @@
 package fr.umlv.unitex.concord;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.lang.ref.PhantomReference;
-import java.lang.ref.ReferenceQueue;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import javax.swing.AbstractListModel;
 import javax.swing.SwingWorker;
 
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+import fr.umlv.unitex.io.NewlineIndexer;
 import fr.umlv.unitex.text.Interval;
 
 /**
@@ -52,93 +49,74 @@ public class ConcordanceAsListModel extends AbstractListModel {
 	int HTML_START_LINES = 7;
 	private int HTML_END_LINES = 2;
 	private int HTML_CONTROL_LINES = HTML_START_LINES + HTML_END_LINES;
-	MappedByteBuffer buffer;
-	private int dataLength;
-	private SwingWorker<Void, Integer> worker;
+	MappedFile buffer;
+	private long dataLength;
+	private SwingWorker<Void, long[]> worker;
 	Interval selection;
-	private FileChannel channel;
-	private FileInputStream stream;
 	private File file;
-	static final Charset utf8 = Charset.forName("UTF-8");
-	private int[] endOfLines;
+	private long[] endOfLines;
 	private int numberOfEOL;
 
 	public void load(File f) {
 		this.file = f;
-		setDataLength((int) file.length());
-		endOfLines = new int[0];
+		setDataLength(file.length());
+		endOfLines = new long[0];
 		numberOfEOL = 0;
 		try {
-			stream = new FileInputStream(file);
-		} catch (final FileNotFoundException e) {
-			e.printStackTrace();
-			return;
-		}
-		channel = stream.getChannel();
-		try {
-			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
-					getDataLength());
+			buffer = new MappedFile(file);
 		} catch (final IOException e) {
 			e.printStackTrace();
 			return;
 		}
-		worker = new SwingWorker<Void, Integer>() {
+		final MappedFile parsedFile = buffer;
+		worker = new SwingWorker<Void, long[]>() {
+			long lastStart = 0;
+
 			@Override
 			protected Void doInBackground() throws Exception {
-				int lastStart = 0;
-				for (int pos = 0; pos < getDataLength(); pos = pos + 1) {
-					final int a = 0xFF & buffer.get(pos);
-					if (a == '\n') {
-						// if we have an end-of-line
-						publish(pos);
-						setProgress(100 * pos / getDataLength());
-						lastStart = pos + 1;
-					}
-				}
-				if (lastStart < (getDataLength() - 1)) {
-					publish(getDataLength() - 1);
-					setProgress(100);
+				new NewlineIndexer(parsedFile, Encoding.UTF8, false)
+						.index(new NewlineIndexer.Listener() {
+							@Override
+							public boolean chunkIndexed(
+									NewlineIndexer.Chunk chunk) {
+								if (isCancelled()) {
+									return false;
+								}
+								if (chunk.size() != 0) {
+									publish(chunk.getNewlines());
+									lastStart = chunk.getNewline(chunk.size() - 1) + 1;
+								}
+								setProgress((int) (100 * chunk.getEnd() / getDataLength()));
+								return true;
+							}
+						});
+				if (!isCancelled() && lastStart < (getDataLength() - 1)) {
+					publish(new long[] { getDataLength() - 1 });
 				}
-				/*
-				 * We publish a negative position in order to inform the
-				 * progress method that there are no more ends of line.
-				 */
-				publish(-1);
+				setProgress(100);
 				return null;
 			}
 
 			@SuppressWarnings("synthetic-access")
 			@Override
-			protected void process(java.util.List<Integer> chunks) {
+			protected void process(java.util.List<long[]> chunks) {
 				final int oldSize = numberOfEOL;
-				int newSize = oldSize + chunks.size();
-				int multiplier = 1;
+				int newSize = oldSize;
+				for (final long[] chunk : chunks) {
+					newSize += chunk.length;
+				}
 				/*
 				 * We check if it is necessary to enlarge the EOL array
 				 */
-				if (endOfLines.length == 0) {
-					endOfLines = new int[1];
-				}
-				while (multiplier * endOfLines.length < newSize) {
-					multiplier = 2 * multiplier;
-				}
-				int[] temp = endOfLines;
-				if (multiplier != 1) {
-					temp = Arrays.copyOf(endOfLines, multiplier
-							* endOfLines.length);
+				long[] temp = endOfLines;
+				if (newSize > endOfLines.length) {
+					temp = Arrays.copyOf(endOfLines, Math.max(newSize,
+							2 * endOfLines.length));
 				}
 				int insertPos = oldSize;
-				for (final Integer i : chunks) {
-					if (i < 0) {
-						/*
-						 * We assume that a negative position means the end of
-						 * the new lines, and, so, we resize the array.
-						 */
-						temp = Arrays.copyOf(temp, insertPos);
-						newSize = insertPos;
-						break;
-					}
-					temp[insertPos++] = i;
+				for (final long[] chunk : chunks) {
+					System.arraycopy(chunk, 0, temp, insertPos, chunk.length);
+					insertPos += chunk.length;
 				}
 				/*
 				 * If we keep the following instructions in this order, there is
@@ -180,17 +158,29 @@ public class ConcordanceAsListModel extends AbstractListModel {
 		// <tr><td nowrap>
 		final long end = interval.getEndInBytes() - 12; // nor the
 		// </td></tr>\r\n
+		return readString(start, end);
+	}
+
+	/**
+	 * Decodes the bytes between start and end (both included).
+	 */
+	String readString(long start, long end) {
 		final byte[] tmp = new byte[(int) (end - start + 1)];
-		int z = 0;
-		for (long pos = start; pos <= end; pos++) {
-			tmp[z++] = buffer.get((int) pos);
+		try {
+			buffer.read(start, tmp, 0, tmp.length);
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return "";
 		}
-		return new String(tmp, utf8);
+		final char[] chars = new char[tmp.length];
+		final int n = Encoding.UTF8.decode(ByteBuffer.wrap(tmp), 0,
+				tmp.length, chars);
+		return new String(chars, 0, n);
 	}
 
 	Interval getInterval(int i) {
-		final int end = endOfLines[i];
-		final int start = (i == 0) ? 0 : (endOfLines[i - 1] + 1);
+		final long end = endOfLines[i];
+		final long start = (i == 0) ? 0 : (endOfLines[i - 1] + 1);
 		return new Interval(start, end, -1, -1);
 	}
 
@@ -212,44 +202,21 @@ public class ConcordanceAsListModel extends AbstractListModel {
 
 	
 	public void reset() {
+		if (worker != null) {
+			worker.cancel(true);
+			worker = null;
+		}
 		if (buffer != null) {
-			ReferenceQueue<MappedByteBuffer> queue=new ReferenceQueue<MappedByteBuffer>();
-			new PhantomReference<MappedByteBuffer>(buffer,queue);
+			buffer.close();
 			buffer = null;
-			while (queue.poll()!=null) {
-				System.gc();
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e) {
-					/* do nothing */
-				}
-				Thread.yield();
-			}
-		}
-		if (channel != null) {
-			try {
-				channel.close();
-			} catch (final IOException e) {
-				e.printStackTrace();
-			}
-			channel = null;
-		}
-		if (stream != null) {
-			try {
-				stream.close();
-			} catch (final IOException e) {
-				e.printStackTrace();
-			}
-			stream = null;
 		}
-		System.gc();
 	}
 
-	public void setDataLength(int dataLength) {
+	public void setDataLength(long dataLength) {
 		this.dataLength = dataLength;
 	}
 
-	public int getDataLength() {
+	public long getDataLength() {
 		return dataLength;
 	}
 }
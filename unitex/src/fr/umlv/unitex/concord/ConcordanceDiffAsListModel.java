@@ -50,20 +50,14 @@ public class ConcordanceDiffAsListModel extends ConcordanceAsListModel {
 	@Override
 	public Object getElementAt(int i) {
 		final Interval interval = getInterval(i + HTML_START_LINES);
-		final int start = interval.getStartInBytes() + 55; // we don't want
+		final long start = interval.getStartInBytes() + 55; // we don't want
 															// neither the
 															// <tr><td nowrap
 															// bgcolor="#90EE90"><font
 															// color="#008000">
-		final int end = interval.getEndInBytes() - 19; // nor the
+		final long end = interval.getEndInBytes() - 19; // nor the
 														// </font></td></tr>
-		final byte[] tmp = new byte[end - start + 1];
-		int z = 0;
-		buffer.position(start);
-		for (int pos = start; pos <= end; pos++) {
-			tmp[z++] = buffer.get();
-		}
-		return new String(tmp, utf8);
+		return readString(start, end);
 	}
 
 	static class DiffLine {
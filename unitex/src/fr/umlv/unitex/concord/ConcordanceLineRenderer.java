@@ -0,0 +1,279 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.concord;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import fr.umlv.unitex.text.StyledLine;
+import fr.umlv.unitex.text.StyledLineRenderer;
+
+/**
+ * This class renders the lines of HTML concordances without the Swing HTML
+ * engine. A concordance line is a small HTML fragment: the left context, the
+ * match as a link, and the right context, possibly with font colors and
+ * underlines in concordance diffs. This fragment is parsed once into styled
+ * runs, handling only the few tags that can appear in such lines and ignoring
+ * the others, like the Swing HTML renderer would display them.
+ */
+public class ConcordanceLineRenderer extends StyledLineRenderer {
+	private static final long serialVersionUID = 1L;
+	/* Colors of the default Swing HTML style sheet */
+	private static final Color LINK_COLOR = Color.BLUE;
+	private static final HashMap<String, Color> COLORS = new HashMap<String, Color>();
+	static {
+		COLORS.put("black", new Color(0x000000));
+		COLORS.put("silver", new Color(0xC0C0C0));
+		COLORS.put("gray", new Color(0x808080));
+		COLORS.put("grey", new Color(0x808080));
+		COLORS.put("white", new Color(0xFFFFFF));
+		COLORS.put("maroon", new Color(0x800000));
+		COLORS.put("red", new Color(0xFF0000));
+		COLORS.put("purple", new Color(0x800080));
+		COLORS.put("fuchsia", new Color(0xFF00FF));
+		COLORS.put("green", new Color(0x008000));
+		COLORS.put("lime", new Color(0x00FF00));
+		COLORS.put("olive", new Color(0x808000));
+		COLORS.put("yellow", new Color(0xFFFF00));
+		COLORS.put("navy", new Color(0x000080));
+		COLORS.put("blue", new Color(0x0000FF));
+		COLORS.put("teal", new Color(0x008080));
+		COLORS.put("aqua", new Color(0x00FFFF));
+		COLORS.put("orange", new Color(0xFFA500));
+		COLORS.put("violet", new Color(0xEE82EE));
+	}
+
+	/**
+	 * The style of the text inside an open tag
+	 */
+	private static class Style {
+		final String tag;
+		final Color color;
+		final int style;
+
+		Style(String tag, Color color, int style) {
+			this.tag = tag;
+			this.color = color;
+			this.style = style;
+		}
+	}
+
+	@Override
+	protected StyledLine parse(String value) {
+		return parseHTML(value);
+	}
+
+	/**
+	 * Parses the given HTML fragment into styled runs.
+	 */
+	public static StyledLine parseHTML(String s) {
+		final StyledLine.Builder b = new StyledLine.Builder(s.length());
+		final ArrayList<Style> stack = new ArrayList<Style>();
+		Color color = null;
+		int style = 0;
+		/* Like in HTML, white spaces are collapsed and leading ones ignored */
+		boolean space = true;
+		final int length = s.length();
+		int i = 0;
+		while (i < length) {
+			final char c = s.charAt(i);
+			if (c == '<') {
+				final int end = s.indexOf('>', i);
+				if (end == -1) {
+					break;
+				}
+				final String tag = s.substring(i + 1, end);
+				i = end + 1;
+				if (tag.startsWith("/")) {
+					final String name = getTagName(tag.substring(1));
+					for (int j = stack.size() - 1; j >= 0; j--) {
+						if (stack.get(j).tag.equals(name)) {
+							while (stack.size() > j) {
+								stack.remove(stack.size() - 1);
+							}
+							break;
+						}
+					}
+					if (stack.isEmpty()) {
+						color = null;
+						style = 0;
+					} else {
+						color = stack.get(stack.size() - 1).color;
+						style = stack.get(stack.size() - 1).style;
+					}
+					continue;
+				}
+				final String name = getTagName(tag);
+				if (name.equals("br")) {
+					if (!space) {
+						b.append(' ', color, style);
+						space = true;
+					}
+					continue;
+				}
+				if (name.equals("img") || name.equals("hr")
+						|| name.equals("meta") || name.equals("wbr")
+						|| tag.endsWith("/")) {
+					continue;
+				}
+				if (name.equals("a")) {
+					if (tag.indexOf("href") != -1) {
+						color = LINK_COLOR;
+						style = style | StyledLine.UNDERLINE;
+					}
+				} else if (name.equals("u")) {
+					style = style | StyledLine.UNDERLINE;
+				} else if (name.equals("b") || name.equals("strong")) {
+					style = style | StyledLine.BOLD;
+				} else if (name.equals("i") || name.equals("em")) {
+					style = style | StyledLine.ITALIC;
+				} else if (name.equals("font")) {
+					final Color fontColor = getColor(getAttribute(tag, "color"));
+					if (fontColor != null) {
+						color = fontColor;
+					}
+				}
+				stack.add(new Style(name, color, style));
+				continue;
+			}
+			i++;
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+				if (!space) {
+					b.append(' ', color, style);
+					space = true;
+				}
+				continue;
+			}
+			char decoded = c;
+			if (c == '&') {
+				final int end = s.indexOf(';', i);
+				if (end != -1 && end - i <= 8) {
+					final int entity = decodeEntity(s, i, end);
+					if (entity != -1) {
+						decoded = (char) entity;
+						i = end + 1;
+					}
+				}
+			}
+			/* Non-breaking spaces are displayed, but are not collapsed */
+			b.append(decoded == '\u00A0' ? ' ' : decoded, color, style);
+			space = false;
+		}
+		if (space && b.length() != 0 && b.lastChar() == ' ') {
+			b.deleteLastChar();
+		}
+		return b.build();
+	}
+
+	private static String getTagName(String tag) {
+		int end = 0;
+		while (end < tag.length() && !Character.isWhitespace(tag.charAt(end))
+				&& tag.charAt(end) != '/') {
+			end++;
+		}
+		return tag.substring(0, end).toLowerCase();
+	}
+
+	/**
+	 * @return the value of the given attribute, or null
+	 */
+	private static String getAttribute(String tag, String name) {
+		final String lower = tag.toLowerCase();
+		int pos = lower.indexOf(name);
+		while (pos != -1) {
+			int i = pos + name.length();
+			while (i < tag.length() && tag.charAt(i) == ' ') {
+				i++;
+			}
+			if (pos > 0 && Character.isWhitespace(tag.charAt(pos - 1))
+					&& i < tag.length() && tag.charAt(i) == '=') {
+				i++;
+				while (i < tag.length() && tag.charAt(i) == ' ') {
+					i++;
+				}
+				if (i == tag.length()) {
+					return null;
+				}
+				final char quote = tag.charAt(i);
+				if (quote == '"' || quote == '\'') {
+					final int end = tag.indexOf(quote, i + 1);
+					return (end == -1) ? null : tag.substring(i + 1, end);
+				}
+				int end = i;
+				while (end < tag.length()
+						&& !Character.isWhitespace(tag.charAt(end))) {
+					end++;
+				}
+				return tag.substring(i, end);
+			}
+			pos = lower.indexOf(name, pos + 1);
+		}
+		return null;
+	}
+
+	private static Color getColor(String s) {
+		if (s == null) {
+			return null;
+		}
+		s = s.trim();
+		if (s.startsWith("#")) {
+			try {
+				return new Color(Integer.parseInt(s.substring(1), 16));
+			} catch (final NumberFormatException e) {
+				return null;
+			}
+		}
+		return COLORS.get(s.toLowerCase());
+	}
+
+	/**
+	 * @return the char corresponding to the entity s[start..end[, or -1 if
+	 *         it is not a known entity
+	 */
+	private static int decodeEntity(String s, int start, int end) {
+		final String entity = s.substring(start, end);
+		if (entity.equals("lt"))
+			return '<';
+		if (entity.equals("gt"))
+			return '>';
+		if (entity.equals("amp"))
+			return '&';
+		if (entity.equals("quot"))
+			return '"';
+		if (entity.equals("apos"))
+			return '\'';
+		if (entity.equals("nbsp"))
+			return '\u00A0';
+		if (entity.startsWith("#")) {
+			try {
+				final int n = (entity.startsWith("#x") || entity
+						.startsWith("#X")) ? Integer.parseInt(
+						entity.substring(2), 16) : Integer.parseInt(entity
+						.substring(1));
+				return (n > 0 && n <= 0xFFFF) ? n : -1;
+			} catch (final NumberFormatException e) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+}
@@ -110,9 +110,10 @@ public class PreferencesManager {
 
 	/**
 	 * Returns the preferences for the given language. This IS NOT A COPY, so
-	 * the caller may have to clone it before any modification.
+	 * the caller may have to clone it before any modification. It is
+	 * synchronized, since graphs can be loaded from several threads.
 	 */
-	public static Preferences getPreferences(String language) {
+	public static synchronized Preferences getPreferences(String language) {
 		if (language == null) {
 			throw new IllegalArgumentException("Unexpected null language");
 		}
@@ -0,0 +1,111 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.console;
+
+/**
+ * This class records the moments that matter in the life of an external
+ * command: when the process was spawned, when its first output line was read,
+ * when the process exited and when both of its output streams were drained.
+ * All times are given by <code>System.nanoTime()</code>, 0 meaning that the
+ * event has not occurred (yet).
+ */
+public class CommandTiming {
+	private volatile long spawn;
+	private volatile long firstOutput;
+	private volatile long exit;
+	private volatile long streamsDrained;
+
+	public void markSpawn() {
+		spawn = System.nanoTime();
+	}
+
+	/**
+	 * Only the first call is taken into account, since both stdout and stderr
+	 * reading threads report their lines here.
+	 */
+	public synchronized void markFirstOutput() {
+		if (firstOutput == 0) {
+			firstOutput = System.nanoTime();
+		}
+	}
+
+	public void markExit() {
+		exit = System.nanoTime();
+	}
+
+	public void markStreamsDrained() {
+		streamsDrained = System.nanoTime();
+	}
+
+	public long getSpawn() {
+		return spawn;
+	}
+
+	public long getFirstOutput() {
+		return firstOutput;
+	}
+
+	public long getExit() {
+		return exit;
+	}
+
+	public long getStreamsDrained() {
+		return streamsDrained;
+	}
+
+	/**
+	 * Returns the number of milliseconds elapsed between the spawn and the
+	 * given event, or -1 if one of them has not occurred.
+	 */
+	private long sinceSpawn(long event) {
+		if (spawn == 0 || event == 0) {
+			return -1;
+		}
+		return (event - spawn) / 1000000;
+	}
+
+	public long getTimeToFirstOutput() {
+		return sinceSpawn(firstOutput);
+	}
+
+	public long getTimeToExit() {
+		return sinceSpawn(exit);
+	}
+
+	public long getTimeToStreamsDrained() {
+		return sinceSpawn(streamsDrained);
+	}
+
+	/**
+	 * @return true if the process has exited and its streams have been
+	 *         drained, i.e. if all the timings are known
+	 */
+	public boolean isComplete() {
+		return exit != 0 && streamsDrained != 0;
+	}
+
+	@Override
+	public String toString() {
+		return "first output: " + getTimeToFirstOutput() + " ms, exit: "
+				+ getTimeToExit() + " ms, streams drained: "
+				+ getTimeToStreamsDrained() + " ms";
+	}
+}
@@ -20,6 +20,8 @@
  */
 package fr.umlv.unitex.console;
 
+import java.util.concurrent.CountDownLatch;
+
 public class ConsoleEntry {
 	private final String content;
 	private String error;
@@ -90,6 +92,28 @@ public class ConsoleEntry {
 
 	private final Object lock = new Object();
 
+	/**
+	 * Counted down once for stdout and once for stderr, so that the executor
+	 * can block until both streams have been fully read instead of polling
+	 */
+	private final CountDownLatch streamsEnded = new CountDownLatch(2);
+
+	private final CommandTiming timing = new CommandTiming();
+
+	private volatile Runnable timingListener;
+
+	public CommandTiming getTiming() {
+		return timing;
+	}
+
+	/**
+	 * Sets the code to be run when the streams of the command have been
+	 * drained, i.e. when its timing is complete.
+	 */
+	public void setTimingListener(Runnable listener) {
+		this.timingListener = listener;
+	}
+
 	public boolean isErrorStreamEnded() {
 		synchronized (lock) {
 			return errorStreamEnded;
@@ -97,8 +121,16 @@ public class ConsoleEntry {
 	}
 
 	public void setErrorStreamEnded(boolean errorStreamEnded) {
+		if (!errorStreamEnded) {
+			throw new IllegalArgumentException(
+					"The end of a stream cannot be undone");
+		}
 		synchronized (lock) {
-			this.errorStreamEnded = errorStreamEnded;
+			if (this.errorStreamEnded) {
+				return;
+			}
+			this.errorStreamEnded = true;
+			streamEnded();
 		}
 	}
 
@@ -109,8 +141,61 @@ public class ConsoleEntry {
 	}
 
 	public void setNormalStreamEnded(boolean normalStreamEnded) {
+		if (!normalStreamEnded) {
+			throw new IllegalArgumentException(
+					"The end of a stream cannot be undone");
+		}
 		synchronized (lock) {
-			this.normalStreamEnded = normalStreamEnded;
+			if (this.normalStreamEnded) {
+				return;
+			}
+			this.normalStreamEnded = true;
+			streamEnded();
+		}
+	}
+
+	private void streamEnded() {
+		if (streamsEnded.getCount() == 1) {
+			/* This is the last stream: we record the time before releasing waiters */
+			timing.markStreamsDrained();
+			if (timing.isComplete()) {
+				timingCompleted();
+			}
+		}
+		streamsEnded.countDown();
+	}
+
+	/**
+	 * Records the exit of the process. The streams may be drained before or
+	 * after the exit is known, so the timing listener is called by whichever
+	 * of the two events comes last.
+	 */
+	public void markExit() {
+		synchronized (lock) {
+			timing.markExit();
+			if (timing.isComplete()) {
+				timingCompleted();
+			}
+		}
+	}
+
+	private void timingCompleted() {
+		final Runnable listener = timingListener;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Blocks until both stdout and stderr reading threads have reached the
+	 * end of their streams. If the calling thread is interrupted, the method
+	 * returns immediately, restoring the interrupt status.
+	 */
+	public void waitForStreamsEnded() {
+		try {
+			streamsEnded.await();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
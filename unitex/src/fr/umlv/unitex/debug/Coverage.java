@@ -20,37 +20,221 @@
  */
 package fr.umlv.unitex.debug;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-import fr.umlv.unitex.io.GraphIO;
+import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.grf.GrfModel;
+import fr.umlv.unitex.io.Encoding;
 
 public class Coverage {
+	/**
+	 * Number of concordance lines given at once to a worker thread
+	 */
+	private static final int CHUNK_SIZE = 256;
+	/**
+	 * "UCOV", at the beginning of coverage cache files
+	 */
+	private static final int CACHE_MAGIC = 0x55434f56;
+
 	int[][] infos;
 
 	public Coverage(DebugInfos d) {
 		infos = new int[d.graphNames.size()][];
 		for (int i = 0; i < infos.length; i++) {
-			final GraphIO gio = d.getGraphIO(i + 1);
+			final GrfModel model = d.getGrfModel(i + 1);
 			/*
 			 * +1 because the store in cell #0 the total number of matched box
 			 * for the graph
 			 */
-			final int n = (gio == null) ? 0 : gio.getBoxes().size() + 1;
+			final int n = (model == null) ? 0 : model.getBoxCount() + 1;
 			infos[i] = new int[n];
 		}
 	}
 
 	/**
 	 * This method counts the times each box of each graph is used in a match.
+	 * The counters are read from the cache file concord.cov if it is up to
+	 * date. Otherwise, concord.ind is read again line by line, and the lines
+	 * are decoded by several threads, each one with its own counters.
 	 */
 	public static Coverage computeCoverageInfos(DebugInfos d) {
 		final Coverage c = new Coverage(d);
-		final ArrayList<DebugDetails> details = new ArrayList<DebugDetails>();
-		for (int i = 0; i < d.lines.size(); i++) {
-			d.getMatchDetails(i, details);
+		final File cache = getCacheFile(d.concordIndFile);
+		if (c.loadCache(cache, d.concordIndFile)) {
+			return c;
+		}
+		final int failure;
+		try {
+			failure = c.compute(d);
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return null;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		if (failure != -1) {
+			/*
+			 * If there is a problem, we decode the line again, this time
+			 * showing the error to the user, and we return
+			 */
+			if (failure < d.lines.size()) {
+				d.getMatchDetails(failure, null);
+			}
+			return null;
+		}
+		c.saveCache(cache, d.concordIndFile);
+		return c;
+	}
+
+	/**
+	 * Returns the index of the first line that could not be decoded, or -1
+	 * if all the lines are OK.
+	 */
+	private int compute(final DebugInfos d) throws IOException,
+			InterruptedException {
+		final int nThreads = Runtime.getRuntime().availableProcessors();
+		final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<Chunk>(
+				2 * nThreads);
+		final Chunk end = new Chunk(-1);
+		final AtomicInteger failure = new AtomicInteger(Integer.MAX_VALUE);
+		final AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+		final ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		try {
+			final ArrayList<Future<int[][]>> workers = new ArrayList<Future<int[][]>>();
+			for (int i = 0; i < nThreads; i++) {
+				workers.add(pool.submit(new Callable<int[][]>() {
+					@Override
+					public int[][] call() throws InterruptedException {
+						final int[][] counters = newCounters();
+						final ArrayList<DebugDetails> details = new ArrayList<DebugDetails>();
+						Chunk chunk;
+						/*
+						 * We always go on until the end of the queue, so that
+						 * the reader never blocks on a full queue
+						 */
+						while ((chunk = queue.take()) != end) {
+							try {
+								countChunk(chunk, d, counters, details, failure);
+							} catch (final RuntimeException e) {
+								error.compareAndSet(null, e);
+								failure.set(-1);
+							}
+						}
+						return counters;
+					}
+				}));
+			}
+			final int readFailure = readLines(d.concordIndFile, queue, failure);
+			for (int i = 0; i < nThreads; i++) {
+				queue.put(end);
+			}
+			for (final Future<int[][]> worker : workers) {
+				merge(worker.get());
+			}
+			if (error.get() != null) {
+				throw error.get();
+			}
+			final int n = Math.min(readFailure, failure.get());
+			return (n == Integer.MAX_VALUE) ? -1 : n;
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads the match lines of concord.ind and gives them by chunks to the
+	 * worker threads. Returns the index of the first malformed line, or
+	 * Integer.MAX_VALUE.
+	 */
+	private static int readLines(File ind, BlockingQueue<Chunk> queue,
+			AtomicInteger failure) throws IOException, InterruptedException {
+		final BufferedReader reader = new BufferedReader(
+				Encoding.getInputStreamReader(ind));
+		try {
+			final String z = reader.readLine();
+			if (z == null || !z.startsWith("#D")) {
+				return 0;
+			}
+			String line = reader.readLine();
+			if (line == null) {
+				return 0;
+			}
+			int n = Integer.parseInt(line.trim());
+			/* We skip the graph names and the #[IMR] line */
+			while (n >= 0 && reader.readLine() != null) {
+				n--;
+			}
+			int index = 0;
+			Chunk chunk = new Chunk(index);
+			while ((line = reader.readLine()) != null) {
+				if (failure.get() != Integer.MAX_VALUE) {
+					/* No need to go on, the coverage will not be shown */
+					break;
+				}
+				if (line.length() == 0) {
+					continue;
+				}
+				/* We skip the match coordinates and the normal output */
+				final int pos = line.indexOf((char) 1);
+				if (pos == -1) {
+					return index;
+				}
+				chunk.lines[chunk.size++] = line.substring(pos);
+				index++;
+				if (chunk.size == CHUNK_SIZE) {
+					queue.put(chunk);
+					chunk = new Chunk(index);
+				}
+			}
+			if (chunk.size != 0) {
+				queue.put(chunk);
+			}
+			return Integer.MAX_VALUE;
+		} catch (final NumberFormatException e) {
+			return 0;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void countChunk(Chunk chunk, DebugInfos d,
+			int[][] counters, ArrayList<DebugDetails> details,
+			AtomicInteger failure) {
+		for (int i = 0; i < chunk.size; i++) {
+			if (failure.get() < chunk.first) {
+				/* An earlier line has already failed */
+				return;
+			}
+			d.getMatchDetails(chunk.lines[i], details, false);
 			if (details.size() == 0) {
-				/* If there is a problem, we return */
-				return null;
+				final int n = chunk.first + i;
+				int current;
+				while (n < (current = failure.get())
+						&& !failure.compareAndSet(current, n)) {
+					/* We retry until we store the lowest failing line */
+				}
+				return;
 			}
 			for (final DebugDetails item : details) {
 				if (item.tag.startsWith(">> ")) {
@@ -61,11 +245,101 @@ public class Coverage {
 					 */
 					continue;
 				}
-				c.infos[item.graph - 1][item.box + 1]++;
-				c.infos[item.graph - 1][0]++;
+				counters[item.graph - 1][item.box + 1]++;
+				counters[item.graph - 1][0]++;
+			}
+		}
+	}
+
+	private int[][] newCounters() {
+		final int[][] counters = new int[infos.length][];
+		for (int i = 0; i < infos.length; i++) {
+			counters[i] = new int[infos[i].length];
+		}
+		return counters;
+	}
+
+	private void merge(int[][] counters) {
+		for (int i = 0; i < infos.length; i++) {
+			for (int j = 0; j < infos[i].length; j++) {
+				infos[i][j] += counters[i][j];
+			}
+		}
+	}
+
+	private static File getCacheFile(File ind) {
+		return new File(FileUtil.getFileNameWithoutExtension(ind) + ".cov");
+	}
+
+	/**
+	 * Loads the counters from the cache file, if it was computed from the
+	 * current concord.ind and for graphs with the same number of boxes.
+	 */
+	private boolean loadCache(File cache, File ind) {
+		if (!cache.exists()) {
+			return false;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(cache)));
+			if (in.readInt() != CACHE_MAGIC || in.readLong() != ind.length()
+					|| in.readLong() != ind.lastModified()
+					|| in.readInt() != infos.length) {
+				return false;
+			}
+			final int[][] tmp = new int[infos.length][];
+			for (int i = 0; i < infos.length; i++) {
+				if (in.readInt() != infos[i].length) {
+					return false;
+				}
+				tmp[i] = new int[infos[i].length];
+				for (int j = 0; j < tmp[i].length; j++) {
+					tmp[i][j] = in.readInt();
+				}
+			}
+			infos = tmp;
+			return true;
+		} catch (final IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (final IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void saveCache(File cache, File ind) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(cache)));
+			out.writeInt(CACHE_MAGIC);
+			out.writeLong(ind.length());
+			out.writeLong(ind.lastModified());
+			out.writeInt(infos.length);
+			for (final int[] counters : infos) {
+				out.writeInt(counters.length);
+				for (final int n : counters) {
+					out.writeInt(n);
+				}
+			}
+		} catch (final IOException e) {
+			/* The cache is only an optimization, so we just drop it */
+			cache.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (final IOException e) {
+					e.printStackTrace();
+				}
 			}
 		}
-		return c;
 	}
 
 	public int getGraphCounter(int graph) {
@@ -75,4 +349,19 @@ public class Coverage {
 	public int getBoxCounter(int graph, int box) {
 		return infos[graph - 1][box + 1];
 	}
+
+	/**
+	 * A bunch of consecutive match lines, the first one being the line #first
+	 * of the concordance.
+	 */
+	private static class Chunk {
+		final int first;
+		final String[] lines;
+		int size = 0;
+
+		Chunk(int first) {
+			this.first = first;
+			this.lines = (first == -1) ? null : new String[CHUNK_SIZE];
+		}
+	}
 }
@@ -21,6 +21,7 @@
 package fr.umlv.unitex.debug;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.NoSuchElementException;
@@ -30,7 +31,9 @@ import java.util.regex.Pattern;
 import javax.swing.JOptionPane;
 
 import fr.umlv.unitex.files.FileUtil;
-import fr.umlv.unitex.graphrendering.GenericGraphBox;
+import fr.umlv.unitex.grf.GrfBoxContent;
+import fr.umlv.unitex.grf.GrfModel;
+import fr.umlv.unitex.grf.GrfReader;
 import fr.umlv.unitex.io.Encoding;
 import fr.umlv.unitex.io.GraphIO;
 
@@ -40,6 +43,7 @@ public class DebugInfos {
 	public ArrayList<File> graphs = new ArrayList<File>();
 	public ArrayList<String> lines = new ArrayList<String>();
 	public HashMap<Integer, GraphIO> graphIOMap = new HashMap<Integer, GraphIO>();
+	public HashMap<Integer, GrfModel> grfModelMap = new HashMap<Integer, GrfModel>();
 
 	public static DebugInfos loadConcordanceIndex(File html) {
 		final String concord_ind = FileUtil.getFileNameWithoutExtension(html)
@@ -105,6 +109,39 @@ public class DebugInfos {
 	public GraphIO getGraphIO(int n) {
 		GraphIO gio = graphIOMap.get(Integer.valueOf(n));
 		if (gio == null) {
+			final GrfModel model = getGrfModel(n);
+			if (model == null) {
+				return null;
+			}
+			try {
+				gio = GraphIO.createGraphIO(model);
+			} catch (final IllegalStateException e) {
+				JOptionPane.showMessageDialog(null, "Cannot load graph "
+						+ model.getGrf().getAbsolutePath() + ": "
+						+ e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+				return null;
+			}
+			graphIOMap.put(Integer.valueOf(n), gio);
+		}
+		return gio;
+	}
+
+	/**
+	 * Returns the graph #n without building any box, which is enough to
+	 * explore it. Note: n must be in [1;number of graphs]
+	 */
+	public GrfModel getGrfModel(int n) {
+		return getGrfModel(n, true);
+	}
+
+	/**
+	 * Same as getGrfModel(n), but the error dialogs are only shown if
+	 * showErrors is true. This method is synchronized, since coverage is
+	 * computed on several threads.
+	 */
+	synchronized GrfModel getGrfModel(int n, boolean showErrors) {
+		GrfModel model = grfModelMap.get(Integer.valueOf(n));
+		if (model == null) {
 			/*
 			 * If we try to load a graph for the first time, we check if it has
 			 * been modified since the concordance was built. Once loaded, we
@@ -122,6 +159,9 @@ public class DebugInfos {
 				return null;
 			}
 			if (f.lastModified() > concordIndFile.lastModified()) {
+				if (!showErrors) {
+					return null;
+				}
 				JOptionPane
 						.showMessageDialog(
 								null,
@@ -132,55 +172,84 @@ public class DebugInfos {
 								"Error", JOptionPane.ERROR_MESSAGE);
 				return null;
 			}
-			gio = GraphIO.loadGraph(f, false, false);
-			if (gio == null) {
-				JOptionPane.showMessageDialog(null,
-						"Cannot load graph " + f.getAbsolutePath(), "Error",
-						JOptionPane.ERROR_MESSAGE);
+			try {
+				model = GrfReader.read(f);
+			} catch (final IOException e) {
+				if (showErrors) {
+					JOptionPane.showMessageDialog(null, "Cannot load graph "
+							+ f.getAbsolutePath(), "Error",
+							JOptionPane.ERROR_MESSAGE);
+				}
 				return null;
 			}
-			graphIOMap.put(Integer.valueOf(n), gio);
+			grfModelMap.put(Integer.valueOf(n), model);
 		}
-		return gio;
+		return model;
 	}
 
 	public int getEpsilonLineInInitialState(int graph) {
-		final GraphIO gio = getGraphIO(graph);
-		if (gio == null)
+		return getEpsilonLineInInitialState(graph, true);
+	}
+
+	private int getEpsilonLineInInitialState(int graph, boolean showErrors) {
+		final GrfModel model = getGrfModel(graph, showErrors);
+		if (model == null)
 			return -1;
-		final GenericGraphBox box = gio.getBoxes().get(0);
-		return box.lines.indexOf("<E>");
+		return model.getBoxContent(GrfModel.INITIAL).getLines().indexOf("<E>");
 	}
 
 	public ArrayList<DebugDetails> getMatchDetails(int n,
 			ArrayList<DebugDetails> d) {
+		return getMatchDetails(lines.get(n), d, true);
+	}
+
+	/**
+	 * Decodes the debug part of a line of concord.ind, i.e. what follows the
+	 * normal output. It is a sequence of steps of the form:
+	 * 
+	 * #1 output #2 graph:box:line #3 tag #4 matched
+	 * 
+	 * where #n stands for the char of code n. Then, the steps that are not
+	 * in the concordance are added, as the initial and final states of
+	 * graphs and the <E> with no output. If they cannot be restored, the list
+	 * is emptied.
+	 */
+	ArrayList<DebugDetails> getMatchDetails(String s,
+			ArrayList<DebugDetails> d, boolean showErrors) {
 		if (d == null) {
 			d = new ArrayList<DebugDetails>();
 		}
 		d.clear();
-		final Scanner scanner = new Scanner(lines.get(n));
-		scanner.useDelimiter("" + (char) 2);
-		while (scanner.hasNext()) {
+		final int length = s.length();
+		int pos = 0;
+		while (pos < length) {
 			/* We skip the initial char #1 */
-			final String output = scanner.next().substring(1);
-			scanner.useDelimiter(":");
-			final int graph = Integer.parseInt(scanner.next().substring(1));
-			final int box = scanner.nextInt();
-			scanner.useDelimiter("" + (char) 3);
-			final int line = Integer.parseInt(scanner.next().substring(1));
-			scanner.useDelimiter("" + (char) 4);
-			final String tag = scanner.next().substring(1);
-			scanner.useDelimiter("" + (char) 1);
-			final String matched = scanner.next().substring(1);
+			final int pos2 = indexOf(s, (char) 2, pos + 1);
+			final String output = s.substring(pos + 1, pos2);
+			final int colon1 = indexOf(s, ':', pos2 + 1);
+			final int graph = parseInt(s, pos2 + 1, colon1);
+			final int colon2 = indexOf(s, ':', colon1 + 1);
+			final int box = parseInt(s, colon1 + 1, colon2);
+			final int pos3 = indexOf(s, (char) 3, colon2 + 1);
+			final int line = parseInt(s, colon2 + 1, pos3);
+			final int pos4 = indexOf(s, (char) 4, pos3 + 1);
+			final String tag = s.substring(pos3 + 1, pos4);
+			pos = s.indexOf((char) 1, pos4 + 1);
+			if (pos == -1) {
+				pos = length;
+			}
+			final String matched = s.substring(pos4 + 1, pos);
 			d.add(new DebugDetails(tag, output, matched, graph, box, line, this));
-			scanner.useDelimiter("" + (char) 2);
 		}
-		scanner.close();
+		if (d.isEmpty()) {
+			return d;
+		}
 		DebugDetails tmp = d.get(0);
 		if (tmp.box != 0) {
 			/* If necessary, we add the initial state */
 			final DebugDetails tmp2 = new DebugDetails("<E>", "", "",
-					tmp.graph, 0, getEpsilonLineInInitialState(tmp.graph), this);
+					tmp.graph, 0, getEpsilonLineInInitialState(tmp.graph,
+							showErrors), this);
 			d.add(0, tmp2);
 		}
 		tmp = d.get(d.size() - 1);
@@ -201,7 +270,8 @@ public class DebugInfos {
 				final DebugDetails tmp2 = d.get(i + 1);
 				if (tmp2.box != 0) {
 					tmp = new DebugDetails("<E>", "", "", tmp2.graph, 0,
-							getEpsilonLineInInitialState(tmp2.graph), this);
+							getEpsilonLineInInitialState(tmp2.graph, showErrors),
+							this);
 					d.add(i + 1, tmp);
 				}
 				continue;
@@ -220,18 +290,43 @@ public class DebugInfos {
 				continue;
 			}
 		}
-		if (!restore_E_steps(d)) {
+		if (!restore_E_steps(d, showErrors)) {
 			d.clear();
 		}
 		return d;
 	}
 
+	private static int indexOf(String s, char c, int from) {
+		final int n = s.indexOf(c, from);
+		if (n == -1) {
+			throw new NoSuchElementException("Invalid debug information: "
+					+ s);
+		}
+		return n;
+	}
+
+	private static int parseInt(String s, int start, int end) {
+		if (start == end) {
+			throw new NumberFormatException("Empty number in " + s);
+		}
+		int n = 0;
+		for (int i = start; i < end; i++) {
+			final char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new NumberFormatException("Invalid number in " + s);
+			}
+			n = n * 10 + (c - '0');
+		}
+		return n;
+	}
+
 	/**
 	 * In debug mode, <E> with no output are compiled without debug information,
 	 * so that they cannot be present in debug concordance. So, this function is
 	 * there to restore those <E> steps in graph exploration.
 	 */
-	private boolean restore_E_steps(ArrayList<DebugDetails> d) {
+	private boolean restore_E_steps(ArrayList<DebugDetails> d,
+			boolean showErrors) {
 		for (int i = 0; i < d.size() - 1; i++) {
 			final DebugDetails src = d.get(i);
 			final DebugDetails dst = d.get(i + 1);
@@ -246,11 +341,13 @@ public class DebugInfos {
 					/* We go on */
 					continue;
 				}
-				JOptionPane.showMessageDialog(null,
-						"Unexpected non empty forbidden context between "
-								+ src.box + " and " + dst.box + " in graph "
-								+ f.getAbsolutePath(), "Error",
-						JOptionPane.ERROR_MESSAGE);
+				if (showErrors) {
+					JOptionPane.showMessageDialog(null,
+							"Unexpected non empty forbidden context between "
+									+ src.box + " and " + dst.box + " in graph "
+									+ f.getAbsolutePath(), "Error",
+							JOptionPane.ERROR_MESSAGE);
+				}
 				return false;
 			}
 			if (src.graph != dst.graph) {
@@ -259,13 +356,12 @@ public class DebugInfos {
 				 */
 				continue;
 			}
-			final GraphIO gio = getGraphIO(src.graph);
-			if (gio == null) {
+			final GrfModel model = getGrfModel(src.graph, showErrors);
+			if (model == null) {
 				return false;
 			}
-			final GenericGraphBox srcBox = gio.getBoxes().get(src.box);
-			final GenericGraphBox dstBox = gio.getBoxes().get(dst.box);
-			if (srcBox.transitions.contains(dstBox)) {
+			final GrfBoxContent srcBox = model.getBoxContent(src.box);
+			if (model.hasTransition(src.box, dst.box)) {
 				/* Nothing to do if there is a transition */
 				continue;
 			}
@@ -278,7 +374,7 @@ public class DebugInfos {
 					 * the box, but it may also be because the line contains
 					 * several tokens
 					 */
-					final String line = srcBox.lines.get(src.line);
+					final String line = srcBox.getLines().get(src.line);
 					int pos = line.indexOf(src.tag);
 					pos = line.indexOf(dst.tag, pos + src.tag.length());
 					if (pos != -1) {
@@ -297,8 +393,7 @@ public class DebugInfos {
 					 * It may also be because the box contains a range
 					 * indication
 					 */
-					if (srcBox.transduction != null
-							&& srcBox.transduction.startsWith("$[")) {
+					if (srcBox.getTransduction().startsWith("$[")) {
 						continue;
 					}
 				} else {
@@ -306,20 +401,20 @@ public class DebugInfos {
 					 * Not in the same line. It must be because the box contains
 					 * a range indication
 					 */
-					if (srcBox.transduction != null
-							&& srcBox.transduction.startsWith("$[")) {
+					if (srcBox.getTransduction().startsWith("$[")) {
 						continue;
 					}
 				}
 			}
-			final ArrayList<GenericGraphBox> visited = new ArrayList<GenericGraphBox>();
+			final boolean[] visited = new boolean[model.getBoxCount()];
 			final ArrayList<Integer> path = new ArrayList<Integer>();
-			if (!findEpsilonPath(0, srcBox, dstBox, visited, path,
-					gio.getBoxes())) {
-				JOptionPane.showMessageDialog(null,
-						"Cannot find <E> path between box " + src.box + " and "
-								+ dst.box + " in graph " + f.getAbsolutePath(),
-						"Error", JOptionPane.ERROR_MESSAGE);
+			if (!findEpsilonPath(0, src.box, dst.box, visited, path, model)) {
+				if (showErrors) {
+					JOptionPane.showMessageDialog(null,
+							"Cannot find <E> path between box " + src.box + " and "
+									+ dst.box + " in graph " + f.getAbsolutePath(),
+							"Error", JOptionPane.ERROR_MESSAGE);
+				}
 				return false;
 			}
 			for (int j = 0; j < path.size(); j = j + 2) {
@@ -334,56 +429,48 @@ public class DebugInfos {
 		return true;
 	}
 
-	private boolean findEpsilonPath(int depth, GenericGraphBox current,
-			GenericGraphBox dstBox, ArrayList<GenericGraphBox> visited,
-			ArrayList<Integer> path, ArrayList<GenericGraphBox> boxes) {
-		if (current.equals(dstBox) && depth > 0)
+	private boolean findEpsilonPath(int depth, int current, int dstBox,
+			boolean[] visited, ArrayList<Integer> path, GrfModel model) {
+		if (current == dstBox && depth > 0)
 			return true;
-		if (visited.contains(current))
+		if (visited[current])
 			return false;
-		visited.add(current);
+		visited[current] = true;
+		final int n = model.getTransitionCount(current);
 		if (depth == 0) {
 			/* Special of the starting box */
-			for (final GenericGraphBox dest : current.transitions) {
-				if (findEpsilonPath(depth + 1, dest, dstBox, visited, path,
-						boxes))
+			for (int j = 0; j < n; j++) {
+				if (findEpsilonPath(depth + 1, model.getTransition(current, j),
+						dstBox, visited, path, model))
 					return true;
 			}
 			return false;
 		}
-		if (current.transduction != null && current.transduction.length() > 0) {
+		final GrfBoxContent box = model.getBoxContent(current);
+		if (box.getTransduction().length() > 0) {
 			/* Boxes with an output cannot be considered */
 			return false;
 		}
-		if (current.lines.size() == 0) {
+		int line = -1;
+		if (box.getLines().size() == 0) {
 			/* Case of a box only containing <E> */
-			path.add(boxes.indexOf(current));
-			path.add(0);
-			for (final GenericGraphBox dest : current.transitions) {
-				if (findEpsilonPath(depth + 1, dest, dstBox, visited, path,
-						boxes))
-					return true;
-			}
-			path.remove(path.size() - 1);
-			path.remove(path.size() - 1);
+			line = 0;
+		} else {
+			/* An <E> is enough to go through a box, so we take the first one */
+			line = box.getLines().indexOf("<E>");
+		}
+		if (line == -1) {
 			return false;
 		}
-		for (int i = 0; i < current.lines.size(); i++) {
-			if (current.lines.get(i).equals("<E>")) {
-				/* The box line is a candidate */
-				path.add(boxes.indexOf(current));
-				path.add(i);
-				for (final GenericGraphBox dest : current.transitions) {
-					if (findEpsilonPath(depth + 1, dest, dstBox, visited, path,
-							boxes))
-						return true;
-				}
-				path.remove(path.size() - 1);
-				path.remove(path.size() - 1);
-				/* An <E> is enough to go through a box, so we can stop */
-				break;
-			}
+		path.add(current);
+		path.add(line);
+		for (int j = 0; j < n; j++) {
+			if (findEpsilonPath(depth + 1, model.getTransition(current, j),
+					dstBox, visited, path, model))
+				return true;
 		}
+		path.remove(path.size() - 1);
+		path.remove(path.size() - 1);
 		return false;
 	}
 }
@@ -26,6 +26,8 @@ import java.awt.Font;
 import java.awt.Stroke;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 
@@ -47,6 +49,16 @@ public class GraphDecorator {
 	ArrayList<Integer> boxMoved = new ArrayList<Integer>();
 	ArrayList<Integer> transitionAdded = new ArrayList<Integer>();
 	ArrayList<Integer> transitionRemoved = new ArrayList<Integer>();
+	/*
+	 * Those sets are built from the lists above for the side of the diff this
+	 * decorator displays, so that the queries made at paint time are O(1)
+	 */
+	private BitSet addedBoxes = new BitSet();
+	private BitSet removedBoxes = new BitSet();
+	private BitSet changedBoxes = new BitSet();
+	private BitSet movedBoxes = new BitSet();
+	private HashSet<Long> addedTransitions = new HashSet<Long>();
+	private HashSet<Long> removedTransitions = new HashSet<Long>();
 	/* Those fields are used in debug mode */
 	private int currentGraph = -1;
 	private int currentBox = -1;
@@ -122,9 +134,56 @@ public class GraphDecorator {
 			}
 		}
 		scanner.close();
+		info.buildIndex();
 		return info;
 	}
 
+	/**
+	 * Builds the sets used by the queries from the lists
+	 */
+	private void buildIndex() {
+		addedBoxes = new BitSet();
+		removedBoxes = new BitSet();
+		changedBoxes = new BitSet();
+		movedBoxes = new BitSet();
+		addedTransitions = new HashSet<Long>();
+		removedTransitions = new HashSet<Long>();
+		if (base) {
+			setAll(removedBoxes, boxRemoved, 0, 1);
+			addTransitions(removedTransitions, transitionRemoved);
+		} else {
+			setAll(addedBoxes, boxAdded, 0, 1);
+			addTransitions(addedTransitions, transitionAdded);
+		}
+		setAll(changedBoxes, boxContentChanged, base ? 0 : 1, 2);
+		setAll(movedBoxes, boxMoved, base ? 0 : 1, 2);
+	}
+
+	private static void setAll(BitSet set, ArrayList<Integer> list, int start,
+			int step) {
+		for (int i = start; i < list.size(); i += step) {
+			final int n = list.get(i);
+			if (n >= 0) {
+				set.set(n);
+			}
+		}
+	}
+
+	private static void addTransitions(HashSet<Long> set,
+			ArrayList<Integer> list) {
+		for (int i = 0; i + 1 < list.size(); i += 2) {
+			set.add(transitionKey(list.get(i), list.get(i + 1)));
+		}
+	}
+
+	private static Long transitionKey(int n, int dest) {
+		return Long.valueOf(((long) n << 32) | (dest & 0xFFFFFFFFL));
+	}
+
+	private static boolean get(BitSet set, int n) {
+		return n >= 0 && set.get(n);
+	}
+
 	@SuppressWarnings("unchecked")
 	public GraphDecorator clone(boolean b) {
 		final GraphDecorator info = new GraphDecorator(null);
@@ -136,53 +195,34 @@ public class GraphDecorator {
 		info.boxMoved = (ArrayList<Integer>) boxMoved.clone();
 		info.transitionAdded = (ArrayList<Integer>) transitionAdded.clone();
 		info.transitionRemoved = (ArrayList<Integer>) transitionRemoved.clone();
+		info.buildIndex();
 		return info;
 	}
 
 	public boolean hasBeenRemoved(int n) {
-		return base && boxRemoved.contains(Integer.valueOf(n));
+		return get(removedBoxes, n);
 	}
 
 	public boolean hasBeenAdded(int n) {
-		return !base && boxAdded.contains(Integer.valueOf(n));
+		return get(addedBoxes, n);
 	}
 
 	public boolean contentChanged(int n) {
-		for (int i = base ? 0 : 1; i < boxContentChanged.size(); i += 2) {
-			if (n == boxContentChanged.get(i))
-				return true;
-		}
-		return false;
+		return get(changedBoxes, n);
 	}
 
 	public boolean hasMoved(int n) {
-		for (int i = base ? 0 : 1; i < boxMoved.size(); i += 2) {
-			if (n == boxMoved.get(i))
-				return true;
-		}
-		return false;
+		return get(movedBoxes, n);
 	}
 
 	public boolean transitionRemoved(int n, int dest) {
-		if (!base)
-			return false;
-		for (int i = 0; i < transitionRemoved.size(); i += 2) {
-			if (n == transitionRemoved.get(i)
-					&& dest == transitionRemoved.get(i + 1))
-				return true;
-		}
-		return false;
+		return !removedTransitions.isEmpty()
+				&& removedTransitions.contains(transitionKey(n, dest));
 	}
 
 	public boolean transitionAdded(int n, int dest) {
-		if (base)
-			return false;
-		for (int i = 0; i < transitionAdded.size(); i += 2) {
-			if (n == transitionAdded.get(i)
-					&& dest == transitionAdded.get(i + 1))
-				return true;
-		}
-		return false;
+		return !addedTransitions.isEmpty()
+				&& addedTransitions.contains(transitionKey(n, dest));
 	}
 
 	public boolean noDifference() {
@@ -314,6 +354,7 @@ public class GraphDecorator {
 		boxMoved.clear();
 		transitionAdded.clear();
 		transitionRemoved.clear();
+		buildIndex();
 		currentGraph = -1;
 		currentBox = -1;
 		currentLine = -1;
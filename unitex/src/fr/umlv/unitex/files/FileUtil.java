@@ -21,6 +21,7 @@
 package fr.umlv.unitex.files;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -626,5 +627,33 @@ public class FileUtil {
 			getFileList(f,list);
 		}
 	}
+
+	/**
+	 * Returns a sorted list containing all the .grf files of the given
+	 * directory and of its subdirectories.
+	 */
+	public static ArrayList<File> getGraphs(File dir) {
+		final ArrayList<File> graphs = new ArrayList<File>();
+		listGraphs(dir, graphs);
+		Collections.sort(graphs);
+		return graphs;
+	}
+
+	private static void listGraphs(File dir, ArrayList<File> graphs) {
+		final File[] files = dir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				return f.getName().endsWith(".grf") || f.isDirectory();
+			}
+		});
+		if (files == null)
+			return;
+		for (final File f : files) {
+			if (f.isFile())
+				graphs.add(f);
+			else
+				listGraphs(f, graphs);
+		}
+	}
 	
 }
@@ -40,6 +40,7 @@ import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableCellRenderer;
 
 import fr.umlv.unitex.console.Console;
+import fr.umlv.unitex.console.CommandTiming;
 import fr.umlv.unitex.console.ConsoleEntry;
 import fr.umlv.unitex.console.ConsoleTableCellEditor;
 import fr.umlv.unitex.console.ConsoleTableModel;
@@ -125,7 +126,13 @@ public class ConsoleFrame extends TabbableInternalFrame {
 						case 0:
 						case 1:
 						case 2: {
-							command.setText(e.getContent());
+							final CommandTiming timing = e.getTiming();
+							if (timing.isComplete()) {
+								command.setText(e.getContent() + "   ("
+										+ timing + ")");
+							} else {
+								command.setText(e.getContent());
+							}
 							return command;
 						}
 						case 3: {
@@ -178,6 +185,18 @@ public class ConsoleFrame extends TabbableInternalFrame {
 				systemMsg, logID);
 		final int n = (pos != -1) ? pos : model.getRowCount();
 		model.addConsoleEntry(n, e);
+		e.setTimingListener(new Runnable() {
+			@Override
+			public void run() {
+				/* We show the timing once the command is over */
+				EventQueue.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						table.repaint();
+					}
+				});
+			}
+		});
 		/* Now, we update the width of the last two columns */
 		TableCellRenderer renderer = table.getCellRenderer(n, 1);
 		Component c = renderer.getTableCellRendererComponent(table,
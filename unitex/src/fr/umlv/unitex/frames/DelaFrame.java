@@ -231,13 +231,18 @@ public class DelaFrame extends KeyedInternalFrame<File> {
 			return;
 		}
 		final TextAsListModelImpl model = (TextAsListModelImpl) text.getModel();
-		int n;
-		if (forward)
-			n = model.getNextMatchedElement(currentPosition, p1);
-		else
-			n = model.getPreviousMatchedElement(currentPosition, p1);
-		if (n == -1)
-			return;
+		model.findMatchedElement(currentPosition, p1, forward,
+				new TextAsListModelImpl.MatchListener() {
+					@Override
+					public void elementMatched(int n) {
+						if (n != -1)
+							showMatchedElement(n);
+					}
+				});
+	}
+
+	void showMatchedElement(int n) {
+		final TextAsListModelImpl model = (TextAsListModelImpl) text.getModel();
 		text.setSelectedIndex(n);
 		/*
 		 * Now, we want the selected cell to be in the middle of the visible
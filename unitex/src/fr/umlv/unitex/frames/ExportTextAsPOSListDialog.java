@@ -26,7 +26,6 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
@@ -40,14 +39,8 @@ import fr.umlv.unitex.common.project.manager.GlobalProjectManager;
 import fr.umlv.unitex.config.Config;
 import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.io.Encoding;
-import fr.umlv.unitex.io.GraphIO;
-import fr.umlv.unitex.io.UnicodeIO;
-import fr.umlv.unitex.process.Launcher;
-import fr.umlv.unitex.process.commands.Tfst2GrfCommand;
+import fr.umlv.unitex.tfst.POSListExporter;
 import fr.umlv.unitex.tfst.TagFilter;
-import fr.umlv.unitex.tfst.TfstTableModel;
-import fr.umlv.unitex.tfst.TokenTags;
-import fr.umlv.unitex.tfst.TokensInfo;
 import fr.umlv.unitex.utils.KeyUtil;
 
 public class ExportTextAsPOSListDialog extends JDialog {
@@ -56,6 +49,7 @@ public class ExportTextAsPOSListDialog extends JDialog {
 	final JProgressBar progress = new JProgressBar();
 	TagFilter filter;
 	boolean delafStyle;
+	POSListExporter exporter;
 
 	/**
 	 * Creates a new font dialog box.
@@ -75,6 +69,9 @@ public class ExportTextAsPOSListDialog extends JDialog {
 			@Override
 			public void windowClosing(WindowEvent e) {
 				canceled = true;
+				if (exporter != null) {
+					exporter.cancel();
+				}
 			}
 		});
 		setLocationRelativeTo(UnitexFrame.mainFrame);
@@ -109,69 +106,37 @@ public class ExportTextAsPOSListDialog extends JDialog {
 		final ExportTextAsPOSListDialog dialog = this;
 		final File sntDir = Config.getCurrentSntDir();
 		final Encoding encoding = ConfigManager.getManager().getEncoding(null);
+		exporter = new POSListExporter(filter, delafStyle);
 		new Thread(new Runnable() {
 			@Override
 			public void run() {
-				TokensInfo.save();
 				final File tfst = new File(sntDir, "text.tfst");
-				final File tmpGrf = new File(sntDir, "foo.grf");
-				final File sentenceText = new File(sntDir, "foo.txt");
-				final File sentenceTok = new File(sntDir, "foo.tok");
-				final TfstTableModel model = new TfstTableModel(filter,
-						delafStyle);
-				final ArrayList<Integer> errorList = new ArrayList<>();
+				ArrayList<Integer> errorList = new ArrayList<>();
 				try {
 					final OutputStreamWriter writer = encoding
 							.getOutputStreamWriter(output);
-					for (int i = 1; i <= sentenceCount; i++) {
-						if (canceled) {
-							break;
-						}
-						final Tfst2GrfCommand cmd = new Tfst2GrfCommand()
-								.automaton(tfst).sentence(i).output("foo");
-						Launcher.execWithoutTracing(cmd);
-						final String text = readSentenceText(sentenceText);
-						TokensInfo.loadTokensInfo(sentenceTok, text);
-						final GraphIO g = GraphIO.loadGraph(tmpGrf, true, true);
-						if (g == null) {
-							errorList.add(i);
-							continue;
-						}
-						model.init(g.getBoxes());
-						if (model.getRowCount() == 0) {
-							/*
-							 * If the sentence automaton has been emptied, we
-							 * generate the token list, excluding spaces
-							 */
-							for (int j = 0; j < TokensInfo.getTokenCount(); j++) {
-								final String s = TokensInfo.getTokenAsString(j);
-								UnicodeIO.writeString(writer, s);
-							}
-						} else
-							for (int j = 0; j < model.getRowCount(); j++) {
-								final TokenTags t = model.getTokenTags(j);
-								UnicodeIO.writeString(writer, t.toString()
-									+ " ");
-							}
-						/* And we add a sentence delimiter */
-						UnicodeIO.writeString(writer, "{S}\n");
-						final int z = i;
-						EventQueue.invokeLater(new Runnable() {
-							@Override
-							public void run() {
-								progress.setValue(z);
-								progress.setString(z + "/" + sentenceCount);
-							}
-						});
+					try {
+						errorList = exporter.export(tfst, writer, Runtime
+								.getRuntime().availableProcessors(),
+								new POSListExporter.ProgressListener() {
+									@Override
+									public void sentencesExported(final int z) {
+										EventQueue.invokeLater(new Runnable() {
+											@Override
+											public void run() {
+												progress.setValue(z);
+												progress.setString(z + "/"
+														+ sentenceCount);
+											}
+										});
+									}
+								});
+					} finally {
+						writer.close();
 					}
-					writer.close();
 				} catch (final IOException e1) {
-					/* nop */
+					e1.printStackTrace();
 				} finally {
-					TokensInfo.restore();
-					tmpGrf.delete();
-					sentenceText.delete();
-					sentenceTok.delete();
 					try {
 						/*
 						 * We have to wait a little bit because if the text is
@@ -211,21 +176,4 @@ public class ExportTextAsPOSListDialog extends JDialog {
 			}
 		}).start();
 	}
-
-	String readSentenceText(File f) {
-		String s = "";
-		try {
-			final InputStreamReader reader = Encoding.getInputStreamReader(f);
-			if (reader == null)
-				return null;
-			s = UnicodeIO.readLine(reader);
-			if (s == null || s.equals("")) {
-				return "";
-			}
-			reader.close();
-		} catch (final IOException e) {
-			e.printStackTrace();
-		}
-		return s;
-	}
 }
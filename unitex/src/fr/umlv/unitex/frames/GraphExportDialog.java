@@ -21,21 +21,17 @@
 package fr.umlv.unitex.frames;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Cursor;
 import java.awt.FlowLayout;
-import java.awt.Graphics2D;
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageTypeSpecifier;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.metadata.IIOMetadataNode;
-import javax.imageio.stream.ImageOutputStream;
 import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.WindowConstants;
 import javax.swing.border.EmptyBorder;
 import javax.swing.filechooser.FileFilter;
@@ -43,6 +39,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 
 import fr.umlv.unitex.graphrendering.DrawGraphParams;
 import fr.umlv.unitex.graphrendering.GenericGraphicalZone;
+import fr.umlv.unitex.io.GraphBitmapExporter;
 import fr.umlv.unitex.utils.KeyUtil;
 
 import javax.swing.JTextField;
@@ -52,10 +49,13 @@ import javax.swing.LayoutStyle.ComponentPlacement;
 import javax.swing.JLabel;
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
-import java.awt.image.BufferedImage;
 
 import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
@@ -63,8 +63,6 @@ import javax.swing.JCheckBox;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.ChangeEvent;
 
-import org.w3c.dom.Element;
-
 import java.awt.Dimension;
 import javax.swing.SwingConstants;
 
@@ -92,6 +90,7 @@ public class GraphExportDialog extends JDialog {
 	private JSpinner fldCropMarginH;
 	private JLabel lblCropMarginW;
 	private JLabel lblCropMarginH;
+	private JCheckBox fldDirectory;
 	protected int format;
 
 	public static String formatName(int format) {
@@ -206,6 +205,7 @@ public class GraphExportDialog extends JDialog {
 		lblCropMarginW.setVisible(isBitmap);
 		fldCrop.setVisible(isBitmap);
 		fldAntialiasing.setVisible(isBitmap);
+		fldDirectory.setVisible(isBitmap);
 		fldDpi.setVisible(isBitmap);
 		lblDpi.setVisible(isBitmap);
 		fldQuality.setVisible(isJpeg);
@@ -219,7 +219,7 @@ public class GraphExportDialog extends JDialog {
 	public GraphExportDialog(GenericGraphicalZone grZone, int format) {
 		this.grZone = grZone;
 		this.format = format;
-		setBounds(100, 100, 677, 328);
+		setBounds(100, 100, 677, 358);
 		getContentPane().setLayout(new BorderLayout());
 		contentPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
 		getContentPane().add(contentPanel, BorderLayout.CENTER);
@@ -270,6 +270,12 @@ public class GraphExportDialog extends JDialog {
 			}
 		});
 
+		fldDirectory = new JCheckBox("Export all graphs of the directory: ");
+		fldDirectory.setHorizontalAlignment(SwingConstants.TRAILING);
+		fldDirectory.setHorizontalTextPosition(SwingConstants.LEFT);
+		fldDirectory
+				.setToolTipText("Export every graph of the image file's directory and subdirectories, next to each graph");
+
 		fldCropMarginW = new JSpinner();
 		fldCropMarginW.setModel(new SpinnerNumberModel(0, 0, 999, 1));
 
@@ -317,6 +323,7 @@ public class GraphExportDialog extends JDialog {
 							.addGap(21)
 							.addGroup(gl_contentPanel.createParallelGroup(Alignment.TRAILING)
 								.addComponent(fldCrop, GroupLayout.PREFERRED_SIZE, 159, GroupLayout.PREFERRED_SIZE)
+								.addComponent(fldDirectory)
 								.addGroup(gl_contentPanel.createSequentialGroup()
 									.addComponent(lblCropMarginH)
 									.addPreferredGap(ComponentPlacement.RELATED)
@@ -357,6 +364,8 @@ public class GraphExportDialog extends JDialog {
 					.addGroup(gl_contentPanel.createParallelGroup(Alignment.BASELINE)
 						.addComponent(fldCropMarginH, GroupLayout.PREFERRED_SIZE, 26, GroupLayout.PREFERRED_SIZE)
 						.addComponent(lblCropMarginH))
+					.addGap(13)
+					.addComponent(fldDirectory)
 					.addContainerGap(31, Short.MAX_VALUE))
 		);
 		contentPanel.setLayout(gl_contentPanel);
@@ -419,11 +428,13 @@ public class GraphExportDialog extends JDialog {
 
 		File imageFile = new File(fldFileName.getText());
 
-		if (isBitmapFormat(format)) {
-			BufferedImage img = createBitmap(params);
+		if (isBitmapFormat(format) && fldDirectory.isSelected()) {
+			exportDirectory(imageFile.isDirectory() ? imageFile : imageFile
+					.getAbsoluteFile().getParentFile(), params);
+		} else if (isBitmapFormat(format)) {
 			try {
-				saveBitmap(img, params.getDpi(),
-						params.getCompressionQuality(), imageFile);
+				new GraphBitmapExporter(grZone, params, format)
+						.export(imageFile);
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
@@ -433,121 +444,91 @@ public class GraphExportDialog extends JDialog {
 		}
 	}
 
-	private BufferedImage createBitmap(DrawGraphParams params) {
-		int w = (int) Math.round(grZone.getWidth() * params.getTotalScale());
-		int h = (int) Math.round(grZone.getHeight() * params.getTotalScale());
-
-		final BufferedImage image = new BufferedImage(w, h,
-				BufferedImage.TYPE_INT_RGB);
-		Graphics2D g = image.createGraphics();
-		g.setBackground(params.getBackgroundColor());
-		g.clearRect(0, 0, w, h);
-		grZone.drawGraph(g, params);
-		BufferedImage cropedImage = image;
-		if (params.isCrop()) {
-			int bgcolor = params.getBackgroundColor().getRGB();
-			int width = image.getWidth();
-			int height = image.getHeight();
-			int minX = w;
-			int maxX = -1;
-			int minY = h;
-			int maxY = -1;
-			for (int x = 0; x < width; x++)
-				for (int y = 0; y < height; y++)
-					if (image.getRGB(x, y) != bgcolor) {
-						if (x < minX)
-							minX = x;
-						if (x > maxX)
-							maxX = x;
-						if (y < minY)
-							minY = y;
-						if (y > maxY)
-							maxY = y;
-					}
-			if (maxX != -1) {
-				int cropX, cropW, cropY, cropH;
-				if (minX > params.getCropMarginW())
-					cropX = minX - params.getCropMarginW();
-				else
-					cropX = 0;
-				if (maxX + params.getCropMarginW() < width)
-					cropW = maxX + params.getCropMarginW() - cropX + 1;
-				else
-					cropW = width - cropX;
-				if (minY > params.getCropMarginH())
-					cropY = minY - params.getCropMarginH();
-				else
-					cropY = 0;
-				if (maxY + params.getCropMarginH() < height)
-					cropH = maxY + params.getCropMarginH() - cropY + 1;
-				else
-					cropH = height - cropY;
-				cropedImage = image.getSubimage(cropX, cropY, cropW, cropH);
+	/**
+	 * Exports the graphs in a background thread, with a progress monitor that
+	 * allows to cancel the export. Errors are reported once all the graphs
+	 * have been processed.
+	 */
+	private void exportDirectory(final File dir, final DrawGraphParams params) {
+		final Component parent = getOwner();
+		final ProgressMonitor monitor = new ProgressMonitor(parent,
+				"Exporting graphs of " + dir.getAbsolutePath(), null, 0, 1);
+		monitor.setMillisToDecideToPopup(200);
+		final SwingWorker<List<File>, Integer> worker = new SwingWorker<List<File>, Integer>() {
+			volatile int total = 1;
+			final Map<File, Throwable> causes = Collections
+					.synchronizedMap(new HashMap<File, Throwable>());
+
+			@Override
+			protected List<File> doInBackground() throws Exception {
+				return GraphBitmapExporter.exportDirectory(dir, format, params,
+						new GraphBitmapExporter.ProgressListener() {
+							@Override
+							public void graphsExported(int n, int t) {
+								total = t;
+								publish(n);
+							}
+
+							@Override
+							public void exportFailed(File grf, Throwable cause) {
+								causes.put(grf, cause);
+							}
+						});
 			}
-		}
 
-		return cropedImage;
-	}
+			@Override
+			protected void process(List<Integer> chunks) {
+				final int n = chunks.get(chunks.size() - 1);
+				monitor.setMaximum(total);
+				monitor.setProgress(n);
+				monitor.setNote(n + "/" + total);
+			}
 
-	private void saveBitmap(BufferedImage sourceImage, int dpi, float quality,
-			File output) throws IOException {
-
-		Iterator<ImageWriter> it = ImageIO
-				.getImageWritersByFormatName(formatName(format));
-		boolean found = false;
-		while (it.hasNext() && !found) {
-			ImageWriter w = it.next();
-			ImageWriteParam wp = w.getDefaultWriteParam();
-			ImageTypeSpecifier ts = ImageTypeSpecifier
-					.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB);
-			IIOMetadata meta = w.getDefaultImageMetadata(ts, wp);
-			if (!meta.isReadOnly() && meta.isStandardMetadataFormatSupported()) {
-				found = true;
-
-				if (format == FORMAT_PNG) {
-					double dpmm = dpi / 25.4;
-
-					IIOMetadataNode hor = new IIOMetadataNode(
-							"HorizontalPixelSize");
-					hor.setAttribute("value", Double.toString(dpmm));
-
-					IIOMetadataNode ver = new IIOMetadataNode(
-							"VerticalPixelSize");
-					ver.setAttribute("value", Double.toString(dpmm));
-
-					IIOMetadataNode dim = new IIOMetadataNode("Dimension");
-					dim.appendChild(hor);
-					dim.appendChild(ver);
-
-					IIOMetadataNode root = new IIOMetadataNode(
-							"javax_imageio_1.0");
-					root.appendChild(dim);
-
-					meta.mergeTree("javax_imageio_1.0", root);
-				} else if (format == FORMAT_JPEG) {
-					Element tree = (Element) meta
-							.getAsTree("javax_imageio_jpeg_image_1.0");
-					Element jfif = (Element) tree.getElementsByTagName(
-							"app0JFIF").item(0);
-					jfif.setAttribute("Xdensity", Integer.toString(dpi));
-					jfif.setAttribute("Ydensity", Integer.toString(dpi));
-					jfif.setAttribute("resUnits", "1"); // density is dots per
-														// inch
-					wp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-					wp.setCompressionQuality(quality);
-					meta.mergeTree("javax_imageio_jpeg_image_1.0", tree);
+			@Override
+			protected void done() {
+				monitor.close();
+				if (isCancelled()) {
+					return;
 				}
-
-				ImageOutputStream stream = ImageIO
-						.createImageOutputStream(output);
+				final List<File> errors;
 				try {
-					w.setOutput(stream);
-					w.write(meta, new IIOImage(sourceImage, null, meta), wp);
-				} finally {
-					stream.close();
+					errors = get();
+				} catch (final InterruptedException e) {
+					return;
+				} catch (final ExecutionException e) {
+					e.getCause().printStackTrace();
+					return;
+				}
+				if (!errors.isEmpty()) {
+					final StringBuilder b = new StringBuilder(
+							"The following graphs could not be exported:\n");
+					for (final File f : errors) {
+						b.append(f.getAbsolutePath());
+						final Throwable cause = causes.get(f);
+						if (cause != null && cause.getMessage() != null) {
+							b.append(": ").append(cause.getMessage());
+						}
+						b.append('\n');
+					}
+					JOptionPane.showMessageDialog(parent, b.toString(),
+							"Error", JOptionPane.ERROR_MESSAGE);
 				}
-
 			}
-		}
+		};
+		/* The monitor has no listener, so we poll its cancel button */
+		final Timer timer = new Timer(250, null);
+		timer.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (worker.isDone()) {
+					timer.stop();
+				} else if (monitor.isCanceled()) {
+					timer.stop();
+					worker.cancel(true);
+				}
+			}
+		});
+		timer.start();
+		worker.execute();
 	}
 }
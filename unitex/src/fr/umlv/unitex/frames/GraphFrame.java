@@ -192,8 +192,7 @@ public class GraphFrame extends KeyedInternalFrame<File> {
 								"Graph "+grf.getAbsolutePath()+" has changed on disk.\nDo you want to reload it ?",
 								"", JOptionPane.YES_NO_OPTION);
 				if (ret == JOptionPane.YES_OPTION) {
-					final GraphIO g = GraphIO.loadGraph(getGraph(), false,
-							false);
+					final GraphIO g = GraphIO.loadGraph(getGraph(), false);
 					graphicalZone.refresh(g);
 					setModified(false);
 					lastModification = grf.lastModified();
@@ -817,7 +816,7 @@ public class GraphFrame extends KeyedInternalFrame<File> {
 		refresh.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				final GraphIO g = GraphIO.loadGraph(getGraph(), false, false);
+				final GraphIO g = GraphIO.loadGraph(getGraph(), false);
 				graphicalZone.refresh(g);
 				setModified(false);
 			}
@@ -1012,14 +1011,14 @@ public class GraphFrame extends KeyedInternalFrame<File> {
 						"Diff result", JOptionPane.INFORMATION_MESSAGE);
 				return;
 			}
-			final GraphIO baseGrf = GraphIO.loadGraph(base, false, false);
+			final GraphIO baseGrf = GraphIO.loadGraph(base, false);
 			if (baseGrf == null) {
 				JOptionPane.showMessageDialog(null,
 						"Cannot load base graph file", "Error",
 						JOptionPane.ERROR_MESSAGE);
 				return;
 			}
-			final GraphIO destGrf = GraphIO.loadGraph(dest, false, false);
+			final GraphIO destGrf = GraphIO.loadGraph(dest, false);
 			if (destGrf == null) {
 				JOptionPane.showMessageDialog(null,
 						"Cannot load dest graph file", "Error",
@@ -1040,7 +1039,8 @@ public class GraphFrame extends KeyedInternalFrame<File> {
 		}
 		ArrayList<GraphCall> files;
 		if (showCalledGrf) {
-			files = Dependancies.getAllSubgraphs(getGraph());
+			files = Dependancies.getAllSubgraphs(getGraph(), ConfigManager
+					.getManager().getCurrentLanguageDir());
 			grfListLabel.setText("Called graphs:");
 		} else {
 			files = Dependancies.whoCalls(getGraph(), ConfigManager
@@ -1282,7 +1282,7 @@ public class GraphFrame extends KeyedInternalFrame<File> {
 		this.nonEmptyGraph = true;
 		this.setTitle(grf.getName() + " (" + grf.getParent() + ")");
 		if (reloadGraph) {
-			final GraphIO g = GraphIO.loadGraph(grf, false, false);
+			final GraphIO g = GraphIO.loadGraph(grf, false);
 			graphicalZone.refresh(g);
 			setModified(false);
 		}
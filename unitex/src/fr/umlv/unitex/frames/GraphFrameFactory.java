@@ -32,7 +32,7 @@ class GraphFrameFactory extends MultiInstanceFrameFactory<GraphFrame, File> {
 			return f1;
 		final GraphFrame f;
 		if (grf != null) {
-			final GraphIO g = GraphIO.loadGraph(grf, false, true);
+			final GraphIO g = GraphIO.loadGraph(grf, true);
 			if (g == null)
 				return null;
 			f = new GraphFrame(g);
@@ -27,7 +27,6 @@ import java.awt.GridBagLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -82,7 +81,6 @@ import fr.umlv.unitex.io.Encoding;
 import fr.umlv.unitex.io.GraphIO;
 import fr.umlv.unitex.io.UnicodeIO;
 import fr.umlv.unitex.listeners.GraphListener;
-import fr.umlv.unitex.process.EatStreamThread;
 import fr.umlv.unitex.process.Launcher;
 import fr.umlv.unitex.process.Log;
 import fr.umlv.unitex.process.ToDo;
@@ -138,6 +136,10 @@ public class LemmatizeFrame extends TfstFrame {
 	File sentence_tok;
 	File sentence_modified;
 	File text_tfst;
+	/**
+	 * Tokens of the sentence being displayed
+	 */
+	TokensInfo tokens;
 	boolean isAcurrentLoadingThread = false;
 	JSplitPane superpanel;
 	JButton resetSentenceGraphs;
@@ -780,23 +782,9 @@ public class LemmatizeFrame extends TfstFrame {
 		cmd = cmd.font(ConfigManager.getManager().getInputFont(null).getName())
 				.fontSize(ConfigManager.getManager().getInputFontSize(null));
 		Console.addCommand(cmd.getCommandLine(), false, Log.getCurrentLogID());
-		Process p;
-		try {
-			p = Runtime.getRuntime().exec(cmd.getCommandArguments(true));
-			final BufferedInputStream in = new BufferedInputStream(
-					p.getInputStream());
-			final BufferedInputStream err = new BufferedInputStream(
-					p.getErrorStream());
-			new EatStreamThread(in).start();
-			new EatStreamThread(err).start();
-			p.waitFor();
-		} catch (final IOException e1) {
-			e1.printStackTrace();
-		} catch (final InterruptedException e1) {
-			e1.printStackTrace();
-		}
+		Launcher.execWithoutTracing(cmd);
 		final String text = readSentenceText();
-		TokensInfo.loadTokensInfo(sentence_tok, text);
+		tokens = TokensInfo.load(sentence_tok, text);
 		final File f = new File(sentence_modified + String.valueOf(z) + ".grf");
 		final boolean isSentenceModified = f.exists();
 		if (isSentenceModified) {
@@ -836,7 +824,7 @@ public class LemmatizeFrame extends TfstFrame {
 
 	boolean loadSentenceGraph(File file,int sentence) {
 		setModified(false);
-		final GraphIO g = GraphIO.loadGraph(file, true, true);
+		final GraphIO g = GraphIO.loadSentenceGraph(file, tokens, true);
 		if (g == null) {
 			return false;
 		}
@@ -37,13 +37,14 @@ import fr.umlv.unitex.io.Encoding;
 import fr.umlv.unitex.io.GraphIO;
 import fr.umlv.unitex.io.UnicodeIO;
 import fr.umlv.unitex.listeners.GraphListener;
-import fr.umlv.unitex.process.EatStreamThread;
 import fr.umlv.unitex.process.Launcher;
 import fr.umlv.unitex.process.Log;
 import fr.umlv.unitex.process.ToDo;
 import fr.umlv.unitex.process.commands.*;
 import fr.umlv.unitex.tfst.Bounds;
 import fr.umlv.unitex.tfst.TagFilter;
+import fr.umlv.unitex.tfst.TfstReader;
+import fr.umlv.unitex.tfst.TfstSentence;
 import fr.umlv.unitex.tfst.TfstTableModel;
 import fr.umlv.unitex.tfst.TokensInfo;
 import fr.umlv.unitex.utils.KeyUtil;
@@ -60,7 +61,6 @@ import javax.swing.undo.UndoManager;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -94,6 +94,10 @@ public class TextAutomatonFrame extends TfstFrame {
 	JLabel ruleslabel;
 	JScrollBar tfstScrollbar;
 	TfstGraphicalZone graphicalZone;
+	/**
+	 * Tokens of the sentence being displayed
+	 */
+	TokensInfo tokens;
 	public JScrollPane scrollPane;
 	private final GraphListener listener = new GraphListener() {
 		@Override
@@ -118,6 +122,11 @@ public class TextAutomatonFrame extends TfstFrame {
 	File text_tfst;
 	File elag_tfst;
 	File elagsentence_grf;
+	/**
+	 * Readers used to load sentences without launching Tfst2Grf
+	 */
+	TfstReader tfstReader;
+	TfstReader elagReader;
 	boolean isAcurrentLoadingThread = false;
 	boolean isAcurrentElagLoadingThread = false;
 	Process currentElagLoadingProcess = null;
@@ -940,6 +949,8 @@ public class TextAutomatonFrame extends TfstFrame {
 		elagsentence_grf = new File(Config.getCurrentSntDir(),
 				"currelagsentence.grf");
 		sentence_count = readSentenceCount(text_tfst);
+		tfstReader = null;
+		elagReader = null;
 		String s = " " + sentence_count;
 		s = s + " sentence";
 		if (sentence_count > 1)
@@ -1049,34 +1060,33 @@ public class TextAutomatonFrame extends TfstFrame {
 		isAcurrentLoadingThread = true;
 		graphicalZone.empty();
 		sentenceTextArea.setText("");
-		Tfst2GrfCommand cmd = new Tfst2GrfCommand().automaton(text_tfst)
-				.sentence(z);
-		cmd = cmd.font(ConfigManager.getManager().getInputFont(null).getName())
-				.fontSize(ConfigManager.getManager().getInputFontSize(null));
-		Console.addCommand(cmd.getCommandLine(), false, Log.getCurrentLogID());
-		Process p;
-		try {
-			p = Runtime.getRuntime().exec(cmd.getCommandArguments(true));
-			final BufferedInputStream in = new BufferedInputStream(
-					p.getInputStream());
-			final BufferedInputStream err = new BufferedInputStream(
-					p.getErrorStream());
-			new EatStreamThread(in).start();
-			new EatStreamThread(err).start();
-			p.waitFor();
-		} catch (final IOException e1) {
-			e1.printStackTrace();
-		} catch (final InterruptedException e1) {
-			e1.printStackTrace();
+		tfstReader = getTfstReader(tfstReader, text_tfst);
+		final TfstSentence sentence = readSentence(tfstReader, z);
+		if (sentence != null) {
+			showSentenceText(sentence.getText());
+			tokens = sentence.getTokensInfo();
+		} else {
+			/* If the sentence cannot be read in process, we use Tfst2Grf */
+			Tfst2GrfCommand cmd = new Tfst2GrfCommand().automaton(text_tfst)
+					.sentence(z);
+			cmd = cmd.font(
+					ConfigManager.getManager().getInputFont(null).getName())
+					.fontSize(ConfigManager.getManager().getInputFontSize(null));
+			Console.addCommand(cmd.getCommandLine(), false,
+					Log.getCurrentLogID());
+			Launcher.execWithoutTracing(cmd);
+			final String text = readSentenceText();
+			tokens = TokensInfo.load(sentence_tok, text);
 		}
-		final String text = readSentenceText();
-		TokensInfo.loadTokensInfo(sentence_tok, text);
 		final File f = new File(sentence_modified + String.valueOf(z) + ".grf");
 		final boolean isSentenceModified = f.exists();
 		if (isSentenceModified) {
 			loadSentenceGraph(new File(sentence_modified.getAbsolutePath()
 					+ String.valueOf(z) + ".grf"),n);
 			setModified(isSentenceModified);
+		} else if (sentence != null) {
+			setModified(false);
+			loadSentenceGraph(createSentenceGraph(sentence, sentence_grf), n);
 		} else {
 			loadSentenceGraph(sentence_grf,n);
 		}
@@ -1100,26 +1110,20 @@ public class TextAutomatonFrame extends TfstFrame {
 			isAcurrentElagLoadingThread = false;
 			return false;
 		}
+		elagReader = getTfstReader(elagReader, elag_tfst);
+		final TfstSentence sentence = readSentence(elagReader, z);
+		if (sentence != null) {
+			setModified(false);
+			elaggraph.setup(createSentenceGraph(sentence, elagsentence_grf), -1);
+			isAcurrentElagLoadingThread = false;
+			return true;
+		}
 		final Tfst2GrfCommand cmd = new Tfst2GrfCommand().automaton(elag_tfst)
 				.sentence(z).output("currelagsentence")
 				.font(ConfigManager.getManager().getInputFont(null).getName())
 				.fontSize(ConfigManager.getManager().getInputFontSize(null));
 		Console.addCommand(cmd.getCommandLine(), false, Log.getCurrentLogID());
-		try {
-			final Process p = Runtime.getRuntime().exec(
-					cmd.getCommandArguments(true));
-			final BufferedInputStream in = new BufferedInputStream(
-					p.getInputStream());
-			final BufferedInputStream err = new BufferedInputStream(
-					p.getErrorStream());
-			new EatStreamThread(in).start();
-			new EatStreamThread(err).start();
-			p.waitFor();
-		} catch (final IOException e1) {
-			e1.printStackTrace();
-		} catch (final InterruptedException e) {
-			e.printStackTrace();
-		}
+		Launcher.execWithoutTracing(cmd);
 		loadElagSentenceGraph(elagsentence_grf);
 		isAcurrentElagLoadingThread = false;
 		return true;
@@ -1130,6 +1134,49 @@ public class TextAutomatonFrame extends TfstFrame {
 		graphicalZone.setAntialiasing(!a);
 	}
 
+	/**
+	 * Returns a reader for the given .tfst, reusing the given one if the
+	 * file has not changed.
+	 */
+	private static TfstReader getTfstReader(TfstReader reader, File tfst) {
+		if (reader != null && reader.isUpToDate()) {
+			return reader;
+		}
+		return TfstReader.open(tfst);
+	}
+
+	/**
+	 * Returns the sentence #n, or null if it cannot be read in process, in
+	 * which case Tfst2Grf must be used.
+	 */
+	private static TfstSentence readSentence(TfstReader reader, int n) {
+		if (reader == null || n > reader.getSentenceCount()) {
+			return null;
+		}
+		try {
+			return reader.getSentence(n);
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Builds the graph that Tfst2Grf would have saved in the given file.
+	 */
+	private static GraphIO createSentenceGraph(TfstSentence sentence, File grf) {
+		final String font = ConfigManager.getManager().getInputFont(null)
+				.getName();
+		final int size = ConfigManager.getManager().getInputFontSize(null);
+		return GraphIO.createSentenceGraphIO(
+				sentence.toGrfModel(grf, font, size), sentence.getTokensInfo());
+	}
+
+	void showSentenceText(String s) {
+		sentenceTextArea.setFont(ConfigManager.getManager().getTextFont(null));
+		sentenceTextArea.setText(s);
+	}
+
 	String readSentenceText() {
 		String s = "";
 		try {
@@ -1142,9 +1189,7 @@ public class TextAutomatonFrame extends TfstFrame {
 			if (s == null || s.equals("")) {
 				return "";
 			}
-			sentenceTextArea.setFont(ConfigManager.getManager().getTextFont(
-					null));
-			sentenceTextArea.setText(s);
+			showSentenceText(s);
 			br.close();
 		} catch (final IOException e) {
 			e.printStackTrace();
@@ -1153,13 +1198,18 @@ public class TextAutomatonFrame extends TfstFrame {
 	}
 	boolean loadSentenceGraph(File file,int sentence) {
 		setModified(false);
-		final GraphIO g = GraphIO.loadGraph(file, true, true);
+		final GraphIO g = GraphIO.loadSentenceGraph(file, tokens, true);
 		if (g == null) {
 			return false;
 		}
+		loadSentenceGraph(g, sentence);
+		return true;
+	}
+
+	void loadSentenceGraph(GraphIO g,int sentence) {
 		textfield.setFont(g.getInfo().getInput().getFont());
 		graphicalZone.setup(g,sentence);
-		tfstTableModel.init(g.getBoxes());
+		tfstTableModel.init(g.getBoxes(), g.getTokensInfo());
 		final Timer t = new Timer(300, new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
@@ -1172,7 +1222,6 @@ public class TextAutomatonFrame extends TfstFrame {
 		});
 		t.setRepeats(false);
 		t.start();
-		return true;
 	}
 /*
 	boolean loadSentenceGraph(File file,int sentence) {
@@ -1201,7 +1250,7 @@ public class TextAutomatonFrame extends TfstFrame {
 */
 	boolean loadElagSentenceGraph(File file) {
 		setModified(false);
-		final GraphIO g = GraphIO.loadGraph(file, true, true);
+		final GraphIO g = GraphIO.loadSentenceGraph(file, tokens, true);
 		if (g == null)
 			return false;
 		elaggraph.setup(g,-1);
@@ -37,7 +37,6 @@ class TextFrameFactory {
 		if (frame != null) {
 			frame.doDefaultCloseAction();
 			frame.text.reset();
-			System.gc();
 		}
 		frame = new TextFrame();
 		frame.loadText(text);
@@ -50,7 +49,6 @@ class TextFrameFactory {
 		}
 		frame.doDefaultCloseAction();
 		frame.text.reset();
-		System.gc();
 		frame = null;
 	}
 
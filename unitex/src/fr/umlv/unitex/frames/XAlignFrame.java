@@ -30,7 +30,6 @@ import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
 
 import javax.swing.BorderFactory;
@@ -52,6 +51,7 @@ import fr.umlv.unitex.common.project.manager.GlobalProjectManager;
 import fr.umlv.unitex.config.Config;
 import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.io.MappedFile;
 import fr.umlv.unitex.listeners.AlignmentListener;
 import fr.umlv.unitex.process.Launcher;
 import fr.umlv.unitex.process.ToDo;
@@ -95,9 +95,9 @@ public class XAlignFrame extends JInternalFrame {
 		tryToFindFonts(f1, f2);
 		setSize(800, 600);
 		/* First text */
-		final MappedByteBuffer buffer1 = XMLTextLoader
+		final MappedFile buffer1 = XMLTextLoader
 				.buildMappedByteBuffer(f1);
-		final MappedByteBuffer buffer2 = XMLTextLoader
+		final MappedFile buffer2 = XMLTextLoader
 				.buildMappedByteBuffer(f2);
 		text1 = new XMLTextModelImpl(buffer1);
 		text2 = new XMLTextModelImpl(buffer2);
@@ -21,11 +21,11 @@
 package fr.umlv.unitex.graphrendering;
 
 import java.awt.*;
+import java.awt.font.FontRenderContext;
 import java.awt.font.TextLayout;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Stack;
 
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -35,6 +35,7 @@ import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.diff.GraphDecoratorConfig;
 import fr.umlv.unitex.exceptions.*;
 import fr.umlv.unitex.frames.GraphFrame;
+import fr.umlv.unitex.grf.GrfBoxContent;
 import fr.umlv.unitex.tfst.tagging.TaggingState;
 
 /**
@@ -104,9 +105,10 @@ public class GenericGraphBox {
 	 */
 	public boolean hasOutgoingTransitions;
 	/**
-	 * Indicates if there is at least one transition that comes in this box
+	 * The boxes that have a transition to this box, kept in sync with their
+	 * <code>transitions</code> lists
 	 */
-	private int hasIncomingTransitions;
+	private final ArrayList<GenericGraphBox> incomingTransitions = new ArrayList<GenericGraphBox>();
 	/**
 	 * Indicates if the box is being dragged alone
 	 */
@@ -191,6 +193,21 @@ public class GenericGraphBox {
 	private boolean highlight = false;
 	private boolean isModified = false;
 
+	/*
+	 * Text layouts of the box lines and of its range, cached for the font and
+	 * the rendering context they were computed for. As the rendering context
+	 * contains the zoom transform, they are recomputed when the zoom changes,
+	 * and a line layout is recomputed when the text of the line changes.
+	 */
+	private Font layoutFont;
+	private FontRenderContext layoutContext;
+	private String[] layoutLines = new String[0];
+	private TextLayout[] lineLayouts = new TextLayout[0];
+	private String layoutRange;
+	private TextLayout rangeLayout;
+	private int layoutHeight;
+	private int layoutDescent;
+
 	/**
 	 * Constructs a new box
 	 *
@@ -238,7 +255,6 @@ public class GenericGraphBox {
 		standaloneBox = true;
 		commentBox = false;
 		hasOutgoingTransitions = false;
-		hasIncomingTransitions = 0;
 		identificationNumber = -1;
 	}
 	
@@ -448,15 +464,16 @@ public class GenericGraphBox {
 				return false;
 			}
 			transitions.add(g);
-			g.hasIncomingTransitions++;
+			g.incomingTransitions.add(this);
 		} else {
 			// else, we remove it
 			transitions.remove(i);
-			g.hasIncomingTransitions--;
+			g.incomingTransitions.remove(this);
 		}
 		hasOutgoingTransitions = !transitions.isEmpty();
-		standaloneBox = (!hasOutgoingTransitions && hasIncomingTransitions == 0);
-		g.standaloneBox = (!g.hasOutgoingTransitions && g.hasIncomingTransitions == 0);
+		standaloneBox = (!hasOutgoingTransitions && incomingTransitions.isEmpty());
+		g.standaloneBox = (!g.hasOutgoingTransitions && g.incomingTransitions.isEmpty());
+		transitionsChanged();
 		return true;
 	}
 
@@ -480,11 +497,12 @@ public class GenericGraphBox {
 		if (i == -1) {
 			// if the transition to g does not exist, we create it
 			transitions.add(g);
-			g.hasIncomingTransitions++;
+			g.incomingTransitions.add(this);
+			transitionsChanged();
 		}
 		hasOutgoingTransitions = !transitions.isEmpty();
-		standaloneBox = (!hasOutgoingTransitions && hasIncomingTransitions == 0);
-		g.standaloneBox = (!g.hasOutgoingTransitions && g.hasIncomingTransitions == 0);
+		standaloneBox = (!hasOutgoingTransitions && incomingTransitions.isEmpty());
+		g.standaloneBox = (!g.hasOutgoingTransitions && g.incomingTransitions.isEmpty());
 	}
 
 	/**
@@ -497,11 +515,12 @@ public class GenericGraphBox {
 		final int i = transitions.indexOf(g);
 		if (i != -1) {
 			transitions.remove(i);
-			g.hasIncomingTransitions--;
+			g.incomingTransitions.remove(this);
+			transitionsChanged();
 		}
 		hasOutgoingTransitions = !transitions.isEmpty();
-		standaloneBox = (!hasOutgoingTransitions && hasIncomingTransitions == 0);
-		g.standaloneBox = (!g.hasOutgoingTransitions && g.hasIncomingTransitions == 0);
+		standaloneBox = (!hasOutgoingTransitions && incomingTransitions.isEmpty());
+		g.standaloneBox = (!g.hasOutgoingTransitions && g.incomingTransitions.isEmpty());
 	}
 
 	public void removeAllOutgoingTransitions() {
@@ -510,16 +529,29 @@ public class GenericGraphBox {
 		}
 	}
 
+	/**
+	 * Removes all the transitions that come to this box from the boxes of the
+	 * graph. Transitions from boxes that have been removed from the graph are
+	 * kept, so that these boxes can be restored by an undo.
+	 */
 	public void removeAllIncomingTransitions() {
 		if (parentGraphicalZone == null) {
 			/* This happens when the graph is loaded */
 			return;
 		}
-		for (final GenericGraphBox g : parentGraphicalZone.graphBoxes) {
+		for (final GenericGraphBox g : parentGraphicalZone.getTransitionTo(this)) {
 			g.removeTransitionTo(this);
 		}
 	}
 
+	/**
+	 * @return the boxes that have a transition to this box, including the ones
+	 *         that have been removed from the graph
+	 */
+	public ArrayList<GenericGraphBox> getIncomingTransitions() {
+		return incomingTransitions;
+	}
+
 	/**
 	 * Translates the box
 	 *
@@ -537,6 +569,27 @@ public class GenericGraphBox {
 		Y_out = Y_out + dy;
 		X1 = X1 + dx;
 		Y1 = Y1 + dy;
+		boundsChanged();
+	}
+
+	/**
+	 * Tells the graphical zone that the position or the size of the box has
+	 * changed, so that it can update its spatial index.
+	 */
+	void boundsChanged() {
+		if (parentGraphicalZone != null) {
+			parentGraphicalZone.spatialIndex.boxChanged(this);
+		}
+	}
+
+	/**
+	 * Tells the graphical zone that the outgoing transitions of the box have
+	 * changed.
+	 */
+	void transitionsChanged() {
+		if (parentGraphicalZone != null) {
+			parentGraphicalZone.spatialIndex.transitionsChanged(this);
+		}
 	}
 
 	/**
@@ -844,9 +897,7 @@ public class GenericGraphBox {
 		final String range = getRangeOutput(transduction);
 		if (range.equals(""))
 			return;
-		final TextLayout textlayout = new TextLayout(range, parentGraphicalZone
-				.getGraphPresentationInfo().getInput().getFont(),
-				g.getFontRenderContext());
+		final TextLayout textlayout = getRangeLayout(g, range);
 		g.setColor(rangeColor);
 		g.setFont(rangeFont);
 		textlayout.draw(g, X1 + 2, Y1 - 5);
@@ -856,12 +907,65 @@ public class GenericGraphBox {
 		final String range = getRangeOutput(transduction);
 		if (range.equals(""))
 			return 0;
-		final TextLayout textlayout = new TextLayout(range, parentGraphicalZone
-				.getGraphPresentationInfo().getInput().getFont(),
-				g.getFontRenderContext());
+		final TextLayout textlayout = getRangeLayout(g, range);
 		return (int) (textlayout.getBounds().getWidth() + 10);
 	}
 
+	/**
+	 * Clears the cached text layouts if the input font or the rendering
+	 * context of g are not the ones they were computed for.
+	 */
+	private void checkLayouts(Graphics2D g) {
+		final Font font = parentGraphicalZone.getGraphPresentationInfo()
+				.getInput().getFont();
+		final FontRenderContext frc = g.getFontRenderContext();
+		if (font.equals(layoutFont) && frc.equals(layoutContext)) {
+			return;
+		}
+		layoutFont = font;
+		layoutContext = frc;
+		layoutLines = new String[0];
+		lineLayouts = new TextLayout[0];
+		layoutRange = null;
+		rangeLayout = null;
+		g.setFont(font);
+		final FontMetrics metrics = g.getFontMetrics();
+		layoutHeight = metrics.getHeight();
+		layoutDescent = metrics.getDescent();
+	}
+
+	/**
+	 * Returns the text layout of the line #n of the box, computing it only if
+	 * the line, the input font or the rendering context have changed.
+	 */
+	private TextLayout getLineLayout(Graphics2D g, int n) {
+		checkLayouts(g);
+		final String l = lines.get(n);
+		if (n >= lineLayouts.length) {
+			final int size = Math.max(n + 1, lines.size());
+			final String[] newLines = new String[size];
+			final TextLayout[] newLayouts = new TextLayout[size];
+			System.arraycopy(layoutLines, 0, newLines, 0, layoutLines.length);
+			System.arraycopy(lineLayouts, 0, newLayouts, 0, lineLayouts.length);
+			layoutLines = newLines;
+			lineLayouts = newLayouts;
+		}
+		if (lineLayouts[n] == null || !l.equals(layoutLines[n])) {
+			lineLayouts[n] = new TextLayout(l, layoutFont, layoutContext);
+			layoutLines[n] = l;
+		}
+		return lineLayouts[n];
+	}
+
+	private TextLayout getRangeLayout(Graphics2D g, String range) {
+		checkLayouts(g);
+		if (rangeLayout == null || !range.equals(layoutRange)) {
+			rangeLayout = new TextLayout(range, layoutFont, layoutContext);
+			layoutRange = range;
+		}
+		return rangeLayout;
+	}
+
 	void drawOtherStandalone(Graphics2D g, DrawGraphParams params) {
 		int i;
 		Boolean is_greyed;
@@ -956,11 +1060,8 @@ public class GenericGraphBox {
 				g.setColor(Color.GREEN.darker());
 			}
 			if (!l.equals("")) {
-				final TextLayout textlayout = new TextLayout(l,
-						parentGraphicalZone.getGraphPresentationInfo()
-							.getInput().getFont(), g.getFontRenderContext());
-				textlayout
-					.draw(g, X1 + 5, Y1 - descent + 3 + (i + 1) * h_ligne);
+				getLineLayout(g, i).draw(g, X1 + 5,
+						Y1 - descent + 3 + (i + 1) * h_ligne);
 			}
 		}
 		// prints the transduction, if exists
@@ -1317,10 +1418,8 @@ public class GenericGraphBox {
 						Width - 4, h_ligne);
 			}
 			g.setColor(params.getForegroundColor());
-			final TextLayout textlayout = new TextLayout(l, parentGraphicalZone
-					.getGraphPresentationInfo().getInput().getFont(),
-					g.getFontRenderContext());
-			textlayout.draw(g, X1 + 5, Y1 - descent + 3 + (i + 1) * h_ligne);
+			getLineLayout(g, i).draw(g, X1 + 5,
+					Y1 - descent + 3 + (i + 1) * h_ligne);
 		}
 		// prints the output, if any
 		if (parentGraphicalZone.decorator == null) {
@@ -1391,11 +1490,8 @@ public class GenericGraphBox {
 		for (i = 0; i < n_lines; i++) {
 			l = lines.get(i);
 			if (!l.equals("")) {
-				final TextLayout textlayout = new TextLayout(l,
-						parentGraphicalZone.getGraphPresentationInfo()
-						.getInput().getFont(), g.getFontRenderContext());
-				textlayout
-				.draw(g, X1 + 5, Y1 - descent + 3 + (i + 1) * h_ligne);
+				getLineLayout(g, i).draw(g, X1 + 5,
+						Y1 - descent + 3 + (i + 1) * h_ligne);
 			}
 		}
 		// prints the transduction, if exists
@@ -1456,10 +1552,10 @@ public class GenericGraphBox {
 	 */
 	public void draw(Graphics2D g, DrawGraphParams params) {
 		updateWithContext(g);
-		g.setFont(parentGraphicalZone.getGraphPresentationInfo().getInput()
-				.getFont());
-		h_ligne = g.getFontMetrics().getHeight();
-		descent = g.getFontMetrics().getDescent();
+		checkLayouts(g);
+		g.setFont(layoutFont);
+		h_ligne = layoutHeight;
+		descent = layoutDescent;
 		if (singleDragging) {
 			// if the box is being dragged just under the mouse,
 			// we just draw its frame
@@ -1623,10 +1719,12 @@ public class GenericGraphBox {
 
 	public void setX(int x1) {
 		X = x1;
+		boundsChanged();
 	}
 
 	public void setY(int y) {
 		Y = y;
+		boundsChanged();
 	}
 
 	public int getWidth() {
@@ -1639,6 +1737,7 @@ public class GenericGraphBox {
 
 	public void setX_in(int x_in) {
 		X_in = x_in;
+		boundsChanged();
 	}
 
 	public int getX_out() {
@@ -1647,6 +1746,7 @@ public class GenericGraphBox {
 
 	public void setX_out(int x_out) {
 		X_out = x_out;
+		boundsChanged();
 	}
 
 	public int getX1() {
@@ -1655,6 +1755,7 @@ public class GenericGraphBox {
 
 	public void setX1(int x1) {
 		X1 = x1;
+		boundsChanged();
 	}
 
 	public int getY1() {
@@ -1663,6 +1764,7 @@ public class GenericGraphBox {
 
 	public void setY1(int y1) {
 		Y1 = y1;
+		boundsChanged();
 	}
 
 	public int getY_in() {
@@ -1671,6 +1773,7 @@ public class GenericGraphBox {
 
 	public void setY_in(int y_in) {
 		Y_in = y_in;
+		boundsChanged();
 	}
 
 	public int getY_out() {
@@ -1679,6 +1782,7 @@ public class GenericGraphBox {
 
 	public void setY_out(int y_out) {
 		Y_out = y_out;
+		boundsChanged();
 	}
 
 	public boolean isStandaloneBox() {
@@ -1702,7 +1806,14 @@ public class GenericGraphBox {
 	}
 
 	public void setTransitions(ArrayList<GenericGraphBox> transitions) {
+		for (final GenericGraphBox g : this.transitions) {
+			g.incomingTransitions.remove(this);
+		}
 		this.transitions = transitions;
+		for (final GenericGraphBox g : transitions) {
+			g.incomingTransitions.add(this);
+		}
+		transitionsChanged();
 	}
 
 	public boolean getHighlight() {
@@ -1722,7 +1833,7 @@ public class GenericGraphBox {
 	}
 
 	public int getHasIncomingTransitions() {
-		return hasIncomingTransitions;
+		return incomingTransitions.size();
 	}
 
 	/**
@@ -1739,52 +1850,9 @@ public class GenericGraphBox {
 			throws BackSlashAtEndOfLineException, MissingGraphNameException,
 			NoClosingQuoteException, NoClosingSupException,
 			NoClosingRoundBracketException {
-		Stack<Character> stack = new Stack<Character>();
-		if (s.equals(":")) {
-			throw new MissingGraphNameException();
-		}
-		if (s.endsWith("\\")) {
-			throw new BackSlashAtEndOfLineException();
-		}
-		int count = 0;
-		for (int i = 0; i < s.length(); i++) {
-			char c = s.charAt(i);
-			if(c == '"') {
-				count++;
-			}
-			if (c == '<' || c == '{') {
-				stack.push(c);
-			} else if (c == '>') {
-				if (stack.isEmpty()) {
-					throw new NoClosingSupException();
-				}
-				if (stack.pop() != '<') {
-					throw new NoClosingSupException();
-				}
-
-			} else if (c == '}') {
-				if (stack.isEmpty()) {
-					throw new NoClosingRoundBracketException();
-				}
-				if (stack.pop() != '{') {
-					throw new NoClosingRoundBracketException();
-				}
-			}
-
-		}
-		if ((count % 2) == 1) {
-			throw new NoClosingQuoteException();
-		}
-		if(!stack.isEmpty()) {
-			Character c = stack.pop();
-			if(c == '{') {
-				throw new NoClosingRoundBracketException();
-			}
-			if(c == '<') {
-				throw new NoClosingSupException();
-			}
-		}
+		GrfBoxContent.checkContent(s);
 	}
+
 	public void setState(TaggingState preferred) {
 		state = preferred;
 	}
@@ -26,6 +26,9 @@ import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 import java.util.Vector;
 
 import javax.swing.JComponent;
@@ -114,6 +117,11 @@ public abstract class GenericGraphicalZone extends JComponent {
 	int Ymouse;
 	boolean mouseInGraphicalZone = false;
 	private Rectangle clipZone;
+	/**
+	 * Grid over boxes and transitions, used to paint and hit-test only what
+	 * intersects a given rectangle
+	 */
+	final GraphSpatialIndex spatialIndex = new GraphSpatialIndex(this);
 	/**
 	 * If decorator is null, it is the normal display case. If not, we use
 	 * special drawing tricks.
@@ -168,6 +176,7 @@ public abstract class GenericGraphicalZone extends JComponent {
 			b.parentGraphicalZone = this;
 			b.update();
 		}
+		spatialIndex.invalidate();
 		repaint();
 	}
 
@@ -196,6 +205,7 @@ public abstract class GenericGraphicalZone extends JComponent {
 				return;
 		}
 		graphBoxes.add(g);
+		spatialIndex.boxAdded(g);
 	}
 
 	protected abstract GenericGraphBox createBox(int x, int y);
@@ -275,31 +285,21 @@ public abstract class GenericGraphicalZone extends JComponent {
 	 *            the target graph box
 	 */
 	public void removeTransitionTo(GenericGraphBox dest) {
-		int i, L, pos;
-		GenericGraphBox g;
-		if (graphBoxes.isEmpty())
-			return;
-		L = graphBoxes.size();
-		for (i = 0; i < L; i++) {
-			g = graphBoxes.get(i);
-			pos = g.transitions.indexOf(dest);
-			if (pos != -1) {
-				g.transitions.remove(pos);
-			}
-		}
+		dest.removeAllIncomingTransitions();
 	}
 
 	protected void removeBox(GenericGraphBox box) {
 		graphBoxes.remove(box);
-		for (final GenericGraphBox b : graphBoxes) {
-			b.transitions.remove(box);
-		}
+		spatialIndex.invalidate();
+		box.removeAllIncomingTransitions();
 	}
 
 	public void removeBoxes(ArrayList<GenericGraphBox> boxes) {
 		final AbstractUndoableEdit edit = new DeleteBoxGroupEdit(boxes, graphBoxes, this);
+		graphBoxes.removeAll(identitySet(boxes));
+		spatialIndex.invalidate();
 		for (final GenericGraphBox b : boxes) {
-			removeBox(b);
+			b.removeAllIncomingTransitions();
 		}
 	    postEdit(edit);
 		fireGraphChanged(true);
@@ -314,22 +314,25 @@ public abstract class GenericGraphicalZone extends JComponent {
 	 * @return the boxes which had transition to dest
 	 */
 	public ArrayList<GenericGraphBox> getTransitionTo(GenericGraphBox dest) {
-		int i, L, pos;
 		final ArrayList<GenericGraphBox> list = new ArrayList<GenericGraphBox>();
-		GenericGraphBox g;
-		if (graphBoxes.isEmpty())
-			return null;
-		L = graphBoxes.size();
-		for (i = 0; i < L; i++) {
-			g = graphBoxes.get(i);
-			pos = g.transitions.indexOf(dest);
-			if (pos != -1) {
+		for (final GenericGraphBox g : dest.getIncomingTransitions()) {
+			if (spatialIndex.contains(g)) {
 				list.add(g);
 			}
 		}
 		return list;
 	}
 
+	/**
+	 * @return a set containing the given boxes, compared by identity
+	 */
+	static Set<GenericGraphBox> identitySet(ArrayList<GenericGraphBox> boxes) {
+		final Set<GenericGraphBox> set = Collections
+				.newSetFromMap(new IdentityHashMap<GenericGraphBox, Boolean>());
+		set.addAll(boxes);
+		return set;
+	}
+
 	/**
 	 * Removes all transitions that go selected graph boxes
 	 */
@@ -373,13 +376,16 @@ public abstract class GenericGraphicalZone extends JComponent {
 		final UndoableEdit edit = new DeleteBoxGroupEdit(selectedBoxes,
 				graphBoxes, this);
 		postEdit(edit);
+		final ArrayList<GenericGraphBox> removed = new ArrayList<GenericGraphBox>();
 		for (i = 0; i < L; i++) {
 			g = selectedBoxes.get(i);
 			if (g.type == 2) {
-				graphBoxes.remove(g);
+				removed.add(g);
 			}
-			removeTransitionsToSelected();
 		}
+		graphBoxes.removeAll(identitySet(removed));
+		spatialIndex.invalidate();
+		removeTransitionsToSelected();
 		unSelectAllBoxes();
 		repaint();
 	}
@@ -436,16 +442,7 @@ public abstract class GenericGraphicalZone extends JComponent {
 	 *         -1 if no box was selected by the click
 	 */
 	int getSelectedBox(int x, int y) {
-		int i, L;
-		GenericGraphBox g;
-		L = graphBoxes.size();
-		for (i = 0; i < L; i++) {
-			g = graphBoxes.get(i);
-			if (x >= g.X && x <= g.X + g.Width && y >= g.Y1
-					&& y <= g.Y1 + g.Height)
-				return i;
-		}
-		return -1;
+		return spatialIndex.getBoxAt(x, y);
 	}
 
 	/**
@@ -491,27 +488,22 @@ public abstract class GenericGraphicalZone extends JComponent {
 	 *            height of the selection rectangle
 	 */
 	void selectByRectangle(int x, int y, int w, int h) {
-		int i, L;
-		GenericGraphBox g;
-		L = graphBoxes.size();
 		String s = null;
-		for (i = 0; i < L; i++) {
-			g = graphBoxes.get(i);
-			if (g.isSelectedByRectangle(x, y, w, h)) {
-				g.setSelected(true);
-				g.setHighlight(false);
-				selectedBoxes.add(g);
-				if (s == null) {
-					s = g.content;
-				} else if (!s.equals("")) {
-					if (!s.equals(g.content)) {
-						/*
-						 * We don't want to set a text for multiple box
-						 * selection, unless all selected boxes share the same
-						 * text
-						 */
-						s = "";
-					}
+		for (final GenericGraphBox g : spatialIndex.getBoxesSelectedBy(x, y,
+				w, h)) {
+			g.setSelected(true);
+			g.setHighlight(false);
+			selectedBoxes.add(g);
+			if (s == null) {
+				s = g.content;
+			} else if (!s.equals("")) {
+				if (!s.equals(g.content)) {
+					/*
+					 * We don't want to set a text for multiple box
+					 * selection, unless all selected boxes share the same
+					 * text
+					 */
+					s = "";
 				}
 			}
 		}
@@ -656,7 +648,28 @@ public abstract class GenericGraphicalZone extends JComponent {
 	abstract public void drawGraph(Graphics2D f, DrawGraphParams params);
 
 	/**
-	 * Draws all graph's transitions
+	 * Computes the size of the boxes that have never been drawn, as if they
+	 * were drawn with the given graphical context. This must be done before
+	 * reading the geometry of the boxes of a zone that is not displayed.
+	 */
+	public void measureBoxes(Graphics2D g) {
+		for (final GenericGraphBox b : graphBoxes) {
+			b.updateWithContext(g);
+		}
+	}
+
+	/**
+	 * Returns a rectangle, in graph coordinates, out of which drawGraph only
+	 * paints the background with the given parameters. By default, it is the
+	 * whole zone.
+	 */
+	public Rectangle getDrawingBounds(Graphics2D g, DrawGraphParams params) {
+		return new Rectangle(0, 0, getWidth(), getHeight());
+	}
+
+	/**
+	 * Draws all graph's transitions. If the graphical context has a clip, only
+	 * the transitions that may intersect it are drawn.
 	 *
 	 * @param gr
 	 *            the graphical context
@@ -666,10 +679,23 @@ public abstract class GenericGraphicalZone extends JComponent {
 		GenericGraphBox g;
 		if (graphBoxes.isEmpty())
 			return;
-		L = graphBoxes.size();
-		for (i = 0; i < L; i++) {
-			g = graphBoxes.get(i);
-			g.drawTransitions(gr, params);
+		final Rectangle clip = gr.getClipBounds();
+		if (clip == null) {
+			L = graphBoxes.size();
+			for (i = 0; i < L; i++) {
+				g = graphBoxes.get(i);
+				g.drawTransitions(gr, params);
+			}
+			return;
+		}
+		g = null;
+		for (final GraphSpatialIndex.Edge e : spatialIndex.getTransitions(gr,
+				clip)) {
+			if (e.getSource() != g) {
+				g = e.getSource();
+				g.updateWithContext(gr);
+			}
+			g.drawTransition(gr, e.getDestination(), params);
 		}
 	}
 
@@ -710,19 +736,19 @@ public abstract class GenericGraphicalZone extends JComponent {
 	}
 
 	/**
-	 * Draws all boxes of the graph
+	 * Draws all boxes of the graph. If the graphical context has a clip, only
+	 * the boxes that may intersect it are drawn.
 	 *
 	 * @param gr
 	 *            the graphical context
 	 */
 	void drawAllBoxes(Graphics2D gr, DrawGraphParams params) {
-		int i, L;
-		GenericGraphBox g;
 		if (graphBoxes.isEmpty())
 			return;
-		L = graphBoxes.size();
-		for (i = 0; i < L; i++) {
-			g = graphBoxes.get(i);
+		final Rectangle clip = gr.getClipBounds();
+		final ArrayList<GenericGraphBox> boxes = (clip == null) ? graphBoxes
+				: spatialIndex.getBoxes(gr, clip);
+		for (final GenericGraphBox g : boxes) {
 			g.draw(gr, params);
 		}
 	}
@@ -968,6 +994,7 @@ public abstract class GenericGraphicalZone extends JComponent {
 					"Cannot set null graph presentation info");
 		}
 		this.graphPresentationInfo = i;
+		spatialIndex.invalidate();
 		updateAllBoxes();
 	}
 
@@ -1008,6 +1035,7 @@ public abstract class GenericGraphicalZone extends JComponent {
 
 	public void empty() {
 		graphBoxes.clear();
+		spatialIndex.invalidate();
 		fireGraphChanged(true);
 	}
 
@@ -1070,6 +1098,7 @@ public abstract class GenericGraphicalZone extends JComponent {
 
 	public void setDecorator(GraphDecorator d) {
 		this.decorator = d;
+		spatialIndex.invalidate();
 	}
 
 	public GraphMetaData getMetadata() {
@@ -1115,6 +1144,7 @@ public abstract class GenericGraphicalZone extends JComponent {
 
   public void removeBox(GraphBox g) {
     if(graphBoxes.remove(g)) {
+      spatialIndex.invalidate();
       final AbstractUndoableEdit edit = new RemoveBoxEdit(g, graphBoxes, this);
       postEdit(edit);
       g.removeAllIncomingTransitions();
@@ -32,6 +32,7 @@ import fr.umlv.unitex.exceptions.MissingGraphNameException;
 import fr.umlv.unitex.exceptions.NoClosingQuoteException;
 import fr.umlv.unitex.exceptions.NoClosingRoundBracketException;
 import fr.umlv.unitex.exceptions.NoClosingSupException;
+import fr.umlv.unitex.grf.GrfBoxContent;
 
 /**
  * This class describes a box of a graph.
@@ -73,123 +74,14 @@ public class GraphBox extends GenericGraphBox {
 		return 1;
 	}
 
-	private static boolean isAPlusChar(char c) {
-		return (c == '+' || c == '\uff0b');
-	}
-
 	private void tokenizeTextWithoutTransduction(String s)
 			throws BackSlashAtEndOfLineException, MissingGraphNameException,
 			NoClosingQuoteException, NoClosingSupException,
 			NoClosingRoundBracketException {
-		final int L = s.length();
-		int i = 0;
-		String tmp;
-		char ligne[] = new char[10000];
-		ligne = s.toCharArray();
-		while (i < L) {
-			tmp = "";
-			if (ligne[i] == ':') {
-				// case of a sub graph call
-				i++;
-				while ((i < L) && !isAPlusChar(ligne[i]) /* (ligne[i]!='+') */
-				) {
-					if (ligne[i] == '\\') {
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-						if (i >= L) {
-							final BackSlashAtEndOfLineException e = new BackSlashAtEndOfLineException();
-							throw e;
-						}
-					}
-					tmp = tmp.concat(String.valueOf(ligne[i++]));
-				}
-				if (tmp.length() == 0) {
-					final MissingGraphNameException e = new MissingGraphNameException();
-					throw e;
-				}
-				// if we had a + separator char (even a japanese one), we put a
-				// standard + instead
-				if (i < L)
-					ligne[i] = '+';
-				i++;
-				n_lines++;
-				lines.add(tmp);
-				greyed.add(Boolean.TRUE);
-			} else {
-				// all other cases
-				while ((i < L) && !isAPlusChar(ligne[i]) /* (ligne[i]!='+') */
-				) {
-					if (ligne[i] == '"') {
-						// case of a quote expression
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-						while ((i < L) && ligne[i] != '"') {
-							if (ligne[i] == '\\') {
-								tmp = tmp.concat(String.valueOf(ligne[i++]));
-								if (i >= L) {
-									final BackSlashAtEndOfLineException e = new BackSlashAtEndOfLineException();
-									throw e;
-								}
-							}
-							tmp = tmp.concat(String.valueOf(ligne[i++]));
-						}
-						if (i >= L) {
-							final NoClosingQuoteException e = new NoClosingQuoteException();
-							throw e;
-						}
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-					} else if (ligne[i] == '<') {
-						// case of a <...> expression
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-						while ((i < L) && ligne[i] != '>') {
-							if (ligne[i] == '\\') {
-								tmp = tmp.concat(String.valueOf(ligne[i++]));
-								if (i >= L) {
-									final BackSlashAtEndOfLineException e = new BackSlashAtEndOfLineException();
-									throw e;
-								}
-							}
-							tmp = tmp.concat(String.valueOf(ligne[i++]));
-						}
-						if (i >= L) {
-							final NoClosingSupException e = new NoClosingSupException();
-							throw e;
-						}
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-					} else if (ligne[i] == '{') {
-						// case of a {...} expression
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-						while ((i < L) && ligne[i] != '}') {
-							if (ligne[i] == '\\') {
-								tmp = tmp.concat(String.valueOf(ligne[i++]));
-								if (i >= L) {
-									final BackSlashAtEndOfLineException e = new BackSlashAtEndOfLineException();
-									throw e;
-								}
-							}
-							tmp = tmp.concat(String.valueOf(ligne[i++]));
-						}
-						if (i >= L) {
-							final NoClosingRoundBracketException e = new NoClosingRoundBracketException();
-							throw e;
-						}
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-					} else {
-						if (ligne[i] == '\\') {
-							tmp = tmp.concat(String.valueOf(ligne[i++]));
-							if (i >= L) {
-								final BackSlashAtEndOfLineException e = new BackSlashAtEndOfLineException();
-								throw e;
-							}
-						}
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-					}
-				}
-				if (i < L)
-					ligne[i] = '+';
-				n_lines++;
-				lines.add(tmp);
-				greyed.add(Boolean.FALSE);
-				i++;
-			}
+		try {
+			GrfBoxContent.tokenizeLines(s, lines, greyed);
+		} finally {
+			n_lines = lines.size();
 		}
 	}
 
@@ -217,6 +109,11 @@ public class GraphBox extends GenericGraphBox {
 	 */
 	@Override
 	public void setContent(String s) {
+		parseContent(s);
+		boundsChanged();
+	}
+
+	private void parseContent(String s) {
 		if (type == GenericGraphBox.FINAL)
 			return; // nothing to do if we consider the final state
 		content = s;
@@ -383,40 +280,7 @@ public class GraphBox extends GenericGraphBox {
 	 */
 	public static boolean tokenizeCommentBox(String line,
 			ArrayList<String> lines) {
-		if (lines != null)
-			lines.clear();
-		if (line == null || !line.startsWith("/") || line.equals("/")
-				|| line.startsWith("/+"))
-			return false;
-		final int l = line.length();
-		final StringBuilder builder = new StringBuilder();
-		int i = 1;
-		while (i < l) {
-			builder.setLength(0);
-			while (i < l && line.charAt(i) != '+') {
-				if (line.charAt(i) == '\\') {
-					if (i + 1 == l) {
-						/* A \ at the end of the content is an error */
-						if (lines != null)
-							lines.clear();
-						return false;
-					}
-					i++;
-				}
-				builder.append(line.charAt(i));
-				i++;
-			}
-			if (i + 1 == l && line.charAt(i) == '+') {
-				/* A + at the end of the content is an error */
-				if (lines != null)
-					lines.clear();
-				return false;
-			}
-			i++;
-			if (lines != null)
-				lines.add(builder.toString());
-		}
-		return true;
+		return GrfBoxContent.tokenizeCommentBox(line, lines);
 	}
 
 	private int strcmp(String a, String b) {
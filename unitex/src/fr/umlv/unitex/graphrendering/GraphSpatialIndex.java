@@ -0,0 +1,547 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphrendering;
+
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import javax.swing.JLabel;
+
+/**
+ * This class is a uniform grid over the boxes and transitions of a graphical
+ * zone, used to paint and hit-test only what intersects a given rectangle.
+ * Boxes and transitions are indexed by a rectangle that contains everything
+ * drawn for them. The grid is updated when a box moves or when its
+ * transitions change, and rebuilt lazily when boxes are added or removed.
+ */
+class GraphSpatialIndex {
+	private static final int CELL_SHIFT = 7;
+	/**
+	 * Items that cover more cells than that are not put in the grid, but in a
+	 * list that is always tested
+	 */
+	private static final int MAX_CELLS = 256;
+
+	static class Node {
+		final GenericGraphBox box;
+		int rank;
+		final Rectangle bounds = new Rectangle();
+		boolean large;
+		int stamp = -1;
+		final ArrayList<Edge> out = new ArrayList<Edge>();
+		final ArrayList<Edge> in = new ArrayList<Edge>();
+
+		Node(GenericGraphBox box, int rank) {
+			this.box = box;
+			this.rank = rank;
+		}
+	}
+
+	static class Edge {
+		final Node src;
+		final Node dest;
+		final int n;
+		final Rectangle bounds = new Rectangle();
+		boolean large;
+		int stamp = -1;
+
+		Edge(Node src, Node dest, int n) {
+			this.src = src;
+			this.dest = dest;
+			this.n = n;
+		}
+
+		GenericGraphBox getSource() {
+			return src.box;
+		}
+
+		GenericGraphBox getDestination() {
+			return dest.box;
+		}
+	}
+
+	private static final Comparator<Node> NODE_ORDER = new Comparator<Node>() {
+		@Override
+		public int compare(Node a, Node b) {
+			return a.rank - b.rank;
+		}
+	};
+
+	private static final Comparator<Edge> EDGE_ORDER = new Comparator<Edge>() {
+		@Override
+		public int compare(Edge a, Edge b) {
+			if (a.src.rank != b.src.rank) {
+				return a.src.rank - b.src.rank;
+			}
+			return a.n - b.n;
+		}
+	};
+
+	private final GenericGraphicalZone zone;
+	private ArrayList<GenericGraphBox> boxes;
+	private int size;
+	private boolean valid = false;
+	/**
+	 * true if all the boxes had been measured with a graphical context when
+	 * they were indexed
+	 */
+	private boolean measured = false;
+	private boolean updating = false;
+	private int stamp = 0;
+	private final IdentityHashMap<GenericGraphBox, Node> nodes = new IdentityHashMap<GenericGraphBox, Node>();
+	private final HashMap<Long, ArrayList<Node>> nodeCells = new HashMap<Long, ArrayList<Node>>();
+	private final HashMap<Long, ArrayList<Edge>> edgeCells = new HashMap<Long, ArrayList<Edge>>();
+	private final ArrayList<Node> largeNodes = new ArrayList<Node>();
+	private final ArrayList<Edge> largeEdges = new ArrayList<Edge>();
+
+	GraphSpatialIndex(GenericGraphicalZone zone) {
+		this.zone = zone;
+	}
+
+	/**
+	 * Forces the index to be rebuilt the next time it is used
+	 */
+	void invalidate() {
+		valid = false;
+	}
+
+	/**
+	 * Boxes may be added or removed directly in the box list of the zone, so
+	 * we check that it still has the same size before trusting the index.
+	 */
+	private boolean check() {
+		if (valid && (boxes != zone.graphBoxes || size != boxes.size())) {
+			valid = false;
+		}
+		return valid;
+	}
+
+	/**
+	 * Called when a box has been appended to the box list of the zone
+	 */
+	void boxAdded(GenericGraphBox b) {
+		if (updating || !valid || boxes != zone.graphBoxes
+				|| boxes.size() != size + 1 || boxes.get(size) != b) {
+			valid = false;
+			return;
+		}
+		final Node n = new Node(b, size++);
+		nodes.put(b, n);
+		if (b.context == null) {
+			measured = false;
+		}
+		addNode(n);
+		addEdges(n);
+	}
+
+	/**
+	 * Called when the position or the size of a box has changed
+	 */
+	void boxChanged(GenericGraphBox b) {
+		if (updating || !check()) {
+			return;
+		}
+		final Node n = nodes.get(b);
+		if (n == null) {
+			return;
+		}
+		removeNode(n);
+		addNode(n);
+		for (final Edge e : n.out) {
+			removeEdge(e);
+			addEdge(e);
+		}
+		for (final Edge e : n.in) {
+			if (e.src != n) {
+				removeEdge(e);
+				addEdge(e);
+			}
+		}
+	}
+
+	/**
+	 * Called when the outgoing transitions of a box have changed
+	 */
+	void transitionsChanged(GenericGraphBox b) {
+		if (updating || !check()) {
+			return;
+		}
+		final Node n = nodes.get(b);
+		if (n == null) {
+			return;
+		}
+		for (final Edge e : n.out) {
+			removeEdge(e);
+			e.dest.in.remove(e);
+		}
+		n.out.clear();
+		addEdges(n);
+	}
+
+	/**
+	 * @return true if the given box is in the box list of the zone
+	 */
+	boolean contains(GenericGraphBox b) {
+		update(null);
+		return nodes.containsKey(b);
+	}
+
+	/**
+	 * @return the boxes whose drawing may intersect the given rectangle, in
+	 *         the order of the box list
+	 */
+	ArrayList<GenericGraphBox> getBoxes(Graphics2D g, Rectangle r) {
+		update(g);
+		final ArrayList<Node> found = new ArrayList<Node>();
+		stamp++;
+		for (final Node n : largeNodes) {
+			if (n.bounds.intersects(r)) {
+				found.add(n);
+			}
+		}
+		final int x1 = cell(r.x + r.width), y1 = cell(r.y + r.height);
+		for (int x = cell(r.x); x <= x1; x++) {
+			for (int y = cell(r.y); y <= y1; y++) {
+				final ArrayList<Node> l = nodeCells.get(key(x, y));
+				if (l == null) {
+					continue;
+				}
+				for (final Node n : l) {
+					if (n.stamp != stamp) {
+						n.stamp = stamp;
+						if (n.bounds.intersects(r)) {
+							found.add(n);
+						}
+					}
+				}
+			}
+		}
+		Collections.sort(found, NODE_ORDER);
+		final ArrayList<GenericGraphBox> res = new ArrayList<GenericGraphBox>(
+				found.size());
+		for (final Node n : found) {
+			res.add(n.box);
+		}
+		return res;
+	}
+
+	/**
+	 * @return the transitions whose drawing may intersect the given rectangle,
+	 *         sorted by source box and then in the order of the source box's
+	 *         transitions
+	 */
+	ArrayList<Edge> getTransitions(Graphics2D g, Rectangle r) {
+		update(g);
+		final ArrayList<Edge> found = new ArrayList<Edge>();
+		stamp++;
+		for (final Edge e : largeEdges) {
+			if (e.bounds.intersects(r)) {
+				found.add(e);
+			}
+		}
+		final int x1 = cell(r.x + r.width), y1 = cell(r.y + r.height);
+		for (int x = cell(r.x); x <= x1; x++) {
+			for (int y = cell(r.y); y <= y1; y++) {
+				final ArrayList<Edge> l = edgeCells.get(key(x, y));
+				if (l == null) {
+					continue;
+				}
+				for (final Edge e : l) {
+					if (e.stamp != stamp) {
+						e.stamp = stamp;
+						if (e.bounds.intersects(r)) {
+							found.add(e);
+						}
+					}
+				}
+			}
+		}
+		Collections.sort(found, EDGE_ORDER);
+		return found;
+	}
+
+	/**
+	 * @return a rectangle that contains the drawing of all boxes and
+	 *         transitions, or null if there is no box
+	 */
+	Rectangle getBounds(Graphics2D g) {
+		update(g);
+		Rectangle r = null;
+		for (final Node n : nodes.values()) {
+			if (r == null) {
+				r = new Rectangle(n.bounds);
+			} else {
+				r.add(n.bounds);
+			}
+			for (final Edge e : n.out) {
+				r.add(e.bounds);
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * @return the position in the box list of the first box that contains the
+	 *         given point, or -1
+	 */
+	int getBoxAt(int x, int y) {
+		update(null);
+		int best = -1;
+		for (final Node n : largeNodes) {
+			if (contains(n.box, x, y) && (best == -1 || n.rank < best)) {
+				best = n.rank;
+			}
+		}
+		final ArrayList<Node> l = nodeCells.get(key(cell(x), cell(y)));
+		if (l != null) {
+			for (final Node n : l) {
+				if (contains(n.box, x, y) && (best == -1 || n.rank < best)) {
+					best = n.rank;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the boxes that are selected by the given rectangle, as defined by
+	 *         GenericGraphBox.isSelectedByRectangle, in the order of the box list
+	 */
+	ArrayList<GenericGraphBox> getBoxesSelectedBy(int x, int y, int w, int h) {
+		final ArrayList<GenericGraphBox> res = getBoxes(null, new Rectangle(x,
+				y, w + 1, h + 1));
+		for (int i = res.size() - 1; i >= 0; i--) {
+			if (!res.get(i).isSelectedByRectangle(x, y, w, h)) {
+				res.remove(i);
+			}
+		}
+		return res;
+	}
+
+	private static boolean contains(GenericGraphBox g, int x, int y) {
+		return x >= g.X && x <= g.X + g.Width && y >= g.Y1
+				&& y <= g.Y1 + g.Height;
+	}
+
+	/**
+	 * Rebuilds the index if needed. If a graphical context is given, the boxes
+	 * that have never been drawn are measured first, as they would be by
+	 * GenericGraphBox.drawTransitions, so that their bounds are the ones they
+	 * will be drawn with.
+	 */
+	private void update(Graphics2D g) {
+		if (check() && (measured || g == null)) {
+			return;
+		}
+		boxes = zone.graphBoxes;
+		size = boxes.size();
+		nodes.clear();
+		nodeCells.clear();
+		edgeCells.clear();
+		largeNodes.clear();
+		largeEdges.clear();
+		measured = true;
+		updating = true;
+		try {
+			for (final GenericGraphBox b : boxes) {
+				if (b.context == null) {
+					if (g == null) {
+						measured = false;
+					} else {
+						b.updateWithContext(g);
+					}
+				}
+			}
+		} finally {
+			updating = false;
+		}
+		for (int i = 0; i < size; i++) {
+			final Node n = new Node(boxes.get(i), i);
+			nodes.put(n.box, n);
+			addNode(n);
+		}
+		for (int i = 0; i < size; i++) {
+			addEdges(nodes.get(boxes.get(i)));
+		}
+		valid = true;
+	}
+
+	private void addEdges(Node n) {
+		final ArrayList<GenericGraphBox> transitions = n.box.transitions;
+		for (int i = 0; i < transitions.size(); i++) {
+			final Node dest = nodes.get(transitions.get(i));
+			if (dest == null) {
+				continue;
+			}
+			final Edge e = new Edge(n, dest, i);
+			n.out.add(e);
+			dest.in.add(e);
+			addEdge(e);
+		}
+	}
+
+	private void addNode(Node n) {
+		computeBounds(n.box, n.rank, n.bounds);
+		n.large = cellCount(n.bounds) > MAX_CELLS;
+		if (n.large) {
+			largeNodes.add(n);
+			return;
+		}
+		final Rectangle r = n.bounds;
+		final int x1 = cell(r.x + r.width), y1 = cell(r.y + r.height);
+		for (int x = cell(r.x); x <= x1; x++) {
+			for (int y = cell(r.y); y <= y1; y++) {
+				final Long k = key(x, y);
+				ArrayList<Node> l = nodeCells.get(k);
+				if (l == null) {
+					l = new ArrayList<Node>(4);
+					nodeCells.put(k, l);
+				}
+				l.add(n);
+			}
+		}
+	}
+
+	private void removeNode(Node n) {
+		if (n.large) {
+			largeNodes.remove(n);
+			return;
+		}
+		final Rectangle r = n.bounds;
+		final int x1 = cell(r.x + r.width), y1 = cell(r.y + r.height);
+		for (int x = cell(r.x); x <= x1; x++) {
+			for (int y = cell(r.y); y <= y1; y++) {
+				final Long k = key(x, y);
+				final ArrayList<Node> l = nodeCells.get(k);
+				if (l != null && l.remove(n) && l.isEmpty()) {
+					nodeCells.remove(k);
+				}
+			}
+		}
+	}
+
+	private void addEdge(Edge e) {
+		computeBounds(e.src.box, e.dest.box, e.bounds);
+		e.large = cellCount(e.bounds) > MAX_CELLS;
+		if (e.large) {
+			largeEdges.add(e);
+			return;
+		}
+		final Rectangle r = e.bounds;
+		final int x1 = cell(r.x + r.width), y1 = cell(r.y + r.height);
+		for (int x = cell(r.x); x <= x1; x++) {
+			for (int y = cell(r.y); y <= y1; y++) {
+				final Long k = key(x, y);
+				ArrayList<Edge> l = edgeCells.get(k);
+				if (l == null) {
+					l = new ArrayList<Edge>(4);
+					edgeCells.put(k, l);
+				}
+				l.add(e);
+			}
+		}
+	}
+
+	private void removeEdge(Edge e) {
+		if (e.large) {
+			largeEdges.remove(e);
+			return;
+		}
+		final Rectangle r = e.bounds;
+		final int x1 = cell(r.x + r.width), y1 = cell(r.y + r.height);
+		for (int x = cell(r.x); x <= x1; x++) {
+			for (int y = cell(r.y); y <= y1; y++) {
+				final Long k = key(x, y);
+				final ArrayList<Edge> l = edgeCells.get(k);
+				if (l != null && l.remove(e) && l.isEmpty()) {
+					edgeCells.remove(k);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes a rectangle that contains everything drawn for the box: its
+	 * frame, its input and output arrows, its output, which may be wider than
+	 * the box, and the texts written above it (ranges and coverage
+	 * information).
+	 */
+	private void computeBounds(GenericGraphBox b, int boxNumber, Rectangle r) {
+		final FontMetrics input = zone.getFontMetrics(zone
+				.getGraphPresentationInfo().getInput().getFont());
+		final FontMetrics output = zone.getFontMetrics(zone
+				.getGraphPresentationInfo().getOutput().getFont());
+		final int h = Math.max(input.getHeight(), output.getHeight()) + 5;
+		int text = output.stringWidth(b.transduction);
+		if (zone.decorator != null) {
+			final JLabel label = zone.decorator.getCoverageInfoLabel(boxNumber);
+			if (label != null) {
+				text = Math.max(text, input.stringWidth(label.getText()));
+			}
+		}
+		final int x0 = Math.min(Math.min(b.X1, b.X_in), b.X) - 20;
+		final int y0 = Math.min(Math.min(b.Y1, b.Y_in), b.Y - 10) - 2 * h;
+		final int x1 = Math.max(
+				Math.max(Math.max(b.X1 + b.Width, b.X_out), b.X
+						+ Math.max(b.Width, 21)), b.X1 + text + 40) + 10;
+		final int y1 = Math.max(Math.max(b.Y1 + b.Height, b.Y_out), b.Y + 11)
+				+ 2 * h;
+		r.setBounds(x0, y0, x1 - x0, y1 - y0);
+	}
+
+	/**
+	 * Computes a rectangle that contains the transition from a to b, as drawn
+	 * by GenericGraphBox.drawTransition in both reading directions. Curves
+	 * never go further from the boxes than the sum of the diameters of the
+	 * arcs used to leave a and to enter b.
+	 */
+	private static void computeBounds(GenericGraphBox a, GenericGraphBox b,
+			Rectangle r) {
+		final int m = 10 + a.Height / 2 + 10 + b.Height / 2 + 5;
+		final int x0 = Math.min(Math.min(a.X_in, a.X1), Math.min(b.X_in, b.X1)) - 5;
+		final int x1 = Math.max(Math.max(a.X_out, a.X1 + a.Width),
+				Math.max(b.X_out, b.X1 + b.Width)) + 5;
+		final int y0 = Math.min(Math.min(Math.min(a.Y1, a.Y_in), a.Y_out),
+				Math.min(Math.min(b.Y1, b.Y_in), b.Y_out));
+		final int y1 = Math.max(Math.max(Math.max(a.Y1 + a.Height, a.Y_in),
+				a.Y_out), Math.max(Math.max(b.Y1 + b.Height, b.Y_in), b.Y_out));
+		r.setBounds(x0 - m, y0 - m, x1 - x0 + 2 * m, y1 - y0 + 2 * m);
+	}
+
+	private static int cell(int v) {
+		return v >> CELL_SHIFT;
+	}
+
+	private static long cellCount(Rectangle r) {
+		return (long) (cell(r.x + r.width) - cell(r.x) + 1)
+				* (cell(r.y + r.height) - cell(r.y) + 1);
+	}
+
+	private static Long key(int x, int y) {
+		return Long.valueOf(((long) x << 32) | (y & 0xFFFFFFFFL));
+	}
+}
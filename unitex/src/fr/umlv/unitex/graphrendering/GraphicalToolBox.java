@@ -30,19 +30,16 @@ import java.awt.geom.Line2D;
 import java.awt.geom.QuadCurve2D;
 
 /**
+ * Shapes are created for each call, so that graphs can be drawn from several
+ * threads at the same time.
+ * 
  * @author Sébastien Paumier
  */
 class GraphicalToolBox {
-	private static final Ellipse2D.Double ellipse = new Ellipse2D.Double();
-	private static final Line2D.Double line = new Line2D.Double();
-	private static final Rectangle rectangle = new Rectangle();
-	private static final QuadCurve2D.Double curve = new QuadCurve2D.Double();
-	private static final Arc2D.Double arc = new Arc2D.Double();
 	public static final Stroke frameStroke = new BasicStroke(2);
 
 	public static void drawLine(Graphics2D g, int x1, int y1, int x2, int y2) {
-		line.setLine(x1, y1, x2, y2);
-		g.draw(line);
+		g.draw(new Line2D.Double(x1, y1, x2, y2));
 	}
 
 	public static void drawRect(Graphics2D g, int x1, int y1, int w, int h) {
@@ -61,34 +58,29 @@ class GraphicalToolBox {
 		//
 		// This bug was dued to a bug in my graphic controller pilot.
 		// S. Paumier
-		rectangle.setBounds(x1, y1, w, h);
-		g.draw(rectangle);
+		g.draw(new Rectangle(x1, y1, w, h));
 	}
 
 	public static void fillRect(Graphics2D g, int x1, int y1, int w, int h) {
-		rectangle.setBounds(x1, y1, w, h);
-		g.fill(rectangle);
+		g.fill(new Rectangle(x1, y1, w, h));
 	}
 
 	public static void drawArc(Graphics2D g, int x1, int y1, int w, int h,
 			int startAngle, int arctAngle) {
-		arc.setArc(x1, y1, w, h, startAngle, arctAngle, Arc2D.OPEN);
-		g.draw(arc);
+		g.draw(new Arc2D.Double(x1, y1, w, h, startAngle, arctAngle,
+				Arc2D.OPEN));
 	}
 
 	public static void drawCurve(Graphics2D g, int x1, int y1, int x2, int y2,
 			int x3, int y3) {
-		curve.setCurve(x1, y1, x2, y2, x3, y3);
-		g.draw(curve);
+		g.draw(new QuadCurve2D.Double(x1, y1, x2, y2, x3, y3));
 	}
 
 	public static void drawEllipse(Graphics2D g, int x1, int y1, int w, int h) {
-		ellipse.setFrame(x1, y1, w, h);
-		g.draw(ellipse);
+		g.draw(new Ellipse2D.Double(x1, y1, w, h));
 	}
 
 	public static void fillEllipse(Graphics2D g, int x1, int y1, int w, int h) {
-		ellipse.setFrame(x1, y1, w, h);
-		g.fill(ellipse);
+		g.fill(new Ellipse2D.Double(x1, y1, w, h));
 	}
 }
@@ -99,6 +99,11 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 
 	GenericGraphBox rolloveredBox = null;
     File subgraphFileSelected = null;
+	/**
+	 * File the graph was loaded from, used when the zone is not displayed in a
+	 * graph frame, as when exporting images
+	 */
+	private final File loadedGraph;
 
 	/**
 	 * Constructs a new <code>GraphicalZone</code>.
@@ -115,6 +120,7 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 	public GraphicalZone(GraphIO gio, TextField t, GraphFrame p,
 			GraphDecorator diff) {
 		super(gio, t, p, diff);
+		loadedGraph = (gio != null) ? gio.getGrf() : null;
 		if (diff == null) {
 			/* No need to have mouse listeners on a read-only diff display */
 			MyMouseListener m = new MyMouseListener();
@@ -124,6 +130,17 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 		createPopup();
 	}
 
+	/**
+	 * @return the file of the graph frame that contains this zone or, if there
+	 *         is none, the file the graph was loaded from
+	 */
+	private File getGraphFile() {
+		if (parentFrame instanceof GraphFrame) {
+			return ((GraphFrame) parentFrame).getGraph();
+		}
+		return loadedGraph;
+	}
+
 	Action surroundWithInputVar;
 
 	public Action getSurroundWithInputVarAction() {
@@ -1703,7 +1720,7 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 		}
 		f.setColor(params.getForegroundColor());
 		if (decorator == null) {
-			final File file = ((GraphFrame) parentFrame).getGraph();
+			final File file = getGraphFile();
 			if (params.isFilename()) {
 				if (params.isPathname())
 					f.drawString((file != null) ? file.getAbsolutePath() : "",
@@ -1733,6 +1750,16 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 		}
 	}
 
+	@Override
+	public Rectangle getDrawingBounds(Graphics2D g, DrawGraphParams params) {
+		if (params.isFrame() || params.isFilename() || params.isDate()
+				|| isGrid || selecting || mouseInGraphicalZone) {
+			return super.getDrawingBounds(g, params);
+		}
+		final Rectangle r = spatialIndex.getBounds(g);
+		return (r != null) ? r : new Rectangle();
+	}
+
 	/**
 	 * Prints the graph.
 	 *
@@ -1772,7 +1799,7 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 			f.setStroke(oldStroke);
 		}
 		f.setColor(params.getForegroundColor());
-		final File file = ((GraphFrame) parentFrame).getGraph();
+		final File file = getGraphFile();
 		if (getGraphPresentationInfo().isFilename()) {
 			if (getGraphPresentationInfo().isPathname())
 				f.drawString((file != null) ? file.getAbsolutePath() : "", 20,
@@ -33,6 +33,7 @@ import java.util.Scanner;
 import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.diff.GraphDecoratorConfig;
 import fr.umlv.unitex.tfst.Bounds;
+import fr.umlv.unitex.tfst.TokensInfo;
 
 /**
  * This class describes a box of a sentence automaton.
@@ -71,8 +72,11 @@ public class TfstGraphBox extends GenericGraphBox {
 	 * 
 	 * @param s
 	 *            the box content
+	 * @param tokens
+	 *            if not null, the content ends with bounds in those tokens
+	 *            that must be read
 	 */
-	private void tokenizeText(String s, boolean firstTime) {
+	private void tokenizeText(String s, TokensInfo tokens) {
 		final int L = s.length();
 		int i;
 		String flechi;
@@ -82,7 +86,7 @@ public class TfstGraphBox extends GenericGraphBox {
 			/* Nothing to do on the initial empty state */
 			return;
 		}
-		if (firstTime) {
+		if (tokens != null) {
 			/*
 			 * Any other (non final) state is supposed to contain both a content
 			 * and, as output, 4 integers
@@ -91,7 +95,7 @@ public class TfstGraphBox extends GenericGraphBox {
 			if (slash_pos == -1) {
 				throw new AssertionError("Content with no slash: " + s);
 			}
-			readTokenInfos(s.substring(slash_pos + 1));
+			readTokenInfos(s.substring(slash_pos + 1), tokens);
 			content = s.substring(0, slash_pos);
 		}
 		final char[] line = content.toCharArray();
@@ -137,7 +141,7 @@ public class TfstGraphBox extends GenericGraphBox {
 		transduction = infos;
 	}
 
-	private void readTokenInfos(String s) {
+	private void readTokenInfos(String s, TokensInfo tokens) {
 		final Scanner scanner = new Scanner(s);
 		try {
 			final int start_pos_in_tokens = scanner.nextInt();
@@ -154,9 +158,10 @@ public class TfstGraphBox extends GenericGraphBox {
 					throw new AssertionError("Malformed token information: "
 							+ s);
 				}
-				bounds = new Bounds(start_pos_in_tokens, start_pos_in_chars,
-						start_pos_in_letters, end_pos_in_tokens,
-						end_pos_in_chars, end_pos_in_letters);
+				bounds = new Bounds(tokens, start_pos_in_tokens,
+						start_pos_in_chars, start_pos_in_letters,
+						end_pos_in_tokens, end_pos_in_chars,
+						end_pos_in_letters);
 			}
 		} catch (final InputMismatchException e) {
 			throw new AssertionError("Malformed token information: " + s);
@@ -190,7 +195,7 @@ public class TfstGraphBox extends GenericGraphBox {
 		transduction = "";
 		lines.clear();
 		greyed.clear();
-		tokenizeText(s, false);
+		tokenizeText(s, null);
 		if (!tmp.equals("<E>") && !tmp.equals(",")) {
 			// updating the letters bounds
 			if(tmp.contains("{")  )
@@ -208,6 +213,7 @@ public class TfstGraphBox extends GenericGraphBox {
 		}
 		Y1 = Y - Height / 2;
 		X_out = X + Width + 5;
+		boundsChanged();
 	}
 	
 	public void updateBoundsLetters( int length ) {
@@ -215,7 +221,11 @@ public class TfstGraphBox extends GenericGraphBox {
 			bounds.setEnd_in_chars( length - 1 );
 	}
 
-	public void setContentWithBounds(String s) {
+	/**
+	 * Sets the content of the box from a sentence graph line, that ends with
+	 * the bounds of the box in the given tokens.
+	 */
+	public void setContentWithBounds(String s, TokensInfo tokens) {
 		if (type == FINAL)
 			return; // nothing to do if we consider the final state
 		content = s;
@@ -225,7 +235,7 @@ public class TfstGraphBox extends GenericGraphBox {
 		transduction = "";
 		lines.clear();
 		greyed.clear();
-		tokenizeText(s, true);
+		tokenizeText(s, tokens);
 		if (!tmp.equals("<E>")) {
 			// dimensions of a full box
 			Width = maxLineWidth() + 10;
@@ -237,6 +247,7 @@ public class TfstGraphBox extends GenericGraphBox {
 		}
 		Y1 = Y - Height / 2;
 		X_out = X + Width + 5;
+		boundsChanged();
 	}
 
 	public Bounds getBounds() {
@@ -281,7 +292,7 @@ public class TfstGraphBox extends GenericGraphBox {
 					|| box.bounds.getStart_in_letters() != 0
 					|| box.content.startsWith("{<E>,")
 					|| box.bounds.equals(bounds)
-					|| (content.startsWith("{<E>,")
+					|| (content.startsWith("{<E>,") && bounds != null
 							&& bounds.getEnd_in_tokens() == box.bounds
 									.getStart_in_tokens() && bounds
 							.getEnd_in_chars() == box.bounds
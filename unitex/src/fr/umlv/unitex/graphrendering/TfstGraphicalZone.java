@@ -47,6 +47,7 @@ import fr.umlv.unitex.diff.GraphDecorator;
 import fr.umlv.unitex.frames.TfstFrame;
 import fr.umlv.unitex.io.GraphIO;
 import fr.umlv.unitex.tfst.Bounds;
+import fr.umlv.unitex.tfst.TokensInfo;
 import fr.umlv.unitex.tfst.tagging.TaggingModel;
 import fr.umlv.unitex.tfst.tagging.TaggingState;
 import fr.umlv.unitex.undo.SelectEdit;
@@ -61,6 +62,10 @@ public class TfstGraphicalZone extends GenericGraphicalZone implements
 
 	TaggingModel model;
 	int sentence=-1;
+	/**
+	 * Tokens of the sentence whose graph is displayed
+	 */
+	private TokensInfo tokens = new TokensInfo(new int[0], "");
 
 	/**
 	 * Constructs a new <code>TfstGraphicalZone</code>.
@@ -162,7 +167,7 @@ public class TfstGraphicalZone extends GenericGraphicalZone implements
 					// here we create a box on the mouse's click position
 					b = (TfstGraphBox) createBox((int) (e.getX() / scaleFactor), (int) (e.getY() / scaleFactor));
 					// Coordinates set to zeros.
-					Bounds bounds = new Bounds(0, 0, 0, 0, 0, 0);
+					Bounds bounds = new Bounds(tokens, 0, 0, 0, 0, 0, 0);
 					b.setBounds(bounds);
 					for(GenericGraphBox box : selectedBoxes) {
 						box.addTransitionTo(b);
@@ -497,6 +502,9 @@ public class TfstGraphicalZone extends GenericGraphicalZone implements
 			
 		}
 		this.sentence=sentence;
+		if (g.getTokensInfo() != null) {
+			tokens = g.getTokensInfo();
+		}
 		setGraphPresentationInfo(g.getInfo());
 		fireActionPerformed();
 		/* Now that anyone is aware of the change, we just have to replace
@@ -0,0 +1,357 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphtools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import fr.umlv.unitex.exceptions.BackSlashAtEndOfLineException;
+import fr.umlv.unitex.exceptions.MissingGraphNameException;
+import fr.umlv.unitex.exceptions.NoClosingQuoteException;
+import fr.umlv.unitex.exceptions.NoClosingRoundBracketException;
+import fr.umlv.unitex.exceptions.NoClosingSupException;
+import fr.umlv.unitex.grf.GrfBoxContent;
+import fr.umlv.unitex.grf.GrfModel;
+import fr.umlv.unitex.grf.GrfReader;
+import fr.umlv.unitex.grf.GrfWriter;
+
+/**
+ * This class applies the find and replace operations of FindAndReplace to
+ * many .grf files at once, without displaying them. Graphs are read in
+ * parallel, and each modified graph is saved through a temporary file, so
+ * that a graph is either fully replaced or left untouched.
+ */
+public class BatchFindAndReplace {
+	/**
+	 * A box whose content matches the search. In replace mode, newContent is
+	 * the content the box gets, and error explains why it cannot get it, if
+	 * the new content is not a valid box content.
+	 */
+	public static class Match {
+		private final File grf;
+		private final int box;
+		private final int line;
+		private final String content;
+		private final String newContent;
+		private final String error;
+
+		Match(File grf, int box, int line, String content, String newContent,
+				String error) {
+			this.grf = grf;
+			this.box = box;
+			this.line = line;
+			this.content = content;
+			this.newContent = newContent;
+			this.error = error;
+		}
+
+		public File getGrf() {
+			return grf;
+		}
+
+		public int getBox() {
+			return box;
+		}
+
+		/**
+		 * @return the index of the first box line that matches, or -1 if the
+		 *         match is not inside a single line
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		public String getContent() {
+			return content;
+		}
+
+		public String getNewContent() {
+			return newContent;
+		}
+
+		public String getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * The matches found in one graph.
+	 */
+	public static class GraphResult {
+		private final File grf;
+		private final List<Match> matches;
+		private final boolean saved;
+		private final String error;
+
+		GraphResult(File grf, List<Match> matches, boolean saved, String error) {
+			this.grf = grf;
+			this.matches = matches;
+			this.saved = saved;
+			this.error = error;
+		}
+
+		public File getGrf() {
+			return grf;
+		}
+
+		public List<Match> getMatches() {
+			return matches;
+		}
+
+		/**
+		 * @return true if the graph has been modified on disk
+		 */
+		public boolean isSaved() {
+			return saved;
+		}
+
+		/**
+		 * @return the reason why the graph could not be read or saved, or
+		 *         null
+		 */
+		public String getError() {
+			return error;
+		}
+	}
+
+	public interface Listener {
+		/**
+		 * Called for each graph that contains matches or that could not be
+		 * processed, in the order of the graph list, from the thread that
+		 * called run.
+		 */
+		public void graphProcessed(GraphResult result);
+	}
+
+	private final String search;
+	private final String replace;
+	private final boolean useRegex;
+	private final boolean caseSensitive;
+	private final boolean wholeLine;
+	private final boolean ignoreComment;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * @param replace
+	 *            the replacement, or null if we only want to find
+	 */
+	public BatchFindAndReplace(String search, String replace,
+			boolean useRegex, boolean caseSensitive, boolean wholeLine,
+			boolean ignoreComment) {
+		this.search = search;
+		this.replace = replace;
+		this.useRegex = useRegex;
+		this.caseSensitive = caseSensitive;
+		this.wholeLine = wholeLine;
+		this.ignoreComment = ignoreComment;
+	}
+
+	/**
+	 * @return the given graph followed by all the graphs it calls, directly or
+	 *         not
+	 */
+	public static ArrayList<File> getGraphClosure(File grf) {
+		final ArrayList<File> graphs = new ArrayList<File>();
+		graphs.add(grf);
+		for (final GraphCall c : Dependancies.getAllSubgraphs(grf)) {
+			if (!graphs.contains(c.getGrf())) {
+				graphs.add(c.getGrf());
+			}
+		}
+		return graphs;
+	}
+
+	/**
+	 * Stops the current run as soon as possible. The graphs that have already
+	 * been saved stay modified.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Looks for the search in all the given graphs. In replace mode, graphs
+	 * are modified unless dryRun is true, in which case the results only
+	 * show what would be done.
+	 * 
+	 * @return the results of the graphs that contain matches or that could
+	 *         not be processed
+	 */
+	public ArrayList<GraphResult> run(List<File> graphs, final boolean dryRun,
+			Listener listener) throws InterruptedException {
+		final ArrayList<GraphResult> results = new ArrayList<GraphResult>();
+		final ArrayList<Future<GraphResult>> futures = new ArrayList<Future<GraphResult>>();
+		final ForkJoinPool pool = ForkJoinPool.commonPool();
+		for (final File grf : graphs) {
+			futures.add(pool.submit(new Callable<GraphResult>() {
+				@Override
+				public GraphResult call() {
+					if (cancelled) {
+						return null;
+					}
+					return process(grf, dryRun);
+				}
+			}));
+		}
+		try {
+			for (final Future<GraphResult> f : futures) {
+				if (cancelled) {
+					break;
+				}
+				GraphResult r;
+				try {
+					r = f.get();
+				} catch (final ExecutionException e) {
+					e.printStackTrace();
+					continue;
+				} catch (final CancellationException e) {
+					continue;
+				}
+				if (r == null) {
+					continue;
+				}
+				results.add(r);
+				if (listener != null) {
+					listener.graphProcessed(r);
+				}
+			}
+		} catch (final InterruptedException e) {
+			cancelled = true;
+			throw e;
+		} finally {
+			for (final Future<GraphResult> f : futures) {
+				f.cancel(false);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return the result for the given graph, or null if it has no match
+	 */
+	GraphResult process(File grf, boolean dryRun) {
+		GrfModel model;
+		try {
+			model = GrfReader.read(grf);
+		} catch (final IOException e) {
+			return new GraphResult(grf, new ArrayList<Match>(), false,
+					"Cannot read " + grf.getAbsolutePath() + ": "
+							+ e.getMessage());
+		}
+		final ArrayList<Match> matches = new ArrayList<Match>();
+		boolean modified = false;
+		for (int i = 0; i < model.getBoxCount(); i++) {
+			if (i == GrfModel.FINAL) {
+				continue;
+			}
+			final String content = model.getContent(i);
+			final boolean comment = model.getBoxContent(i).isCommentBox();
+			if (replace == null) {
+				if (i != GrfModel.INITIAL
+						&& FindAndReplace.matches(content, comment, search,
+								useRegex, caseSensitive, wholeLine,
+								ignoreComment)) {
+					matches.add(new Match(grf, i, getLine(model
+							.getBoxContent(i)), content, null, null));
+				}
+				continue;
+			}
+			final String newContent = FindAndReplace.getNewContent(content,
+					i != GrfModel.INITIAL, comment, search, replace,
+					useRegex, caseSensitive, wholeLine, ignoreComment);
+			if (newContent == null) {
+				continue;
+			}
+			final String error = check(newContent);
+			matches.add(new Match(grf, i, getLine(model.getBoxContent(i)),
+					content, newContent, error));
+			if (error == null && !dryRun) {
+				model.setContent(i, newContent);
+				modified = true;
+			}
+		}
+		if (matches.isEmpty()) {
+			return null;
+		}
+		if (!modified || cancelled) {
+			return new GraphResult(grf, matches, false, null);
+		}
+		try {
+			GrfWriter.write(model, grf);
+		} catch (final IOException e) {
+			return new GraphResult(grf, matches, false, "Cannot save "
+					+ grf.getAbsolutePath() + ": " + e.getMessage());
+		}
+		return new GraphResult(grf, matches, true, null);
+	}
+
+	/**
+	 * @return the index of the first box line that matches the search, the
+	 *         lines being the ones displayed in the box, or -1
+	 */
+	private int getLine(GrfBoxContent box) {
+		final List<String> lines = box.getLines();
+		for (int i = 0; i < lines.size(); i++) {
+			/* Subgraph calls are matched with their ':' as in the content */
+			final String line = box.isSubgraphCall(i) ? ":" + lines.get(i)
+					: lines.get(i);
+			if (FindAndReplace.matches(line, false, search, useRegex,
+					caseSensitive, wholeLine, false)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the error message for an invalid box content, as given by
+	 *         FindAndReplace.checkReplaceAll, or null
+	 */
+	private static String check(String content) {
+		try {
+			if (!GrfBoxContent.tokenizeCommentBox(content, null)) {
+				GrfBoxContent.checkContent(content);
+			}
+		} catch (final BackSlashAtEndOfLineException e) {
+			return "Unexpected '\\' at end of line";
+		} catch (final NoClosingSupException e) {
+			return "Boxes must be properly balanced with < >";
+		} catch (final NoClosingQuoteException e) {
+			return "No closing \"";
+		} catch (final NoClosingRoundBracketException e) {
+			return "Boxes must be properly balanced with { }";
+		} catch (final MissingGraphNameException e) {
+			return "Missing graph name after ':'";
+		}
+		return null;
+	}
+}
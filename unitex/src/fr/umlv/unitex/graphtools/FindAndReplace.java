@@ -62,59 +62,84 @@ public class FindAndReplace {
   }
 
   /**
-   * Returns true if and only if the content of g has been replaced.
-   * Replace the content of g with replace if it contains search.
+   * Returns the new content of a box, or null if the box would not be changed.
+   * This is the string part of replace, so that it can be used on graphs that are not displayed.
    *
-   * @param g       the box containing the string to replace.
-   * @param search  the sequence to search for.
-   * @param replace the sequence to replace with.
-   * @param zone    the GenericGraphicalZone containing the box.
-   * @return true if the content has been replaced, false otherwise.
+   * @param content       the content of the box.
+   * @param normalBox     true if the box is neither the initial nor the final box.
+   * @param commentBox    true if the box is a comment box.
+   * @param search        the sequence to search for.
+   * @param replace       the sequence to replace with.
+   * @param useRegex      true if the search must use regular expressions, false otherwise.
+   * @param caseSensitive true if the search must be case sensitive, false otherwise.
+   * @param wholeLine     true if the search must match a whole line only, false otherwise.
+   * @param ignoreComment true if the search must ignore comment boxes, false otherwise.
+   * @return the new content, or null.
    */
-  private static boolean replace(GenericGraphBox g, String search, String replace, GenericGraphicalZone zone) {
-    if (g.getType() == GraphBox.NORMAL && !g.getContent().equals("<E>")) {
-      String newContent = g.getContent().replace(search, replace);
-      return setNewText(g, zone, newContent);
+  public static String getNewContent(String content, boolean normalBox, boolean commentBox, String search,
+                                     String replace, boolean useRegex, boolean caseSensitive, boolean wholeLine,
+                                     boolean ignoreComment) {
+    if (commentBox && ignoreComment) {
+      return null;
     }
-    return false;
+    if (wholeLine) {
+      String[] tokens = content.split("\\+");
+      return getNewText(content, replaceArrayToString(tokens, search, replace, useRegex, caseSensitive));
+    }
+    if (!normalBox || content.equals("<E>")) {
+      return null;
+    }
+    if (useRegex) {
+      return isRegex(search) ? getNewText(content, content.replaceAll(search, replace)) : null;
+    }
+    if (caseSensitive) {
+      return getNewText(content, content.replace(search, replace));
+    }
+    return getNewText(content, content.replaceAll("(?i)" + Pattern.quote(search), replace));
   }
 
   private static boolean setNewText(GenericGraphBox g, GenericGraphicalZone zone, String newContent) {
-    if (!newContent.equals(g.getContent())) {
-      newContent = newContent.replaceAll("\\++", "+").replaceAll("^\\+", "")
-        .replaceAll("\\+$", "");
-      if (newContent.isEmpty()) {
-        newContent = "<E>";
-      }
-      return zone.setTextBox(g, newContent);
-    }
-    return false;
+    newContent = getNewText(g.getContent(), newContent);
+    return newContent != null && zone.setTextBox(g, newContent);
   }
 
-  private static boolean replaceCaseInsensitive(GenericGraphBox g, String search, String replace, GenericGraphicalZone zone) {
-    if (g.getType() == GraphBox.NORMAL && !g.getContent().equals("<E>")) {
-      String newContent = g.getContent().replaceAll("(?i)" + Pattern.quote(search), replace);
-      return setNewText(g, zone, newContent);
+  private static String getNewText(String content, String newContent) {
+    if (newContent.equals(content)) {
+      return null;
     }
-    return false;
+    newContent = newContent.replaceAll("\\++", "+").replaceAll("^\\+", "")
+      .replaceAll("\\+$", "");
+    if (newContent.isEmpty()) {
+      newContent = "<E>";
+    }
+    return newContent;
   }
 
   /**
-   * Returns true if and only if the content of g has been replaced.
-   * Replace the content of g with replace if it matches regex.
+   * Returns true if and only if the content of a box contains the specified search.
+   * This is the string part of find, so that it can be used on graphs that are not displayed.
    *
-   * @param g       the box containing the string to replace.
-   * @param regex   the sequence to search for.
-   * @param replace the sequence to replace with.
-   * @param zone    the GenericGraphicalZone containing the box.
-   * @return true if the content has been replaced, false otherwise.
+   * @param content       the content of the box.
+   * @param commentBox    true if the box is a comment box.
+   * @param search        the sequence to search for.
+   * @param useRegex      true if the search must use regular expressions, false otherwise.
+   * @param caseSensitive true if the search must be case sensitive, false otherwise.
+   * @param wholeLine     true if the search must match a whole line only, false otherwise.
+   * @param ignoreComment true if the search must ignore comment boxes, false otherwise.
+   * @return true if the content contains search, false otherwise.
    */
-  private static boolean replaceRegex(GenericGraphBox g, String regex, String replace, GenericGraphicalZone zone) {
-    if (isRegex(regex) && g.getType() == GraphBox.NORMAL && !g.getContent().equals("<E>")) {
-      String newContent = g.getContent().replaceAll(regex, replace);
-      return setNewText(g, zone, newContent);
+  public static boolean matches(String content, boolean commentBox, String search, boolean useRegex,
+                                boolean caseSensitive, boolean wholeLine, boolean ignoreComment) {
+    if (commentBox && ignoreComment || content.equals("<E>")) {
+      return false;
     }
-    return false;
+    if (wholeLine) {
+      return searchArray(content.split("\\+"), search, useRegex, caseSensitive);
+    }
+    if (!useRegex) {
+      return contains(search, content, caseSensitive);
+    }
+    return isRegex(search) && Pattern.compile(search).matcher(content).find();
   }
 
   /**
@@ -131,27 +156,10 @@ public class FindAndReplace {
   public static int findAll(ArrayList<GenericGraphBox> boxes, String search, boolean useRegex, boolean caseSensitive,
                             boolean wholeLine, boolean ignoreComment) {
     int i = 0;
-    if (wholeLine) {
-      for (GenericGraphBox box : boxes) {
-        String[] tokens = box.getContent().split("\\+");
-        if (!(box.isStandaloneBox() && ignoreComment) && searchArray(tokens, search, useRegex, caseSensitive) && box
-          .getType() == GenericGraphBox.NORMAL && !box.getContent().equals("<E>")) {
-          i++;
-        }
-      }
-    } else if (!useRegex) {
-      for (GenericGraphBox box : boxes) {
-        if (!(box.isStandaloneBox() && ignoreComment) && contains(search, box.getContent(), caseSensitive) && box
-          .getType() == GenericGraphBox.NORMAL && !box.getContent().equals("<E>")) {
-          i++;
-        }
-      }
-    } else {
-      for (GenericGraphBox box : boxes) {
-        if (!(box.isStandaloneBox() && ignoreComment) && isRegex(search) && Pattern.compile(search).matcher(box
-          .getContent()).find() && box.getType() == GenericGraphBox.NORMAL && !box.getContent().equals("<E>")) {
-          i++;
-        }
+    for (GenericGraphBox box : boxes) {
+      if (box.getType() == GenericGraphBox.NORMAL && matches(box.getContent(), box.isStandaloneBox(), search,
+        useRegex, caseSensitive, wholeLine, ignoreComment)) {
+        i++;
       }
     }
     return i;
@@ -170,28 +178,10 @@ public class FindAndReplace {
    * @return true if the box contains search, false otherwise.
    */
   public static boolean find(GenericGraphicalZone zone, GenericGraphBox box, String search, boolean useRegex, boolean caseSensitive, boolean wholeLine, boolean ignoreComment) {
-    if (box.isStandaloneBox() && ignoreComment || box.getContent().equals("<E>") || box.getType() != GenericGraphBox.NORMAL) {
-      zone.setHighlight(false);
-      return false;
-    }
-    if (wholeLine) {
-      String[] tokens = box.getContent().split("\\+");
-      if (searchArray(tokens, search, useRegex, caseSensitive)) {
-        zone.setHighlight(box, true);
-        return true;
-      }
-    } else {
-      if (!useRegex) {
-        if (contains(search, box.getContent(), caseSensitive)) {
-          zone.setHighlight(box, true);
-          return true;
-        }
-      } else {
-        if (isRegex(search) && Pattern.compile(search).matcher(box.getContent()).find()) {
-          zone.setHighlight(box, true);
-          return true;
-        }
-      }
+    if (box.getType() == GenericGraphBox.NORMAL && matches(box.getContent(), box.isStandaloneBox(), search,
+      useRegex, caseSensitive, wholeLine, ignoreComment)) {
+      zone.setHighlight(box, true);
+      return true;
     }
     zone.setHighlight(false);
     return false;
@@ -235,25 +225,9 @@ public class FindAndReplace {
    * @return true if the content has been replaced, false otherwise.
    */
   public static boolean replace(GenericGraphBox box, String search, String replace, GenericGraphicalZone zone, boolean useRegex, boolean caseSensitive, boolean wholeLine, boolean ignoreComment) {
-    if (box.isStandaloneBox() && ignoreComment) {
-      return false;
-    }
-    if (wholeLine) {
-      String[] tokens = box.getContent().split("\\+");
-      String newContent = replaceArrayToString(tokens, search, replace, useRegex, caseSensitive);
-      if (setNewText(box, zone, newContent)) return true;
-    } else {
-      if (useRegex) {
-        return replaceRegex(box, search, replace, zone);
-      } else {
-        if (caseSensitive) {
-          return replace(box, search, replace, zone);
-        } else {
-          return replaceCaseInsensitive(box, search, replace, zone);
-        }
-      }
-    }
-    return false;
+    String newContent = getNewContent(box.getContent(), box.getType() == GenericGraphBox.NORMAL,
+      box.isStandaloneBox(), search, replace, useRegex, caseSensitive, wholeLine, ignoreComment);
+    return newContent != null && zone.setTextBox(box, newContent);
   }
 
   /**
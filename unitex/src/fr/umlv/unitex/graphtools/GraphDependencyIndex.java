@@ -0,0 +1,404 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphtools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.grf.GrfBoxContent;
+import fr.umlv.unitex.grf.GrfModel;
+import fr.umlv.unitex.grf.GrfReader;
+
+/**
+ * This class is an incremental index of graph calls. For each graph, it
+ * stores the graphs it calls directly, with the length and the date of the
+ * .grf they were computed from, so that a graph is only read again when it
+ * has been modified. The index can be saved in a file, so that it survives
+ * from one session to another.
+ */
+public class GraphDependencyIndex {
+	private static final int MAGIC = 0x47444550; /* "GDEP" */
+	private static final int VERSION = 1;
+
+	/**
+	 * Name of the index file in the directory it describes
+	 */
+	public static final String FILE_NAME = "graph_dependencies.cache";
+
+	/*
+	 * The call is made from at least one box that is both accessible and
+	 * coaccessible
+	 */
+	private static final int SOME_USEFUL = 1;
+	/*
+	 * All the boxes the call is made from are both accessible and
+	 * coaccessible
+	 */
+	private static final int ALL_USEFUL = 2;
+
+	private static final HashMap<File, GraphDependencyIndex> indexes = new HashMap<File, GraphDependencyIndex>();
+	private static final GraphDependencyIndex memoryIndex = new GraphDependencyIndex(
+			null);
+
+	/**
+	 * The graphs directly called by a graph, as computed from a given version
+	 * of this graph. calls is null if the graph could not be read.
+	 */
+	private static class Entry {
+		final long length;
+		final long lastModified;
+		final File[] calls;
+		final byte[] flags;
+
+		Entry(long length, long lastModified, File[] calls, byte[] flags) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.calls = calls;
+			this.flags = flags;
+		}
+
+		boolean isUpToDate(File grf) {
+			return lastModified == grf.lastModified()
+					&& length == grf.length();
+		}
+	}
+
+	private final File file;
+	private final HashMap<File, Entry> entries = new HashMap<File, Entry>();
+	private boolean modified = false;
+
+	private GraphDependencyIndex(File file) {
+		this.file = file;
+		if (file != null) {
+			load();
+		}
+	}
+
+	/**
+	 * Returns the index of the given directory, which is saved in this
+	 * directory. There is only one instance per directory.
+	 */
+	public static synchronized GraphDependencyIndex getIndex(File rootDir) {
+		final File f = new File(rootDir, FILE_NAME).getAbsoluteFile();
+		GraphDependencyIndex index = indexes.get(f);
+		if (index == null) {
+			index = new GraphDependencyIndex(f);
+			indexes.put(f, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns an index that is shared by all callers but never saved. It is
+	 * used when there is no directory to save an index into.
+	 */
+	public static GraphDependencyIndex getMemoryIndex() {
+		return memoryIndex;
+	}
+
+	/**
+	 * Returns all the graphs that call the given one, directly or not, among
+	 * the graphs of rootDir and its subdirectories, and the graphs they call.
+	 * Useless calls are taken into account.
+	 */
+	public synchronized ArrayList<GraphCall> whoCalls(File grf, File rootDir) {
+		if (!rootDir.isDirectory())
+			throw new IllegalArgumentException("Directory expected");
+		final ArrayList<File> graphs = FileUtil.getGraphs(rootDir);
+		update(graphs);
+		removeDeletedGraphs();
+		final ArrayList<GraphCall> callers = new ArrayList<GraphCall>();
+		final HashSet<File> visited = new HashSet<File>();
+		final ArrayDeque<File> queue = new ArrayDeque<File>(graphs);
+		while (!queue.isEmpty()) {
+			final File f = queue.poll();
+			if (!visited.add(f)) {
+				continue;
+			}
+			final Entry e = getEntry(f);
+			if (e.calls == null) {
+				continue;
+			}
+			boolean caller = false;
+			for (final File called : e.calls) {
+				if (called.equals(grf)) {
+					caller = true;
+				}
+				queue.add(called);
+			}
+			if (caller) {
+				callers.add(new GraphCall(f));
+			}
+		}
+		save();
+		Collections.sort(callers);
+		return callers;
+	}
+
+	/**
+	 * Returns the list of all the graphs called by the given grf, directly or
+	 * not. A graph called directly from grf is marked as useless if at least
+	 * one of its calls is in a box that is not both accessible and
+	 * coaccessible. Graphs that are only called from useless boxes of
+	 * subgraphs are ignored.
+	 */
+	public synchronized ArrayList<GraphCall> getAllSubgraphs(File grf) {
+		final TreeSet<GraphCall> result = new TreeSet<GraphCall>();
+		final HashSet<File> visited = new HashSet<File>();
+		final ArrayDeque<File> queue = new ArrayDeque<File>();
+		visited.add(grf);
+		final Entry main = getEntry(grf);
+		if (main.calls != null) {
+			for (int i = 0; i < main.calls.length; i++) {
+				result.add(new GraphCall(main.calls[i],
+						(main.flags[i] & ALL_USEFUL) != 0, true));
+				queue.add(main.calls[i]);
+			}
+		}
+		while (!queue.isEmpty()) {
+			final File f = queue.poll();
+			if (!visited.add(f)) {
+				continue;
+			}
+			final Entry e = getEntry(f);
+			if (e.calls == null) {
+				continue;
+			}
+			for (int i = 0; i < e.calls.length; i++) {
+				if ((e.flags[i] & SOME_USEFUL) != 0) {
+					result.add(new GraphCall(e.calls[i], true, false));
+					queue.add(e.calls[i]);
+				}
+			}
+		}
+		save();
+		return new ArrayList<GraphCall>(result);
+	}
+
+	private Entry getEntry(File grf) {
+		Entry e = entries.get(grf);
+		if (e == null || !e.isUpToDate(grf)) {
+			e = readEntry(grf);
+			entries.put(grf, e);
+			modified = true;
+		}
+		return e;
+	}
+
+	/**
+	 * Reads again all the given graphs that are not up to date. As there may
+	 * be many of them when an index is created, they are read in parallel.
+	 */
+	private void update(List<File> graphs) {
+		final ArrayList<Callable<Entry>> tasks = new ArrayList<Callable<Entry>>();
+		final ArrayList<File> files = new ArrayList<File>();
+		for (final File f : graphs) {
+			final Entry e = entries.get(f);
+			if (e != null && e.isUpToDate(f)) {
+				continue;
+			}
+			files.add(f);
+			tasks.add(new Callable<Entry>() {
+				@Override
+				public Entry call() {
+					return readEntry(f);
+				}
+			});
+		}
+		if (tasks.isEmpty()) {
+			return;
+		}
+		final List<Future<Entry>> results = ForkJoinPool.commonPool()
+				.invokeAll(tasks);
+		for (int i = 0; i < files.size(); i++) {
+			try {
+				entries.put(files.get(i), results.get(i).get());
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (final ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+		modified = true;
+	}
+
+	private void removeDeletedGraphs() {
+		final Iterator<File> it = entries.keySet().iterator();
+		while (it.hasNext()) {
+			if (!it.next().exists()) {
+				it.remove();
+				modified = true;
+			}
+		}
+	}
+
+	/**
+	 * Computes the graphs directly called from grf.
+	 */
+	private static Entry readEntry(File grf) {
+		final long lastModified = grf.lastModified();
+		final long length = grf.length();
+		GrfModel model;
+		try {
+			model = GrfReader.read(grf);
+		} catch (final Exception e) {
+			return new Entry(length, lastModified, null, null);
+		}
+		final ArrayList<File> calls = new ArrayList<File>();
+		final ArrayList<Integer> flags = new ArrayList<Integer>();
+		final boolean[] accessible = model.getAccessibleBoxes();
+		final boolean[] coaccessible = model.getCoaccessibleBoxes();
+		for (int i = 0; i < model.getBoxCount(); i++) {
+			final boolean useful = accessible[i] && coaccessible[i];
+			final GrfBoxContent box = model.getBoxContent(i);
+			for (int j = 0; j < box.getLines().size(); j++) {
+				if (!box.isSubgraphCall(j)) {
+					continue;
+				}
+				final File f = Dependancies.getSubgraph(box.getLines().get(j),
+						grf);
+				if (f.equals(grf)) {
+					continue;
+				}
+				final int n = calls.indexOf(f);
+				if (n == -1) {
+					calls.add(f);
+					flags.add(useful ? SOME_USEFUL | ALL_USEFUL : 0);
+				} else if (useful) {
+					flags.set(n, flags.get(n) | SOME_USEFUL);
+				} else {
+					flags.set(n, flags.get(n) & ~ALL_USEFUL);
+				}
+			}
+		}
+		final byte[] b = new byte[flags.size()];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) flags.get(i).intValue();
+		}
+		return new Entry(length, lastModified, calls.toArray(new File[calls
+				.size()]), b);
+	}
+
+	private void load() {
+		if (!file.exists()) {
+			return;
+		}
+		try {
+			final DataInputStream in = new DataInputStream(
+					new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					return;
+				}
+				final int n = in.readInt();
+				for (int i = 0; i < n; i++) {
+					final File grf = new File(in.readUTF());
+					final long length = in.readLong();
+					final long lastModified = in.readLong();
+					final int nCalls = in.readInt();
+					File[] calls = null;
+					byte[] flags = null;
+					if (nCalls != -1) {
+						calls = new File[nCalls];
+						flags = new byte[nCalls];
+						for (int j = 0; j < nCalls; j++) {
+							calls[j] = new File(in.readUTF());
+							flags[j] = in.readByte();
+						}
+					}
+					entries.put(grf, new Entry(length, lastModified, calls,
+							flags));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (final IOException e) {
+			/* The index is just an optimization, so we can lose it */
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Saves the index if it has been modified, through a temporary file, so
+	 * that an interrupted save cannot leave a corrupted index.
+	 */
+	private void save() {
+		if (file == null || !modified) {
+			return;
+		}
+		final File tmp = new File(file.getAbsolutePath() + ".tmp");
+		try {
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(entries.size());
+				for (final File grf : entries.keySet()) {
+					final Entry e = entries.get(grf);
+					out.writeUTF(grf.getPath());
+					out.writeLong(e.length);
+					out.writeLong(e.lastModified);
+					if (e.calls == null) {
+						out.writeInt(-1);
+						continue;
+					}
+					out.writeInt(e.calls.length);
+					for (int j = 0; j < e.calls.length; j++) {
+						out.writeUTF(e.calls[j].getPath());
+						out.writeByte(e.flags[j]);
+					}
+				}
+			} finally {
+				out.close();
+			}
+		} catch (final IOException e) {
+			e.printStackTrace();
+			tmp.delete();
+			return;
+		}
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			tmp.renameTo(file);
+		}
+		modified = false;
+	}
+}
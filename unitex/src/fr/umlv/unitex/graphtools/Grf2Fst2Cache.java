@@ -0,0 +1,321 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphtools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import fr.umlv.unitex.grf.GrfBoxContent;
+import fr.umlv.unitex.grf.GrfModel;
+import fr.umlv.unitex.grf.GrfReader;
+
+/**
+ * This class is a persistent cache of graph compilations. Each .fst2 is
+ * associated to a hash of everything Grf2Fst2 depends on: the main graph, all
+ * the graphs it calls (directly or not), the alphabet and the compilation
+ * options. If this hash has not changed and the .fst2 is the one we produced,
+ * the compilation can be skipped.
+ */
+public class Grf2Fst2Cache {
+
+	private static final HashMap<File, Grf2Fst2Cache> caches = new HashMap<File, Grf2Fst2Cache>();
+
+	private final File file;
+	private final Properties properties;
+
+	private Grf2Fst2Cache(File file) {
+		this.file = file;
+		this.properties = loadProperties(file);
+	}
+
+	/**
+	 * Returns the cache stored in the given file. There is only one instance
+	 * per file, so that concurrent compilations share the same data.
+	 */
+	public static synchronized Grf2Fst2Cache getCache(File file) {
+		final File f = file.getAbsoluteFile();
+		Grf2Fst2Cache cache = caches.get(f);
+		if (cache == null) {
+			cache = new Grf2Fst2Cache(f);
+			caches.put(f, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Computes the key of a compilation.
+	 * 
+	 * @param grf
+	 *            the main graph
+	 * @param alphabet
+	 *            the alphabet, or null if none
+	 * @param options
+	 *            a string representing all the compilation options
+	 * @param repository
+	 *            the default graph repository given to Grf2Fst2 with -d, or
+	 *            null if none
+	 * @param namedRepositories
+	 *            the named repositories given to Grf2Fst2 with -r
+	 * @return the key, or null if it could not be computed
+	 */
+	public static String computeKey(File grf, File alphabet, String options,
+			File repository, Map<String, File> namedRepositories) {
+		if (!grf.exists()) {
+			return null;
+		}
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (final NoSuchAlgorithmException e) {
+			return null;
+		}
+		try {
+			update(digest, options);
+			update(digest, grf);
+			update(digest, alphabet);
+			for (final String call : getAllSubgraphs(grf, repository,
+					namedRepositories)) {
+				if (call.startsWith(":")) {
+					/* A repository call that cannot be resolved */
+					update(digest, call);
+				} else {
+					update(digest, new File(call));
+				}
+			}
+		} catch (final IOException e) {
+			return null;
+		}
+		final byte[] hash = digest.digest();
+		final StringBuilder b = new StringBuilder(2 * hash.length);
+		for (final byte x : hash) {
+			b.append(Character.forDigit((x >> 4) & 0xF, 16));
+			b.append(Character.forDigit(x & 0xF, 16));
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Returns the sorted paths of all the graphs called by grf, directly or
+	 * not. Unlike Dependancies.getAllSubgraphs, repository calls are resolved
+	 * with the repositories of the command, and not with the ones of the
+	 * current configuration. Repository calls that cannot be resolved are
+	 * returned as they are, starting with ':'.
+	 */
+	private static TreeSet<String> getAllSubgraphs(File grf, File repository,
+			Map<String, File> namedRepositories) {
+		final TreeSet<String> result = new TreeSet<String>();
+		final HashSet<File> visited = new HashSet<File>();
+		final ArrayDeque<File> queue = new ArrayDeque<File>();
+		queue.add(grf.getAbsoluteFile());
+		while (!queue.isEmpty()) {
+			final File f = queue.poll();
+			if (!visited.add(f) || !f.exists()) {
+				continue;
+			}
+			final GrfModel model;
+			try {
+				model = GrfReader.read(f);
+			} catch (final Exception e) {
+				continue;
+			}
+			for (int i = 0; i < model.getBoxCount(); i++) {
+				final GrfBoxContent box = model.getBoxContent(i);
+				for (int j = 0; j < box.getLines().size(); j++) {
+					if (!box.isSubgraphCall(j)) {
+						continue;
+					}
+					final String call = box.getLines().get(j);
+					final File sub = getSubgraph(call, f, repository,
+							namedRepositories);
+					if (sub == null) {
+						result.add(call);
+						continue;
+					}
+					final File abs = sub.getAbsoluteFile();
+					if (!abs.equals(grf.getAbsoluteFile())) {
+						result.add(abs.getPath());
+					}
+					queue.add(abs);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Resolves a subgraph call like Grf2Fst2 does with the given
+	 * repositories.
+	 * 
+	 * @return the called graph, or null for a repository call with no
+	 *         matching repository
+	 */
+	private static File getSubgraph(String s, File parent, File repository,
+			Map<String, File> namedRepositories) {
+		if (!s.startsWith(":")) {
+			return Dependancies.getSubgraph(s, parent);
+		}
+		if (!s.endsWith(".grf")) {
+			s = s + ".grf";
+		}
+		File dir = repository;
+		if (s.startsWith(":$")) {
+			int pos = 2;
+			while (pos < s.length() && s.charAt(pos) != ':'
+					&& s.charAt(pos) != '/' && s.charAt(pos) != '\\') {
+				pos++;
+			}
+			if (pos == s.length()) {
+				return null;
+			}
+			dir = (namedRepositories == null) ? null : namedRepositories
+					.get(s.substring(2, pos));
+			s = s.substring(pos);
+		}
+		if (dir == null) {
+			return null;
+		}
+		while (s.startsWith(":") || s.startsWith("/") || s.startsWith("\\")) {
+			s = s.substring(1);
+		}
+		return new File(dir, s.replace(':', File.separatorChar));
+	}
+
+	private static void update(MessageDigest digest, String s)
+			throws UnsupportedEncodingException {
+		digest.update(s.getBytes("UTF-8"));
+		digest.update((byte) 0);
+	}
+
+	private static void update(MessageDigest digest, File f)
+			throws IOException {
+		if (f == null) {
+			update(digest, "<none>");
+			return;
+		}
+		update(digest, f.getAbsolutePath());
+		if (!f.exists()) {
+			/* A missing subgraph is part of the key too */
+			update(digest, "<missing>");
+			return;
+		}
+		final InputStream stream = new FileInputStream(f);
+		try {
+			final byte[] buffer = new byte[8192];
+			int n;
+			while ((n = stream.read(buffer)) != -1) {
+				digest.update(buffer, 0, n);
+			}
+		} finally {
+			stream.close();
+		}
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * @return true if the given .fst2 was compiled with the given key and has
+	 *         not been modified since
+	 */
+	public synchronized boolean isUpToDate(File fst2, String key) {
+		if (key == null || !fst2.exists()) {
+			return false;
+		}
+		return getValue(fst2, key).equals(
+				properties.getProperty(fst2.getAbsolutePath()));
+	}
+
+	/**
+	 * Records that the given .fst2 has just been compiled with the given key.
+	 */
+	public synchronized void put(File fst2, String key) {
+		if (key == null || !fst2.exists()) {
+			return;
+		}
+		properties.setProperty(fst2.getAbsolutePath(), getValue(fst2, key));
+		save();
+	}
+
+	public synchronized void remove(File fst2) {
+		if (properties.remove(fst2.getAbsolutePath()) != null) {
+			save();
+		}
+	}
+
+	private static String getValue(File fst2, String key) {
+		return key + " " + fst2.length() + " " + fst2.lastModified();
+	}
+
+	private static Properties loadProperties(File f) {
+		final Properties p = new Properties();
+		FileInputStream stream = null;
+		try {
+			stream = new FileInputStream(f);
+		} catch (final FileNotFoundException e) {
+			return p;
+		}
+		try {
+			p.load(stream);
+			stream.close();
+		} catch (final IOException e) {
+			e.printStackTrace();
+		}
+		return p;
+	}
+
+	/**
+	 * Saves the cache through a temporary file, so that an interrupted save
+	 * cannot leave a corrupted cache.
+	 */
+	private void save() {
+		final File parent = file.getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		final File tmp = new File(file.getAbsolutePath() + ".tmp");
+		try {
+			final FileOutputStream stream = new FileOutputStream(tmp);
+			try {
+				properties.store(stream, "Grf2Fst2 compilation cache");
+			} finally {
+				stream.close();
+			}
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			tmp.renameTo(file);
+		}
+	}
+}
@@ -0,0 +1,352 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.grf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Stack;
+
+import fr.umlv.unitex.exceptions.BackSlashAtEndOfLineException;
+import fr.umlv.unitex.exceptions.MissingGraphNameException;
+import fr.umlv.unitex.exceptions.NoClosingQuoteException;
+import fr.umlv.unitex.exceptions.NoClosingRoundBracketException;
+import fr.umlv.unitex.exceptions.NoClosingSupException;
+
+/**
+ * This class gives the lines and the output of a box content, as they are
+ * computed by the graph boxes, but without any rendering information, so that
+ * it can be used without AWT.
+ */
+public class GrfBoxContent {
+	private static final GrfBoxContent EMPTY = new GrfBoxContent(
+			new ArrayList<String>(), new ArrayList<Boolean>(), "", false);
+
+	private final List<String> lines;
+	private final boolean[] subgraphCalls;
+	private final String transduction;
+	private final boolean commentBox;
+
+	private GrfBoxContent(List<String> lines, List<Boolean> greyed,
+			String transduction, boolean commentBox) {
+		this.lines = Collections.unmodifiableList(lines);
+		this.subgraphCalls = new boolean[greyed.size()];
+		for (int i = 0; i < subgraphCalls.length; i++) {
+			subgraphCalls[i] = greyed.get(i);
+		}
+		this.transduction = transduction;
+		this.commentBox = commentBox;
+	}
+
+	public List<String> getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return true if the line #i is a subgraph call, whose name is the line
+	 *         without the initial ':'
+	 */
+	public boolean isSubgraphCall(int i) {
+		return subgraphCalls[i];
+	}
+
+	public String getTransduction() {
+		return transduction;
+	}
+
+	public boolean isCommentBox() {
+		return commentBox;
+	}
+
+	/**
+	 * Tokenizes a box content the way GraphBox.setContent does. A final state
+	 * has no line. If the content is malformed, the lines that could be read
+	 * are kept, like in GraphBox.
+	 */
+	public static GrfBoxContent parse(String content, boolean finalState) {
+		if (finalState || content == null || content.length() == 0) {
+			return EMPTY;
+		}
+		final ArrayList<String> lines = new ArrayList<String>();
+		final ArrayList<Boolean> greyed = new ArrayList<Boolean>();
+		if (tokenizeCommentBox(content, lines)) {
+			for (int j = 0; j < lines.size(); j++) {
+				greyed.add(Boolean.FALSE);
+			}
+			return new GrfBoxContent(lines, greyed, "", true);
+		}
+		lines.clear();
+		final int L = content.length();
+		if (content.charAt(0) == '$'
+				&& (content.charAt(L - 1) == '(' || content.charAt(L - 1) == ')')) {
+			/* Case of $a( or $a) */
+			final boolean outputVariable = (L > 1 && content.charAt(1) == '|');
+			lines.add(String.valueOf(content.charAt(L - 1)));
+			greyed.add(Boolean.FALSE);
+			final int start = 1 + (outputVariable ? 1 : 0);
+			return new GrfBoxContent(lines, greyed, start <= L - 1 ? content
+					.substring(start, L - 1) : "", false);
+		}
+		if (content.equals("$[") || content.equals("$![")
+				|| content.equals("$]") || content.equals("$*")
+				|| content.equals("$<") || content.equals("$>")) {
+			/* Case of context marks and morphological mode marks */
+			lines.add(content.substring(1));
+			greyed.add(Boolean.FALSE);
+			return new GrfBoxContent(lines, greyed, "", false);
+		}
+		if (content.equals("$G") || content.startsWith("$G/")) {
+			lines.add(content.substring(1, 2));
+			greyed.add(Boolean.FALSE);
+			String transduction = "";
+			if (content.length() > 3 && content.charAt(2) == '/') {
+				transduction = content.substring(3);
+			}
+			return new GrfBoxContent(lines, greyed, transduction, false);
+		}
+		int i = 0;
+		while (i != L && !isTransductionSlash(content, i)) {
+			i++;
+		}
+		final String tmp = content.substring(0, i);
+		final String transduction = (i != L) ? content.substring(i + 1) : "";
+		if (!tmp.equals("<E>")) {
+			try {
+				tokenizeLines(tmp, lines, greyed);
+			} catch (final BackSlashAtEndOfLineException e) {
+				/* We keep what could be read */
+			} catch (final MissingGraphNameException e) {
+				/* idem */
+			} catch (final NoClosingQuoteException e) {
+				/* idem */
+			} catch (final NoClosingRoundBracketException e) {
+				/* idem */
+			} catch (final NoClosingSupException e) {
+				/* idem */
+			}
+		}
+		return new GrfBoxContent(lines, greyed, transduction, false);
+	}
+
+	/**
+	 * Returns true if there is a / at position i that is not protected by an
+	 * odd number of backslashes.
+	 */
+	private static boolean isTransductionSlash(String s, int i) {
+		if (s.charAt(i) != '/')
+			return false;
+		int n = 0;
+		i--;
+		while (i >= 0 && s.charAt(i) == '\\') {
+			n++;
+			i--;
+		}
+		return (n % 2) == 0;
+	}
+
+	private static boolean isAPlusChar(char c) {
+		return (c == '+' || c == '\uff0b');
+	}
+
+	/**
+	 * Reads a \ and the char it protects.
+	 */
+	private static int appendEscaped(String s, int i, StringBuilder b)
+			throws BackSlashAtEndOfLineException {
+		b.append(s.charAt(i++));
+		if (i >= s.length()) {
+			throw new BackSlashAtEndOfLineException();
+		}
+		b.append(s.charAt(i++));
+		return i;
+	}
+
+	/**
+	 * Reads a "...", <...> or {...} expression that starts at i.
+	 */
+	private static int appendDelimited(String s, int i, char end,
+			StringBuilder b) throws BackSlashAtEndOfLineException,
+			NoClosingQuoteException, NoClosingSupException,
+			NoClosingRoundBracketException {
+		final int L = s.length();
+		b.append(s.charAt(i++));
+		while (i < L && s.charAt(i) != end) {
+			if (s.charAt(i) == '\\') {
+				i = appendEscaped(s, i, b);
+			} else {
+				b.append(s.charAt(i++));
+			}
+		}
+		if (i >= L) {
+			switch (end) {
+			case '"':
+				throw new NoClosingQuoteException();
+			case '>':
+				throw new NoClosingSupException();
+			default:
+				throw new NoClosingRoundBracketException();
+			}
+		}
+		b.append(s.charAt(i++));
+		return i;
+	}
+
+	/**
+	 * Splits a box input into its lines, that are separated by + chars. The
+	 * lines that are subgraph calls are marked as greyed, and their initial
+	 * ':' is removed.
+	 */
+	public static void tokenizeLines(String s, List<String> lines,
+			List<Boolean> greyed) throws BackSlashAtEndOfLineException,
+			MissingGraphNameException, NoClosingQuoteException,
+			NoClosingSupException, NoClosingRoundBracketException {
+		final int L = s.length();
+		int i = 0;
+		final StringBuilder tmp = new StringBuilder();
+		while (i < L) {
+			tmp.setLength(0);
+			if (s.charAt(i) == ':') {
+				/* Case of a sub graph call */
+				i++;
+				while (i < L && !isAPlusChar(s.charAt(i))) {
+					if (s.charAt(i) == '\\') {
+						i = appendEscaped(s, i, tmp);
+					} else {
+						tmp.append(s.charAt(i++));
+					}
+				}
+				if (tmp.length() == 0) {
+					throw new MissingGraphNameException();
+				}
+				i++;
+				lines.add(tmp.toString());
+				greyed.add(Boolean.TRUE);
+				continue;
+			}
+			while (i < L && !isAPlusChar(s.charAt(i))) {
+				final char c = s.charAt(i);
+				if (c == '"') {
+					i = appendDelimited(s, i, '"', tmp);
+				} else if (c == '<') {
+					i = appendDelimited(s, i, '>', tmp);
+				} else if (c == '{') {
+					i = appendDelimited(s, i, '}', tmp);
+				} else if (c == '\\') {
+					i = appendEscaped(s, i, tmp);
+				} else {
+					tmp.append(c);
+					i++;
+				}
+			}
+			lines.add(tmp.toString());
+			greyed.add(Boolean.FALSE);
+			i++;
+		}
+	}
+
+	/**
+	 * Checks that quotes, <...> and {...} are balanced in a box content.
+	 */
+	public static void checkContent(String s)
+			throws BackSlashAtEndOfLineException, MissingGraphNameException,
+			NoClosingQuoteException, NoClosingSupException,
+			NoClosingRoundBracketException {
+		if (s.equals(":")) {
+			throw new MissingGraphNameException();
+		}
+		if (s.endsWith("\\")) {
+			throw new BackSlashAtEndOfLineException();
+		}
+		final Stack<Character> stack = new Stack<Character>();
+		int count = 0;
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"') {
+				count++;
+			}
+			if (c == '<' || c == '{') {
+				stack.push(c);
+			} else if (c == '>') {
+				if (stack.isEmpty() || stack.pop() != '<') {
+					throw new NoClosingSupException();
+				}
+			} else if (c == '}') {
+				if (stack.isEmpty() || stack.pop() != '{') {
+					throw new NoClosingRoundBracketException();
+				}
+			}
+		}
+		if ((count % 2) == 1) {
+			throw new NoClosingQuoteException();
+		}
+		if (!stack.isEmpty()) {
+			final Character c = stack.pop();
+			if (c == '{') {
+				throw new NoClosingRoundBracketException();
+			}
+			if (c == '<') {
+				throw new NoClosingSupException();
+			}
+		}
+	}
+
+	/**
+	 * Tokenizes a comment box. Returns true if the given String was a valid
+	 * comment. If lines is not null, it is filled with the String to be
+	 * displayed in the box.
+	 */
+	public static boolean tokenizeCommentBox(String line, List<String> lines) {
+		if (lines != null)
+			lines.clear();
+		if (line == null || !line.startsWith("/") || line.equals("/")
+				|| line.startsWith("/+"))
+			return false;
+		final int l = line.length();
+		final StringBuilder builder = new StringBuilder();
+		int i = 1;
+		while (i < l) {
+			builder.setLength(0);
+			while (i < l && line.charAt(i) != '+') {
+				if (line.charAt(i) == '\\') {
+					if (i + 1 == l) {
+						/* A \ at the end of the content is an error */
+						if (lines != null)
+							lines.clear();
+						return false;
+					}
+					i++;
+				}
+				builder.append(line.charAt(i));
+				i++;
+			}
+			if (i + 1 == l && line.charAt(i) == '+') {
+				/* A + at the end of the content is an error */
+				if (lines != null)
+					lines.clear();
+				return false;
+			}
+			i++;
+			if (lines != null)
+				lines.add(builder.toString());
+		}
+		return true;
+	}
+}
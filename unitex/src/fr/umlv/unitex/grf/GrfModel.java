@@ -0,0 +1,369 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.grf;
+
+import java.io.File;
+
+import fr.umlv.unitex.io.Encoding;
+
+/**
+ * This class describes a .grf file as it was read by GrfReader: header
+ * information, box contents, coordinates and transitions are stored in plain
+ * arrays, so that graphs can be explored without building any rendering
+ * object.
+ */
+public class GrfModel {
+	/**
+	 * Index of the initial box
+	 */
+	public static final int INITIAL = 0;
+	/**
+	 * Index of the final box
+	 */
+	public static final int FINAL = 1;
+
+	/**
+	 * Font information as found in the FONT and OFONT lines.
+	 */
+	public static class FontInfo {
+		private final String name;
+		private final boolean bold;
+		private final boolean italic;
+		private final int size;
+
+		FontInfo(String name, boolean bold, boolean italic, int size) {
+			this.name = name;
+			this.bold = bold;
+			this.italic = italic;
+			this.size = size;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isBold() {
+			return bold;
+		}
+
+		public boolean isItalic() {
+			return italic;
+		}
+
+		/**
+		 * @return the size in points, as it is saved in the .grf
+		 */
+		public int getSize() {
+			return size;
+		}
+	}
+
+	private final File grf;
+	Encoding encoding;
+	int width;
+	int height;
+	FontInfo input;
+	FontInfo output;
+	int backgroundColor;
+	int foregroundColor;
+	int subgraphColor;
+	int commentColor;
+	int selectedColor;
+	boolean frame;
+	boolean date;
+	boolean filename;
+	boolean pathname;
+	boolean rightToLeft;
+	final GraphMetaData metadata = new GraphMetaData();
+	String[] contents;
+	int[] x;
+	int[] y;
+	boolean[] preferred;
+	/**
+	 * The transitions of box #i are
+	 * transitions[transitionStart[i]..transitionStart[i+1]-1]
+	 */
+	int[] transitionStart;
+	int[] transitions;
+	private GrfBoxContent[] boxContents;
+
+	GrfModel(File grf) {
+		this.grf = grf;
+	}
+
+	/**
+	 * Builds a sentence graph in memory, with the same presentation as the
+	 * graphs produced by Tfst2Grf. The transitions of box #i are given by
+	 * transitions[i].
+	 */
+	public static GrfModel createSentenceGraph(File grf, String fontName,
+			int fontSize, int width, int height, String[] contents, int[] x,
+			int[] y, int[][] transitions) {
+		final GrfModel model = new GrfModel(grf);
+		model.width = width;
+		model.height = height;
+		model.input = new FontInfo(fontName, false, false, fontSize);
+		model.output = new FontInfo(fontName, true, false, fontSize);
+		model.backgroundColor = 16777215;
+		model.foregroundColor = 0;
+		model.subgraphColor = 13487565;
+		model.commentColor = 255;
+		model.selectedColor = 16711680;
+		final int n = contents.length;
+		model.contents = contents;
+		model.x = x;
+		model.y = y;
+		model.preferred = new boolean[n];
+		model.transitionStart = new int[n + 1];
+		int nTransitions = 0;
+		for (int i = 0; i < n; i++) {
+			nTransitions = nTransitions + transitions[i].length;
+			model.transitionStart[i + 1] = nTransitions;
+		}
+		model.transitions = new int[nTransitions];
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(transitions[i], 0, model.transitions,
+					model.transitionStart[i], transitions[i].length);
+		}
+		return model;
+	}
+
+	public File getGrf() {
+		return grf;
+	}
+
+	/**
+	 * @return the encoding the .grf was read with
+	 */
+	public Encoding getEncoding() {
+		return encoding;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public FontInfo getInputFont() {
+		return input;
+	}
+
+	public FontInfo getOutputFont() {
+		return output;
+	}
+
+	public int getBackgroundColor() {
+		return backgroundColor;
+	}
+
+	public int getForegroundColor() {
+		return foregroundColor;
+	}
+
+	public int getSubgraphColor() {
+		return subgraphColor;
+	}
+
+	public int getCommentColor() {
+		return commentColor;
+	}
+
+	public int getSelectedColor() {
+		return selectedColor;
+	}
+
+	public boolean isFrame() {
+		return frame;
+	}
+
+	public boolean isDate() {
+		return date;
+	}
+
+	public boolean isFilename() {
+		return filename;
+	}
+
+	public boolean isPathname() {
+		return pathname;
+	}
+
+	public boolean isRightToLeft() {
+		return rightToLeft;
+	}
+
+	public GraphMetaData getMetadata() {
+		return metadata;
+	}
+
+	public int getBoxCount() {
+		return contents.length;
+	}
+
+	/**
+	 * @return the raw content of the box, as it is saved in the .grf; the
+	 *         content of the final box is always empty
+	 */
+	public String getContent(int box) {
+		return contents[box];
+	}
+
+	/**
+	 * Changes the raw content of a box. The content of the final box cannot
+	 * be changed.
+	 */
+	public synchronized void setContent(int box, String content) {
+		if (box == FINAL) {
+			throw new IllegalArgumentException(
+					"Cannot set the content of the final box");
+		}
+		contents[box] = content;
+		if (boxContents != null) {
+			boxContents[box] = null;
+		}
+	}
+
+	public int getX(int box) {
+		return x[box];
+	}
+
+	public int getY(int box) {
+		return y[box];
+	}
+
+	/**
+	 * @return true if the box line ends with 'p', which is used in sentence
+	 *         graphs to indicate preferred tags
+	 */
+	public boolean isPreferred(int box) {
+		return preferred[box];
+	}
+
+	public int getTransitionCount(int box) {
+		return transitionStart[box + 1] - transitionStart[box];
+	}
+
+	/**
+	 * @return the index of the destination box of the transition #n of the
+	 *         given box
+	 */
+	public int getTransition(int box, int n) {
+		return transitions[transitionStart[box] + n];
+	}
+
+	public boolean hasTransition(int src, int dst) {
+		for (int i = transitionStart[src]; i < transitionStart[src + 1]; i++) {
+			if (transitions[i] == dst) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the tokenized content of the given box. Boxes are only
+	 * tokenized on demand, and the result is cached.
+	 */
+	public synchronized GrfBoxContent getBoxContent(int box) {
+		if (boxContents == null) {
+			boxContents = new GrfBoxContent[contents.length];
+		}
+		GrfBoxContent c = boxContents[box];
+		if (c == null) {
+			c = GrfBoxContent.parse(contents[box], box == FINAL);
+			boxContents[box] = c;
+		}
+		return c;
+	}
+
+	/**
+	 * @return an array indicating for each box if it can be reached from the
+	 *         initial box
+	 */
+	public boolean[] getAccessibleBoxes() {
+		final int n = contents.length;
+		final boolean[] marked = new boolean[n];
+		if (n == 0) {
+			return marked;
+		}
+		final int[] stack = new int[n];
+		int top = 0;
+		stack[top++] = INITIAL;
+		marked[INITIAL] = true;
+		while (top > 0) {
+			final int box = stack[--top];
+			for (int i = transitionStart[box]; i < transitionStart[box + 1]; i++) {
+				final int dst = transitions[i];
+				if (!marked[dst]) {
+					marked[dst] = true;
+					stack[top++] = dst;
+				}
+			}
+		}
+		return marked;
+	}
+
+	/**
+	 * @return an array indicating for each box if the final box can be
+	 *         reached from it
+	 */
+	public boolean[] getCoaccessibleBoxes() {
+		final int n = contents.length;
+		final boolean[] marked = new boolean[n];
+		if (n <= FINAL) {
+			return marked;
+		}
+		/* We build the reversed transitions with the same layout */
+		final int[] reverseStart = new int[n + 1];
+		for (final int dst : transitions) {
+			reverseStart[dst + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			reverseStart[i + 1] += reverseStart[i];
+		}
+		final int[] reverse = new int[transitions.length];
+		final int[] fill = new int[n];
+		for (int src = 0; src < n; src++) {
+			for (int i = transitionStart[src]; i < transitionStart[src + 1]; i++) {
+				final int dst = transitions[i];
+				reverse[reverseStart[dst] + fill[dst]++] = src;
+			}
+		}
+		final int[] stack = new int[n];
+		int top = 0;
+		stack[top++] = FINAL;
+		marked[FINAL] = true;
+		while (top > 0) {
+			final int box = stack[--top];
+			for (int i = reverseStart[box]; i < reverseStart[box + 1]; i++) {
+				final int src = reverse[i];
+				if (!marked[src]) {
+					marked[src] = true;
+					stack[top++] = src;
+				}
+			}
+		}
+		return marked;
+	}
+}
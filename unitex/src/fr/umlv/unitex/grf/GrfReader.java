@@ -0,0 +1,375 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.grf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import fr.umlv.unitex.io.Encoding;
+
+/**
+ * This class reads .grf files into GrfModel objects. It never uses AWT nor
+ * Swing: errors are reported with IOException, so that it can be used when
+ * processing many graphs at once. The whole file is read and decoded in one
+ * call, then parsed from the char array.
+ */
+public class GrfReader {
+	private final char[] buffer;
+	private final int length;
+	private int pos;
+
+	private GrfReader(char[] buffer, int length) {
+		this.buffer = buffer;
+		this.length = length;
+	}
+
+	/**
+	 * Reads the given .grf file. The encoding is detected as
+	 * Encoding.getEncoding does.
+	 */
+	public static GrfModel read(File grf) throws IOException {
+		final byte[] bytes = Files.readAllBytes(grf.toPath());
+		final ByteBuffer src = ByteBuffer.wrap(bytes);
+		Encoding encoding = Encoding.UTF8;
+		int start = 0;
+		if (bytes.length >= 2 && bytes.length % 2 == 0) {
+			if ((bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE) {
+				encoding = Encoding.UTF16LE;
+				start = 2;
+			} else if ((bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) {
+				encoding = Encoding.UTF16BE;
+				start = 2;
+			}
+		}
+		final char[] chars = new char[bytes.length];
+		final int n = encoding.decode(src, start, bytes.length, chars);
+		if (encoding == Encoding.UTF8) {
+			checkUTF8(chars, n);
+		}
+		final GrfModel model = new GrfReader(chars, n).parse(grf);
+		model.encoding = encoding;
+		return model;
+	}
+
+	/**
+	 * Rejects files that Encoding.UTF8.isValidEncoding would reject, i.e.
+	 * files with a malformed sequence before the first non ASCII char.
+	 */
+	private static void checkUTF8(char[] chars, int n) throws IOException {
+		for (int i = 0; i < n && i < 4096; i++) {
+			if (chars[i] == Encoding.REPLACEMENT_CHAR) {
+				throw new IOException("not a Unicode graph");
+			}
+			if (chars[i] > 128) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads a char, turning \r\n into \n, as UnicodeIO.readChar does.
+	 */
+	private int readChar() {
+		if (pos >= length)
+			return -1;
+		final char c = buffer[pos++];
+		if (c == '\r') {
+			pos++;
+			return '\n';
+		}
+		return c;
+	}
+
+	private void skipChars(int n) {
+		for (int i = 0; i < n; i++)
+			readChar();
+	}
+
+	private void skipLine() {
+		int c;
+		while ((c = readChar()) != '\n' && c != -1) {/**/
+		}
+	}
+
+	private String readLine() {
+		final StringBuilder b = new StringBuilder();
+		int c;
+		while ((c = readChar()) != '\n' && c != -1) {
+			b.append((char) c);
+		}
+		if (c == -1 && b.length() == 0)
+			return null;
+		return b.toString();
+	}
+
+	private static boolean isDigit(int c) {
+		return (c >= '0' && c <= '9');
+	}
+
+	/**
+	 * Reads a positive number and the char that follows it.
+	 */
+	private int readNumber(String error) throws IOException {
+		int n = 0;
+		int c;
+		while ((c = readChar()) != -1 && isDigit(c))
+			n = n * 10 + (c - '0');
+		if (c == -1)
+			throw new IOException(error);
+		return n;
+	}
+
+	private GrfModel.FontInfo readFont(int skip, String kind)
+			throws IOException {
+		final String error = "Error while reading " + kind
+				+ " font information";
+		skipChars(skip);
+		final StringBuilder name = new StringBuilder();
+		int c;
+		while ((c = readChar()) != ':' && c != -1)
+			name.append((char) c);
+		if (c == -1)
+			throw new IOException(error);
+		c = readChar();
+		if (c != 'B' && c != ' ')
+			throw new IOException(error);
+		final boolean bold = (c == 'B');
+		c = readChar();
+		if (c != 'I' && c != ' ')
+			throw new IOException(error);
+		final boolean italic = (c == 'I');
+		final int size = readNumber(error);
+		return new GrfModel.FontInfo(name.toString(), bold, italic, size);
+	}
+
+	private int readColor(String kind) throws IOException {
+		skipChars(7);
+		return readNumber("Error while reading " + kind + " color information");
+	}
+
+	private boolean readFlag(int skip, String kind) throws IOException {
+		final String error = "Error while reading " + kind + " information";
+		skipChars(skip);
+		final int c = readChar();
+		if (c != 'y' && c != 'n')
+			throw new IOException(error);
+		if (readChar() == -1)
+			throw new IOException(error);
+		return c == 'y';
+	}
+
+	private GrfModel parse(File grf) throws IOException {
+		final GrfModel model = new GrfModel(grf);
+		skipLine(); // ignoring #...
+		skipChars(5);
+		model.width = readNumber("Number expected");
+		model.height = readNumber("Number expected");
+		model.input = readFont(5, "input");
+		model.output = readFont(6, "output");
+		model.backgroundColor = readColor("background");
+		model.foregroundColor = readColor("foreground");
+		model.subgraphColor = readColor("subgraph");
+		model.commentColor = readColor("comment");
+		model.selectedColor = readColor("selected");
+		skipLine(); // ignoring DBOXES
+		model.frame = readFlag(7, "frame");
+		model.date = readFlag(6, "date");
+		model.filename = readFlag(6, "file name");
+		model.pathname = readFlag(5, "path name");
+		model.rightToLeft = readFlag(5, "right to left");
+		skipLine(); // ignoring DRST
+		skipLine(); // ignoring FITS
+		skipLine(); // ignoring PORIENT
+		/* Reading metadata until we find the # line */
+		String line;
+		while (!"#".equals(line = readLine())) {
+			if (line == null) {
+				throw new IOException("Unexpected end of file in header");
+			}
+			final int p = line.indexOf('=');
+			if (p == -1) {
+				throw new IOException("Invalid header line:\n" + line);
+			}
+			model.metadata.set(line.substring(0, p), line.substring(p + 1));
+		}
+		final int n = readNumber("Error while reading graph box number");
+		model.contents = new String[n];
+		model.x = new int[n];
+		model.y = new int[n];
+		model.preferred = new boolean[n];
+		model.transitionStart = new int[n + 1];
+		int[] transitions = new int[Math.max(16, 2 * n)];
+		int nTransitions = 0;
+		final StringBuilder b = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			model.contents[i] = readContent(i, b);
+			/* skipping the space after " */
+			if (readChar() != ' ')
+				throw new IOException(error(6, i));
+			model.x[i] = readCoordinate(i, 7);
+			model.y[i] = readCoordinate(i, 10);
+			final int trans = readNumber(error(13, i));
+			for (int j = 0; j < trans; j++) {
+				final int dest = readNumber(error(14, i));
+				if (dest >= n)
+					throw new IOException(error(14, i));
+				if (nTransitions == transitions.length) {
+					transitions = Arrays.copyOf(transitions, 2 * nTransitions);
+				}
+				transitions[nTransitions++] = dest;
+			}
+			model.transitionStart[i + 1] = nTransitions;
+			/* checking the preferred box or not and skipping the end-of-line */
+			int c = readChar();
+			if (c == 'p') {
+				model.preferred[i] = true;
+				c = readChar();
+			}
+			if (c != '\n' && c != -1) {
+				throw new IOException(error(15, i));
+			}
+		}
+		if (n > GrfModel.FINAL) {
+			/* The final box has no content */
+			model.contents[GrfModel.FINAL] = "";
+		}
+		model.transitions = normalizeTransitions(model, transitions,
+				nTransitions);
+		return model;
+	}
+
+	/**
+	 * Removes the transitions that GenericGraphBox.addTransitionTo would not
+	 * create: transitions from the final box, from or to a comment box, and
+	 * duplicate transitions.
+	 */
+	private static int[] normalizeTransitions(GrfModel model,
+			int[] transitions, int nTransitions) {
+		final int n = model.contents.length;
+		final boolean[] ignored = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			if (i != GrfModel.FINAL
+					&& GrfBoxContent.tokenizeCommentBox(model.contents[i], null)) {
+				ignored[i] = true;
+			}
+		}
+		/* seen[dst]==i+1 means that box #i already has a transition to dst */
+		final int[] seen = new int[n];
+		int q = 0;
+		int start = 0;
+		for (int i = 0; i < n; i++) {
+			final int end = model.transitionStart[i + 1];
+			model.transitionStart[i] = q;
+			if (i != GrfModel.FINAL && !ignored[i]) {
+				for (int j = start; j < end; j++) {
+					final int dst = transitions[j];
+					if (!ignored[dst] && seen[dst] != i + 1) {
+						seen[dst] = i + 1;
+						transitions[q++] = dst;
+					}
+				}
+			}
+			start = end;
+		}
+		model.transitionStart[n] = q;
+		return Arrays.copyOf(transitions, q);
+	}
+
+	private static String error(int code, int box) {
+		return "Error #" + code + " while reading graph box #" + box;
+	}
+
+	/**
+	 * Reads a "..." box content, unprotecting the " chars.
+	 */
+	private String readContent(int n, StringBuilder s) throws IOException {
+		s.setLength(0);
+		int c = readChar();
+		if (c == 's') {
+			// is a "s" was read, then we read the " char
+			c = readChar();
+		}
+		if (c != '"')
+			throw new IOException(error(1, n));
+		while ((c = readChar()) != '"') {
+			if (c == -1)
+				throw new IOException(error(2, n));
+			if (c != '\\') {
+				s.append((char) c);
+				continue;
+			}
+			c = readChar();
+			if (c == -1)
+				throw new IOException(error(3, n));
+			if (c != '\\') {
+				// case of \: \+ and \"
+				if (c != '"')
+					s.append('\\');
+				s.append((char) c);
+				continue;
+			}
+			// case of \\\" that must be transformed into \"
+			c = readChar();
+			if (c == -1)
+				throw new IOException(error(4, n));
+			if (c == '\\') {
+				// we are in the case \\\" -> \"
+				c = readChar();
+				if (c == -1)
+					throw new IOException(error(5, n));
+				s.append('\\').append((char) c);
+			} else {
+				// we are in the case \\a -> \\a
+				s.append("\\\\");
+				if (c == '"')
+					break;
+				s.append((char) c);
+			}
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Reads a possibly negative coordinate and the char that follows it.
+	 */
+	private int readCoordinate(int n, int code) throws IOException {
+		int c = readChar();
+		if (c == -1)
+			throw new IOException(error(code, n));
+		int value = 0;
+		int neg = 1;
+		if (c == '-') {
+			neg = -1;
+		} else if (isDigit(c)) {
+			value = c - '0';
+		} else {
+			throw new IOException(error(code + 1, n));
+		}
+		while ((c = readChar()) != -1 && isDigit(c))
+			value = value * 10 + (c - '0');
+		if (c == -1)
+			throw new IOException(error(code + 2, n));
+		return value * neg;
+	}
+}
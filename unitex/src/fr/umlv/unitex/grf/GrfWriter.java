@@ -0,0 +1,183 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.grf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+
+import fr.umlv.unitex.io.Encoding;
+
+/**
+ * This class saves GrfModel objects in the same format as GraphIO.saveGraph,
+ * without using AWT nor Swing.
+ */
+public class GrfWriter {
+	/**
+	 * Saves the given graph into f with the encoding it was read with. The
+	 * graph is first written into a temporary file that then replaces f, so
+	 * that f is never left half written. As when a graph is saved from its
+	 * frame, a read-only graph cannot be saved.
+	 */
+	public static void write(GrfModel model, File f) throws IOException {
+		if (f.exists() && !f.canWrite()) {
+			throw new IOException(f.getAbsolutePath() + " is read-only");
+		}
+		final String content = toString(model);
+		final Encoding encoding = model.getEncoding() != null ? model
+				.getEncoding() : Encoding.UTF8;
+		final File tmp = new File(f.getAbsolutePath() + ".tmp");
+		final OutputStreamWriter writer = encoding.getOutputStreamWriter(tmp);
+		if (writer == null) {
+			throw new IOException("Cannot write " + tmp.getAbsolutePath());
+		}
+		try {
+			writer.write(content);
+			writer.close();
+			copyPermissions(f, tmp);
+		} catch (final IOException e) {
+			writer.close();
+			tmp.delete();
+			throw e;
+		}
+		if (!tmp.renameTo(f)) {
+			f.delete();
+			if (!tmp.renameTo(f)) {
+				tmp.delete();
+				throw new IOException("Cannot replace " + f.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * The temporary file is created with the default permissions, so we give
+	 * it the ones of the file it replaces. Only POSIX permissions are
+	 * copied, since other systems have no more than the read-only flag.
+	 */
+	private static void copyPermissions(File from, File to) throws IOException {
+		if (!from.exists()) {
+			return;
+		}
+		final PosixFileAttributeView view = Files.getFileAttributeView(
+				from.toPath(), PosixFileAttributeView.class);
+		if (view == null) {
+			return;
+		}
+		Files.setPosixFilePermissions(to.toPath(), view.readAttributes()
+				.permissions());
+	}
+
+	/**
+	 * @return the .grf content, with \r\n line ends as written by UnicodeIO
+	 */
+	private static String toString(GrfModel model) {
+		final StringBuilder b = new StringBuilder();
+		b.append("#Unigraph\n");
+		b.append("SIZE ").append(model.getWidth()).append(' ')
+				.append(model.getHeight()).append('\n');
+		appendFont(b, "FONT ", model.getInputFont());
+		appendFont(b, "OFONT ", model.getOutputFont());
+		appendColor(b, "BCOLOR ", model.getBackgroundColor());
+		appendColor(b, "FCOLOR ", model.getForegroundColor());
+		appendColor(b, "ACOLOR ", model.getSubgraphColor());
+		appendColor(b, "SCOLOR ", model.getCommentColor());
+		appendColor(b, "CCOLOR ", model.getSelectedColor());
+		b.append("DBOXES y\n");
+		appendFlag(b, "DFRAME ", model.isFrame());
+		appendFlag(b, "DDATE ", model.isDate());
+		appendFlag(b, "DFILE ", model.isFilename());
+		appendFlag(b, "DDIR ", model.isPathname());
+		appendFlag(b, "DRIG ", model.isRightToLeft());
+		b.append("DRST n\n");
+		b.append("FITS 100\n");
+		b.append("PORIENT L\n");
+		final GraphMetaData metadata = model.getMetadata();
+		for (final String key : metadata.getKeySet()) {
+			b.append(key).append('=').append(metadata.getValue(key))
+					.append('\n');
+		}
+		b.append("#\n");
+		final int n = model.getBoxCount();
+		b.append(n).append('\n');
+		for (int i = 0; i < n; i++) {
+			b.append('"');
+			if (i != GrfModel.FINAL)
+				appendBoxContent(b, model.getContent(i));
+			/* A comment box cannot have any incoming or outgoing transition */
+			final boolean comment = model.getBoxContent(i).isCommentBox();
+			int count = 0;
+			final StringBuilder dest = new StringBuilder();
+			for (int j = 0; !comment && j < model.getTransitionCount(i); j++) {
+				final int d = model.getTransition(i, j);
+				if (!model.getBoxContent(d).isCommentBox()) {
+					dest.append(d).append(' ');
+					count++;
+				}
+			}
+			b.append("\" ").append(model.getX(i)).append(' ')
+					.append(model.getY(i)).append(' ').append(count)
+					.append(' ').append(dest).append('\n');
+		}
+		return b.toString().replace("\n", "\r\n");
+	}
+
+	private static void appendFont(StringBuilder b, String key,
+			GrfModel.FontInfo font) {
+		b.append(key).append(font.getName()).append(':');
+		b.append(font.isBold() ? 'B' : ' ');
+		b.append(font.isItalic() ? 'I' : ' ');
+		b.append(font.getSize()).append('\n');
+	}
+
+	private static void appendColor(StringBuilder b, String key, int color) {
+		/* This is what 16777216+new Color(color).getRGB() gives */
+		b.append(key).append(color & 0xFFFFFF).append('\n');
+	}
+
+	private static void appendFlag(StringBuilder b, String key, boolean flag) {
+		b.append(key).append(flag ? 'y' : 'n').append('\n');
+	}
+
+	/**
+	 * Protects the " chars as GraphIO does.
+	 */
+	private static void appendBoxContent(StringBuilder b, String s) {
+		final int L = s.length();
+		for (int i = 0; i < L; i++) {
+			final char c = s.charAt(i);
+			if (c == '"') {
+				if (i == 0 || s.charAt(i - 1) != '\\') {
+					// the " is the "abc" one; it must be saved as \"
+					b.append("\\\"");
+				} else {
+					// it is the \" char that must be saved as \\\"
+					// we only write 2 \ because the third has been saved at
+					// the pos i-1
+					b.append("\\\\\"");
+				}
+			} else {
+				b.append(c);
+			}
+		}
+	}
+}
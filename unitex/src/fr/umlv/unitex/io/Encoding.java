@@ -29,7 +29,9 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicLong;
 
 import fr.umlv.unitex.config.Preferences;
 
@@ -47,6 +49,12 @@ public enum Encoding {
 			final char c = (char) (b << 8 | a);
 			return c;
 		}
+
+		@Override
+		long decode(ByteBuffer src, int p, int end, char[] dst, int q,
+				int qEnd) {
+			return decode16(src, p, end, dst, q, qEnd, true);
+		}
 	},
 	UTF16BE {
 		@Override
@@ -61,6 +69,12 @@ public enum Encoding {
 			final char c = (char) (b << 8 | a);
 			return c;
 		}
+
+		@Override
+		long decode(ByteBuffer src, int p, int end, char[] dst, int q,
+				int qEnd) {
+			return decode16(src, p, end, dst, q, qEnd, false);
+		}
 	},
 	UTF8 {
 		@Override
@@ -136,8 +150,8 @@ public enum Encoding {
 				value = c & 1;
 				number_of_bytes = 6;
 			} else {
-				System.err
-						.println("Encoding error in first byte of a unicode sequence\n");
+				/* Encoding error in first byte of a unicode sequence */
+				errors.incrementAndGet();
 				return '?';
 			}
 			/*
@@ -148,18 +162,203 @@ public enum Encoding {
 				c = buffer.get() & 0xFF;
 				/* Following bytes should be of the form 10XX XXXX */
 				if ((c & 0xC0) != 0x80) {
-					System.err.println("Encoding error in byte " + (i + 1)
-							+ " of a " + number_of_bytes
-							+ " byte unicode sequence\n");
+					/* Encoding error in a following byte */
+					errors.incrementAndGet();
 					return '?';
 				}
 				value = (value << 6) | (c & 0x3F);
 			}
+			if (value > 0xFFFF) {
+				/* A supplementary character does not fit in one char */
+				return REPLACEMENT_CHAR;
+			}
 			return (char) value;
 		}
+
+		@Override
+		long decode(ByteBuffer src, int p, int end, char[] dst, int q,
+				int qEnd) {
+			while (p < end && q < qEnd) {
+				/* Fast path for 8 ASCII bytes in a row */
+				if (p + 8 <= end && q + 8 <= qEnd
+						&& (src.getLong(p) & 0x8080808080808080L) == 0) {
+					for (final int e = p + 8; p < e; p++) {
+						dst[q++] = (char) src.get(p);
+					}
+					continue;
+				}
+				final int c = src.get(p) & 0xFF;
+				if (c <= 0x7F) {
+					dst[q++] = (char) c;
+					p++;
+					continue;
+				}
+				int number_of_bytes;
+				int value;
+				int min;
+				if ((c & 0xE0) == 0xC0) {
+					value = c & 31;
+					number_of_bytes = 2;
+					min = 0x80;
+				} else if ((c & 0xF0) == 0xE0) {
+					value = c & 15;
+					number_of_bytes = 3;
+					min = 0x800;
+				} else if ((c & 0xF8) == 0xF0) {
+					value = c & 7;
+					number_of_bytes = 4;
+					min = 0x10000;
+				} else {
+					errors.incrementAndGet();
+					dst[q++] = REPLACEMENT_CHAR;
+					p++;
+					continue;
+				}
+				/*
+				 * We stop at the first byte that is not of the form 10XX XXXX,
+				 * so that it is decoded as the start of the next char
+				 */
+				final int max = Math.min(number_of_bytes, end - p);
+				int i = 1;
+				for (; i < max; i++) {
+					final int c2 = src.get(p + i) & 0xFF;
+					if ((c2 & 0xC0) != 0x80) {
+						break;
+					}
+					value = (value << 6) | (c2 & 0x3F);
+				}
+				if (i < number_of_bytes || value < min
+						|| value > Character.MAX_CODE_POINT
+						|| (value >= 0xD800 && value <= 0xDFFF)) {
+					errors.incrementAndGet();
+					dst[q++] = REPLACEMENT_CHAR;
+					p = p + i;
+					continue;
+				}
+				if (value >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+					if (q + 2 > qEnd) {
+						/* We don't split a surrogate pair */
+						break;
+					}
+					dst[q++] = Character.highSurrogate(value);
+					dst[q++] = Character.lowSurrogate(value);
+				} else {
+					dst[q++] = (char) value;
+				}
+				p = p + number_of_bytes;
+			}
+			return result(p, q);
+		}
 	};
+
+	/**
+	 * The char used to replace malformed sequences.
+	 */
+	public static final char REPLACEMENT_CHAR = '\uFFFD';
+
+	/**
+	 * Malformed sequences are counted rather than logged, because a single
+	 * corrupted file could otherwise flood the console.
+	 */
+	final AtomicLong errors = new AtomicLong();
+
 	public abstract String getCharset();
 
+	/**
+	 * @return the number of malformed sequences that have been met so far
+	 *         while decoding with this encoding
+	 */
+	public long getErrorCount() {
+		return errors.get();
+	}
+
+	/**
+	 * Decodes the bytes [start;end[ of src into dst, starting at the position
+	 * of dst and stopping if dst is full. A character is never split: a
+	 * surrogate pair is only written if both chars fit. Malformed sequences
+	 * are replaced by REPLACEMENT_CHAR. Only absolute get operations are used
+	 * on src, whose position is not modified.
+	 * 
+	 * @return the position in src of the first byte that has not been
+	 *         decoded, which is end if all bytes have been decoded
+	 */
+	public int decode(ByteBuffer src, int start, int end, CharBuffer dst) {
+		if (dst.hasArray()) {
+			final int offset = dst.arrayOffset();
+			final long r = decode(src, start, end, dst.array(), offset
+					+ dst.position(), offset + dst.limit());
+			dst.position((int) (r >>> 32) - offset);
+			return (int) r;
+		}
+		final char[] tmp = new char[dst.remaining()];
+		final long r = decode(src, start, end, tmp, 0, tmp.length);
+		dst.put(tmp, 0, (int) (r >>> 32));
+		return (int) r;
+	}
+
+	/**
+	 * Decodes the bytes [start;end[ of src into dst, as decode(ByteBuffer,
+	 * int,int,CharBuffer) does.
+	 * 
+	 * @return the number of chars written in dst
+	 */
+	public int decode(ByteBuffer src, int start, int end, char[] dst) {
+		return (int) (decode(src, start, end, dst, 0, dst.length) >>> 32);
+	}
+
+	/**
+	 * Decodes the bytes [start;end[ of src into dst, from q to at most qEnd.
+	 * 
+	 * @return the position in src where decoding stopped in the low 32 bits,
+	 *         and the position in dst in the high 32 bits
+	 */
+	abstract long decode(ByteBuffer src, int p, int end, char[] dst, int q,
+			int qEnd);
+
+	static long result(int p, int q) {
+		return ((long) q << 32) | (p & 0xFFFFFFFFL);
+	}
+
+	long decode16(ByteBuffer src, int p, int end, char[] dst, int q,
+			int qEnd, boolean littleEndian) {
+		while (p + 2 <= end && q < qEnd) {
+			final int a = src.get(p) & 0xFF;
+			final int b = src.get(p + 1) & 0xFF;
+			final char c = (char) (littleEndian ? (b << 8 | a) : (a << 8 | b));
+			if (!Character.isSurrogate(c)) {
+				dst[q++] = c;
+				p = p + 2;
+				continue;
+			}
+			if (Character.isHighSurrogate(c) && p + 4 <= end) {
+				final int a2 = src.get(p + 2) & 0xFF;
+				final int b2 = src.get(p + 3) & 0xFF;
+				final char c2 = (char) (littleEndian ? (b2 << 8 | a2)
+						: (a2 << 8 | b2));
+				if (Character.isLowSurrogate(c2)) {
+					if (q + 2 > qEnd) {
+						break;
+					}
+					dst[q++] = c;
+					dst[q++] = c2;
+					p = p + 4;
+					continue;
+				}
+			}
+			/* Unpaired surrogate */
+			errors.incrementAndGet();
+			dst[q++] = REPLACEMENT_CHAR;
+			p = p + 2;
+		}
+		if (p + 1 == end && q < qEnd) {
+			/* Odd number of bytes */
+			errors.incrementAndGet();
+			dst[q++] = REPLACEMENT_CHAR;
+			p++;
+		}
+		return result(p, q);
+	}
+
 	/**
 	 * Returns a Scanner, ready to work, the BOM having been read if any.
 	 */
@@ -258,6 +457,11 @@ public enum Encoding {
 		}
 	}
 
+	/**
+	 * Reads one char at the position of the buffer. Supplementary characters
+	 * cannot be returned this way, so this method should only be used when
+	 * chars must be counted one by one; use decode to get text.
+	 */
 	public abstract char readChar(ByteBuffer parseBuffer);
 
 	/**
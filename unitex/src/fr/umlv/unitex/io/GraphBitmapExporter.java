@@ -0,0 +1,646 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.w3c.dom.Element;
+
+import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.frames.GraphExportDialog;
+import fr.umlv.unitex.graphrendering.DrawGraphParams;
+import fr.umlv.unitex.graphrendering.GenericGraphicalZone;
+import fr.umlv.unitex.graphrendering.GraphicalZone;
+import fr.umlv.unitex.graphrendering.TextField;
+
+/**
+ * This class exports a graphical zone as a PNG or JPEG image. The image is
+ * rendered by horizontal strips, on a background thread that stays a few
+ * strips ahead of the image writer, so that the whole raster is never held in
+ * memory when the writer does not need it. When cropping, the crop box is
+ * searched only in the area covered by the boxes and transitions, starting
+ * from its borders.
+ */
+public class GraphBitmapExporter {
+	private static final int STRIP_HEIGHT = 256;
+	/**
+	 * Number of strips that can be rendered before the writer asks for them
+	 */
+	private static final int STRIPS_AHEAD = 2;
+	/**
+	 * Thickness of the bands rendered to look for the crop box
+	 */
+	private static final int SCAN_BAND = 64;
+
+	private final GenericGraphicalZone zone;
+	private final DrawGraphParams params;
+	private final int format;
+
+	public GraphBitmapExporter(GenericGraphicalZone zone,
+			DrawGraphParams params, int format) {
+		if (!GraphExportDialog.isBitmapFormat(format)) {
+			throw new IllegalArgumentException("Not a bitmap format: "
+					+ format);
+		}
+		this.zone = zone;
+		this.params = params;
+		this.format = format;
+	}
+
+	/**
+	 * Renders the zone and writes it to the given file.
+	 */
+	public void export(File output) throws IOException {
+		final StripImage image = new StripImage(getImageBounds());
+		try {
+			save(image, output);
+		} finally {
+			image.dispose();
+		}
+	}
+
+	/**
+	 * @return the rectangle of the full size image to export, taking the crop
+	 *         parameters into account
+	 */
+	Rectangle getImageBounds() {
+		final double scale = params.getTotalScale();
+		final int w = (int) Math.round(zone.getWidth() * scale);
+		final int h = (int) Math.round(zone.getHeight() * scale);
+		final Rectangle full = new Rectangle(0, 0, w, h);
+		if (!params.isCrop()) {
+			return full;
+		}
+		final BufferedImage scratch = new BufferedImage(1, 1,
+				BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = scratch.createGraphics();
+		final Rectangle r;
+		try {
+			g.scale(scale, scale);
+			r = zone.getDrawingBounds(g, params);
+		} finally {
+			g.dispose();
+		}
+		if (r.isEmpty()) {
+			return full;
+		}
+		/*
+		 * We take a margin of 2 pixels for the rounding and the antialiasing
+		 */
+		final int x0 = (int) Math.floor(r.x * scale) - 2;
+		final int y0 = (int) Math.floor(r.y * scale) - 2;
+		final int x1 = (int) Math.ceil((r.x + r.width) * scale) + 2;
+		final int y1 = (int) Math.ceil((r.y + r.height) * scale) + 2;
+		final Rectangle area = full.intersection(new Rectangle(x0, y0, x1 - x0,
+				y1 - y0));
+		if (area.isEmpty()) {
+			return full;
+		}
+		final int bgcolor = params.getBackgroundColor().getRGB() & 0xFFFFFF;
+		int minY = -1;
+		for (int y = area.y; minY == -1 && y < area.y + area.height; y += SCAN_BAND) {
+			final int bh = Math.min(SCAN_BAND, area.y + area.height - y);
+			final int i = firstInkRow(render(area.x, y, area.width, bh),
+					area.width, bh, bgcolor);
+			if (i != -1) {
+				minY = y + i;
+			}
+		}
+		if (minY == -1) {
+			return full;
+		}
+		/* As row minY is not empty, the following loops always succeed */
+		int maxY = -1;
+		for (int y = area.y + area.height; maxY == -1; y -= SCAN_BAND) {
+			final int y2 = Math.max(minY, y - SCAN_BAND);
+			final int i = lastInkRow(render(area.x, y2, area.width, y - y2),
+					area.width, y - y2, bgcolor);
+			if (i != -1) {
+				maxY = y2 + i;
+			}
+		}
+		final int height = maxY - minY + 1;
+		int minX = -1;
+		for (int x = area.x; minX == -1; x += SCAN_BAND) {
+			final int bw = Math.min(SCAN_BAND, area.x + area.width - x);
+			final int i = firstInkColumn(render(x, minY, bw, height), bw,
+					height, bgcolor);
+			if (i != -1) {
+				minX = x + i;
+			}
+		}
+		int maxX = -1;
+		for (int x = area.x + area.width; maxX == -1; x -= SCAN_BAND) {
+			final int x2 = Math.max(minX, x - SCAN_BAND);
+			final int i = lastInkColumn(render(x2, minY, x - x2, height), x
+					- x2, height, bgcolor);
+			if (i != -1) {
+				maxX = x2 + i;
+			}
+		}
+		final int cropX = Math.max(0, minX - params.getCropMarginW());
+		final int cropY = Math.max(0, minY - params.getCropMarginH());
+		final int cropX2 = Math.min(w - 1, maxX + params.getCropMarginW());
+		final int cropY2 = Math.min(h - 1, maxY + params.getCropMarginH());
+		return new Rectangle(cropX, cropY, cropX2 - cropX + 1, cropY2 - cropY
+				+ 1);
+	}
+
+	private static int firstInkRow(int[] pixels, int width, int height,
+			int bgcolor) {
+		for (int i = 0; i < width * height; i++) {
+			if ((pixels[i] & 0xFFFFFF) != bgcolor) {
+				return i / width;
+			}
+		}
+		return -1;
+	}
+
+	private static int lastInkRow(int[] pixels, int width, int height,
+			int bgcolor) {
+		for (int i = width * height - 1; i >= 0; i--) {
+			if ((pixels[i] & 0xFFFFFF) != bgcolor) {
+				return i / width;
+			}
+		}
+		return -1;
+	}
+
+	private static int firstInkColumn(int[] pixels, int width, int height,
+			int bgcolor) {
+		int best = -1;
+		for (int y = 0; y < height && best != 0; y++) {
+			final int end = (best == -1) ? width : best;
+			for (int x = 0; x < end; x++) {
+				if ((pixels[y * width + x] & 0xFFFFFF) != bgcolor) {
+					best = x;
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	private static int lastInkColumn(int[] pixels, int width, int height,
+			int bgcolor) {
+		int best = -1;
+		for (int y = 0; y < height && best != width - 1; y++) {
+			for (int x = width - 1; x > best; x--) {
+				if ((pixels[y * width + x] & 0xFFFFFF) != bgcolor) {
+					best = x;
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Renders the given rectangle of the full size image.
+	 * 
+	 * @return the pixels of the rectangle, row by row
+	 */
+	private int[] render(int x, int y, int width, int height) {
+		return ((DataBufferInt) renderImage(x, y, width, height).getRaster()
+				.getDataBuffer()).getData();
+	}
+
+	private BufferedImage renderImage(int x, int y, int width, int height) {
+		final BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = image.createGraphics();
+		try {
+			g.setBackground(params.getBackgroundColor());
+			g.clearRect(0, 0, width, height);
+			g.translate(-x, -y);
+			g.clipRect(x, y, width, height);
+			zone.drawGraph(g, params);
+		} finally {
+			g.dispose();
+		}
+		return image;
+	}
+
+	private void save(RenderedImage image, File output) throws IOException {
+		final int dpi = params.getDpi();
+		final Iterator<ImageWriter> it = ImageIO
+				.getImageWritersByFormatName(GraphExportDialog
+						.formatName(format));
+		boolean found = false;
+		while (it.hasNext() && !found) {
+			final ImageWriter w = it.next();
+			final ImageWriteParam wp = w.getDefaultWriteParam();
+			final ImageTypeSpecifier ts = ImageTypeSpecifier
+					.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB);
+			final IIOMetadata meta = w.getDefaultImageMetadata(ts, wp);
+			if (!meta.isReadOnly() && meta.isStandardMetadataFormatSupported()) {
+				found = true;
+				if (format == GraphExportDialog.FORMAT_PNG) {
+					final double dpmm = dpi / 25.4;
+					final IIOMetadataNode hor = new IIOMetadataNode(
+							"HorizontalPixelSize");
+					hor.setAttribute("value", Double.toString(dpmm));
+					final IIOMetadataNode ver = new IIOMetadataNode(
+							"VerticalPixelSize");
+					ver.setAttribute("value", Double.toString(dpmm));
+					final IIOMetadataNode dim = new IIOMetadataNode("Dimension");
+					dim.appendChild(hor);
+					dim.appendChild(ver);
+					final IIOMetadataNode root = new IIOMetadataNode(
+							"javax_imageio_1.0");
+					root.appendChild(dim);
+					meta.mergeTree("javax_imageio_1.0", root);
+				} else {
+					final Element tree = (Element) meta
+							.getAsTree("javax_imageio_jpeg_image_1.0");
+					final Element jfif = (Element) tree.getElementsByTagName(
+							"app0JFIF").item(0);
+					jfif.setAttribute("Xdensity", Integer.toString(dpi));
+					jfif.setAttribute("Ydensity", Integer.toString(dpi));
+					jfif.setAttribute("resUnits", "1"); // density is dots per
+														// inch
+					wp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+					wp.setCompressionQuality(params.getCompressionQuality());
+					meta.mergeTree("javax_imageio_jpeg_image_1.0", tree);
+				}
+				final ImageOutputStream stream = ImageIO
+						.createImageOutputStream(output);
+				if (stream == null) {
+					throw new IOException("Cannot write "
+							+ output.getAbsolutePath());
+				}
+				try {
+					w.setOutput(stream);
+					w.write(meta, new IIOImage(image, null, meta), wp);
+				} finally {
+					stream.close();
+					w.dispose();
+				}
+			}
+		}
+	}
+
+	private static final ThreadFactory RENDERER_FACTORY = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			final Thread t = new Thread(r, "Graph strip renderer");
+			t.setDaemon(true);
+			return t;
+		}
+	};
+
+	/**
+	 * This image is made of horizontal strips that are rendered on demand. As
+	 * drawing a graphical zone is not thread-safe, all the strips are rendered
+	 * by a single thread, while the writer thread encodes the previous ones.
+	 * Only the strips that have not been consumed yet are kept.
+	 */
+	private class StripImage implements RenderedImage {
+		private final Rectangle bounds;
+		private final int nStrips;
+		private final ColorModel colorModel;
+		private final SampleModel sampleModel;
+		private final ExecutorService renderer = Executors
+				.newSingleThreadExecutor(RENDERER_FACTORY);
+		private final ArrayList<Future<BufferedImage>> strips = new ArrayList<Future<BufferedImage>>();
+		private int forgotten = 0;
+
+		StripImage(Rectangle bounds) {
+			this.bounds = bounds;
+			this.nStrips = (bounds.height + STRIP_HEIGHT - 1) / STRIP_HEIGHT;
+			final BufferedImage prototype = new BufferedImage(1, 1,
+					BufferedImage.TYPE_INT_RGB);
+			colorModel = prototype.getColorModel();
+			sampleModel = prototype.getSampleModel()
+					.createCompatibleSampleModel(bounds.width, STRIP_HEIGHT);
+		}
+
+		void dispose() {
+			renderer.shutdownNow();
+			strips.clear();
+		}
+
+		private synchronized BufferedImage getStrip(int n) {
+			for (int i = strips.size(); i < nStrips
+					&& i < n + 1 + STRIPS_AHEAD; i++) {
+				final int y = bounds.y + i * STRIP_HEIGHT;
+				strips.add(renderer.submit(new Callable<BufferedImage>() {
+					@Override
+					public BufferedImage call() {
+						return renderImage(bounds.x, y, bounds.width,
+								STRIP_HEIGHT);
+					}
+				}));
+			}
+			/* Writers consume the rows in order, so we forget the previous strips */
+			for (; forgotten < n - 1; forgotten++) {
+				strips.set(forgotten, null);
+			}
+			final Future<BufferedImage> f = strips.get(n);
+			if (f == null) {
+				/* Should not happen, but we can always render it again */
+				return renderImage(bounds.x, bounds.y + n * STRIP_HEIGHT,
+						bounds.width, STRIP_HEIGHT);
+			}
+			try {
+				return f.get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (final ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+		@Override
+		public Raster getTile(int tileX, int tileY) {
+			return getStrip(tileY).getRaster().createTranslatedChild(0,
+					tileY * STRIP_HEIGHT);
+		}
+
+		@Override
+		public Raster getData() {
+			return getData(new Rectangle(0, 0, bounds.width, bounds.height));
+		}
+
+		@Override
+		public Raster getData(Rectangle rect) {
+			final WritableRaster raster = Raster.createWritableRaster(
+					sampleModel.createCompatibleSampleModel(rect.width,
+							rect.height), rect.getLocation());
+			return copyData(raster);
+		}
+
+		@Override
+		public WritableRaster copyData(WritableRaster raster) {
+			if (raster == null) {
+				raster = Raster.createWritableRaster(
+						sampleModel.createCompatibleSampleModel(bounds.width,
+								bounds.height), null);
+			}
+			final Rectangle r = raster.getBounds().intersection(
+					new Rectangle(0, 0, bounds.width, bounds.height));
+			if (r.isEmpty()) {
+				return raster;
+			}
+			final int last = (r.y + r.height - 1) / STRIP_HEIGHT;
+			for (int i = r.y / STRIP_HEIGHT; i <= last; i++) {
+				final Raster tile = getTile(0, i);
+				final Rectangle inter = tile.getBounds().intersection(r);
+				raster.setRect(tile.createChild(inter.x, inter.y, inter.width,
+						inter.height, inter.x, inter.y, null));
+			}
+			return raster;
+		}
+
+		@Override
+		public Vector<RenderedImage> getSources() {
+			return null;
+		}
+
+		@Override
+		public Object getProperty(String name) {
+			return Image.UndefinedProperty;
+		}
+
+		@Override
+		public String[] getPropertyNames() {
+			return null;
+		}
+
+		@Override
+		public ColorModel getColorModel() {
+			return colorModel;
+		}
+
+		@Override
+		public SampleModel getSampleModel() {
+			return sampleModel;
+		}
+
+		@Override
+		public int getWidth() {
+			return bounds.width;
+		}
+
+		@Override
+		public int getHeight() {
+			return bounds.height;
+		}
+
+		@Override
+		public int getMinX() {
+			return 0;
+		}
+
+		@Override
+		public int getMinY() {
+			return 0;
+		}
+
+		@Override
+		public int getNumXTiles() {
+			return 1;
+		}
+
+		@Override
+		public int getNumYTiles() {
+			return nStrips;
+		}
+
+		@Override
+		public int getMinTileX() {
+			return 0;
+		}
+
+		@Override
+		public int getMinTileY() {
+			return 0;
+		}
+
+		@Override
+		public int getTileWidth() {
+			return bounds.width;
+		}
+
+		@Override
+		public int getTileHeight() {
+			return STRIP_HEIGHT;
+		}
+
+		@Override
+		public int getTileGridXOffset() {
+			return 0;
+		}
+
+		@Override
+		public int getTileGridYOffset() {
+			return 0;
+		}
+	}
+
+	public interface ProgressListener {
+		/**
+		 * Called after the first n graphs out of total have been exported.
+		 */
+		void graphsExported(int n, int total);
+
+		/**
+		 * Called when the given graph could not be exported, before it is
+		 * counted as exported.
+		 */
+		void exportFailed(File grf, Throwable cause);
+	}
+
+	private static final ThreadFactory EXPORTER_FACTORY = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			final Thread t = new Thread(r, "Graph exporter");
+			t.setDaemon(true);
+			return t;
+		}
+	};
+
+	/**
+	 * @return the image file to use for the given graph
+	 */
+	public static File getImageFile(File grf, int format) {
+		final String s = grf.getPath();
+		final int i = s.lastIndexOf('.');
+		return new File(((i != -1) ? s.substring(0, i) : s) + "."
+				+ GraphExportDialog.formatDefaultExtension(format));
+	}
+
+	/**
+	 * Exports in parallel all the graphs of the given directory and of its
+	 * subdirectories, each image being written next to its graph. The colors
+	 * are the ones of each graph, the other parameters are taken from the
+	 * given ones. There are at most as many export threads as processors.
+	 * 
+	 * @param listener
+	 *            if not null, it is told of the progress of the export and of
+	 *            the reason why a graph could not be exported
+	 * @return the graphs that could not be exported
+	 */
+	public static List<File> exportDirectory(File dir, final int format,
+			final DrawGraphParams settings, ProgressListener listener)
+			throws InterruptedException {
+		final ArrayList<File> graphs = FileUtil.getGraphs(dir);
+		final ArrayList<File> errors = new ArrayList<File>();
+		if (graphs.isEmpty()) {
+			return errors;
+		}
+		final int nThreads = Math.min(graphs.size(), Runtime.getRuntime()
+				.availableProcessors());
+		final ExecutorService pool = Executors.newFixedThreadPool(nThreads,
+				EXPORTER_FACTORY);
+		try {
+			final ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (final File grf : graphs) {
+				futures.add(pool.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws IOException {
+						return exportGraph(grf, getImageFile(grf, format),
+								format, settings);
+					}
+				}));
+			}
+			for (int i = 0; i < graphs.size(); i++) {
+				final File grf = graphs.get(i);
+				Throwable cause = null;
+				try {
+					if (!futures.get(i).get()) {
+						cause = new IOException("Cannot load graph");
+					}
+				} catch (final ExecutionException e) {
+					cause = e.getCause();
+				}
+				if (cause != null) {
+					errors.add(grf);
+					if (listener != null) {
+						listener.exportFailed(grf, cause);
+					}
+				}
+				if (listener != null) {
+					listener.graphsExported(i + 1, graphs.size());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return errors;
+	}
+
+	/**
+	 * Loads the given graph and exports it as an image.
+	 * 
+	 * @return false if the graph could not be loaded
+	 */
+	public static boolean exportGraph(File grf, File output, int format,
+			DrawGraphParams settings) throws IOException {
+		final GraphIO gio = GraphIO.loadGraph(grf, false);
+		if (gio == null) {
+			return false;
+		}
+		final GraphicalZone zone = new GraphicalZone(gio,
+				new TextField(0, null), null, null);
+		final DrawGraphParams params = zone.defaultDrawParams();
+		params.setScaleFactor(settings.getScaleFactor());
+		params.setDpi(settings.getDpi());
+		params.setCompressionQuality(settings.getCompressionQuality());
+		params.setAntialiasing(settings.isAntialiasing());
+		params.setCrop(settings.isCrop());
+		params.setCropMarginW(settings.getCropMarginW());
+		params.setCropMarginH(settings.getCropMarginH());
+		new GraphBitmapExporter(zone, params, format).export(output);
+		return true;
+	}
+}
@@ -25,7 +25,6 @@ import java.awt.Font;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -44,6 +43,9 @@ import fr.umlv.unitex.graphrendering.GraphBox;
 import fr.umlv.unitex.graphrendering.TfstGraphBox;
 import fr.umlv.unitex.grf.GraphMetaData;
 import fr.umlv.unitex.grf.GraphPresentationInfo;
+import fr.umlv.unitex.grf.GrfModel;
+import fr.umlv.unitex.grf.GrfReader;
+import fr.umlv.unitex.tfst.TokensInfo;
 import fr.umlv.unitex.tfst.tagging.TaggingState;
 
 /**
@@ -75,6 +77,16 @@ public class GraphIO {
 	private int nBoxes;
 	private File grf;
 	private final GraphMetaData metadata;
+	/**
+	 * The model the boxes are built from on the first call to getBoxes()
+	 */
+	private GrfModel model;
+	private boolean sentenceGraph;
+	/**
+	 * Tokens of the sentence, for sentence graphs
+	 */
+	private TokensInfo tokens;
+	private boolean mirrored;
 
 	private GraphIO() {
 		info = ConfigManager.getManager().getGraphPresentationPreferences(null)
@@ -98,11 +110,28 @@ public class GraphIO {
 	 *            name of the graph
 	 * @return a <code>GraphIO</code> object describing the graph
 	 */
-	public static GraphIO loadGraph(File grfFile, boolean isSentenceGraph,
+	public static GraphIO loadGraph(File grfFile, boolean emitErrorMessage) {
+		return load(grfFile, null, emitErrorMessage);
+	}
+
+	/**
+	 * Loads a sentence graph, whose box bounds refer to the given tokens.
+	 */
+	public static GraphIO loadSentenceGraph(File grfFile, TokensInfo tokens,
 			boolean emitErrorMessage) {
+		if (tokens == null) {
+			throw new IllegalArgumentException(
+					"A sentence graph needs the tokens of its sentence");
+		}
+		return load(grfFile, tokens, emitErrorMessage);
+	}
+
+	private static GraphIO load(File grfFile, TokensInfo tokens,
+			boolean emitErrorMessage) {
+		final boolean isSentenceGraph = (tokens != null);
 		final GraphIO res = new GraphIO();
+		res.tokens = tokens;
 		res.grf = grfFile;
-		InputStreamReader reader;
 		if (!grfFile.exists()) {
 			if (emitErrorMessage) {
 				String[] options = { "Yes", "No" };
@@ -147,92 +176,9 @@ public class GraphIO {
 						JOptionPane.ERROR_MESSAGE);
 			return null;
 		}
+		final GrfModel model;
 		try {
-			reader = Encoding.getInputStreamReader(grfFile);
-			if (reader == null) {
-				if (emitErrorMessage)
-					JOptionPane.showMessageDialog(null,
-							grfFile.getAbsolutePath()
-									+ " is not a Unicode graph", "Error",
-							JOptionPane.ERROR_MESSAGE);
-				return null;
-			}
-			UnicodeIO.skipLine(reader); // ignoring #...
-			res.readSize(reader);
-			res.readInputFont(reader);
-			res.readOutputFont(reader);
-			res.readBackgroundColor(reader);
-			res.readForegroundColor(reader);
-			res.readSubgraphColor(reader);
-			res.readCommentColor(reader);
-			res.readSelectedColor(reader);
-			UnicodeIO.skipLine(reader); // ignoring DBOXES
-			res.readDrawFrame(reader);
-			res.readDate(reader);
-			res.readFile(reader);
-			res.readDirectory(reader);
-			res.readRightToLeft(reader);
-			if (isSentenceGraph) {
-				res.info.setRightToLeft(ConfigManager.getManager()
-						.isRightToLeftForText(null));
-			}
-			UnicodeIO.skipLine(reader); // ignoring DRST
-			UnicodeIO.skipLine(reader); // ignoring FITS
-			UnicodeIO.skipLine(reader); // ignoring PORIENT
-			/* Reading metadata until we find the # line */
-			String line;
-			while (!(line = UnicodeIO.readLine(reader)).equals("#")) {
-				final int pos = line.indexOf("=");
-				if (pos == -1) {
-					if (emitErrorMessage)
-						JOptionPane.showMessageDialog(
-								null,
-								"Invalid header line in "
-										+ grfFile.getAbsolutePath() + ":\n"
-										+ line, "Error",
-								JOptionPane.ERROR_MESSAGE);
-					return null;
-				}
-				final String key = line.substring(0, pos);
-				final String value = line.substring(pos + 1);
-				res.metadata.set(key, value);
-			}
-			res.readBoxNumber(reader);
-			res.boxes = new ArrayList<GenericGraphBox>();
-			if (isSentenceGraph) {
-				// adding initial state
-				res.boxes.add(new TfstGraphBox(0, 0, 0, null));
-				// adding final state
-				res.boxes.add(new TfstGraphBox(0, 0, 1, null));
-				// adding other states
-				for (int i = 2; i < res.nBoxes; i++)
-					res.boxes.add(new TfstGraphBox(0, 0, 2, null));
-				for (int i = 0; i < res.nBoxes; i++)
-					res.readSentenceGraphLine(reader, i);
-			} else {
-				// adding initial state
-				res.boxes.add(new GraphBox(0, 0, 0, null));
-				// adding final state
-				res.boxes.add(new GraphBox(0, 0, 1, null));
-				// adding other states
-				for (int i = 2; i < res.nBoxes; i++)
-					res.boxes.add(new GraphBox(0, 0, 2, null));
-				for (int i = 0; i < res.nBoxes; i++)
-					res.readGraphLine(reader, i);
-			}
-			reader.close();
-		} catch (final IllegalStateException e) {
-			if (emitErrorMessage)
-				JOptionPane.showMessageDialog(null, grfFile.getAbsolutePath()
-						+ ": " + e.getMessage(), "Error",
-						JOptionPane.ERROR_MESSAGE);
-			return null;
-		} catch (final FileNotFoundException e) {
-			if (emitErrorMessage)
-				JOptionPane.showMessageDialog(null,
-						"Cannot open " + grfFile.getAbsolutePath(), "Error",
-						JOptionPane.ERROR_MESSAGE);
-			return null;
+			model = GrfReader.read(grfFile);
 		} catch (final IOException e) {
 			if (emitErrorMessage)
 				JOptionPane.showMessageDialog(
@@ -242,386 +188,170 @@ public class GraphIO {
 						JOptionPane.ERROR_MESSAGE);
 			return null;
 		}
+		try {
+			res.setModel(model, isSentenceGraph);
+			if (isSentenceGraph) {
+				/*
+				 * Sentence boxes are checked against the tokens of the
+				 * sentence, so we do not wait to build them
+				 */
+				res.buildBoxes();
+			}
+		} catch (final IllegalStateException e) {
+			if (emitErrorMessage)
+				JOptionPane.showMessageDialog(null, grfFile.getAbsolutePath()
+						+ ": " + e.getMessage(), "Error",
+						JOptionPane.ERROR_MESSAGE);
+			return null;
+		}
 		return res;
 	}
 
-	private void readSize(InputStreamReader r) throws IOException {
-		// skipping the chars preceeding the width and height
-		UnicodeIO.skipChars(r, 5);
-		char c;
-		// reading width
-		width = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			width = width * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException("Number expected");
-		// reading height
-		z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			height = height * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException("Number expected");
+	/**
+	 * Builds a <code>GraphIO</code> from a graph that has already been read.
+	 * Boxes are only created when getBoxes() is called.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the graph contains an empty box that is not the final
+	 *             state
+	 */
+	public static GraphIO createGraphIO(GrfModel model) {
+		final GraphIO res = new GraphIO();
+		res.grf = model.getGrf();
+		res.setModel(model, false);
+		return res;
 	}
 
-	private void readInputFont(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 5);
-		String s = "";
-		char c;
-		int z = -1;
-		while ((z = (char) UnicodeIO.readChar(r)) != ':' && z != -1)
-			s = s + (char) z;
-		if (z == -1)
-			throw new IOException("Error while reading input font information");
-		final boolean bold = ((z = UnicodeIO.readChar(r)) == 'B');
-		if (z != 'B' && z != ' ')
-			throw new IOException("Error while reading input font information");
-		if (z == -1)
-			throw new IOException("Error while reading input font information");
-		final boolean italic = ((z = UnicodeIO.readChar(r)) == 'I');
-		if (z != 'I' && z != ' ')
-			throw new IOException("Error while reading input font information");
-		if (z == -1)
-			throw new IOException("Error while reading input font information");
-		int size = 0;
-		z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			size = size * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException("Error while reading input font information");
-		info.getInput().setSize(size);
-		int style;
-		if (bold && italic)
-			style = Font.BOLD | Font.ITALIC;
-		else if (bold)
-			style = Font.BOLD;
-		else if (italic)
-			style = Font.ITALIC;
-		else
-			style = Font.PLAIN;
-		info.getInput().setFont(new Font(s, style, (int) (size / 0.72)));
+	/**
+	 * Builds a <code>GraphIO</code> from a sentence graph that has already
+	 * been read, whose box bounds refer to the given tokens.
+	 */
+	public static GraphIO createSentenceGraphIO(GrfModel model,
+			TokensInfo tokens) {
+		if (tokens == null) {
+			throw new IllegalArgumentException(
+					"A sentence graph needs the tokens of its sentence");
+		}
+		final GraphIO res = new GraphIO();
+		res.grf = model.getGrf();
+		res.tokens = tokens;
+		res.setModel(model, true);
+		res.buildBoxes();
+		return res;
 	}
 
-	private void readOutputFont(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 6);
-		String s = "";
-		char c;
-		int z = -1;
-		while ((z = (char) UnicodeIO.readChar(r)) != ':' && z != -1)
-			s = s + (char) z;
-		if (z == -1)
-			throw new IOException("Error while reading output font information");
-		final boolean bold = ((z = UnicodeIO.readChar(r)) == 'B');
-		if (z != 'B' && z != ' ')
-			throw new IOException("Error while reading output font information");
-		if (z == -1)
-			throw new IOException("Error while reading output font information");
-		final boolean italic = ((z = UnicodeIO.readChar(r)) == 'I');
-		if (z != 'I' && z != ' ')
-			throw new IOException("Error while reading output font information");
-		if (z == -1)
-			throw new IOException("Error while reading output font information");
-		int size = 0;
-		z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			size = size * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException("Error while reading output font information");
-		info.getOutput().setSize(size);
+	private void setModel(GrfModel m, boolean isSentenceGraph) {
+		width = m.getWidth();
+		height = m.getHeight();
+		info.getInput().setSize(m.getInputFont().getSize());
+		info.getInput().setFont(createFont(m.getInputFont()));
+		info.getOutput().setSize(m.getOutputFont().getSize());
+		info.getOutput().setFont(createFont(m.getOutputFont()));
+		info.setBackgroundColor(new Color(m.getBackgroundColor()));
+		info.setForegroundColor(new Color(m.getForegroundColor()));
+		info.setSubgraphColor(new Color(m.getSubgraphColor()));
+		info.setCommentColor(new Color(m.getCommentColor()));
+		info.setSelectedColor(new Color(m.getSelectedColor()));
+		info.setFrame(m.isFrame());
+		info.setDate(m.isDate());
+		info.setFilename(m.isFilename());
+		info.setPathname(m.isPathname());
+		info.setRightToLeft(m.isRightToLeft());
+		for (final String key : m.getMetadata().getKeySet()) {
+			metadata.set(key, m.getMetadata().getValue(key));
+		}
+		nBoxes = m.getBoxCount();
+		if (isSentenceGraph) {
+			info.setRightToLeft(ConfigManager.getManager()
+					.isRightToLeftForText(null));
+			mirrored = ConfigManager.getManager()
+					.getGraphPresentationPreferences(null).isRightToLeft()
+					|| info.isRightToLeft();
+			if (mirrored && nBoxes > 0) {
+				info.setRightToLeft(true);
+			}
+		} else {
+			for (int i = 0; i < nBoxes; i++) {
+				if (i != GrfModel.FINAL && m.getContent(i).equals("")) {
+					throw new IllegalStateException(
+							"The graph contains an unexpected empty box that is not the final state");
+				}
+			}
+		}
+		sentenceGraph = isSentenceGraph;
+		model = m;
+	}
+
+	private static Font createFont(GrfModel.FontInfo f) {
 		int style;
-		if (bold && italic)
+		if (f.isBold() && f.isItalic())
 			style = Font.BOLD | Font.ITALIC;
-		else if (bold)
+		else if (f.isBold())
 			style = Font.BOLD;
-		else if (italic)
+		else if (f.isItalic())
 			style = Font.ITALIC;
 		else
 			style = Font.PLAIN;
-		info.getOutput().setFont(new Font(s, style, (int) (size / 0.72)));
+		return new Font(f.getName(), style, (int) (f.getSize() / 0.72));
 	}
 
-	private void readBackgroundColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		char c;
-		int n = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			n = n * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException(
-					"Error while reading background color information");
-		info.setBackgroundColor(new Color(n));
-	}
-
-	private void readForegroundColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		char c;
-		int n = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			n = n * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException(
-					"Error while reading foreground color information");
-		info.setForegroundColor(new Color(n));
-	}
-
-	private void readSubgraphColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		char c;
-		int n = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			n = n * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException(
-					"Error while reading subgraph color information");
-		info.setSubgraphColor(new Color(n));
-	}
-
-	private void readSelectedColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		char c;
-		int n = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			n = n * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException(
-					"Error while reading selected color information");
-		info.setSelectedColor(new Color(n));
-	}
-
-	private void readCommentColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		char c;
-		int n = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			n = n * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException(
-					"Error while reading comment color information");
-		info.setCommentColor(new Color(n));
-	}
-
-	private void readDrawFrame(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		int z;
-		info.setFrame((z = UnicodeIO.readChar(r)) == 'y');
-		if (z != 'y' && z != 'n')
-			throw new IOException("Error while reading frame information");
-		if (-1 == UnicodeIO.readChar(r))
-			throw new IOException("Error while reading frame information");
-	}
-
-	private void readDate(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 6);
-		int z;
-		info.setDate((z = UnicodeIO.readChar(r)) == 'y');
-		if (z != 'y' && z != 'n')
-			throw new IOException("Error while reading date information");
-		if (-1 == UnicodeIO.readChar(r))
-			throw new IOException("Error while reading date information");
-	}
-
-	private void readFile(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 6);
-		int z;
-		info.setFilename((z = UnicodeIO.readChar(r)) == 'y');
-		if (z != 'y' && z != 'n')
-			throw new IOException("Error while reading file name information");
-		if (-1 == UnicodeIO.readChar(r))
-			throw new IOException("Error while reading file name information");
-	}
-
-	private void readDirectory(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 5);
-		int z;
-		info.setPathname((z = UnicodeIO.readChar(r)) == 'y');
-		if (z != 'y' && z != 'n')
-			throw new IOException("Error while reading path name information");
-		if (-1 == UnicodeIO.readChar(r))
-			throw new IOException("Error while reading path name information");
-	}
-
-	private void readRightToLeft(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 5);
-		int z;
-		info.setRightToLeft((z = UnicodeIO.readChar(r)) == 'y');
-		if (z != 'y' && z != 'n')
-			throw new IOException(
-					"Error while reading right to left information");
-		if (-1 == UnicodeIO.readChar(r))
-			throw new IOException(
-					"Error while reading right to left information");
-	}
-
-	private void readBoxNumber(InputStreamReader r) throws IOException {
-		char c;
-		nBoxes = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			nBoxes = nBoxes * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException("Error while reading graph box number");
-	}
-
-	private void readGraphLine(InputStreamReader r, int n) throws IOException {
-		final GenericGraphBox g = boxes.get(n);
-		int z;
-		if ((z = UnicodeIO.readChar(r)) == 's') {
-			// is a "s" was read, then we read the " char
-			z = UnicodeIO.readChar(r);
-		}
-		if (z != '"')
-			throw new IOException("Error #1 while reading graph box #" + n);
-		String s = "";
-		int c;
-		while ((c = UnicodeIO.readChar(r)) != '"') {
-			if (c == -1)
-				throw new IOException("Error #2 while reading graph box #" + n);
-			if (c == '\\') {
-				c = UnicodeIO.readChar(r);
-				if (c == -1)
-					throw new IOException("Error #3 while reading graph box #"
-							+ n);
-				if (c != '\\') {
-					// case of \: \+ and \"
-					if (c == '"')
-						s = s + (char) c;
-					else
-						s = s + "\\" + (char) c;
-				} else {
-					// case of \\\" that must be transformed into \"
-					c = UnicodeIO.readChar(r);
-					if (c == -1)
-						throw new IOException(
-								"Error #4 while reading graph box #" + n);
-					if (c == '\\') {
-						// we are in the case \\\" -> \"
-						c = UnicodeIO.readChar(r);
-						if (c == -1)
-							throw new IOException(
-									"Error #5 while reading graph box #" + n);
-						s = s + "\\" + (char) c;
-					} else {
-						// we are in the case \\a -> \\a
-						s = s + "\\\\";
-						if (c != '"')
-							s = s + (char) c;
-						else
-							break;
-					}
-				}
-			} else
-				s = s + (char) c;
-		}
-		
-		// skipping the space after "
-		if (UnicodeIO.readChar(r) != ' ')
-			throw new IOException("Error #6 while reading graph box #" + n);
-		// reading the X coordinate
-		int x = 0;
-		int neg = 1;
-		c = UnicodeIO.readChar(r);
-		if (c == -1)
-			throw new IOException("Error #7 while reading graph box #" + n);
-		if (c == '-') {
-			neg = -1;
-		} else if (UnicodeIO.isDigit((char) c)) {
-			x = ((char) c - '0');
-		} else {
-			throw new IOException("Error #8 while reading graph box #" + n);
-		}
-		c = -1;
-		while ((c = UnicodeIO.readChar(r)) != -1 && UnicodeIO.isDigit((char) c)) {
-			x = x * 10 + ((char) c - '0');
-		}
-		if (c == -1)
-			throw new IOException("Error #9 while reading graph box #" + n);
-		x = x * neg;
-		// reading the Y coordinate
-		int y = 0;
-		neg = 1;
-		c = UnicodeIO.readChar(r);
-		if (c == -1)
-			throw new IOException("Error #10 while reading graph box #" + n);
-		if (c == '-') {
-			neg = -1;
-		} else if (UnicodeIO.isDigit((char) c)) {
-			y = ((char) c - '0');
-		} else {
-			throw new IOException("Error #11 while reading graph box #" + n);
-		}
-		c = -1;
-		while ((c = UnicodeIO.readChar(r)) != -1 && UnicodeIO.isDigit((char) c)) {
-			y = y * 10 + ((char) c - '0');
+	/**
+	 * Creates the boxes described by the model.
+	 */
+	private void buildBoxes() {
+		boxes = new ArrayList<GenericGraphBox>(nBoxes);
+		for (int i = 0; i < nBoxes; i++) {
+			final int type = (i < 2) ? i : 2;
+			if (sentenceGraph) {
+				boxes.add(new TfstGraphBox(0, 0, type, null));
+			} else {
+				boxes.add(new GraphBox(0, 0, type, null));
+			}
 		}
-		if (c == -1)
-			throw new IOException("Error #12 while reading graph box #" + n);
-		y = y * neg;
-
-		g.setX(x);
-		g.setY(y);
-		g.setX1(g.getX());
-		g.setY1(g.getY());
-		g.setX_in(g.getX());
-		g.setY_in(g.getY());
-		g.setX_out(g.getX() + g.getWidth() + 5);
-		g.setY_out(g.getY_in());
-		if (n != 1) {
-			// 1 is the final state, which content is <E>
-			g.setContent(s);
-			// we will need to call g.update() to size the box according to the
-			// text
-		} else {
-			g.setContent("<E>");
+		for (int n = 0; n < nBoxes; n++) {
+			final GenericGraphBox g = boxes.get(n);
+			final int x = model.getX(n);
+			g.setX(mirrored ? width - x : x);
+			g.setY(model.getY(n));
+			g.setX1(g.getX());
+			g.setY1(g.getY());
 			g.setX_in(g.getX());
 			g.setY_in(g.getY());
-			g.setX1(g.getX());
-			g.setY1(g.getY() - 10);
+			g.setX_out(g.getX() + g.getWidth() + 5);
 			g.setY_out(g.getY_in());
-			g.setX_out(g.getX_in() + 25);
-		}
-		int trans = 0;
-		c = -1;
-		while ((c = UnicodeIO.readChar(r)) != -1 && UnicodeIO.isDigit((char) c))
-			trans = trans * 10 + ((char) c - '0');
-		if (c == -1)
-			throw new IOException("Error #13 while reading graph box #" + n);
-		for (int j = 0; j < trans; j++) {
-			int dest = 0;
-			c = -1;
-			while ((c = UnicodeIO.readChar(r)) != -1
-					&& UnicodeIO.isDigit((char) c))
-				dest = dest * 10 + ((char) c - '0');
-			if (c == -1)
-				throw new IOException("Error #14 while reading graph box #" + n);
-			g.addTransitionTo(boxes.get(dest));
-		}
-		// checking the preferred box or not and skipping the end-of-line
-		int foo = UnicodeIO.readChar(r);
-		if (foo == 'p') {
-			int end = UnicodeIO.readChar(r);
-			if (end != '\n') {
-				throw new IOException("Error #15 while reading graph box #" + n);
+			if (n != 1) {
+				// 1 is the final state, which content is <E>
+				setBoxContent(g, model.getContent(n));
+				// we will need to call g.update() to size the box according to
+				// the text
+			} else {
+				setBoxContent(g, "<E>");
+				g.setX_in(g.getX());
+				g.setY_in(g.getY());
+				g.setX1(g.getX());
+				g.setY1(g.getY() - 10);
+				g.setY_out(g.getY_in());
+				g.setX_out(g.getX_in() + 25);
+			}
+			final int trans = model.getTransitionCount(n);
+			for (int j = 0; j < trans; j++) {
+				g.addTransitionTo(boxes.get(model.getTransition(n, j)));
+			}
+			if (sentenceGraph) {
+				((TfstGraphBox) g)
+						.setState(model.isPreferred(n) ? TaggingState.PREFERRED
+								: TaggingState.NOT_PREFERRED);
 			}
 		}
-		else if (foo != '\n') {
-			throw new IOException("Error #15 while reading graph box #" + n);
+		model = null;
+	}
+
+	private void setBoxContent(GenericGraphBox g, String s) {
+		if (sentenceGraph) {
+			((TfstGraphBox) g).setContentWithBounds(s, tokens);
+		} else {
+			g.setContent(s);
 		}
-		
 	}
 
 	/**
@@ -758,7 +488,7 @@ public class GraphIO {
 						key + "=" + metadata.getValue(key) + "\n");
 			}
 			UnicodeIO.writeString(writer, "#\n");
-			nBoxes = boxes.size();
+			nBoxes = getBoxes().size();
 			UnicodeIO.writeString(writer, String.valueOf(nBoxes) + "\n");
 			for (int i = 0; i < nBoxes; i++) {
 				final GenericGraphBox g = boxes.get(i);
@@ -812,99 +542,6 @@ public class GraphIO {
 		}
 	}
 
-	private void readSentenceGraphLine(InputStreamReader r, int n) {
-		final TfstGraphBox g = (TfstGraphBox) boxes.get(n);
-		if (UnicodeIO.readChar(r) == 's') {
-			// is a "s" was read, then we read the " char
-			UnicodeIO.readChar(r);
-			
-		}
-		String s = "";
-		char c;
-		while ((c = (char) UnicodeIO.readChar(r)) !=
-				'"') {
-			if (c == '\\') {
-				c = (char) UnicodeIO.readChar(r);	
-				if (c != '\\') {
-					// case of \: \+ and \"
-					if (c == '"')
-						s = s + c;
-					else
-						s = s + "\\" + c;
-				} else {
-					// case of \\\" that must must be transformed into \"
-					c = (char) UnicodeIO.readChar(r);
-					if (c == '\\') {
-						// we are in the case \\\" -> \"
-						c = (char) UnicodeIO.readChar(r);
-						s = s + "\\" + c;
-					} else {
-						// we are in the case \\a -> \\a
-						s = s + "\\\\" + c;
-					}
-				}
-			} else
-				s = s + c;
-		}
-		System.out.println("s" + s);
-		// skipping the space after "
-		UnicodeIO.readChar(r);
-		// reading the X coordinate
-		int x = 0;
-		while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
-			x = x * 10 + (c - '0');
-		// reading the Y coordinate
-		int y = 0;
-		while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
-			y = y * 10 + (c - '0');
-		if (ConfigManager.getManager().getGraphPresentationPreferences(null)
-				.isRightToLeft()
-				|| info.isRightToLeft()) {
-			info.setRightToLeft(true);
-			g.setX(width - x);
-		} else {
-			g.setX(x);
-		}
-		g.setY(y);
-		g.setX1(g.getX());
-		g.setY1(g.getY());
-		g.setX_in(g.getX());
-		g.setY_in(g.getY());
-		g.setX_out(g.getX() + g.getWidth() + 5);
-		g.setY_out(g.getY_in());
-		if (n != 1) {
-			// 1 is the final state, which content is <E>
-			g.setContentWithBounds(s);
-			// we will need to call g.update() to size the box according to the
-			// text
-		} else {
-			g.setContentWithBounds("<E>");
-			g.setX_in(g.getX());
-			g.setY_in(g.getY());
-			g.setX1(g.getX());
-			g.setY1(g.getY() - 10);
-			g.setY_out(g.getY_in());
-			g.setX_out(g.getX_in() + 25);
-		}
-		int trans = 0;
-		while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
-			trans = trans * 10 + (c - '0');
-		for (int j = 0; j < trans; j++) {
-			int dest = 0;
-			while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
-				dest = dest * 10 + (c - '0');
-			g.addTransitionTo(boxes.get(dest));
-			System.out.println("dest" + dest);
-		}
-		// checking whether the tag is preferred or not then skipping the end-of-line
-		if ((char)UnicodeIO.readChar(r)=='p') {
-			g.setState(TaggingState.PREFERRED);
-			UnicodeIO.readChar(r);
-			UnicodeIO.readChar(r);}
-		else {g.setState(TaggingState.NOT_PREFERRED);}
-	}
-		
-
 	/**
 	 * Saves the sentence graph described by the fields of this
 	 * <code>GraphIO</code> object.
@@ -1021,7 +658,7 @@ public class GraphIO {
 			UnicodeIO.writeString(writer, "FITS 100\n");
 			UnicodeIO.writeString(writer, "PORIENT L\n");
 			UnicodeIO.writeString(writer, "#\n");
-			nBoxes = boxes.size();
+			nBoxes = getBoxes().size();
 			UnicodeIO.writeString(writer, String.valueOf(nBoxes) + "\n");
 			for (int i = 0; i < nBoxes; i++) {
 				final TfstGraphBox g = (TfstGraphBox) boxes.get(i);
@@ -1071,6 +708,9 @@ public class GraphIO {
 	}
 
 	public ArrayList<GenericGraphBox> getBoxes() {
+		if (boxes == null && model != null) {
+			buildBoxes();
+		}
 		return boxes;
 	}
 	public ArrayList<TfstGraphBox> getTfstBoxes() {
@@ -1093,6 +733,13 @@ public class GraphIO {
 		return grf;
 	}
 
+	/**
+	 * @return the tokens of the sentence for a sentence graph, null otherwise
+	 */
+	public TokensInfo getTokensInfo() {
+		return tokens;
+	}
+
 	public GraphMetaData getMetadata() {
 		return metadata;
 	}
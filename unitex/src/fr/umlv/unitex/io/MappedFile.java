@@ -0,0 +1,264 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+/**
+ * This class gives a read-only access to a file of any size through memory
+ * mapping. Instead of mapping the whole file in one buffer, which limits the
+ * size to 2GB, the file is cut into windows of fixed size that are mapped on
+ * demand. Only the most recently used windows are kept mapped.
+ * 
+ * Each window is mapped with OVERLAP extra bytes after its nominal end, so
+ * that a reader can finish decoding a character or a small record that
+ * crosses the window boundary without having to switch windows.
+ * 
+ * Windows are MappedRegion objects, so they are unmapped as soon as they are
+ * evicted and no longer in use, and close() releases everything immediately.
+ * When the JVM does not allow unmapping, windows are smaller and copied into
+ * the heap.
+ */
+public class MappedFile {
+	public static final int WINDOW_SIZE = 1 << 28;
+	public static final int COPY_WINDOW_SIZE = 1 << 22;
+	public static final int OVERLAP = 1 << 16;
+	private static final int MAX_WINDOWS = 4;
+	private static final int MAX_COPY_WINDOWS = 16;
+
+	/**
+	 * A visitor is given the windows of a file region one after the other.
+	 */
+	public interface Visitor {
+		/**
+		 * @param buffer
+		 *            a buffer positioned on the first byte to process. Bytes
+		 *            can be read up to the limit of the buffer, but the
+		 *            visitor should stop once the position has reached end
+		 * @param start
+		 *            the offset in the file of the first byte of the buffer
+		 * @param end
+		 *            the position in the buffer where the visitor should stop
+		 * @return false if the scanning should stop
+		 */
+		public boolean visit(ByteBuffer buffer, long start, int end);
+	}
+
+	/**
+	 * A window is unmapped when it has been evicted and no reader uses it
+	 * anymore.
+	 */
+	private static class Window {
+		final MappedRegion region;
+		int users;
+		boolean evicted;
+
+		Window(MappedRegion region) {
+			this.region = region;
+		}
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long offset;
+	private final long length;
+	private final int windowSize;
+	private final int maxWindows;
+	private final Window[] windows;
+	private final ArrayDeque<Integer> mappedWindows = new ArrayDeque<Integer>();
+	private boolean closed;
+
+	/**
+	 * Maps the given file, ignoring its first offset bytes, which is useful to
+	 * skip a BOM.
+	 */
+	public MappedFile(File f, long offset) throws IOException {
+		this.file = new RandomAccessFile(f, "r");
+		this.channel = file.getChannel();
+		this.offset = offset;
+		this.length = Math.max(0, channel.size() - offset);
+		if (MappedRegion.isMappingSupported()) {
+			this.windowSize = WINDOW_SIZE;
+			this.maxWindows = MAX_WINDOWS;
+		} else {
+			this.windowSize = COPY_WINDOW_SIZE;
+			this.maxWindows = MAX_COPY_WINDOWS;
+		}
+		this.windows = new Window[(int) ((length + windowSize - 1) / windowSize)];
+	}
+
+	public MappedFile(File f) throws IOException {
+		this(f, 0);
+	}
+
+	/**
+	 * @return the number of bytes that can be accessed
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Returns the window #n, mapping it if needed, and marks it as used. Each
+	 * call must be followed by a call to release.
+	 */
+	private synchronized Window acquire(int n) throws IOException {
+		if (closed) {
+			throw new IOException("File has been closed");
+		}
+		Window w = windows[n];
+		if (w == null) {
+			if (mappedWindows.size() == maxWindows) {
+				final int old = mappedWindows.removeFirst();
+				evict(windows[old]);
+				windows[old] = null;
+			}
+			final long start = (long) n * windowSize;
+			final int size = (int) Math.min(length - start, windowSize
+					+ OVERLAP);
+			w = new Window(MappedRegion.map(channel, offset + start, size));
+			windows[n] = w;
+		} else {
+			mappedWindows.remove(n);
+		}
+		mappedWindows.addLast(n);
+		w.users++;
+		return w;
+	}
+
+	private synchronized void release(Window w) {
+		w.users--;
+		if (w.evicted && w.users == 0) {
+			w.region.close();
+		}
+	}
+
+	private void evict(Window w) {
+		w.evicted = true;
+		if (w.users == 0) {
+			w.region.close();
+		}
+	}
+
+	/**
+	 * Returns the byte at the given position.
+	 */
+	public byte get(long pos) throws IOException {
+		final int n = (int) (pos / windowSize);
+		final Window w = acquire(n);
+		try {
+			return w.region.getBuffer().get((int) (pos - (long) n * windowSize));
+		} finally {
+			release(w);
+		}
+	}
+
+	/**
+	 * Copies len bytes starting at pos into dst.
+	 */
+	public void read(long pos, byte[] dst, int off, int len)
+			throws IOException {
+		if (pos < 0 || pos + len > length) {
+			throw new IndexOutOfBoundsException();
+		}
+		while (len > 0) {
+			final int n = (int) (pos / windowSize);
+			final Window w = acquire(n);
+			try {
+				final ByteBuffer b = w.region.getBuffer().duplicate();
+				b.position((int) (pos - (long) n * windowSize));
+				final int l = Math.min(len, b.remaining());
+				b.get(dst, off, l);
+				pos += l;
+				off += l;
+				len -= l;
+			} finally {
+				release(w);
+			}
+		}
+	}
+
+	/**
+	 * Gives all the windows that intersect the region [from;to[ to the
+	 * visitor. Once the visitor has processed a window, the next one starts
+	 * where the visitor stopped, which may be after the nominal end of the
+	 * window if the visitor had to read a multi-byte sequence. The buffer given
+	 * to the visitor must not be kept after visit returns.
+	 */
+	public void scan(long from, long to, Visitor v) throws IOException {
+		to = Math.min(to, length);
+		long pos = from;
+		while (pos < to) {
+			final int n = (int) (pos / windowSize);
+			final long start = (long) n * windowSize;
+			final Window w = acquire(n);
+			final ByteBuffer b;
+			try {
+				b = w.region.getBuffer().duplicate();
+				b.position((int) (pos - start));
+				final int end = (int) (Math.min(start + windowSize, to) - start);
+				if (!v.visit(b, start, end)) {
+					return;
+				}
+			} finally {
+				release(w);
+			}
+			final long next = start + b.position();
+			if (next <= pos) {
+				throw new IllegalStateException(
+						"Visitor did not consume any byte");
+			}
+			pos = next;
+		}
+	}
+
+	public void scan(long from, Visitor v) throws IOException {
+		scan(from, length, v);
+	}
+
+	/**
+	 * Releases the file. Windows that are not in use are unmapped at once, and
+	 * the others as soon as their current reader is done with them.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		for (int i = 0; i < windows.length; i++) {
+			if (windows[i] != null) {
+				evict(windows[i]);
+				windows[i] = null;
+			}
+		}
+		mappedWindows.clear();
+		try {
+			file.close();
+		} catch (final IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
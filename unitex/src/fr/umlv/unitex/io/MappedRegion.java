@@ -0,0 +1,158 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class represents a read-only region of a file. When the JVM allows it,
+ * the region is memory mapped and close() unmaps it immediately, instead of
+ * waiting for the garbage collector to release the mapping, which on Windows
+ * keeps the file locked. When unmapping is not available, the region is
+ * copied into a heap buffer, so that closing it never depends on the garbage
+ * collector either.
+ * 
+ * Once a region has been closed, any buffer obtained from it must no longer
+ * be used.
+ */
+public class MappedRegion implements Closeable {
+	private static final Unmapper unmapper = createUnmapper();
+
+	private ByteBuffer buffer;
+	private final boolean mapped;
+
+	private MappedRegion(ByteBuffer buffer, boolean mapped) {
+		this.buffer = buffer;
+		this.mapped = mapped;
+	}
+
+	/**
+	 * @return true if regions are memory mapped, false if they are copied
+	 */
+	public static boolean isMappingSupported() {
+		return unmapper != null;
+	}
+
+	/**
+	 * Returns a region corresponding to the size bytes of the channel that
+	 * start at position.
+	 */
+	public static MappedRegion map(FileChannel channel, long position, int size)
+			throws IOException {
+		if (unmapper != null) {
+			return new MappedRegion(channel.map(FileChannel.MapMode.READ_ONLY,
+					position, size), true);
+		}
+		final ByteBuffer b = ByteBuffer.allocate(size);
+		while (b.hasRemaining()) {
+			if (channel.read(b, position + b.position()) == -1) {
+				break;
+			}
+		}
+		b.flip();
+		return new MappedRegion(b, false);
+	}
+
+	/**
+	 * Returns the content of the region. The returned buffer is shared, so it
+	 * must only be used with absolute get operations, or duplicated.
+	 */
+	public ByteBuffer getBuffer() {
+		if (buffer == null) {
+			throw new IllegalStateException("Region has been closed");
+		}
+		return buffer;
+	}
+
+	public boolean isMapped() {
+		return mapped;
+	}
+
+	@Override
+	public void close() {
+		final ByteBuffer b = buffer;
+		if (b == null) {
+			return;
+		}
+		buffer = null;
+		if (mapped) {
+			try {
+				unmapper.unmap((MappedByteBuffer) b);
+			} catch (final Exception e) {
+				/*
+				 * If we cannot unmap the buffer, the garbage collector will do
+				 * it later
+				 */
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private interface Unmapper {
+		void unmap(MappedByteBuffer b) throws Exception;
+	}
+
+	/**
+	 * Looks for a way to unmap a buffer: Unsafe.invokeCleaner since Java 9,
+	 * and the buffer's cleaner before. Returns null if none is available.
+	 */
+	private static Unmapper createUnmapper() {
+		try {
+			final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			final Method invokeCleaner = unsafeClass.getMethod(
+					"invokeCleaner", ByteBuffer.class);
+			final Field f = unsafeClass.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			final Object unsafe = f.get(null);
+			return new Unmapper() {
+				@Override
+				public void unmap(MappedByteBuffer b) throws Exception {
+					invokeCleaner.invoke(unsafe, b);
+				}
+			};
+		} catch (final Exception e) {
+			/* Not a Java 9+ JVM, let's try the Java 8 way */
+		}
+		try {
+			final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer")
+					.getMethod("cleaner");
+			final Method clean = Class.forName("sun.misc.Cleaner").getMethod(
+					"clean");
+			return new Unmapper() {
+				@Override
+				public void unmap(MappedByteBuffer b) throws Exception {
+					final Object c = cleaner.invoke(b);
+					if (c != null) {
+						clean.invoke(c);
+					}
+				}
+			};
+		} catch (final Exception e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class finds the ends of lines of a mapped file. The file is cut into
+ * chunks of CHUNK_SIZE bytes that are scanned in parallel in the common
+ * fork-join pool. Each chunk is scanned 8 bytes at a time: a whole word is
+ * tested for newlines with a few arithmetic operations, and bytes are only
+ * looked at one by one in the rare words that contain one.
+ * 
+ * Chunks are given to the listener in file order, so that the caller can
+ * merge them into its own index as they come.
+ */
+public class NewlineIndexer {
+	public static final int CHUNK_SIZE = 1 << 24;
+
+	private static final long ONES8 = 0x0101010101010101L;
+	private static final long HIGHS8 = 0x8080808080808080L;
+	private static final long NEWLINES8 = 0x0A0A0A0A0A0A0A0AL;
+	private static final long ONES16 = 0x0001000100010001L;
+	private static final long HIGHS16 = 0x8000800080008000L;
+
+	/**
+	 * The result of the scanning of the bytes [start;end[ of the file.
+	 */
+	public static class Chunk {
+		final long start;
+		final long end;
+		long[] newlines = new long[256];
+		int[] charsBefore;
+		int size;
+		int chars;
+
+		Chunk(long start, long end, boolean countChars) {
+			this.start = start;
+			this.end = end;
+			if (countChars) {
+				charsBefore = new int[newlines.length];
+			}
+		}
+
+		void add(long newline, int c) {
+			if (size == newlines.length) {
+				newlines = Arrays.copyOf(newlines, 2 * size);
+				if (charsBefore != null) {
+					charsBefore = Arrays.copyOf(charsBefore, 2 * size);
+				}
+			}
+			newlines[size] = newline;
+			if (charsBefore != null) {
+				charsBefore[size] = c;
+			}
+			size++;
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getEnd() {
+			return end;
+		}
+
+		/**
+		 * @return the number of newlines found in the chunk
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return the position in the file of the first byte of the newline #i
+		 */
+		public long getNewline(int i) {
+			return newlines[i];
+		}
+
+		/**
+		 * @return the newline positions, in a array of exactly size() elements
+		 */
+		public long[] getNewlines() {
+			return Arrays.copyOf(newlines, size);
+		}
+
+		/**
+		 * @return the number of chars of the chunk that precede the newline #i
+		 */
+		public int getCharsBefore(int i) {
+			return charsBefore[i];
+		}
+
+		/**
+		 * @return the number of chars of the chunk
+		 */
+		public int getChars() {
+			return chars;
+		}
+	}
+
+	public interface Listener {
+		/**
+		 * Called for each chunk, in file order, by the thread that invoked
+		 * index.
+		 * 
+		 * @return false if the indexing should stop
+		 */
+		public boolean chunkIndexed(Chunk chunk);
+	}
+
+	private final MappedFile file;
+	private final boolean utf16;
+	private final long newlines16;
+	private final boolean countChars;
+
+	/**
+	 * @param encoding
+	 *            the encoding of the file, that must be mapped without its
+	 *            BOM, if any
+	 * @param countChars
+	 *            if true, chunks also count chars, so that the position in
+	 *            chars of each newline can be computed
+	 */
+	public NewlineIndexer(MappedFile file, Encoding encoding,
+			boolean countChars) {
+		this.file = file;
+		this.countChars = countChars;
+		this.utf16 = (encoding != Encoding.UTF8);
+		/*
+		 * We read words as big endian longs, so a little endian '\n' is seen
+		 * as 0x0A00
+		 */
+		this.newlines16 = ((encoding == Encoding.UTF16LE) ? 0x0A00L : 0x000AL)
+				* ONES16;
+	}
+
+	/**
+	 * @return the number of bytes of a newline
+	 */
+	public int getNewlineLength() {
+		return utf16 ? 2 : 1;
+	}
+
+	/**
+	 * Scans the whole file. No more than twice as many chunks as there are
+	 * threads in the pool are scanned ahead of the listener, so that stopping
+	 * is fast and the scanned windows of the file stay close to each other.
+	 */
+	public void index(Listener listener) throws IOException,
+			InterruptedException {
+		final long length = file.length();
+		final ForkJoinPool pool = ForkJoinPool.commonPool();
+		final int ahead = 2 * pool.getParallelism();
+		final ArrayDeque<ForkJoinTask<Chunk>> tasks = new ArrayDeque<ForkJoinTask<Chunk>>();
+		long next = 0;
+		try {
+			while (next < length || !tasks.isEmpty()) {
+				while (next < length && tasks.size() < ahead) {
+					final long end = Math.min(length, next + CHUNK_SIZE);
+					tasks.addLast(pool.submit(new ChunkTask(next, end)));
+					next = end;
+				}
+				final Chunk chunk;
+				try {
+					chunk = tasks.removeFirst().get();
+				} catch (final ExecutionException e) {
+					if (e.getCause() instanceof UncheckedIOException) {
+						throw ((UncheckedIOException) e.getCause()).getCause();
+					}
+					throw new IOException(e.getCause());
+				}
+				if (!listener.chunkIndexed(chunk)) {
+					return;
+				}
+			}
+		} finally {
+			for (final ForkJoinTask<Chunk> t : tasks) {
+				t.cancel(false);
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private class ChunkTask extends RecursiveTask<Chunk> {
+		private final long start;
+		private final long end;
+
+		ChunkTask(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Chunk compute() {
+			final Chunk chunk = new Chunk(start, end, countChars);
+			try {
+				file.scan(start, end, new MappedFile.Visitor() {
+					@Override
+					public boolean visit(ByteBuffer buffer, long offset,
+							int limit) {
+						if (utf16) {
+							scan16(buffer, offset, limit, chunk);
+						} else {
+							scan8(buffer, offset, limit, chunk);
+						}
+						return true;
+					}
+				});
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return chunk;
+		}
+	}
+
+	void scan8(ByteBuffer b, long offset, int end, Chunk chunk) {
+		int p = b.position();
+		int chars = chunk.chars;
+		while (p + 8 <= end) {
+			final long w = b.getLong(p);
+			final long x = w ^ NEWLINES8;
+			if (((x - ONES8) & ~x & HIGHS8) == 0) {
+				/*
+				 * No newline in this word. Each char starts with a byte that
+				 * is not of the form 10XX XXXX, and a byte of the form 1111
+				 * 0XXX starts a supplementary code point, i.e. two chars
+				 */
+				if (countChars) {
+					chars += 8 - Long.bitCount(w & ~(w << 1) & HIGHS8)
+							+ Long.bitCount(w & (w << 1) & (w << 2)
+									& (w << 3) & ~(w << 4) & HIGHS8);
+				}
+				p = p + 8;
+				continue;
+			}
+			for (final int e = p + 8; p < e; p++) {
+				chars = scanByte(b.get(p), offset + p, chars, chunk);
+			}
+		}
+		for (; p < end; p++) {
+			chars = scanByte(b.get(p), offset + p, chars, chunk);
+		}
+		chunk.chars = chars;
+		b.position(end);
+	}
+
+	private static int scanByte(byte c, long pos, int chars, Chunk chunk) {
+		if (c == '\n') {
+			chunk.add(pos, chars);
+		}
+		if ((c & 0xC0) != 0x80) {
+			chars++;
+		}
+		if ((c & 0xF8) == 0xF0) {
+			/* A 4-byte sequence is decoded as a surrogate pair */
+			chars++;
+		}
+		return chars;
+	}
+
+	void scan16(ByteBuffer b, long offset, int end, Chunk chunk) {
+		int p = b.position();
+		int chars = chunk.chars;
+		final int newline = (int) (newlines16 & 0xFFFF);
+		while (p + 8 <= end) {
+			final long x = b.getLong(p) ^ newlines16;
+			if (((x - ONES16) & ~x & HIGHS16) == 0) {
+				chars += 4;
+				p = p + 8;
+				continue;
+			}
+			for (final int e = p + 8; p < e; p = p + 2) {
+				if ((b.getShort(p) & 0xFFFF) == newline) {
+					chunk.add(offset + p, chars);
+				}
+				chars++;
+			}
+		}
+		for (; p + 2 <= end; p = p + 2) {
+			if ((b.getShort(p) & 0xFFFF) == newline) {
+				chunk.add(offset + p, chars);
+			}
+			chars++;
+		}
+		chunk.chars = chars;
+		b.position(end);
+	}
+}
@@ -23,6 +23,8 @@ package fr.umlv.unitex.io;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
@@ -40,7 +42,7 @@ import fr.umlv.unitex.grf.GraphPresentationInfo;
  */
 public class SVG {
 	private final OutputStreamWriter writer;
-	private final GraphFrame frame;
+	private final File graph;
 	private final GraphicalZone graphicalZone;
 	private final Graphics2D graphics;
 	private final GraphPresentationInfo info;
@@ -48,10 +50,29 @@ public class SVG {
 	private int descent;
 
 	public SVG(OutputStreamWriter writer, GraphFrame frame) {
+		this(writer, frame.getGraphicalZone(), frame.getGraph());
+	}
+
+	/**
+	 * Creates a SVG writer for a graphical zone that may not be displayed, as
+	 * when graphs are exported from the command line.
+	 * 
+	 * @param graph
+	 *            the graph file, or null if the graph has not been saved
+	 */
+	public SVG(OutputStreamWriter writer, GraphicalZone graphicalZone,
+			File graph) {
 		this.writer = writer;
-		this.frame = frame;
-		this.graphicalZone = frame.getGraphicalZone();
-		this.graphics = (Graphics2D) graphicalZone.getGraphics();
+		this.graph = graph;
+		this.graphicalZone = graphicalZone;
+		final Graphics2D g = (Graphics2D) graphicalZone.getGraphics();
+		if (g != null) {
+			this.graphics = g;
+		} else {
+			this.graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)
+					.createGraphics();
+		}
+		graphicalZone.measureBoxes(graphics);
 		this.info = graphicalZone.getGraphPresentationInfo();
 	}
 
@@ -62,8 +83,8 @@ public class SVG {
 				+ "\" height=\"" + graphicalZone.getHeight()
 				+ "\" version=\"1.1\" xmlns=\"http://www.w3.org/2000/svg\">\n");
 		writer.write("<desc>\n\tThis SVG file was created by Unitex/GramLab (http://unitexgramlab.org).\n");
-                final String graphName = frame.getGraph() != null ?
-                                         frame.getGraph().getAbsolutePath() :
+                final String graphName = graph != null ?
+                                         graph.getAbsolutePath() :
                                          "(Unsaved)";
 		writer.write("\tIt represents the graph named: "
 				+ graphName + "\n</desc>\n");
@@ -82,18 +103,18 @@ public class SVG {
 					2);
 		}
 		// if necessary, we print the file name
-		final Font defaultFont = graphicalZone.getFont();
-                final String graphName = frame.getGraph() != null ?
-                                         frame.getGraph().getAbsolutePath() :
+		final Font defaultFont = getDefaultFont();
+                final String graphName = graph != null ?
+                                         graph.getAbsolutePath() :
                                          "(Unsaved)";
 		if (info.isFilename()) {
 			if (info.isPathname())
-				drawText((frame.getGraph() != null) ? graphName : "", 20,
+				drawText((graph != null) ? graphName : "", 20,
 						graphicalZone.getHeight() - 45,
 						info.getForegroundColor(), defaultFont);
 			else
-				drawText((frame.getGraph() != null) ? frame.getGraph()
-						.getName() : "", 20, graphicalZone.getHeight() - 45,
+				drawText((graph != null) ? graph.getName() : "", 20,
+						graphicalZone.getHeight() - 45,
 						info.getForegroundColor(), defaultFont);
 		}
 		// if necessary, we print the date of the day
@@ -585,6 +606,21 @@ public class SVG {
 				+ "\"/>\n");
 	}
 
+	/**
+	 * The zone has no font when it is not displayed, as with ExportGraphs in
+	 * headless mode, so we use the input font of the graph instead.
+	 */
+	private Font getDefaultFont() {
+		Font font = graphicalZone.getFont();
+		if (font == null && info.getInput() != null) {
+			font = info.getInput().getFont();
+		}
+		if (font == null) {
+			font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+		}
+		return font;
+	}
+
 	private void drawText(String text, int x, int y, Color color, Font font)
 			throws IOException {
 		writer.write("<text x=\"" + x + "\" y=\"" + y + "\" font-family=\""
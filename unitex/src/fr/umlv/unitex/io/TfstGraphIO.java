@@ -903,11 +903,11 @@ public class TfstGraphIO extends GraphIO {
 		g.setY_out(g.getY_in());
 		if (n != 1) {
 			// 1 is the final state, which content is <E>
-			g.setContentWithBounds(s);
+			g.setContentWithBounds(s, getTokensInfo());
 			// we will need to call g.update() to size the box according to the
 			// text
 		} else {
-			g.setContentWithBounds("<E>");
+			g.setContentWithBounds("<E>", getTokensInfo());
 			g.setX_in(g.getX());
 			g.setY_in(g.getY());
 			g.setX1(g.getX());
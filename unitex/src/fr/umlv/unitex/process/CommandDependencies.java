@@ -0,0 +1,117 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import fr.umlv.unitex.process.commands.CommandBuilder;
+import fr.umlv.unitex.process.commands.MultiCommands;
+
+/**
+ * This class computes the dependency graph of a command sequence. A command
+ * depends on a previous one if it reads or writes a file written by it, or if
+ * it writes a file read by it. Commands that do not declare their files depend
+ * on all previous commands and all the following ones depend on them, so that a
+ * sequence made of such commands is executed exactly in order.
+ */
+public class CommandDependencies {
+
+	private final int[] numberOfPredecessors;
+	private final ArrayList<ArrayList<Integer>> successors;
+
+	public CommandDependencies(MultiCommands commands) {
+		final int n = commands.numberOfCommands();
+		numberOfPredecessors = new int[n];
+		successors = new ArrayList<ArrayList<Integer>>(n);
+		for (int i = 0; i < n; i++) {
+			successors.add(new ArrayList<Integer>());
+		}
+		for (int j = 0; j < n; j++) {
+			final CommandBuilder b = commands.getCommand(j);
+			for (int i = 0; i < j; i++) {
+				final CommandBuilder a = commands.getCommand(i);
+				if (a == null || b == null || dependsOn(b, a)) {
+					successors.get(i).add(j);
+					numberOfPredecessors[j]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if b must be executed after a
+	 */
+	private static boolean dependsOn(CommandBuilder b, CommandBuilder a) {
+		if (!a.hasDeclaredFiles() || !b.hasDeclaredFiles()) {
+			return true;
+		}
+		final ArrayList<File> aOut = a.getOutputFiles();
+		return intersects(b.getInputFiles(), aOut)
+				|| intersects(b.getOutputFiles(), aOut)
+				|| intersects(b.getOutputFiles(), a.getInputFiles());
+	}
+
+	private static boolean intersects(ArrayList<File> l1, ArrayList<File> l2) {
+		for (final File f1 : l1) {
+			for (final File f2 : l2) {
+				if (overlaps(f1, f2)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Two files overlap if they are equal or if one is an ancestor of the
+	 * other, since a command may create a directory in which another one
+	 * writes.
+	 */
+	private static boolean overlaps(File f1, File f2) {
+		return isAncestorOrSelf(f1, f2) || isAncestorOrSelf(f2, f1);
+	}
+
+	private static boolean isAncestorOrSelf(File ancestor, File f) {
+		for (File tmp = f; tmp != null; tmp = tmp.getParentFile()) {
+			if (tmp.equals(ancestor)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return numberOfPredecessors.length;
+	}
+
+	/**
+	 * @return a fresh copy of the predecessor counters, to be decremented by
+	 *         the scheduler
+	 */
+	public int[] getNumberOfPredecessors() {
+		return numberOfPredecessors.clone();
+	}
+
+	public ArrayList<Integer> getSuccessors(int n) {
+		return successors.get(n);
+	}
+}
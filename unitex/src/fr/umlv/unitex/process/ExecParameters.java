@@ -21,6 +21,7 @@
 package fr.umlv.unitex.process;
 
 import java.io.File;
+import java.util.HashSet;
 
 import fr.umlv.unitex.process.commands.CommandBuilder;
 import fr.umlv.unitex.process.commands.MultiCommands;
@@ -33,17 +34,40 @@ import fr.umlv.unitex.process.list.ProcessOutputList;
 public class ExecParameters {
 
 	/**
-	 * If not null, this represents the current running process. This field is
-	 * used to know which is the current process from within an Executor object
+	 * The processes that are currently running. This field is used to know
+	 * which processes to kill from within an Executor object, since several
+	 * independent commands may run at the same time
 	 */
-	private Process process;
+	private final HashSet<Process> processes = new HashSet<Process>();
 
-	public Process getProcess() {
-		return process;
+	public void addProcess(Process process) {
+		synchronized (processes) {
+			processes.add(process);
+		}
 	}
 
-	public void setProcess(Process process) {
-		this.process = process;
+	public void removeProcess(Process process) {
+		synchronized (processes) {
+			processes.remove(process);
+		}
+	}
+
+	/**
+	 * Kills all the running processes.
+	 * 
+	 * @return true if there was at least one process to kill
+	 */
+	public boolean destroyProcesses() {
+		synchronized (processes) {
+			if (processes.isEmpty()) {
+				return false;
+			}
+			for (final Process p : processes) {
+				p.destroy();
+			}
+			processes.clear();
+			return true;
+		}
 	}
 
 	public boolean isStopOnProblem() {
@@ -22,6 +22,15 @@ package fr.umlv.unitex.process;
 
 import java.awt.EventQueue;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import fr.umlv.unitex.console.ConsoleEntry;
 import fr.umlv.unitex.exceptions.UnitexUncaughtExceptionHandler;
@@ -30,6 +39,9 @@ import fr.umlv.unitex.process.commands.MultiCommands;
 
 /**
  * This object launches a thread that will process all the given commands.
+ * Commands that do not depend on each other (see
+ * <code>CommandDependencies</code>) are run concurrently on a pool sized to
+ * the number of available processors.
  * 
  * @author paumier
  * 
@@ -37,9 +49,19 @@ import fr.umlv.unitex.process.commands.MultiCommands;
 public class Executor extends Thread {
 
 	private final ExecParameters parameters;
-	private boolean success = true;
-	private boolean finished = false;
-	ConsoleEntry entry = null;
+	private volatile boolean success = true;
+	private volatile boolean finished = false;
+	/*
+	 * The console entries of the commands being executed, used to report a
+	 * cancellation
+	 */
+	private final HashSet<ConsoleEntry> entries = new HashSet<ConsoleEntry>();
+	/*
+	 * Console logging and ToDoBefore/ToDoAfter hooks were written for a
+	 * sequential execution, so we never run two of them at the same time
+	 */
+	private final Object hookLock = new Object();
+	private ExecutorService pool = null;
 
 	public Executor(ExecParameters parameters) {
 		this.parameters = parameters;
@@ -54,41 +76,52 @@ public class Executor extends Thread {
 	@Override
 	public void run() {
 		final MultiCommands commands = parameters.getCommands();
-		CommandBuilder command;
-		for (int i = 0; success && i < commands.numberOfCommands(); i++) {
-			if ((command = commands.getCommand(i)) != null) {
-				entry = null;
-				if (parameters.isTraceIntoConsole()) {
-					entry = command.logIntoConsole();
-				}
-				final ToDoBeforeSingleCommand toDoBefore = command
-						.getWhatToDoBefore();
-				if (toDoBefore != null)
-					toDoBefore.toDo(entry);
-
-				final boolean commandSuccessful = command.executeCommand(
-						parameters, entry);
-				if (!commandSuccessful) {
+		final CommandDependencies dependencies = new CommandDependencies(
+				commands);
+		final int[] predecessors = dependencies.getNumberOfPredecessors();
+		final int nThreads = Math.max(1, Math.min(commands.numberOfCommands(),
+				Runtime.getRuntime().availableProcessors()));
+		pool = Executors.newFixedThreadPool(nThreads);
+		final CompletionService<Integer> service = new ExecutorCompletionService<Integer>(
+				pool);
+		int running = 0;
+		for (int i = 0; i < predecessors.length; i++) {
+			if (predecessors[i] == 0) {
+				submit(service, commands, i);
+				running++;
+			}
+		}
+		try {
+			while (running > 0) {
+				final Future<Integer> done = service.take();
+				running--;
+				final int n;
+				try {
+					n = done.get();
+				} catch (final ExecutionException e) {
 					success = false;
+					UnitexUncaughtExceptionHandler.getHandler()
+							.uncaughtException(this, e.getCause());
+					continue;
+				}
+				if (!success) {
+					/*
+					 * After a failure, we just wait for the commands already
+					 * running
+					 */
+					continue;
 				}
-				if (entry != null
-						&& command.getType() == CommandBuilder.PROGRAM) {
-					while (!entry.isNormalStreamEnded()
-							|| !entry.isErrorStreamEnded()) {
-						/*
-						 * We wait for the end of the stdout and stderr reading
-						 * threads
-						 */
-						// System.err.println("stdout ended: "+entry.isNormalStreamEnded());
-						// System.err.println("stderr ended: "+entry.isErrorStreamEnded());
+				for (final int next : dependencies.getSuccessors(n)) {
+					if (--predecessors[next] == 0) {
+						submit(service, commands, next);
+						running++;
 					}
 				}
-				final ToDoAfterSingleCommand toDoAfter = command
-						.getWhatToDoOnceCompleted();
-				if (toDoAfter != null)
-					toDoAfter.toDo(commandSuccessful, entry);
-				entry = null;
 			}
+		} catch (final InterruptedException e) {
+			success = false;
+		} finally {
+			pool.shutdownNow();
 		}
 		final ToDo DO = parameters.getDO();
 		if (DO != null) {
@@ -97,16 +130,78 @@ public class Executor extends Thread {
 		finished = true;
 	}
 
+	private void submit(CompletionService<Integer> service,
+			final MultiCommands commands, final int n) {
+		service.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				final CommandBuilder command = commands.getCommand(n);
+				if (command != null && success) {
+					if (!execute(command)) {
+						success = false;
+					}
+				}
+				return n;
+			}
+		});
+	}
+
+	/**
+	 * Executes one command with its ToDoBefore/ToDoAfter hooks.
+	 * 
+	 * @return true iff the command was successful
+	 */
+	boolean execute(CommandBuilder command) {
+		ConsoleEntry entry = null;
+		synchronized (hookLock) {
+			if (parameters.isTraceIntoConsole()) {
+				entry = command.logIntoConsole();
+			}
+			final ToDoBeforeSingleCommand toDoBefore = command
+					.getWhatToDoBefore();
+			if (toDoBefore != null)
+				toDoBefore.toDo(entry);
+		}
+		if (entry != null) {
+			synchronized (entries) {
+				entries.add(entry);
+			}
+		}
+		final boolean commandSuccessful = command.executeCommand(parameters,
+				entry);
+		if (entry != null && command.getType() == CommandBuilder.PROGRAM) {
+			/*
+			 * We wait for the end of the stdout and stderr reading threads
+			 */
+			entry.waitForStreamsEnded();
+		}
+		if (entry != null) {
+			synchronized (entries) {
+				entries.remove(entry);
+			}
+		}
+		synchronized (hookLock) {
+			final ToDoAfterSingleCommand toDoAfter = command
+					.getWhatToDoOnceCompleted();
+			if (toDoAfter != null)
+				toDoAfter.toDo(commandSuccessful, entry);
+		}
+		return commandSuccessful;
+	}
+
 	public boolean getSuccess() {
 		return success;
 	}
 
 	@Override
 	public void interrupt() {
-		final Process p = parameters.getProcess();
-		if (p != null) {
-			p.destroy();
-			if (entry != null) {
+		success = false;
+		if (parameters.destroyProcesses()) {
+			final ArrayList<ConsoleEntry> canceled;
+			synchronized (entries) {
+				canceled = new ArrayList<ConsoleEntry>(entries);
+			}
+			for (final ConsoleEntry entry : canceled) {
 				try {
 					if (EventQueue.isDispatchThread()) {
 						entry.addErrorMessage("*** COMMAND CANCELED BY USER ***");
@@ -124,7 +219,6 @@ public class Executor extends Thread {
 				}
 			}
 		}
-		success = false;
 		finished = true;
 		super.interrupt();
 	}
@@ -119,6 +119,9 @@ public class ProcessInfoThread extends Thread {
 		boolean fullReturn;
 		while ((s = myReadLine(stream)) != null) {
 			if (!s.equals("")) {
+				if (entry != null) {
+					entry.getTiming().markFirstOutput();
+				}
 				if (s.endsWith("\r\n")) {
 					s = s.substring(0, s.length() - 2);
 					fullReturn = true;
@@ -56,6 +56,21 @@ public abstract class CommandBuilder implements AbstractCommand {
 	
 	int type = PROGRAM;
 	private boolean unitexProgram = true;
+
+	/**
+	 * Files read and written by the command. They are used to build the
+	 * dependency graph of a MultiCommands, so that independent commands can be
+	 * run concurrently. A command that declares no file at all is considered
+	 * as depending on every other one.
+	 */
+	private final ArrayList<File> inputFiles = new ArrayList<File>();
+	private final ArrayList<File> outputFiles = new ArrayList<File>();
+
+	/**
+	 * The exit value of the last execution of the command, or -1 if it has not
+	 * been executed or could not be launched
+	 */
+	private int exitValue = -1;
 	private int programNamePosition;
 
 	CommandBuilder(String programName) {
@@ -129,6 +144,33 @@ public abstract class CommandBuilder implements AbstractCommand {
 		programNamePosition++;
 	}
 
+	public void declareInput(File f) {
+		if (f != null)
+			inputFiles.add(f.getAbsoluteFile());
+	}
+
+	public void declareOutput(File f) {
+		if (f != null)
+			outputFiles.add(f.getAbsoluteFile());
+	}
+
+	@SuppressWarnings("unchecked")
+	public ArrayList<File> getInputFiles() {
+		return (ArrayList<File>) inputFiles.clone();
+	}
+
+	@SuppressWarnings("unchecked")
+	public ArrayList<File> getOutputFiles() {
+		return (ArrayList<File>) outputFiles.clone();
+	}
+
+	/**
+	 * @return true if the command has declared the files it reads and writes
+	 */
+	public boolean hasDeclaredFiles() {
+		return !inputFiles.isEmpty() || !outputFiles.isEmpty();
+	}
+
 	public String getCommandLine() {
 		String res = "";
 		for (final String aList : list) {
@@ -199,6 +241,10 @@ public abstract class CommandBuilder implements AbstractCommand {
 				Log.getCurrentLogID());
 	}
 
+	public int getExitValue() {
+		return exitValue;
+	}
+
 	/**
 	 * This is overridden by GrfDiffCommand
 	 */
@@ -218,13 +264,17 @@ public abstract class CommandBuilder implements AbstractCommand {
 		final String[] comm = getCommandArguments(true);
 		try {
 			/* We create the process */
-			parameters.setProcess(Runtime.getRuntime().exec(comm, null,
-					parameters.getWorkingDirectory()));
-			p = parameters.getProcess();
+			p = Runtime.getRuntime().exec(comm, null,
+					parameters.getWorkingDirectory());
+			parameters.addProcess(p);
+			if (entry != null) {
+				entry.getTiming().markSpawn();
+			}
 			if (parameters.getStdout() == null) {
 				/* If needed, we just consume the output stream */
 				new EatStreamThread(p.getInputStream()).start();
-				entry.setNormalStreamEnded(true);
+				if (entry != null)
+					entry.setNormalStreamEnded(true);
 			} else {
 				new ProcessInfoThread(parameters.getStdout(),
 						p.getInputStream(), entry, false).start();
@@ -232,7 +282,8 @@ public abstract class CommandBuilder implements AbstractCommand {
 			if (parameters.getStderr() == null) {
 				/* If needed, we just consume the error stream */
 				new EatStreamThread(p.getErrorStream()).start();
-				entry.setErrorStreamEnded(true);
+				if (entry != null)
+					entry.setErrorStreamEnded(true);
 			} else {
 				new ProcessInfoThread(parameters.getStderr(),
 						p.getErrorStream(), entry, true).start();
@@ -240,13 +291,17 @@ public abstract class CommandBuilder implements AbstractCommand {
 			/* Now, we just wait for the end of the process */
 			try {
 				p.waitFor();
+				exitValue = p.exitValue();
+				if (entry != null) {
+					entry.markExit();
+				}
 				if (parameters.isStopOnProblem()) {
 					/* iff we need to report a problem */
 					if (!currentCommand.isCommandSuccessful(p.exitValue())) {
 						problem = true;
 					}
 				}
-				parameters.setProcess(null);
+				parameters.removeProcess(p);
 				return !problem;
 			} catch (final java.lang.InterruptedException e) {
 				/*
@@ -271,11 +326,16 @@ public abstract class CommandBuilder implements AbstractCommand {
 					}
 					problem = true;
 				}
-				parameters.setProcess(null);
+				parameters.removeProcess(p);
 				return problem;
 			}
 		} catch (final java.io.IOException e) {
 			/* If the process could not be created */
+			if (entry != null) {
+				/* No reading thread will ever signal the end of the streams */
+				entry.setNormalStreamEnded(true);
+				entry.setErrorStreamEnded(true);
+			}
 			final String programName = comm[0];
 			SwingUtilities.invokeLater(new Runnable() {
 				@Override
@@ -288,7 +348,6 @@ public abstract class CommandBuilder implements AbstractCommand {
 			if (parameters.isStopOnProblem()) {
 				problem = true;
 			}
-			parameters.setProcess(null);
 			return !problem;
 		}
 	}
@@ -41,6 +41,8 @@ public class CpCommand extends AbstractMethodCommand {
 		this.dst = d;
 		protectElement(src.getAbsolutePath());
 		protectElement(dst.getAbsolutePath());
+		declareInput(src);
+		declareOutput(dst);
 		return this;
 	}
 
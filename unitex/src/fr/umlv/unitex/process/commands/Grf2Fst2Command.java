@@ -21,15 +21,40 @@
 package fr.umlv.unitex.process.commands;
 
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.HashMap;
+
+import javax.swing.SwingUtilities;
 
 import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.config.NamedRepository;
+import fr.umlv.unitex.console.ConsoleEntry;
+import fr.umlv.unitex.console.Couple;
+import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.graphtools.Dependancies;
+import fr.umlv.unitex.graphtools.GraphCall;
+import fr.umlv.unitex.graphtools.Grf2Fst2Cache;
+import fr.umlv.unitex.process.ExecParameters;
 
 /**
  * @author Sébastien Paumier
  */
 public class Grf2Fst2Command extends CommandBuilder {
+	private File grf;
+	private File fst2;
+	private File alphabet;
+	private Grf2Fst2Cache cache;
+	/* The repositories given to Grf2Fst2, needed to compute cache keys */
+	private File repository;
+	private final HashMap<String, File> namedRepositories = new HashMap<String, File>();
+	/*
+	 * The graphs called by grf, computed when the dependencies of the command
+	 * are, or null if some of them do not exist
+	 */
+	private ArrayList<File> subgraphs;
+	private boolean subgraphsComputed = false;
+
 	public Grf2Fst2Command() {
 		super("Grf2Fst2");
 	}
@@ -37,6 +62,11 @@ public class Grf2Fst2Command extends CommandBuilder {
 	public Grf2Fst2Command grf(File s) {
 		protectElement(s.getAbsolutePath());
 		ultraSimplifiedList.add(s.getName());
+		grf = s;
+		/* Default output, in case output() is not invoked */
+		fst2 = new File(FileUtil.getFileNameWithoutExtension(s) + ".fst2");
+		declareInput(s);
+		declareOutput(fst2);
 		return this;
 	}
 
@@ -54,6 +84,8 @@ public class Grf2Fst2Command extends CommandBuilder {
 		if (f == null)
 			return this;
 		protectElement("--alphabet=" + f.getAbsolutePath());
+		alphabet = f;
+		declareInput(f);
 		return this;
 	}
 
@@ -76,6 +108,7 @@ public class Grf2Fst2Command extends CommandBuilder {
 		if (f != null) {
 			element("-d");
 			protectElement(f.getAbsolutePath());
+			repository = f;
 		}
 		return this;
 	}
@@ -88,6 +121,7 @@ public class Grf2Fst2Command extends CommandBuilder {
 		for (final NamedRepository n : l) {
 			protectElement("-r" + n.getName() + "="
 					+ n.getFile().getAbsolutePath());
+			namedRepositories.put(n.getName(), n.getFile());
 		}
 		return this;
 	}
@@ -124,9 +158,100 @@ public class Grf2Fst2Command extends CommandBuilder {
 	public Grf2Fst2Command output(File fst2) {
 		element("-o");
 		protectElement(fst2.getAbsolutePath());
+		this.fst2 = fst2;
+		declareOutput(fst2);
+		return this;
+	}
+
+	private ArrayList<File> getSubgraphs() {
+		if (!subgraphsComputed) {
+			subgraphsComputed = true;
+			subgraphs = new ArrayList<File>();
+			for (final GraphCall c : Dependancies.getAllSubgraphs(grf)) {
+				if (!c.getGrf().exists()) {
+					subgraphs = null;
+					break;
+				}
+				subgraphs.add(c.getGrf());
+			}
+		}
+		return subgraphs;
+	}
+
+	/**
+	 * Grf2Fst2 reads all the subgraphs of the graph, so that they are inputs
+	 * of the command too. If we cannot know them all, because some of them
+	 * do not exist yet, the command is considered as undeclared, i.e. it is
+	 * executed in order with all the other ones.
+	 */
+	@Override
+	public boolean hasDeclaredFiles() {
+		return super.hasDeclaredFiles()
+				&& (grf == null || getSubgraphs() != null);
+	}
+
+	@Override
+	public ArrayList<File> getInputFiles() {
+		final ArrayList<File> l = super.getInputFiles();
+		if (grf != null && getSubgraphs() != null) {
+			for (final File f : getSubgraphs()) {
+				l.add(f.getAbsoluteFile());
+			}
+		}
+		return l;
+	}
+
+	/**
+	 * Makes the compilation be skipped if neither the graph, its subgraphs,
+	 * the alphabet nor the options have changed since the last compilation
+	 * recorded in the given cache.
+	 */
+	public Grf2Fst2Command cache(Grf2Fst2Cache c) {
+		this.cache = c;
 		return this;
 	}
 
+	@Override
+	public boolean executeCommand(final ExecParameters parameters,
+			final ConsoleEntry entry) {
+		if (cache == null || grf == null) {
+			return super.executeCommand(parameters, entry);
+		}
+		final String key = Grf2Fst2Cache.computeKey(grf, alphabet,
+				getSimplifiedCommandLine(), repository, namedRepositories);
+		if (cache.isUpToDate(fst2, key)) {
+			if (entry != null) {
+				/* There will be no process output to wait for */
+				entry.setNormalStreamEnded(true);
+				entry.setErrorStreamEnded(true);
+			}
+			if (parameters.getStdout() != null) {
+				try {
+					SwingUtilities.invokeAndWait(new Runnable() {
+						@Override
+						public void run() {
+							parameters.getStdout().addLine(
+									new Couple(fst2.getName()
+											+ " is up to date", false));
+						}
+					});
+				} catch (final InterruptedException e) {
+					/* */
+				} catch (final InvocationTargetException e) {
+					/* */
+				}
+			}
+			return true;
+		}
+		final boolean ret = super.executeCommand(parameters, entry);
+		if (getExitValue() == 0) {
+			cache.put(fst2, key);
+		} else {
+			cache.remove(fst2);
+		}
+		return ret;
+	}
+
 	public Grf2Fst2Command checkVariables(boolean b) {
 		if (b) {
 			element("-v");
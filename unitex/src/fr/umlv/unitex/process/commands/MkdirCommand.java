@@ -35,6 +35,7 @@ public class MkdirCommand extends AbstractMethodCommand {
 	public MkdirCommand name(File s) {
 		dir = s;
 		protectElement(s.getAbsolutePath());
+		declareOutput(s);
 		return this;
 	}
 
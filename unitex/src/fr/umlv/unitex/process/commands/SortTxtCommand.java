@@ -33,6 +33,9 @@ public class SortTxtCommand extends CommandBuilder {
 
 	public SortTxtCommand file(File s) {
 		protectElement(s.getAbsolutePath());
+		/* The file is sorted in place */
+		declareInput(s);
+		declareOutput(s);
 		return this;
 	}
 
@@ -49,12 +52,14 @@ public class SortTxtCommand extends CommandBuilder {
 	public SortTxtCommand sortAlphabet(File alphabet) {
 		if (alphabet != null) {
 			protectElement("-o" + alphabet.getAbsolutePath());
+			declareInput(alphabet);
 		}
 		return this;
 	}
 
 	public SortTxtCommand saveNumberOfLines(File file) {
 		protectElement("-l" + file.getAbsolutePath());
+		declareOutput(file);
 		return this;
 	}
 
@@ -20,6 +20,7 @@
  */
 package fr.umlv.unitex.text;
 
+import java.awt.Color;
 import java.awt.Component;
 import java.io.File;
 import java.util.regex.Pattern;
@@ -89,116 +90,95 @@ public class BigTextList extends JList {
 			}
 		});
 		if (isDelaf) {
-			setCellRenderer(new DefaultListCellRenderer() {
+			setCellRenderer(new StyledLineRenderer() {
 				@Override
-				public Component getListCellRendererComponent(JList list,
-						Object value, int index, boolean isSelected,
-						boolean cellHasFocus) {
-					super.getListCellRendererComponent(list, value, index,
-							isSelected, cellHasFocus);
-					setText(getDecoratedDelafLine(escapeHTML((String) value)));
-					return this;
+				protected StyledLine parse(String value) {
+					return getDecoratedDelafLine(value);
 				}
+			});
+		}
+	}
 
-				final StringBuilder builder = new StringBuilder();
-
-				private String escapeHTML(String s){
-					builder.setLength(0);
-					final int l = s.length();
-					for (int i = 0; i < l; i++) {
-						final char c = s.charAt(i);
-						switch (c) {
-							case '<': builder.append("&lt;");   break;
-							case '>': builder.append("&gt;");   break;
-							case '&': builder.append("&amp;");  break;
-							case '"': builder.append("&quot;"); break;
-							default:  builder.append(c); break;
-						}
-					}
-					return builder.toString();
-				}
+	private static final Color INFLECTED_COLOR = new Color(0x0000FF);
+	private static final Color LEMMA_COLOR = new Color(0xFF0000);
+	private static final Color CODE_COLOR = new Color(0x00B900);
+	private static final Color SEMANTIC_CODE_COLOR = new Color(0x660066);
+	private static final Color INFLECTIONAL_CODE_COLOR = new Color(0xCE6700);
 
-				private String getDecoratedDelafLine(String string) {
-					if (string == null)
-						return null;
-					final int length = string.length();
-					builder.delete(0, builder.length());
-					builder.append("<html><body>");
-					int comma = -1;
-					int pos = 0;
-					do {
-						comma = string.indexOf(',', pos);
-						if (comma == -1)
-							return string;
-						pos = comma + 1;
-					} while (comma > 0 && string.charAt(comma - 1) == '\\');
-					builder.append("<font color=\"blue\">");
-					builder.append(string.substring(0, comma));
-					builder.append("</font>");
-					builder.append(",");
-					int startPos = pos;
-					do {
-						comma = string.indexOf('.', pos);
-						if (comma == -1)
-							return string;
-						pos = comma + 1;
-					} while (string.charAt(comma - 1) == '\\');
-					if (pos == length)
-						return string;
-					if (startPos != comma) {
-						builder.append("<font color=\"red\">");
-						builder.append(string.substring(startPos, comma));
-						builder.append("</font>");
-					}
-					char c = '.';
-					char last;
+	/**
+	 * Colors the inflected form, the lemma, the codes after '+' or '=' and the
+	 * inflectional codes of a DELAF line. Lines that are not DELAF lines are
+	 * left plain.
+	 */
+	static StyledLine getDecoratedDelafLine(String string) {
+		if (string == null)
+			return StyledLine.createPlainLine("");
+		final int length = string.length();
+		final StyledLine.Builder builder = new StyledLine.Builder(length);
+		int comma = -1;
+		int pos = 0;
+		do {
+			comma = string.indexOf(',', pos);
+			if (comma == -1)
+				return StyledLine.createPlainLine(string);
+			pos = comma + 1;
+		} while (comma > 0 && string.charAt(comma - 1) == '\\');
+		builder.append(string.substring(0, comma), INFLECTED_COLOR, 0);
+		builder.append(',', null, 0);
+		int startPos = pos;
+		do {
+			comma = string.indexOf('.', pos);
+			if (comma == -1)
+				return StyledLine.createPlainLine(string);
+			pos = comma + 1;
+		} while (string.charAt(comma - 1) == '\\');
+		if (pos == length)
+			return StyledLine.createPlainLine(string);
+		if (startPos != comma) {
+			builder.append(string.substring(startPos, comma), LEMMA_COLOR, 0);
+		}
+		char c = '.';
+		char last;
+		startPos = pos;
+		do {
+			builder.append(c, null, 0);
+			final Color color = (c != '=') ? CODE_COLOR : SEMANTIC_CODE_COLOR;
+			do {
+				last = c;
+				c = string.charAt(pos);
+				pos++;
+			} while (pos != length
+					&& !(last != '\\' && (c == '+' || c == '=' || c == ':')));
+			if (pos == length) {
+				c = '\0';
+				builder.append(string.substring(startPos), color, 0);
+			} else {
+				builder.append(string.substring(startPos, pos - 1), color, 0);
+				startPos = pos;
+			}
+		} while (c == '+' || c == '=');
+		if (c != '\0') {
+			c = ':';
+			startPos = pos;
+			do {
+				builder.append(c, null, 0);
+				do {
+					last = c;
+					c = string.charAt(pos);
+					pos++;
+				} while (pos != length && !(last != '\\' && (c == ':')));
+				if (pos == length) {
+					c = '\0';
+					builder.append(string.substring(startPos),
+							INFLECTIONAL_CODE_COLOR, 0);
+				} else {
+					builder.append(string.substring(startPos, pos - 1),
+							INFLECTIONAL_CODE_COLOR, 0);
 					startPos = pos;
-					do {
-						builder.append(c);
-						builder.append((c != '=') ? "<font color=\"#00B900\">" : "<font color=\"#660066\">");
-						do {
-							last = c;
-							c = string.charAt(pos);
-							pos++;
-						} while (pos != length
-								&& !(last != '\\' && (c == '+' || c == '=' || c == ':')));
-						if (pos == length) {
-							c = '\0';
-							builder.append(string.substring(startPos));
-						} else {
-							builder.append(string.substring(startPos, pos - 1));
-							startPos = pos;
-						}
-						builder.append("</font>");
-					} while (c == '+' || c == '=' );
-					if (c != '\0') {
-						c = ':';
-						startPos = pos;
-						do {
-							builder.append(c);
-							builder.append("<font color=\"#CE6700\">");
-							do {
-								last = c;
-								c = string.charAt(pos);
-								pos++;
-							} while (pos != length
-									&& !(last != '\\' && (c == ':')));
-							if (pos == length) {
-								c = '\0';
-								builder.append(string.substring(startPos));
-							} else {
-								builder.append(string.substring(startPos,
-										pos - 1));
-								startPos = pos;
-							}
-							builder.append("</font>");
-						} while (c == ':');
-					}
-					builder.append("</body></html>");
-					return builder.toString();
 				}
-			});
+			} while (c == ':');
 		}
+		return builder.build();
 	}
 
 	public BigTextList(TextAsListModelImpl m) {
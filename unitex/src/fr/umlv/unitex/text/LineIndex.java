@@ -0,0 +1,239 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class is a compact index of the lines of a text file. Instead of one
+ * <code>Interval</code> object per line, it stores the byte offset of the
+ * start and of the end of each line, without its newline, and the char
+ * offsets of its first and last chars in primitive arrays. Lines are
+ * supposed to be added in increasing order, so that the line containing a
+ * given char position can be found by binary search.
+ */
+public class LineIndex {
+	private static final int MAGIC = 0x4C494458; /* "LIDX" */
+	private static final int VERSION = 4;
+	/* magic, version, length and date of the indexed file, number of lines */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+	/* start and end of a line in bytes and in chars */
+	private static final int LINE_SIZE = 4 * 8;
+
+	private long[] startInBytes;
+	private long[] endInBytes;
+	private long[] startInChars;
+	private long[] endInChars;
+	private int size = 0;
+
+	public LineIndex() {
+		this(1024);
+	}
+
+	public LineIndex(int capacity) {
+		capacity = Math.max(1, capacity);
+		startInBytes = new long[capacity];
+		endInBytes = new long[capacity];
+		startInChars = new long[capacity];
+		endInChars = new long[capacity];
+	}
+
+	private void ensureCapacity(int n) {
+		if (n <= startInBytes.length) {
+			return;
+		}
+		final int capacity = Math.max(n, 2 * startInBytes.length);
+		startInBytes = Arrays.copyOf(startInBytes, capacity);
+		endInBytes = Arrays.copyOf(endInBytes, capacity);
+		startInChars = Arrays.copyOf(startInChars, capacity);
+		endInChars = Arrays.copyOf(endInChars, capacity);
+	}
+
+	public void add(long startByte, long endByte, long startChar,
+			long endChar) {
+		ensureCapacity(size + 1);
+		startInBytes[size] = startByte;
+		endInBytes[size] = endByte;
+		startInChars[size] = startChar;
+		endInChars[size] = endChar;
+		size++;
+	}
+
+	/**
+	 * Appends all the lines of the given index, that must follow the lines of
+	 * this one.
+	 */
+	public void addAll(LineIndex other) {
+		ensureCapacity(size + other.size);
+		System.arraycopy(other.startInBytes, 0, startInBytes, size,
+				other.size);
+		System.arraycopy(other.endInBytes, 0, endInBytes, size, other.size);
+		System.arraycopy(other.startInChars, 0, startInChars, size,
+				other.size);
+		System.arraycopy(other.endInChars, 0, endInChars, size, other.size);
+		size += other.size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns an index of the lines currently in this one, sharing its
+	 * arrays. Since lines are only appended, the snapshot can be read by
+	 * another thread while this index grows, as long as it is not cleared.
+	 */
+	public LineIndex snapshot() {
+		final LineIndex index = new LineIndex(1);
+		index.startInBytes = startInBytes;
+		index.endInBytes = endInBytes;
+		index.startInChars = startInChars;
+		index.endInChars = endInChars;
+		index.size = size;
+		return index;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public long getStartInBytes(int i) {
+		return startInBytes[i];
+	}
+
+	/**
+	 * @return the position of the first byte after the line, not counting
+	 *         its newline
+	 */
+	public long getEndInBytes(int i) {
+		return endInBytes[i];
+	}
+
+	public long getStartInChars(int i) {
+		return startInChars[i];
+	}
+
+	public long getEndInChars(int i) {
+		return endInChars[i];
+	}
+
+	/**
+	 * @return the number of the line that contains the given char position,
+	 *         or -1 if there is none
+	 */
+	public int find(long positionInChars) {
+		int min = 0;
+		int max = size - 1;
+		while (min <= max) {
+			final int middle = (min + max) >>> 1;
+			if (startInChars[middle] <= positionInChars) {
+				min = middle + 1;
+			} else {
+				max = middle - 1;
+			}
+		}
+		/* max is now the last line starting before or at the position */
+		if (max < 0 || positionInChars > endInChars[max]) {
+			return -1;
+		}
+		return max;
+	}
+
+	/**
+	 * Saves the index. The length and the date of the indexed file are saved
+	 * too, so that an obsolete index will be ignored by load.
+	 */
+	public void save(File f, File indexedFile) {
+		try {
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(f)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(indexedFile.length());
+				out.writeLong(indexedFile.lastModified());
+				out.writeInt(size);
+				for (int i = 0; i < size; i++) {
+					out.writeLong(startInBytes[i]);
+					out.writeLong(endInBytes[i]);
+					out.writeLong(startInChars[i]);
+					out.writeLong(endInChars[i]);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (final IOException e) {
+			/* The index is just an optimization, so we can lose it */
+			f.delete();
+		}
+	}
+
+	/**
+	 * @return the index saved in the given file, or null if there is none or
+	 *         if it does not correspond to the current state of indexedFile
+	 */
+	public static LineIndex load(File f, File indexedFile) {
+		if (!f.exists()) {
+			return null;
+		}
+		try {
+			final DataInputStream in = new DataInputStream(
+					new BufferedInputStream(new FileInputStream(f)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION
+						|| in.readLong() != indexedFile.length()
+						|| in.readLong() != indexedFile.lastModified()) {
+					return null;
+				}
+				final int n = in.readInt();
+				if (n < 0 || f.length() != HEADER_SIZE + (long) n * LINE_SIZE) {
+					/* Truncated or corrupted index */
+					return null;
+				}
+				final LineIndex index = new LineIndex();
+				index.startInBytes = new long[Math.max(n, 1)];
+				index.endInBytes = new long[Math.max(n, 1)];
+				index.startInChars = new long[Math.max(n, 1)];
+				index.endInChars = new long[Math.max(n, 1)];
+				for (int i = 0; i < n; i++) {
+					index.startInBytes[i] = in.readLong();
+					index.endInBytes[i] = in.readLong();
+					index.startInChars[i] = in.readLong();
+					index.endInChars[i] = in.readLong();
+				}
+				index.size = n;
+				return index;
+			} finally {
+				in.close();
+			}
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+}
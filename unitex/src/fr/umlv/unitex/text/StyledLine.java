@@ -0,0 +1,175 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * This class describes a line of text made of styled runs, as it is painted
+ * by a StyledLineRenderer. A run is a sequence of chars that share the same
+ * color and style.
+ */
+public class StyledLine {
+	public static final int UNDERLINE = 1;
+	public static final int BOLD = 2;
+	public static final int ITALIC = 4;
+
+	private final char[] text;
+	/* Run #i is made of text[runStart[i]..runStart[i+1]-1] */
+	private final int[] runStart;
+	/* A null color stands for the foreground color of the list */
+	private final Color[] colors;
+	private final int[] styles;
+
+	StyledLine(char[] text, int[] runStart, Color[] colors, int[] styles) {
+		this.text = text;
+		this.runStart = runStart;
+		this.colors = colors;
+		this.styles = styles;
+	}
+
+	/**
+	 * @return a line made of a single run with the default color and style
+	 */
+	public static StyledLine createPlainLine(String s) {
+		final Builder b = new Builder(s.length());
+		b.append(s, null, 0);
+		return b.build();
+	}
+
+	public char[] getText() {
+		return text;
+	}
+
+	public int length() {
+		return text.length;
+	}
+
+	public int getRunCount() {
+		return colors.length;
+	}
+
+	public int getRunStart(int run) {
+		return runStart[run];
+	}
+
+	public int getRunEnd(int run) {
+		return runStart[run + 1];
+	}
+
+	public Color getRunColor(int run) {
+		return colors[run];
+	}
+
+	public int getRunStyle(int run) {
+		return styles[run];
+	}
+
+	@Override
+	public String toString() {
+		return new String(text);
+	}
+
+	/**
+	 * This class builds a styled line char by char. A new run is started each
+	 * time the color or the style changes.
+	 */
+	public static class Builder {
+		private char[] text;
+		private int length = 0;
+		private int[] runStart = new int[8];
+		private Color[] colors = new Color[8];
+		private int[] styles = new int[8];
+		private int runs = 0;
+
+		public Builder(int capacity) {
+			text = new char[Math.max(16, capacity)];
+		}
+
+		public Builder() {
+			this(64);
+		}
+
+		public int length() {
+			return length;
+		}
+
+		/**
+		 * @return the last char appended, or '\0' if the line is empty
+		 */
+		public char lastChar() {
+			return (length == 0) ? '\0' : text[length - 1];
+		}
+
+		public Builder append(char c, Color color, int style) {
+			if (runs == 0 || styles[runs - 1] != style
+					|| !sameColor(colors[runs - 1], color)) {
+				if (runs == colors.length) {
+					runStart = Arrays.copyOf(runStart, 2 * runs);
+					colors = Arrays.copyOf(colors, 2 * runs);
+					styles = Arrays.copyOf(styles, 2 * runs);
+				}
+				runStart[runs] = length;
+				colors[runs] = color;
+				styles[runs] = style;
+				runs++;
+			}
+			if (length == text.length) {
+				text = Arrays.copyOf(text, 2 * length);
+			}
+			text[length++] = c;
+			return this;
+		}
+
+		private static boolean sameColor(Color a, Color b) {
+			return (a == null) ? (b == null) : a.equals(b);
+		}
+
+		public Builder append(CharSequence s, Color color, int style) {
+			final int n = s.length();
+			for (int i = 0; i < n; i++) {
+				append(s.charAt(i), color, style);
+			}
+			return this;
+		}
+
+		/**
+		 * Removes the last char.
+		 */
+		public void deleteLastChar() {
+			if (length == 0) {
+				return;
+			}
+			length--;
+			if (runStart[runs - 1] == length) {
+				runs--;
+			}
+		}
+
+		public StyledLine build() {
+			final int[] starts = Arrays.copyOf(runStart, runs + 1);
+			starts[runs] = length;
+			return new StyledLine(Arrays.copyOf(text, length), starts,
+					Arrays.copyOf(colors, runs), Arrays.copyOf(styles, runs));
+		}
+	}
+}
@@ -0,0 +1,333 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.text.AttributedString;
+import java.text.Bidi;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.JComponent;
+import javax.swing.JList;
+import javax.swing.ListCellRenderer;
+import javax.swing.UIManager;
+import javax.swing.border.Border;
+import javax.swing.border.EmptyBorder;
+
+/**
+ * This class is a list cell renderer that paints lines made of styled runs
+ * directly, instead of letting a JLabel render them as HTML. Each line is
+ * parsed only once: the parsed lines of the last rendered rows are kept in a
+ * LRU cache indexed by row, so that repainting or scrolling a little does not
+ * parse anything.
+ */
+public abstract class StyledLineRenderer extends JComponent implements
+		ListCellRenderer<Object> {
+	private static final long serialVersionUID = 1L;
+	private static final int CACHE_SIZE = 512;
+	private static final Border NO_FOCUS_BORDER = new EmptyBorder(1, 1, 1, 1);
+
+	private static class ParsedLine {
+		final String source;
+		final StyledLine line;
+		/* Width and bidi layout, computed for the given font */
+		Font font;
+		int width;
+		TextLayout layout;
+
+		ParsedLine(String source, StyledLine line) {
+			this.source = source;
+			this.line = line;
+		}
+	}
+
+	private final LinkedHashMap<Integer, ParsedLine> cache = new LinkedHashMap<Integer, ParsedLine>(
+			2 * CACHE_SIZE, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<Integer, ParsedLine> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private ParsedLine current;
+	/* Fonts for each combination of BOLD and ITALIC */
+	private Font baseFont;
+	private final Font[] fonts = new Font[4];
+
+	public StyledLineRenderer() {
+		setOpaque(true);
+		setBorder(NO_FOCUS_BORDER);
+	}
+
+	/**
+	 * Parses the given list value.
+	 */
+	protected abstract StyledLine parse(String value);
+
+	/**
+	 * @return the background of the given row
+	 */
+	protected Color getRowBackground(JList<?> list, int index, boolean isSelected) {
+		return isSelected ? list.getSelectionBackground() : list
+				.getBackground();
+	}
+
+	/**
+	 * Forgets all parsed lines. This must be called when the lines of the
+	 * list change without their text changing.
+	 */
+	public void clearCache() {
+		cache.clear();
+	}
+
+	@Override
+	public Component getListCellRendererComponent(JList<?> list, Object value,
+			int index, boolean isSelected, boolean cellHasFocus) {
+		final String s = (value == null) ? "" : value.toString();
+		current = getParsedLine(s, index);
+		setComponentOrientation(list.getComponentOrientation());
+		setBackground(getRowBackground(list, index, isSelected));
+		setForeground(isSelected ? list.getSelectionForeground() : list
+				.getForeground());
+		setFont(list.getFont());
+		setEnabled(list.isEnabled());
+		Border border = null;
+		if (cellHasFocus) {
+			if (isSelected) {
+				border = UIManager.getBorder("List.focusSelectedCellHighlightBorder");
+			}
+			if (border == null) {
+				border = UIManager.getBorder("List.focusCellHighlightBorder");
+			}
+		}
+		setBorder(border == null ? NO_FOCUS_BORDER : border);
+		return this;
+	}
+
+	private ParsedLine getParsedLine(String s, int index) {
+		if (index < 0) {
+			/* Prototype cell values are not cached */
+			return new ParsedLine(s, parse(s));
+		}
+		ParsedLine e = cache.get(index);
+		/* The source check is needed because the model may have changed */
+		if (e == null || !e.source.equals(s)) {
+			e = new ParsedLine(s, parse(s));
+			cache.put(index, e);
+		}
+		return e;
+	}
+
+	private Font getStyleFont(int style) {
+		final Font font = getFont();
+		if (font != baseFont) {
+			baseFont = font;
+			for (int i = 0; i < fonts.length; i++) {
+				fonts[i] = null;
+			}
+		}
+		final int n = ((style & StyledLine.BOLD) != 0 ? Font.BOLD : 0)
+				| ((style & StyledLine.ITALIC) != 0 ? Font.ITALIC : 0);
+		if (fonts[n] == null) {
+			fonts[n] = (n == Font.PLAIN) ? font : font.deriveFont(font
+					.getStyle() | n);
+		}
+		return fonts[n];
+	}
+
+	/**
+	 * @return the layout to be used for lines that need bidirectional
+	 *         reordering, or null for the others
+	 */
+	private TextLayout getLayout(ParsedLine e) {
+		final StyledLine line = e.line;
+		if (line.length() == 0
+				|| !Bidi.requiresBidi(line.getText(), 0, line.length())) {
+			return null;
+		}
+		if (e.layout == null) {
+			final AttributedString as = new AttributedString(line.toString());
+			for (int i = 0; i < line.getRunCount(); i++) {
+				final int start = line.getRunStart(i);
+				final int end = line.getRunEnd(i);
+				as.addAttribute(TextAttribute.FONT,
+						getStyleFont(line.getRunStyle(i)), start, end);
+				final Color c = line.getRunColor(i);
+				if (c != null) {
+					as.addAttribute(TextAttribute.FOREGROUND, c, start, end);
+				}
+				if ((line.getRunStyle(i) & StyledLine.UNDERLINE) != 0) {
+					as.addAttribute(TextAttribute.UNDERLINE,
+							TextAttribute.UNDERLINE_ON, start, end);
+				}
+			}
+			e.layout = new TextLayout(as.getIterator(), getFontMetrics(
+					getFont()).getFontRenderContext());
+		}
+		return e.layout;
+	}
+
+	private void checkFont(ParsedLine e) {
+		if (e.font != getFont()) {
+			e.font = getFont();
+			e.layout = null;
+			e.width = -1;
+		}
+	}
+
+	private int getTextWidth(ParsedLine e) {
+		checkFont(e);
+		if (e.width == -1) {
+			final TextLayout layout = getLayout(e);
+			if (layout != null) {
+				e.width = (int) Math.ceil(layout.getAdvance());
+			} else {
+				final StyledLine line = e.line;
+				final char[] text = line.getText();
+				int w = 0;
+				for (int i = 0; i < line.getRunCount(); i++) {
+					w += getFontMetrics(getStyleFont(line.getRunStyle(i)))
+							.charsWidth(text, line.getRunStart(i),
+									line.getRunEnd(i) - line.getRunStart(i));
+				}
+				e.width = w;
+			}
+		}
+		return e.width;
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		final Insets insets = getInsets();
+		final int height = getFontMetrics(getFont()).getHeight();
+		if (current == null) {
+			return new Dimension(insets.left + insets.right, height
+					+ insets.top + insets.bottom);
+		}
+		return new Dimension(getTextWidth(current) + insets.left
+				+ insets.right, height + insets.top + insets.bottom);
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		if (isOpaque()) {
+			g.setColor(getBackground());
+			g.fillRect(0, 0, getWidth(), getHeight());
+		}
+		if (current == null) {
+			return;
+		}
+		final Graphics2D g2 = (Graphics2D) g;
+		final Object hints = Toolkit.getDefaultToolkit().getDesktopProperty(
+				"awt.font.desktophints");
+		if (hints instanceof Map) {
+			g2.addRenderingHints((Map<?, ?>) hints);
+		} else {
+			g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+					RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		}
+		final Insets insets = getInsets();
+		final FontMetrics fm = getFontMetrics(getFont());
+		final int baseline = insets.top + fm.getAscent();
+		checkFont(current);
+		int x = insets.left;
+		if (!getComponentOrientation().isLeftToRight()) {
+			x = getWidth() - insets.right - getTextWidth(current);
+		}
+		final TextLayout layout = getLayout(current);
+		if (layout != null) {
+			g2.setColor(getForeground());
+			layout.draw(g2, x, baseline);
+			return;
+		}
+		final StyledLine line = current.line;
+		final char[] text = line.getText();
+		for (int i = 0; i < line.getRunCount(); i++) {
+			final int start = line.getRunStart(i);
+			final int length = line.getRunEnd(i) - start;
+			final Font font = getStyleFont(line.getRunStyle(i));
+			final Color c = line.getRunColor(i);
+			g2.setColor(c == null ? getForeground() : c);
+			g2.setFont(font);
+			g2.drawChars(text, start, length, x, baseline);
+			final int w = getFontMetrics(font).charsWidth(text, start, length);
+			if ((line.getRunStyle(i) & StyledLine.UNDERLINE) != 0) {
+				g2.drawLine(x, baseline + 1, x + w - 1, baseline + 1);
+			}
+			x += w;
+		}
+	}
+
+	/*
+	 * Like in DefaultListCellRenderer, the following methods are overridden
+	 * for performance reasons, since the renderer is never really part of a
+	 * component hierarchy.
+	 */
+	@Override
+	public void validate() {
+		/* nop */
+	}
+
+	@Override
+	public void invalidate() {
+		/* nop */
+	}
+
+	@Override
+	public void revalidate() {
+		/* nop */
+	}
+
+	@Override
+	public void repaint(long tm, int x, int y, int width, int height) {
+		/* nop */
+	}
+
+	@Override
+	public void repaint() {
+		/* nop */
+	}
+
+	@Override
+	protected void firePropertyChange(String propertyName, Object oldValue,
+			Object newValue) {
+		/* nop */
+	}
+
+	@Override
+	public void firePropertyChange(String propertyName, boolean oldValue,
+			boolean newValue) {
+		/* nop */
+	}
+}
@@ -21,22 +21,18 @@
 package fr.umlv.unitex.text;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.lang.ref.PhantomReference;
-import java.lang.ref.ReferenceQueue;
-import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.swing.AbstractListModel;
 import javax.swing.SwingWorker;
 
+import fr.umlv.unitex.files.FileUtil;
 import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+import fr.umlv.unitex.io.NewlineIndexer;
 
 /**
  * This is a model for representing a text file as the list of its paragraphs.
@@ -46,17 +42,25 @@ import fr.umlv.unitex.io.Encoding;
  * @author Sébastien Paumier
  */
 public class TextAsListModelImpl extends AbstractListModel {
-	private MappedByteBuffer mappedBuffer;
-	private SwingWorker<Void, Interval> worker;
+	public interface MatchListener {
+		/**
+		 * Called on the event dispatch thread when a search is over.
+		 * 
+		 * @param n
+		 *            the number of the matched element, or -1 if there is none
+		 */
+		public void elementMatched(int n);
+	}
+
+	private MappedFile mappedFile;
+	private SwingWorker<Void, LineIndex> worker;
+	private SwingWorker<Integer, Void> searchWorker;
 	private Interval selection;
 	private String content = null;
-	private FileChannel channel;
-	private FileInputStream stream;
 	private File file;
 	private boolean dataFromFile;
-	ByteBuffer parseBuffer;
 	Encoding encoding;
-	private final ArrayList<Interval> lines = new ArrayList<Interval>();
+	private LineIndex lines = new LineIndex();
 
 	public void load(File f) {
 		load(f, null);
@@ -66,84 +70,121 @@ public class TextAsListModelImpl extends AbstractListModel {
 		content = null;
 		dataFromFile = true;
 		this.file = f;
-		final long fileLength = file.length();
 		this.encoding = Encoding.getEncoding(f);
-		try {
-			stream = new FileInputStream(file);
-		} catch (final FileNotFoundException e) {
-			e.printStackTrace();
-			return;
-		}
-		channel = stream.getChannel();
 		try {
 			/* We skip the BOM for UTF16 encodings */
 			if (encoding == Encoding.UTF16LE || encoding == Encoding.UTF16BE) {
-				mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 2,
-						fileLength - 2);
+				mappedFile = new MappedFile(file, 2);
 			} else {
-				mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
-						fileLength);
+				mappedFile = new MappedFile(file);
 			}
 		} catch (final IOException e) {
 			e.printStackTrace();
 			return;
 		}
-		/*
-		 * parseBuffer must NOT be a final variable, because it would keep a
-		 * reference on the buffer that would never be null, so that the buffer
-		 * can never be garbage collected. As a consequence, the underlying file
-		 * mapping would never be released.
-		 */
-		parseBuffer = mappedBuffer.duplicate();
-		worker = new SwingWorker<Void, Interval>() {
+		final File indexFile = (filter == null) ? getIndexFile(file) : null;
+		final File indexedFile = file;
+		final MappedFile parsedFile = mappedFile;
+		final Encoding parsedEncoding = encoding;
+		worker = new SwingWorker<Void, LineIndex>() {
+			long lastStartInChars = 0;
+			long lastStartInBytes = 0;
+			long chars = 0;
+			/* All the lines, to be saved once the file has been scanned */
+			final LineIndex indexed = (indexFile != null) ? new LineIndex()
+					: null;
+
 			@Override
 			protected Void doInBackground() throws Exception {
-				int lastStartInChars = 0;
-				int lastStartInBytes = 0;
-				final StringBuilder builder1 = new StringBuilder();
-				int pos;
-				for (pos = 0; parseBuffer.position() < parseBuffer.capacity(); pos = pos + 1) {
-					final int posInBuffer = parseBuffer.position();
-					final int c = encoding.readChar(parseBuffer);
-					if (c == '\n') {
-						// if we have an end-of-line
-						boolean publish = false;
-						if (filter == null) {
-							publish = true;
-						} else {
-							final Matcher m = filter.matcher(builder1
-									.toString());
-							if (m.matches())
-								publish = true;
+				if (indexFile != null) {
+					final LineIndex index = LineIndex.load(indexFile,
+							indexedFile);
+					if (index != null) {
+						/* Already indexed, no need to scan the file */
+						publish(index);
+						setProgress(100);
+						return null;
+					}
+				}
+				final long length = parsedFile.length();
+				final NewlineIndexer indexer = new NewlineIndexer(parsedFile,
+						parsedEncoding, true);
+				final int newlineLength = indexer.getNewlineLength();
+				indexer.index(new NewlineIndexer.Listener() {
+					@Override
+					public boolean chunkIndexed(NewlineIndexer.Chunk chunk) {
+						if (isCancelled()) {
+							return false;
+						}
+						LineIndex batch = new LineIndex(chunk.size());
+						for (int i = 0; i < chunk.size(); i++) {
+							final long newline = chunk.getNewline(i);
+							final long newlineInChars = chars
+									+ chunk.getCharsBefore(i);
+							batch.add(lastStartInBytes, newline,
+									lastStartInChars, newlineInChars);
+							lastStartInChars = newlineInChars + 1;
+							lastStartInBytes = newline + newlineLength;
 						}
-						builder1.setLength(0);
-						setProgress((int) ((long) parseBuffer.position() * 100 / parseBuffer
-								.capacity()));
-						if (publish) {
-							publish(new Interval(lastStartInBytes, posInBuffer,
-									lastStartInChars, pos));
+						chars += chunk.getChars();
+						batch = filter(batch);
+						if (batch.size() != 0) {
+							publish(batch);
+							if (indexed != null) {
+								indexed.addAll(batch);
+							}
+						}
+						setProgress((int) (chunk.getEnd() * 100 / length));
+						return true;
+					}
+				});
+				if (!isCancelled() && lastStartInBytes < length) {
+					final LineIndex batch = new LineIndex(1);
+					batch.add(lastStartInBytes, length, lastStartInChars,
+							chars - 1);
+					if (filter(batch).size() != 0) {
+						publish(batch);
+						if (indexed != null) {
+							indexed.addAll(batch);
 						}
-						lastStartInChars = pos + 1;
-						lastStartInBytes = parseBuffer.position();
-					} else {
-						if (filter != null && c != '\r')
-							builder1.append(c);
 					}
 				}
-				if (lastStartInBytes < parseBuffer.capacity()) {
-					publish(new Interval(lastStartInBytes,
-							parseBuffer.position(), lastStartInChars, pos - 1));
-					setProgress(100);
+				if (indexed != null && !isCancelled()) {
+					indexed.save(indexFile, indexedFile);
 				}
+				setProgress(100);
 				return null;
 			}
 
+			/**
+			 * Returns the lines of the batch that match the filter.
+			 */
+			LineIndex filter(LineIndex batch) {
+				if (filter == null) {
+					return batch;
+				}
+				final LineIndex filtered = new LineIndex(16);
+				final LineIndex all = batch;
+				new TextSearch(parsedFile, parsedEncoding, all, filter).search(
+						0, true, new TextSearch.Listener() {
+							@Override
+							public boolean lineFound(int line) {
+								filtered.add(all.getStartInBytes(line),
+										all.getEndInBytes(line),
+										all.getStartInChars(line),
+										all.getEndInChars(line));
+								return !isCancelled();
+							}
+						});
+				return filtered;
+			}
+
 			@SuppressWarnings("synthetic-access")
 			@Override
-			protected void process(java.util.List<Interval> chunks) {
+			protected void process(java.util.List<LineIndex> chunks) {
 				final int oldSize = lines.size();
-				for (final Interval i : chunks) {
-					lines.add(i);
+				for (final LineIndex batch : chunks) {
+					lines.addAll(batch);
 				}
 				fireIntervalAdded(this, oldSize, lines.size());
 			}
@@ -151,6 +192,23 @@ public class TextAsListModelImpl extends AbstractListModel {
 		worker.execute();
 	}
 
+	/**
+	 * The line index of a .snt file is saved in its _snt directory, so that
+	 * the file does not have to be scanned again when it is reopened.
+	 * 
+	 * @return the index file, or null if the index should not be saved
+	 */
+	private static File getIndexFile(File f) {
+		if (!f.getName().endsWith(".snt")) {
+			return null;
+		}
+		final File sntDir = FileUtil.getSntDir(f);
+		if (!sntDir.isDirectory()) {
+			return null;
+		}
+		return new File(sntDir, "lines.idx");
+	}
+
 	public TextAsListModelImpl() {
 		super();
 		dataFromFile = false;
@@ -158,6 +216,8 @@ public class TextAsListModelImpl extends AbstractListModel {
 	}
 
 	public void setText(String string) {
+		/* A running search shares the arrays of the lines we clear */
+		cancelSearch();
 		dataFromFile = false;
 		final int size = lines.size();
 		lines.clear();
@@ -174,6 +234,8 @@ public class TextAsListModelImpl extends AbstractListModel {
 	}
 
 	private final StringBuilder builder = new StringBuilder(40 * 100);
+	private byte[] bytes = new byte[4096];
+	private char[] chars = new char[4096];
 
 	/**
 	 * Returns the text corresponding to the paragraph #i.
@@ -182,19 +244,19 @@ public class TextAsListModelImpl extends AbstractListModel {
 	public String getElementAt(int i) {
 		if (!dataFromFile)
 			return content;
-		final Interval interval = getInterval(i);
-		builder.setLength(0);
-		final int start = interval.getStartInChars();
-		final int end = interval.getEndInChars();
-		
-		mappedBuffer.position(interval.getStartInBytes());
-		
-		for (int pos = start; pos <= end; pos++) {
-			final int c = encoding.readChar(mappedBuffer);
-			if (c != '\r' && c != '\n') {
-				builder.append((char) c);
-			}
+		final long startInBytes = lines.getStartInBytes(i);
+		final int length = (int) (lines.getEndInBytes(i) - startInBytes);
+		if (bytes.length < length) {
+			bytes = new byte[length];
+			chars = new char[length];
 		}
+		try {
+			mappedFile.read(startInBytes, bytes, 0, length);
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return "";
+		}
+		TextSearch.decode(bytes, length, encoding, chars, builder);
 		return builder.toString();
 	}
 
@@ -202,7 +264,8 @@ public class TextAsListModelImpl extends AbstractListModel {
 		if (!dataFromFile || i >= lines.size()) {
 			return null;
 		}
-		return lines.get(i);
+		return new Interval(lines.getStartInBytes(i), lines.getEndInBytes(i),
+				lines.getStartInChars(i), lines.getEndInChars(i));
 	}
 
 	public Interval getSelection() {
@@ -231,22 +294,12 @@ public class TextAsListModelImpl extends AbstractListModel {
 	 * @return the number of the interval, or -1 if the position is not
 	 *         contained in an interval of the model
 	 */
-	public int getElementContainingPositionInChars(int position) {
+	public int getElementContainingPositionInChars(long position) {
 		if (!dataFromFile)
 			return -1;
 		if (position < 0)
 			return -1;
-		/*
-		 * We cache the size and length in case there is a publish operation
-		 * that updates the array
-		 */
-		for (int i = 0; i < lines.size(); i++) {
-			final Interval tmp = lines.get(i);
-			if (position >= tmp.getStartInChars()
-					&& position <= tmp.getEndInChars())
-				return i;
-		}
-		return -1;
+		return lines.find(position);
 	}
 
 	public String getContent() {
@@ -258,39 +311,9 @@ public class TextAsListModelImpl extends AbstractListModel {
 			worker.cancel(true);
 			worker = null;
 		}
-		if (mappedBuffer != null) {
-			ReferenceQueue<MappedByteBuffer> queue=new ReferenceQueue<MappedByteBuffer>();
-			new PhantomReference<MappedByteBuffer>(mappedBuffer,queue);
-			mappedBuffer = null;
-			System.gc();
-			while (queue.poll()!=null) {
-				System.gc();
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e) {
-					/* do nothing */
-				}
-				Thread.yield();
-			}
-		}
-		if (parseBuffer != null)
-			parseBuffer = null;
-		System.gc();
-		if (channel != null) {
-			try {
-				channel.close();
-			} catch (final IOException e) {
-				e.printStackTrace();
-			}
-			channel = null;
-		}
-		if (stream != null) {
-			try {
-				stream.close();
-			} catch (final IOException e) {
-				e.printStackTrace();
-			}
-			stream = null;
+		if (mappedFile != null) {
+			mappedFile.close();
+			mappedFile = null;
 		}
 		setText("");
 		final int size = lines.size();
@@ -298,18 +321,72 @@ public class TextAsListModelImpl extends AbstractListModel {
 		fireIntervalRemoved(this, 0, size);
 	}
 
-	public int getNextMatchedElement(int currentPosition, Pattern p) {
-		final int n = getSize();
-		for (int i = currentPosition + 1; i < n; i++) {
-			final Matcher m = p.matcher(getElementAt(i));
-			if (m.matches())
-				return i;
+	/**
+	 * Returns a search service over the lines of the text, or null if the
+	 * text does not come from a file. The search only covers the lines that
+	 * are indexed when this method is called.
+	 */
+	public TextSearch getSearch(Pattern p) {
+		if (!dataFromFile || mappedFile == null) {
+			return null;
 		}
-		return -1;
+		return new TextSearch(mappedFile, encoding, lines.snapshot(), p);
 	}
 
-	public int getPreviousMatchedElement(int currentPosition, Pattern p) {
-		for (int i = currentPosition - 1; i >= 0; i--) {
+	/**
+	 * Looks in a background thread for the first element after or before
+	 * currentPosition that matches the given pattern. A search cancels the
+	 * previous one, whose listener is then not called.
+	 */
+	public void findMatchedElement(final int currentPosition, Pattern p,
+			final boolean forward, final MatchListener listener) {
+		cancelSearch();
+		final TextSearch search = getSearch(p);
+		if (search == null) {
+			listener.elementMatched(findMatchedContent(currentPosition, p,
+					forward));
+			return;
+		}
+		searchWorker = new SwingWorker<Integer, Void>() {
+			@Override
+			protected Integer doInBackground() throws Exception {
+				return forward ? search.findNext(currentPosition) : search
+						.findPrevious(currentPosition);
+			}
+
+			@Override
+			protected void done() {
+				if (isCancelled()) {
+					return;
+				}
+				try {
+					listener.elementMatched(get());
+				} catch (final InterruptedException e) {
+					listener.elementMatched(-1);
+				} catch (final ExecutionException e) {
+					e.printStackTrace();
+					listener.elementMatched(-1);
+				}
+			}
+		};
+		searchWorker.execute();
+	}
+
+	private void cancelSearch() {
+		if (searchWorker != null) {
+			searchWorker.cancel(true);
+			searchWorker = null;
+		}
+	}
+
+	/**
+	 * Searches the elements when the text does not come from a file.
+	 */
+	private int findMatchedContent(int currentPosition, Pattern p,
+			boolean forward) {
+		final int n = getSize();
+		final int step = forward ? 1 : -1;
+		for (int i = currentPosition + step; i >= 0 && i < n; i += step) {
 			final Matcher m = p.matcher(getElementAt(i));
 			if (m.matches())
 				return i;
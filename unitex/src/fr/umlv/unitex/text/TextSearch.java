@@ -0,0 +1,525 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+
+/**
+ * This class looks for the lines of a mapped text that match a regular
+ * expression. Lines are cut into blocks of BLOCK_SIZE lines that are searched
+ * in parallel in the common fork-join pool, and the matching lines are given
+ * back block after block, in the search order.
+ * 
+ * When the pattern requires a literal string, this string is encoded once and
+ * looked for in the raw bytes of each line, so that lines that cannot match
+ * are not decoded at all.
+ * 
+ * Like getElementAt in TextAsListModelImpl, lines are matched without their
+ * '\r' and '\n' chars.
+ */
+public class TextSearch {
+	public static final int BLOCK_SIZE = 4096;
+
+	public interface Listener {
+		/**
+		 * Called for each matching line, in the search order, by the thread
+		 * that invoked search.
+		 * 
+		 * @return false if the search should stop
+		 */
+		public boolean lineFound(int line);
+	}
+
+	private final MappedFile file;
+	private final Encoding encoding;
+	private final LineIndex lines;
+	private final Pattern pattern;
+	private final byte[] literal;
+
+	/**
+	 * The line index must not be modified while a search is running.
+	 */
+	public TextSearch(MappedFile file, Encoding encoding, LineIndex lines,
+			Pattern pattern) {
+		this.file = file;
+		this.encoding = encoding;
+		this.lines = lines;
+		this.pattern = pattern;
+		final String s = getRequiredLiteral(pattern);
+		this.literal = (s == null) ? null : s.getBytes(Charset
+				.forName(encoding.getCharset()));
+	}
+
+	/**
+	 * @return the index of the first matching line after from, or -1
+	 */
+	public int findNext(int from) {
+		final int[] result = { -1 };
+		search(from + 1, true, new Listener() {
+			@Override
+			public boolean lineFound(int line) {
+				result[0] = line;
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * @return the index of the first matching line before from, or -1
+	 */
+	public int findPrevious(int from) {
+		final int[] result = { -1 };
+		search(from - 1, false, new Listener() {
+			@Override
+			public boolean lineFound(int line) {
+				result[0] = line;
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * Gives to the listener the matching lines, starting from the line #from
+	 * and going forward or backward. No more than twice as many blocks as
+	 * there are threads in the pool are searched ahead of the listener.
+	 */
+	public void search(int from, boolean forward, Listener listener) {
+		final int size = lines.size();
+		if (from < 0 || from >= size) {
+			return;
+		}
+		final ForkJoinPool pool = ForkJoinPool.commonPool();
+		final int ahead = 2 * pool.getParallelism();
+		final ArrayDeque<ForkJoinTask<int[]>> tasks = new ArrayDeque<ForkJoinTask<int[]>>();
+		int next = from;
+		try {
+			while ((forward ? next < size : next >= 0) || !tasks.isEmpty()) {
+				while ((forward ? next < size : next >= 0)
+						&& tasks.size() < ahead) {
+					final int start, end;
+					if (forward) {
+						start = next;
+						end = Math.min(size, next + BLOCK_SIZE);
+						next = end;
+					} else {
+						end = next + 1;
+						start = Math.max(0, end - BLOCK_SIZE);
+						next = start - 1;
+					}
+					tasks.addLast(pool.submit(new BlockTask(start, end)));
+				}
+				final int[] found;
+				try {
+					found = tasks.removeFirst().get();
+				} catch (final ExecutionException e) {
+					e.printStackTrace();
+					return;
+				} catch (final InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < found.length; i++) {
+					final int line = found[forward ? i : found.length - 1 - i];
+					if (!listener.lineFound(line)) {
+						return;
+					}
+				}
+			}
+		} finally {
+			for (final ForkJoinTask<int[]> t : tasks) {
+				t.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Searches the lines [start;end[ and returns the matching ones in
+	 * increasing order.
+	 */
+	@SuppressWarnings("serial")
+	private class BlockTask extends RecursiveTask<int[]> {
+		private final int start;
+		private final int end;
+
+		BlockTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected int[] compute() {
+			int[] found = new int[16];
+			int n = 0;
+			byte[] bytes = new byte[4096];
+			char[] chars = new char[4096];
+			final StringBuilder builder = new StringBuilder();
+			final Matcher matcher = pattern.matcher("");
+			for (int i = start; i < end; i++) {
+				final long from = lines.getStartInBytes(i);
+				final int length = (int) (lines.getEndInBytes(i) - from);
+				if (bytes.length < length) {
+					bytes = new byte[Math.max(length, 2 * bytes.length)];
+					chars = new char[bytes.length];
+				}
+				try {
+					file.read(from, bytes, 0, length);
+				} catch (final IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				if (literal != null && indexOf(bytes, length, literal) == -1) {
+					continue;
+				}
+				decode(bytes, length, encoding, chars, builder);
+				if (matcher.reset(builder).matches()) {
+					if (n == found.length) {
+						found = Arrays.copyOf(found, 2 * n);
+					}
+					found[n++] = i;
+				}
+			}
+			return Arrays.copyOf(found, n);
+		}
+	}
+
+	/**
+	 * Decodes the length first bytes into the builder, skipping '\r' and
+	 * '\n'. chars must be at least as long as length, which is enough for all
+	 * encodings.
+	 */
+	static void decode(byte[] bytes, int length, Encoding encoding,
+			char[] chars, StringBuilder builder) {
+		final int n = encoding.decode(ByteBuffer.wrap(bytes, 0, length), 0,
+				length, chars);
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			final char c = chars[i];
+			if (c != '\r' && c != '\n') {
+				chars[k++] = c;
+			}
+		}
+		builder.setLength(0);
+		builder.append(chars, 0, k);
+	}
+
+	private static int indexOf(byte[] bytes, int length, byte[] s) {
+		final byte first = s[0];
+		final int max = length - s.length;
+		for (int i = 0; i <= max; i++) {
+			if (bytes[i] != first) {
+				continue;
+			}
+			int j = 1;
+			while (j < s.length && bytes[i + j] == s[j]) {
+				j++;
+			}
+			if (j == s.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the longest string that must appear in any string matched by the
+	 * pattern, or null if there is no such string or if we cannot be sure of
+	 * it. This analysis is deliberately simple: any alternative, group, class
+	 * or escape that is not a quoted char just ends the current literal, and
+	 * so does any quantified element.
+	 */
+	public static String getRequiredLiteral(Pattern p) {
+		final int flags = p.flags();
+		if ((flags & Pattern.LITERAL) != 0) {
+			return checkLiteral(p.pattern());
+		}
+		if ((flags & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) {
+			return null;
+		}
+		final String s = p.pattern();
+		String best = "";
+		final StringBuilder current = new StringBuilder();
+		int i = 0;
+		final int n = s.length();
+		while (i < n) {
+			final char c = s.charAt(i);
+			int next = i + 1;
+			/* The literal text of the element, or null if it has none */
+			String literal;
+			if (c == '|') {
+				return null;
+			} else if (c == '\\') {
+				next = skipEscape(s, next);
+				if (next == -1) {
+					return null;
+				}
+				literal = getEscapedLiteral(s, i + 1, next);
+			} else if (c == '[') {
+				next = skipClass(s, next);
+				literal = null;
+			} else if (c == '(') {
+				if (next + 1 < n && s.charAt(next) == '?'
+						&& (Character.isLetter(s.charAt(next + 1)) || s
+								.charAt(next + 1) == '-')) {
+					/* Inline flags like (?i) change the way literals match */
+					return null;
+				}
+				next = skipGroup(s, next);
+				if (next == -1) {
+					return null;
+				}
+				literal = null;
+			} else if (".^$*+?{})]".indexOf(c) != -1) {
+				literal = null;
+			} else {
+				/* A quantifier applies to a whole code point */
+				next = i + Character.charCount(s.codePointAt(i));
+				literal = s.substring(i, next);
+			}
+			if (next < n && "?*+{".indexOf(s.charAt(next)) != -1) {
+				/*
+				 * A quantified element may be optional or repeated, so it is
+				 * not part of a literal, and the quantifier is skipped as a
+				 * whole
+				 */
+				next = skipQuantifier(s, next);
+				if (next == -1) {
+					return null;
+				}
+				literal = null;
+			}
+			if (literal != null) {
+				current.append(literal);
+			} else {
+				if (current.length() > best.length()) {
+					best = current.toString();
+				}
+				current.setLength(0);
+			}
+			i = next;
+		}
+		if (current.length() > best.length()) {
+			best = current.toString();
+		}
+		return checkLiteral(best);
+	}
+
+	/**
+	 * Returns the position after the escape sequence whose first char after
+	 * the backslash is at pos, or -1 if the escape is not well formed. The
+	 * escaped char may have arguments, as in x41, x{41}, u0041, 0101, cA,
+	 * p{Lu}, N{LATIN SMALL LETTER A}, k&lt;name&gt; or Q...\E.
+	 */
+	private static int skipEscape(String s, int pos) {
+		final int n = s.length();
+		if (pos >= n) {
+			return -1;
+		}
+		final char c = s.charAt(pos++);
+		switch (c) {
+		case 'Q': {
+			final int e = s.indexOf("\\E", pos);
+			return (e == -1) ? n : e + 2;
+		}
+		case 'x': {
+			if (pos < n && s.charAt(pos) == '{') {
+				return skipBraces(s, pos);
+			}
+			return (pos + 2 <= n) ? pos + 2 : -1;
+		}
+		case 'u': {
+			return (pos + 4 <= n) ? pos + 4 : -1;
+		}
+		case '0': {
+			/* Up to 3 octal digits */
+			final int max = Math.min(n, pos + 3);
+			while (pos < max && s.charAt(pos) >= '0' && s.charAt(pos) <= '7') {
+				pos++;
+			}
+			return pos;
+		}
+		case 'c': {
+			return (pos < n) ? pos + 1 : -1;
+		}
+		case 'p':
+		case 'P': {
+			if (pos < n && s.charAt(pos) == '{') {
+				return skipBraces(s, pos);
+			}
+			return (pos < n) ? pos + 1 : -1;
+		}
+		case 'N': {
+			if (pos < n && s.charAt(pos) == '{') {
+				return skipBraces(s, pos);
+			}
+			return -1;
+		}
+		case 'k': {
+			if (pos < n && s.charAt(pos) == '<') {
+				final int e = s.indexOf('>', pos);
+				return (e == -1) ? -1 : e + 1;
+			}
+			return -1;
+		}
+		default: {
+			if (c >= '1' && c <= '9') {
+				/* A back reference */
+				while (pos < n && Character.isDigit(s.charAt(pos))) {
+					pos++;
+				}
+			}
+			return pos;
+		}
+		}
+	}
+
+	/**
+	 * Returns the literal text of the escape [start;end[, where start is the
+	 * position of the char after the backslash, or null if the escape is not
+	 * a plain quoted text.
+	 */
+	private static String getEscapedLiteral(String s, int start, int end) {
+		final char c = s.charAt(start);
+		if (c == 'Q') {
+			final int e = (end == s.length() && !s.endsWith("\\E")) ? end
+					: end - 2;
+			return s.substring(start + 1, Math.max(start + 1, e));
+		}
+		if (end == start + 1 && !Character.isLetterOrDigit(c)) {
+			return String.valueOf(c);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the position after the {...} that starts at pos, or -1 if it is
+	 * not closed.
+	 */
+	private static int skipBraces(String s, int pos) {
+		final int e = s.indexOf('}', pos);
+		return (e == -1) ? -1 : e + 1;
+	}
+
+	/**
+	 * Returns the position after the quantifier that starts at pos, including
+	 * its lazy or possessive suffix, or -1 if it is not well formed.
+	 */
+	private static int skipQuantifier(String s, int pos) {
+		if (s.charAt(pos) == '{') {
+			pos = skipBraces(s, pos);
+			if (pos == -1) {
+				return -1;
+			}
+		} else {
+			pos++;
+		}
+		if (pos < s.length() && (s.charAt(pos) == '?' || s.charAt(pos) == '+')) {
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * We don't use literals with '\r' or '\n' that are removed from lines
+	 * before matching, nor with surrogates that are not decoded the same way
+	 * by Java and by Encoding.
+	 */
+	private static String checkLiteral(String s) {
+		if (s.length() == 0) {
+			return null;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '\r' || c == '\n' || Character.isSurrogate(c)) {
+				return null;
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Returns the position after the class that starts at pos.
+	 */
+	private static int skipClass(String s, int pos) {
+		int depth = 1;
+		if (pos < s.length() && s.charAt(pos) == '^') {
+			pos++;
+		}
+		/* A ']' at the beginning of a class is a literal */
+		if (pos < s.length() && s.charAt(pos) == ']') {
+			pos++;
+		}
+		while (pos < s.length() && depth > 0) {
+			final char c = s.charAt(pos++);
+			if (c == '\\') {
+				pos = skipEscape(s, pos);
+				if (pos == -1) {
+					return s.length();
+				}
+			} else if (c == '[') {
+				depth++;
+			} else if (c == ']') {
+				depth--;
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Returns the position after the group that starts at pos, or -1 if the
+	 * group contains an alternative, which may be a top level one if the group
+	 * is a look-around or a flag modifier, or a malformed escape.
+	 */
+	private static int skipGroup(String s, int pos) {
+		int depth = 1;
+		while (pos < s.length() && depth > 0) {
+			final char c = s.charAt(pos++);
+			if (c == '\\') {
+				pos = skipEscape(s, pos);
+				if (pos == -1) {
+					return -1;
+				}
+			} else if (c == '[') {
+				pos = skipClass(s, pos);
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == '|') {
+				return -1;
+			}
+		}
+		return pos;
+	}
+}
@@ -41,14 +41,21 @@ public class Bounds {
 	private int start_in_letters;
 	private int end_in_letters;
 
-	public Bounds(int global_start_in_chars, int global_end_in_chars) {
+	/**
+	 * Creates bounds from offsets in the given sentence.
+	 */
+	public Bounds(TokensInfo tokens, int global_start_in_chars,
+			int global_end_in_chars) {
 		// System.out.println(global_start_in_chars+" -> "+global_end_in_chars);
 		this.global_start_in_chars = global_start_in_chars;
 		this.global_end_in_chars = global_end_in_chars;
-		global_to_relative();
+		global_to_relative(tokens);
 	}
 
-	public Bounds(int start_in_tokens, int start_in_chars,
+	/**
+	 * Creates bounds from positions in the tokens of the given sentence.
+	 */
+	public Bounds(TokensInfo tokens, int start_in_tokens, int start_in_chars,
 			int start_in_letters, int end_in_tokens, int end_in_chars,
 			int end_in_letters) {
 		if (start_in_tokens < 0 || start_in_chars < 0 || start_in_letters < 0
@@ -67,7 +74,7 @@ public class Bounds {
 		this.end_in_tokens = end_in_tokens;
 		this.end_in_chars = end_in_chars;
 		this.end_in_letters = end_in_letters;
-		relative_to_global();
+		relative_to_global(tokens);
 		// System.out.println("2e constructeur: "+global_start_in_chars+" -> "+global_end_in_chars);
 	}
 
@@ -87,7 +94,7 @@ public class Bounds {
 	}
 	
 
-	private void global_to_relative() {
+	private void global_to_relative(TokensInfo tokens) {
 		/*
 		 * We set those values by default for Korean transitions. This may
 		 * change in the future if we allow real edition for Korean sentence
@@ -97,9 +104,9 @@ public class Bounds {
 		end_in_letters = 0;
 		start_in_tokens = 0;
 		int current_length = 0;
-		while (current_length + TokensInfo.getTokenLength(start_in_tokens) <= global_start_in_chars) {
+		while (current_length + tokens.getTokenLength(start_in_tokens) <= global_start_in_chars) {
 			current_length = current_length
-					+ TokensInfo.getTokenLength(start_in_tokens);
+					+ tokens.getTokenLength(start_in_tokens);
 			start_in_tokens++;
 		}
 		if (global_start_in_chars != current_length) {
@@ -108,9 +115,9 @@ public class Bounds {
 			start_in_chars = 0;
 		}
 		end_in_tokens = start_in_tokens;
-		while (current_length + TokensInfo.getTokenLength(end_in_tokens) <= global_end_in_chars) {
+		while (current_length + tokens.getTokenLength(end_in_tokens) <= global_end_in_chars) {
 			current_length = current_length
-					+ TokensInfo.getTokenLength(end_in_tokens);
+					+ tokens.getTokenLength(end_in_tokens);
 			end_in_tokens++;
 		}
 		end_in_chars = global_end_in_chars - current_length;
@@ -121,27 +128,18 @@ public class Bounds {
 		 */
 	}
 
-	private void relative_to_global() {
-		global_start_in_chars = 0;
-		for (int i = 0; i < start_in_tokens; i++) {
-			global_start_in_chars = global_start_in_chars
-					+ TokensInfo.getTokenLength(i);
-		}
-		global_start_in_chars = global_start_in_chars + start_in_chars;
+	private void relative_to_global(TokensInfo tokens) {
+		global_start_in_chars = tokens.getTokenStart(start_in_tokens)
+				+ start_in_chars;
 		/*
 		 * if (start_in_chars!=-1) {
 		 * global_start_in_chars=global_start_in_chars+start_in_chars; }
 		 */
-		global_end_in_chars = 0;
 		final int last = end_in_tokens;
 		/*
 		 * if (end_in_chars==-1) { last++; }
 		 */
-		for (int i = 0; i < last; i++) {
-			global_end_in_chars = global_end_in_chars
-					+ TokensInfo.getTokenLength(i);
-		}
-		global_end_in_chars = global_end_in_chars + end_in_chars;
+		global_end_in_chars = tokens.getTokenStart(last) + end_in_chars;
 		/*
 		 * if (end_in_chars!=-1) {
 		 * global_end_in_chars=global_end_in_chars+end_in_chars; } else { // We
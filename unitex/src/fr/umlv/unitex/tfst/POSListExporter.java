@@ -0,0 +1,225 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.tfst;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.UnicodeIO;
+
+/**
+ * This class exports a text automaton as a POS list, that is to say the rows
+ * of the text automaton table of each sentence followed by a {S} delimiter.
+ * The text.tfst file is read only once: sentences are read by batches on the
+ * calling thread, tagged in parallel and written in order.
+ */
+public class POSListExporter {
+	private static final int BATCH_SIZE = 256;
+
+	public interface ProgressListener {
+		/**
+		 * Called after the first n sentences have been exported.
+		 */
+		void sentencesExported(int n);
+	}
+
+	private final TagFilter filter;
+	private final boolean delafStyle;
+	private volatile boolean canceled = false;
+
+	public POSListExporter(TagFilter filter, boolean delafStyle) {
+		this.filter = filter;
+		this.delafStyle = delafStyle;
+	}
+
+	/**
+	 * Stops the export after the batch that is being written.
+	 */
+	public void cancel() {
+		canceled = true;
+	}
+
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	/**
+	 * Reads the sentence count of the given text automaton.
+	 */
+	public static int getSentenceCount(BufferedReader reader)
+			throws IOException {
+		String line = reader.readLine();
+		if (line == null) {
+			throw new IOException("Empty text automaton");
+		}
+		if (line.length() > 0 && line.charAt(0) == '\uFEFF') {
+			line = line.substring(1);
+		}
+		try {
+			return Integer.parseInt(line.trim());
+		} catch (final NumberFormatException e) {
+			throw new IOException("Invalid sentence count: " + line);
+		}
+	}
+
+	/**
+	 * Exports the given text automaton with the given number of threads.
+	 * 
+	 * @return the numbers of the sentences that could not be exported
+	 */
+	public ArrayList<Integer> export(File tfst, OutputStreamWriter writer,
+			int nThreads, ProgressListener listener) throws IOException {
+		final InputStreamReader r = Encoding.getInputStreamReader(tfst);
+		if (r == null) {
+			throw new IOException("Cannot read " + tfst);
+		}
+		final BufferedReader reader = new BufferedReader(r, 1 << 16);
+		final ArrayList<Integer> errors = new ArrayList<Integer>();
+		final ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		/*
+		 * We keep a bounded number of batches in the pool, so that a big text
+		 * is never entirely loaded in memory
+		 */
+		final ArrayDeque<Future<String[]>> pending = new ArrayDeque<Future<String[]>>();
+		final int maxPending = 2 * nThreads;
+		try {
+			getSentenceCount(reader);
+			int next = 1;
+			int written = 0;
+			while (!canceled) {
+				final ArrayList<ArrayList<String>> batch = new ArrayList<ArrayList<String>>();
+				ArrayList<String> lines;
+				while (batch.size() < BATCH_SIZE
+						&& (lines = TfstSentence.readLines(reader)) != null) {
+					batch.add(lines);
+				}
+				if (batch.isEmpty()) {
+					break;
+				}
+				pending.add(pool.submit(createTask(batch, next)));
+				next += batch.size();
+				if (pending.size() == maxPending) {
+					written = write(pending.poll(), written, writer, errors);
+					if (listener != null) {
+						listener.sentencesExported(written);
+					}
+				}
+			}
+			while (!pending.isEmpty() && !canceled) {
+				written = write(pending.poll(), written, writer, errors);
+				if (listener != null) {
+					listener.sentencesExported(written);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+			reader.close();
+		}
+		return errors;
+	}
+
+	private Callable<String[]> createTask(
+			final ArrayList<ArrayList<String>> batch, final int first) {
+		return new Callable<String[]>() {
+			@Override
+			public String[] call() {
+				final String[] res = new String[batch.size()];
+				for (int i = 0; i < res.length; i++) {
+					try {
+						res[i] = getPOSList(TfstSentence.parse(batch.get(i),
+								first + i));
+					} catch (final IOException e) {
+						res[i] = null;
+					} catch (final RuntimeException e) {
+						res[i] = null;
+					}
+					/* The lines are not needed anymore */
+					batch.set(i, null);
+				}
+				return res;
+			}
+		};
+	}
+
+	/**
+	 * Writes the sentences of the given batch, that come after the given
+	 * number of sentences already written.
+	 * 
+	 * @return the number of sentences written
+	 */
+	private static int write(Future<String[]> future, int written,
+			OutputStreamWriter writer, ArrayList<Integer> errors)
+			throws IOException {
+		final String[] res;
+		try {
+			res = future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Export interrupted");
+		} catch (final ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		for (final String s : res) {
+			written++;
+			if (s == null) {
+				errors.add(written);
+			} else {
+				UnicodeIO.writeString(writer, s);
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * @return the POS list of the given sentence, ended by a sentence
+	 *         delimiter
+	 */
+	public String getPOSList(TfstSentence sentence) {
+		final ArrayList<TokenTags> rows = TfstTableModel.getTokenTags(
+				sentence, filter, delafStyle);
+		final StringBuilder b = new StringBuilder();
+		if (rows.isEmpty()) {
+			/*
+			 * If the sentence automaton has been emptied, we generate the
+			 * token list
+			 */
+			b.append(sentence.getText());
+		} else {
+			for (final TokenTags t : rows) {
+				b.append(t.toString()).append(' ');
+			}
+		}
+		/* And we add a sentence delimiter */
+		b.append("{S}\n");
+		return b.toString();
+	}
+}
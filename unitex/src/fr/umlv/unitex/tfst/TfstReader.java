@@ -0,0 +1,403 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.tfst;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.io.Encoding;
+
+/**
+ * This class gives a random access to the sentence automata of a .tfst file,
+ * using the byte offsets stored in the .tind file, so that a sentence can be
+ * displayed without launching Tfst2Grf. If the .tind file is missing or does
+ * not match the .tfst, offsets are computed by scanning the .tfst once.
+ * 
+ * The last decoded sentences are kept in a small LRU cache, and the
+ * neighbours of the sentence that was asked for are decoded in background, so
+ * that moving to the next or previous sentence is immediate.
+ * 
+ * The .tfst file is only opened during reads, so that it can still be
+ * replaced or deleted while a reader exists.
+ */
+public class TfstReader {
+	private static final int CACHE_SIZE = 16;
+
+	private static final ExecutorService prefetcher = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					final Thread t = new Thread(r, "Sentence automaton prefetcher");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	private final File tfst;
+	private final long length;
+	private final long lastModified;
+	private final Encoding encoding;
+	/**
+	 * Sentence #n is stored in bytes [offsets[n-1];offsets[n][
+	 */
+	private final long[] offsets;
+
+	private final Map<Integer, TfstSentence> cache = new LinkedHashMap<Integer, TfstSentence>(
+			CACHE_SIZE, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<Integer, TfstSentence> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private TfstReader(File tfst, long length, long lastModified,
+			Encoding encoding, long[] offsets) {
+		this.tfst = tfst;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.encoding = encoding;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Opens the given .tfst file.
+	 * 
+	 * @return null if the file cannot be read
+	 */
+	public static TfstReader open(File tfst) {
+		final long length = tfst.length();
+		final long lastModified = tfst.lastModified();
+		final Encoding encoding = Encoding.getEncoding(tfst);
+		if (encoding == null) {
+			return null;
+		}
+		try {
+			final int bom = (encoding == Encoding.UTF8) ? 0 : 2;
+			final int count = readSentenceCount(tfst, encoding, bom);
+			long[] offsets = readIndex(tfst, count, length);
+			if (offsets == null || !checkIndex(tfst, encoding, offsets)) {
+				offsets = scanOffsets(tfst, encoding, bom, count);
+			}
+			return new TfstReader(tfst, length, lastModified, encoding,
+					offsets);
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	public File getFile() {
+		return tfst;
+	}
+
+	public int getSentenceCount() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * @return false if the .tfst file has been modified since this reader was
+	 *         opened
+	 */
+	public boolean isUpToDate() {
+		return tfst.length() == length && tfst.lastModified() == lastModified;
+	}
+
+	/**
+	 * Returns the sentence #n, n being in [1;sentence count], and starts
+	 * decoding its neighbours in background.
+	 */
+	public TfstSentence getSentence(int n) throws IOException {
+		TfstSentence s = getCachedSentence(n);
+		if (s == null) {
+			s = readSentence(n);
+			putCachedSentence(s);
+		}
+		prefetch(n + 1);
+		prefetch(n - 1);
+		prefetch(n + 2);
+		return s;
+	}
+
+	private void prefetch(final int n) {
+		if (n < 1 || n > getSentenceCount() || getCachedSentence(n) != null) {
+			return;
+		}
+		prefetcher.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (getCachedSentence(n) != null || !isUpToDate()) {
+					return;
+				}
+				try {
+					putCachedSentence(readSentence(n));
+				} catch (final IOException e) {
+					/* The error will be reported if the sentence is asked for */
+				}
+			}
+		});
+	}
+
+	private TfstSentence getCachedSentence(int n) {
+		synchronized (cache) {
+			return cache.get(Integer.valueOf(n));
+		}
+	}
+
+	private void putCachedSentence(TfstSentence s) {
+		synchronized (cache) {
+			cache.put(Integer.valueOf(s.getNumber()), s);
+		}
+	}
+
+	/**
+	 * Reads and decodes the sentence #n without using the cache.
+	 */
+	public TfstSentence readSentence(int n) throws IOException {
+		if (n < 1 || n > getSentenceCount()) {
+			throw new IllegalArgumentException("Invalid sentence number: " + n);
+		}
+		final long start = offsets[n - 1];
+		final int size = (int) (offsets[n] - start);
+		final byte[] bytes = new byte[size];
+		final RandomAccessFile f = new RandomAccessFile(tfst, "r");
+		try {
+			f.seek(start);
+			f.readFully(bytes);
+		} finally {
+			f.close();
+		}
+		final char[] chars = new char[size];
+		final int nChars = encoding.decode(ByteBuffer.wrap(bytes), 0, size,
+				chars);
+		final BufferedReader reader = new BufferedReader(new CharArrayReader(
+				chars, 0, nChars));
+		final ArrayList<String> lines = TfstSentence.readLines(reader);
+		if (lines == null) {
+			throw new IOException("Empty sentence automaton #" + n);
+		}
+		return TfstSentence.parse(lines, n);
+	}
+
+	/**
+	 * The first line of a .tfst file is the number of sentences.
+	 */
+	private static int readSentenceCount(File tfst, Encoding encoding, int bom)
+			throws IOException {
+		final byte[] bytes = new byte[64];
+		int n;
+		final InputStream in = new FileInputStream(tfst);
+		try {
+			n = 0;
+			int r;
+			while (n < bytes.length
+					&& (r = in.read(bytes, n, bytes.length - n)) != -1) {
+				n = n + r;
+			}
+		} finally {
+			in.close();
+		}
+		final char[] chars = new char[bytes.length];
+		final int nChars = encoding.decode(ByteBuffer.wrap(bytes), bom, n,
+				chars);
+		int count = 0;
+		int i;
+		for (i = 0; i < nChars && chars[i] >= '0' && chars[i] <= '9'; i++) {
+			count = count * 10 + (chars[i] - '0');
+		}
+		if (i == 0 || i == nChars || (chars[i] != '\n' && chars[i] != '\r')) {
+			throw new IOException("Invalid sentence count in "
+					+ tfst.getAbsolutePath());
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the offsets of the .tind file, whose entries are the native
+	 * little-endian longs of the tool that wrote it, i.e. 8 or 4 bytes long.
+	 * 
+	 * @return null if there is no usable .tind file
+	 */
+	private static long[] readIndex(File tfst, int count, long length)
+			throws IOException {
+		final File tind = new File(FileUtil.getFileNameWithoutExtension(tfst)
+				+ ".tind");
+		if (!tind.exists() || count == 0) {
+			return null;
+		}
+		final long size = tind.length();
+		final int entrySize;
+		if (size == 8L * count) {
+			entrySize = 8;
+		} else if (size == 4L * count) {
+			entrySize = 4;
+		} else {
+			return null;
+		}
+		final byte[] bytes = new byte[(int) size];
+		final RandomAccessFile f = new RandomAccessFile(tind, "r");
+		try {
+			f.readFully(bytes);
+		} finally {
+			f.close();
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(
+				ByteOrder.LITTLE_ENDIAN);
+		final long[] offsets = new long[count + 1];
+		for (int i = 0; i < count; i++) {
+			offsets[i] = (entrySize == 8) ? buffer.getLong() : (buffer
+					.getInt() & 0xFFFFFFFFL);
+			if (offsets[i] <= 0 || offsets[i] >= length
+					|| (i > 0 && offsets[i] <= offsets[i - 1])) {
+				return null;
+			}
+		}
+		offsets[count] = length;
+		return offsets;
+	}
+
+	/**
+	 * Checks that the first and last offsets point to the "$n" lines, in
+	 * order not to trust a .tind that would come from another .tfst
+	 */
+	private static boolean checkIndex(File tfst, Encoding encoding,
+			long[] offsets) throws IOException {
+		final int count = offsets.length - 1;
+		final RandomAccessFile f = new RandomAccessFile(tfst, "r");
+		try {
+			return checkSentenceStart(f, encoding, offsets[0], 1)
+					&& checkSentenceStart(f, encoding, offsets[count - 1],
+							count);
+		} finally {
+			f.close();
+		}
+	}
+
+	private static boolean checkSentenceStart(RandomAccessFile f,
+			Encoding encoding, long offset, int n) throws IOException {
+		final String expected = "$" + n;
+		final byte[] bytes = new byte[2 * (expected.length() + 2)];
+		f.seek(offset);
+		final int size = f.read(bytes);
+		if (size <= 0) {
+			return false;
+		}
+		final char[] chars = new char[bytes.length];
+		final int nChars = encoding.decode(ByteBuffer.wrap(bytes), 0, size,
+				chars);
+		final String s = new String(chars, 0, nChars);
+		return s.startsWith(expected + "\n") || s.startsWith(expected + "\r");
+	}
+
+	/**
+	 * Looks for the "$n" lines that start sentences, i.e. the ones that
+	 * follow the count line or the "f" line that ends the previous sentence.
+	 */
+	private static long[] scanOffsets(File tfst, Encoding encoding, int bom,
+			int count) throws IOException {
+		final long[] offsets = new long[count + 1];
+		final int unit = (encoding == Encoding.UTF8) ? 1 : 2;
+		final boolean bigEndian = (encoding == Encoding.UTF16BE);
+		final InputStream in = new BufferedInputStream(new FileInputStream(
+				tfst), 65536);
+		int found = 0;
+		long pos = 0;
+		try {
+			pos = in.skip(bom);
+			/* The first line is the sentence count */
+			boolean countLine = true;
+			boolean afterEnd = false;
+			boolean endLine = false;
+			boolean lineStart = false;
+			/* Position of the current line, and number read after '$' if any */
+			long linePos = -1;
+			int number = -1;
+			int c;
+			while ((c = readUnit(in, unit, bigEndian)) != -1) {
+				final long charPos = pos;
+				pos = pos + unit;
+				if (c == '\n') {
+					if (number == found + 1 && found < count) {
+						offsets[found++] = linePos;
+					}
+					afterEnd = endLine || countLine;
+					countLine = false;
+					lineStart = true;
+					number = -1;
+					continue;
+				}
+				if (lineStart) {
+					lineStart = false;
+					linePos = charPos;
+					number = (afterEnd && c == '$') ? 0 : -1;
+					endLine = (c == 'f');
+					continue;
+				}
+				if (c != ' ' && c != '\r') {
+					endLine = false;
+				}
+				if (number != -1) {
+					if (c >= '0' && c <= '9' && number < 100000000) {
+						number = number * 10 + (c - '0');
+					} else if (c != '\r') {
+						number = -1;
+					}
+				}
+			}
+		} finally {
+			in.close();
+		}
+		if (found != count) {
+			throw new IOException("Found " + found + " sentences instead of "
+					+ count + " in " + tfst.getAbsolutePath());
+		}
+		offsets[count] = pos;
+		return offsets;
+	}
+
+	private static int readUnit(InputStream in, int unit, boolean bigEndian)
+			throws IOException {
+		final int a = in.read();
+		if (a == -1 || unit == 1) {
+			return a;
+		}
+		final int b = in.read();
+		if (b == -1) {
+			return -1;
+		}
+		return bigEndian ? (a << 8 | b) : (b << 8 | a);
+	}
+}
@@ -0,0 +1,581 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.tfst;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import fr.umlv.unitex.grf.GrfModel;
+
+/**
+ * This class describes a sentence automaton as it is stored in a .tfst file:
+ * 
+ * <pre>
+ * $n                      sentence number
+ * text of the sentence
+ * 12/3 0/1 ...            token numbers and lengths in chars
+ * 45_230                  offset of the sentence in tokens and in chars
+ * : 1 1 2 1               states: ':' or 't' if final, then tag/dest pairs
+ * t
+ * f
+ * &#64;&lt;E&gt;                    tag #0
+ * .
+ * &#64;STD                    other tags
+ * &#64;{le,.DET}
+ * &#64;0.0.0-0.1.1            bounds in tokens, chars and letters
+ * .
+ * f
+ * </pre>
+ * 
+ * Sentences are immutable, so that they can be decoded in a background thread
+ * and shared between frames.
+ */
+public class TfstSentence {
+	private static final String EMPTIED = "THIS SENTENCE AUTOMATON HAS BEEN EMPTIED";
+
+	private final int number;
+	private final String text;
+	private final TokensInfo tokens;
+	/**
+	 * The transitions of state #i are tags[stateStart[i]..stateStart[i+1]-1]
+	 * and dests[stateStart[i]..stateStart[i+1]-1]
+	 */
+	private final int[] stateStart;
+	private final int[] tags;
+	private final int[] dests;
+	private final boolean[] finalStates;
+	/**
+	 * Tag contents, and their bounds in tokens, chars and letters, or null
+	 * for &lt;E&gt;. Tag #0 is always &lt;E&gt;.
+	 */
+	private final String[] tagContents;
+	private final int[][] tagBounds;
+	/**
+	 * The boxes of the sentence graph: box #i represents the transitions
+	 * tagged by boxTags[i] that lead to boxStates[i]
+	 */
+	private final int[] boxTags;
+	private final int[] boxStates;
+	private final int[][] boxTransitions;
+
+	private TfstSentence(int number, String text, TokensInfo tokens,
+			int[] stateStart, int[] tags, int[] dests, boolean[] finalStates,
+			String[] tagContents, int[][] tagBounds) {
+		this.number = number;
+		this.text = text;
+		this.tokens = tokens;
+		this.stateStart = stateStart;
+		this.tags = tags;
+		this.dests = dests;
+		this.finalStates = finalStates;
+		this.tagContents = tagContents;
+		this.tagBounds = tagBounds;
+		if (getTransitionCount(0) == 0) {
+			/* The automaton has been emptied */
+			boxTags = new int[] { -1, -1, -1 };
+			boxStates = new int[] { 0, -1, -1 };
+			boxTransitions = new int[][] { { 2 }, {}, { GrfModel.FINAL } };
+			return;
+		}
+		/*
+		 * There is one box for each (tag,destination state) pair, numbered in
+		 * the order of the transitions
+		 */
+		final HashMap<Long, Integer> boxes = new HashMap<Long, Integer>();
+		final int[] bTags = new int[tags.length + 2];
+		final int[] bStates = new int[tags.length + 2];
+		bTags[GrfModel.INITIAL] = bTags[GrfModel.FINAL] = -1;
+		bStates[GrfModel.FINAL] = -1;
+		int nBoxes = 2;
+		for (int i = 0; i < tags.length; i++) {
+			final Long key = Long.valueOf(((long) tags[i] << 32) | dests[i]);
+			if (!boxes.containsKey(key)) {
+				boxes.put(key, Integer.valueOf(nBoxes));
+				bTags[nBoxes] = tags[i];
+				bStates[nBoxes++] = dests[i];
+			}
+		}
+		boxTags = Arrays.copyOf(bTags, nBoxes);
+		boxStates = Arrays.copyOf(bStates, nBoxes);
+		boxTransitions = new int[nBoxes][];
+		boxTransitions[GrfModel.FINAL] = new int[0];
+		for (int box = 0; box < nBoxes; box++) {
+			if (box == GrfModel.FINAL) {
+				continue;
+			}
+			final int state = boxStates[box];
+			final int n = getTransitionCount(state);
+			final int[] t = new int[n + (finalStates[state] ? 1 : 0)];
+			for (int j = 0; j < n; j++) {
+				final int k = stateStart[state] + j;
+				t[j] = boxes.get(Long.valueOf(((long) tags[k] << 32)
+						| dests[k]));
+			}
+			if (finalStates[state]) {
+				t[n] = GrfModel.FINAL;
+			}
+			boxTransitions[box] = t;
+		}
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the tokens of the sentence, i.e. what Tfst2Grf saves in
+	 *         cursentence.tok
+	 */
+	public TokensInfo getTokensInfo() {
+		return tokens;
+	}
+
+	public int getStateCount() {
+		return finalStates.length;
+	}
+
+	public boolean isFinal(int state) {
+		return finalStates[state];
+	}
+
+	public int getTransitionCount(int state) {
+		return stateStart[state + 1] - stateStart[state];
+	}
+
+	public int getTag(int state, int n) {
+		return tags[stateStart[state] + n];
+	}
+
+	public int getDestination(int state, int n) {
+		return dests[stateStart[state] + n];
+	}
+
+	/**
+	 * @return the text of the tokens [start;end]
+	 */
+	public String getTokenSequence(int start, int end) {
+		return tokens.getTokenSequence(start, end);
+	}
+
+	public int getTagCount() {
+		return tagContents.length;
+	}
+
+	public String getTagContent(int tag) {
+		return tagContents[tag];
+	}
+
+	/**
+	 * Reads the lines of the next sentence, from its $n line to the "f" line
+	 * that ends its tag list.
+	 * 
+	 * @return null if there is no more sentence
+	 */
+	static ArrayList<String> readLines(BufferedReader reader)
+			throws IOException {
+		String line = reader.readLine();
+		if (line == null) {
+			return null;
+		}
+		final ArrayList<String> lines = new ArrayList<String>();
+		lines.add(line);
+		/*
+		 * The sentence text could start with a 'f', so we take the text,
+		 * token and offset lines as they are
+		 */
+		for (int i = 0; i < 3; i++) {
+			lines.add(readLine(reader));
+		}
+		/* Then, there are the "f" lines that end the states and the tags */
+		int ends = 0;
+		while (ends != 2) {
+			line = readLine(reader);
+			lines.add(line);
+			if (line.startsWith("f")) {
+				ends++;
+			}
+		}
+		return lines;
+	}
+
+	private static String readLine(BufferedReader reader) throws IOException {
+		final String line = reader.readLine();
+		if (line == null) {
+			throw new IOException("Unexpected end of sentence automaton");
+		}
+		return line;
+	}
+
+	/**
+	 * Parses the lines of a sentence, as returned by readLines.
+	 */
+	static TfstSentence parse(List<String> lines, int expected)
+			throws IOException {
+		final Iterator<String> reader = lines.iterator();
+		String line = next(reader);
+		if (line.length() < 2 || line.charAt(0) != '$'
+				|| parseInt(line, 1, line.length()) != expected) {
+			throw new IOException("Invalid sentence number line: " + line);
+		}
+		final String text = next(reader);
+		final int[] tokens = parseTokens(next(reader));
+		/* We skip the offset line */
+		next(reader);
+		final ArrayList<int[]> states = new ArrayList<int[]>();
+		final ArrayList<Boolean> finals = new ArrayList<Boolean>();
+		int nTransitions = 0;
+		while (!(line = next(reader)).startsWith("f")) {
+			if (line.length() == 0
+					|| (line.charAt(0) != ':' && line.charAt(0) != 't')) {
+				throw new IOException("Invalid state line: " + line);
+			}
+			final int[] t = parseInts(line, 1);
+			if (t.length % 2 != 0) {
+				throw new IOException("Invalid state line: " + line);
+			}
+			states.add(t);
+			finals.add(line.charAt(0) == 't');
+			nTransitions = nTransitions + t.length / 2;
+		}
+		final int nStates = states.size();
+		if (nStates == 0) {
+			throw new IOException("No state in sentence " + expected);
+		}
+		final int[] stateStart = new int[nStates + 1];
+		final int[] tags = new int[nTransitions];
+		final int[] dests = new int[nTransitions];
+		final boolean[] finalStates = new boolean[nStates];
+		int q = 0;
+		for (int i = 0; i < nStates; i++) {
+			final int[] t = states.get(i);
+			for (int j = 0; j < t.length; j = j + 2) {
+				if (t[j + 1] >= nStates) {
+					throw new IOException("Invalid destination state "
+							+ t[j + 1] + " in sentence " + expected);
+				}
+				tags[q] = t[j];
+				dests[q++] = t[j + 1];
+			}
+			stateStart[i + 1] = q;
+			finalStates[i] = finals.get(i);
+		}
+		final ArrayList<String> contents = new ArrayList<String>();
+		final ArrayList<int[]> bounds = new ArrayList<int[]>();
+		while (!(line = next(reader)).equals("f")) {
+			if (line.equals("@<E>")) {
+				contents.add("<E>");
+				bounds.add(null);
+			} else if (line.equals("@STD")) {
+				contents.add(unprefix(next(reader)));
+				bounds.add(parseBounds(unprefix(next(reader))));
+			} else {
+				throw new IOException("Invalid tag line: " + line);
+			}
+			if (!(line = next(reader)).equals(".")) {
+				throw new IOException("Invalid end of tag: " + line);
+			}
+		}
+		for (final int tag : tags) {
+			if (tag >= contents.size()) {
+				throw new IOException("Invalid tag number " + tag
+						+ " in sentence " + expected);
+			}
+		}
+		final TokensInfo tokensInfo;
+		try {
+			tokensInfo = new TokensInfo(tokens, text);
+		} catch (final RuntimeException e) {
+			throw new IOException("Inconsistency in tokens of sentence "
+					+ expected);
+		} catch (final AssertionError e) {
+			throw new IOException("Inconsistency in tokens of sentence "
+					+ expected);
+		}
+		return new TfstSentence(expected, text, tokensInfo, stateStart, tags,
+				dests, finalStates, contents.toArray(new String[contents
+						.size()]), bounds.toArray(new int[bounds.size()][]));
+	}
+
+	private static String next(Iterator<String> reader) throws IOException {
+		if (!reader.hasNext()) {
+			throw new IOException("Unexpected end of sentence automaton");
+		}
+		return reader.next();
+	}
+
+	private static String unprefix(String line) throws IOException {
+		if (line.length() == 0 || line.charAt(0) != '@') {
+			throw new IOException("Invalid tag line: " + line);
+		}
+		return line.substring(1);
+	}
+
+	/**
+	 * Parses "a.b.c-d.e.f", where the numbers may be negative, as in
+	 * "0.1.0-0.1.-1" for {&lt;E&gt;,.JO}
+	 */
+	private static int[] parseBounds(String s) throws IOException {
+		final int[] bounds = new int[6];
+		final String separators = "..-..";
+		int pos = 0;
+		for (int i = 0; i < 6; i++) {
+			final int start = pos;
+			if (pos < s.length() && s.charAt(pos) == '-') {
+				pos++;
+			}
+			while (pos < s.length() && s.charAt(pos) >= '0'
+					&& s.charAt(pos) <= '9') {
+				pos++;
+			}
+			if (start < s.length() && s.charAt(start) == '-') {
+				bounds[i] = -parseInt(s, start + 1, pos);
+			} else {
+				bounds[i] = parseInt(s, start, pos);
+			}
+			if (i < 5) {
+				if (pos == s.length() || s.charAt(pos) != separators.charAt(i)) {
+					throw new IOException("Invalid tag bounds: " + s);
+				}
+				pos++;
+			}
+		}
+		if (pos != s.length()) {
+			throw new IOException("Invalid tag bounds: " + s);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Parses "12/3 0/1 ..." into {12,3,0,1,...}
+	 */
+	private static int[] parseTokens(String line) throws IOException {
+		return parseInts(line.replace('/', ' '), 0);
+	}
+
+	/**
+	 * Parses the space separated numbers of s, starting at the given position
+	 */
+	private static int[] parseInts(String s, int pos) throws IOException {
+		int[] res = new int[16];
+		int n = 0;
+		final int length = s.length();
+		while (pos < length) {
+			if (s.charAt(pos) == ' ') {
+				pos++;
+				continue;
+			}
+			int end = pos;
+			while (end < length && s.charAt(end) != ' ') {
+				end++;
+			}
+			if (n == res.length) {
+				res = Arrays.copyOf(res, 2 * n);
+			}
+			res[n++] = parseInt(s, pos, end);
+			pos = end;
+		}
+		return Arrays.copyOf(res, n);
+	}
+
+	private static int parseInt(String s, int start, int end)
+			throws IOException {
+		if (start == end) {
+			throw new IOException("Number expected: " + s);
+		}
+		int n = 0;
+		for (int i = start; i < end; i++) {
+			final char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new IOException("Invalid number in: " + s);
+			}
+			n = n * 10 + (c - '0');
+		}
+		return n;
+	}
+
+	boolean isEmptied() {
+		return boxTags.length == 3 && boxTags[2] == -1;
+	}
+
+	int getBoxCount() {
+		return boxTags.length;
+	}
+
+	/**
+	 * @return the content of the given box, without its bounds
+	 */
+	String getBoxContent(int box) {
+		if (box == GrfModel.INITIAL) {
+			return "<E>";
+		}
+		if (box == GrfModel.FINAL) {
+			return "";
+		}
+		if (boxTags[box] == -1) {
+			return EMPTIED;
+		}
+		return tagContents[boxTags[box]];
+	}
+
+	/**
+	 * @return the bounds of the given box, or null if it has none
+	 */
+	int[] getBoxBounds(int box) {
+		if (boxTags[box] == -1) {
+			return null;
+		}
+		return tagBounds[boxTags[box]];
+	}
+
+	int[] getBoxTransitions(int box) {
+		return boxTransitions[box];
+	}
+
+	/**
+	 * Builds the sentence graph that Tfst2Grf would produce. There is one box
+	 * for each (tag,destination state) pair, so that all the transitions
+	 * tagged by the same tag and leading to the same state are represented by
+	 * the same box. Boxes are laid out in columns, according to their
+	 * distance to the initial box.
+	 * 
+	 * @param fontSize
+	 *            the font size, as it is saved in .grf files
+	 */
+	public GrfModel toGrfModel(File grf, String fontName, int fontSize) {
+		final int n = getBoxCount();
+		final String[] contents = new String[n];
+		final int[][] transitions = new int[n][];
+		for (int i = 0; i < n; i++) {
+			contents[i] = getBoxContent(i);
+			final int[] b = getBoxBounds(i);
+			if (isEmptied() && i == 2) {
+				contents[i] = contents[i] + "/0 0 0 0 0 0";
+			} else if (b != null) {
+				contents[i] = contents[i] + "/" + b[0] + " " + b[1] + " "
+						+ b[2] + " " + b[3] + " " + b[4] + " " + b[5];
+			}
+			transitions[i] = boxTransitions[i].clone();
+		}
+		return layout(grf, fontName, fontSize, contents, transitions);
+	}
+
+	private static GrfModel layout(File grf, String fontName, int fontSize,
+			String[] contents, int[][] transitions) {
+		final int n = contents.length;
+		/*
+		 * The column of a box is the length of the longest path from the
+		 * initial box, computed in topological order. The final box is
+		 * always in the last column.
+		 */
+		final int[] column = new int[n];
+		final int[] incoming = new int[n];
+		for (final int[] t : transitions) {
+			for (final int dst : t) {
+				incoming[dst]++;
+			}
+		}
+		final int[] queue = new int[n];
+		int head = 0, tail = 0;
+		for (int i = 0; i < n; i++) {
+			if (incoming[i] == 0) {
+				queue[tail++] = i;
+			}
+		}
+		int maxColumn = 0;
+		while (head < tail) {
+			final int box = queue[head++];
+			for (final int dst : transitions[box]) {
+				column[dst] = Math.max(column[dst], column[box] + 1);
+				if (--incoming[dst] == 0) {
+					queue[tail++] = dst;
+				}
+			}
+			maxColumn = Math.max(maxColumn, column[box]);
+		}
+		column[GrfModel.FINAL] = maxColumn + 1;
+		/*
+		 * Box sizes are only estimated from the font size, since the real
+		 * ones will be computed by the boxes when they are displayed
+		 */
+		final int charWidth = Math.max(1, (int) (fontSize / 0.72 * 0.6));
+		final int lineHeight = (int) (fontSize / 0.72 * 1.3);
+		final int[] columnWidth = new int[maxColumn + 2];
+		final int[] rows = new int[maxColumn + 2];
+		int maxLines = 1;
+		for (int i = 0; i < n; i++) {
+			final int[] size = estimateSize(contents[i]);
+			columnWidth[column[i]] = Math.max(columnWidth[column[i]], size[0]
+					* charWidth + 10);
+			maxLines = Math.max(maxLines, size[1]);
+		}
+		final int rowHeight = maxLines * lineHeight + 30;
+		final int[] columnX = new int[maxColumn + 2];
+		columnX[0] = 70;
+		for (int i = 1; i < columnX.length; i++) {
+			columnX[i] = columnX[i - 1] + columnWidth[i - 1] + 40;
+		}
+		final int[] x = new int[n];
+		final int[] y = new int[n];
+		int maxRows = 1;
+		for (int i = 0; i < n; i++) {
+			x[i] = columnX[column[i]];
+			y[i] = 100 + rows[column[i]] * rowHeight;
+			rows[column[i]]++;
+			maxRows = Math.max(maxRows, rows[column[i]]);
+		}
+		final int width = columnX[columnX.length - 1] + 100;
+		final int height = 100 + maxRows * rowHeight + 50;
+		return GrfModel.createSentenceGraph(grf, fontName, fontSize, width,
+				height, contents, x, y, transitions);
+	}
+
+	/**
+	 * @return the maximum length of a line and the number of lines that
+	 *         TfstGraphBox will display for the given box content
+	 */
+	private static int[] estimateSize(String content) {
+		final int slash = content.lastIndexOf('/');
+		final String s = (slash == -1) ? content : content.substring(0, slash);
+		if (!s.startsWith("{") || !s.endsWith("}")) {
+			return new int[] { s.length(), 1 };
+		}
+		final int comma = s.indexOf(',');
+		final int dot = s.indexOf('.', comma + 1);
+		if (comma == -1 || dot == -1) {
+			return new int[] { s.length(), 1 };
+		}
+		final int inflected = comma - 1;
+		final int lemma = dot - comma - 1;
+		final int codes = s.length() - dot - 2;
+		return new int[] { Math.max(inflected, Math.max(lemma, codes)),
+				(lemma == 0) ? 2 : 3 };
+	}
+}
@@ -21,6 +21,8 @@
 package fr.umlv.unitex.tfst;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 
 import javax.swing.table.AbstractTableModel;
 
@@ -84,35 +86,15 @@ public class TfstTableModel extends AbstractTableModel {
 		return "";
 	}
 
-	public void init(ArrayList<GenericGraphBox> boxes) {
+	/**
+	 * Computes the rows for the given boxes, whose bounds refer to the tokens
+	 * of the given sentence.
+	 */
+	public void init(ArrayList<GenericGraphBox> boxes, TokensInfo tokens) {
 		lines.clear();
 		if (emptySentenceGraph(boxes))
 			return;
-		final boolean[] boxStartingTokens = new boolean[boxes.size()];
-		for (int i = 0; i < boxStartingTokens.length; i++) {
-			boxStartingTokens[i] = true;
-		}
-		for (int i = 0; i < boxStartingTokens.length; i++) {
-			final TfstGraphBox b = (TfstGraphBox) boxes.get(i);
-			for (final GenericGraphBox b2 : b.getTransitions()) {
-				if (i != 0 && b.isNextBoxInSameToken((TfstGraphBox) b2)) {
-					/*
-					 * If b2 is connected to the initial state, there is need to
-					 * test whether it starts on a token or not
-					 */
-					boxStartingTokens[boxes.indexOf(b2)] = false;
-				}
-			}
-		}
-		for (int i = 0; i < boxes.size(); i++) {
-			final GenericGraphBox b = boxes.get(i);
-			if (b.getType() != GenericGraphBox.NORMAL || !boxStartingTokens[i]) {
-				continue;
-			}
-			final TfstGraphBox t = (TfstGraphBox) b;
-			final ArrayList<TfstGraphBox> tmp = new ArrayList<TfstGraphBox>();
-			exploreBox(t, tmp);
-		}
+		computeRows(new GraphBoxes(boxes, tokens), lines);
 		nColumns = 1;
 		for (final TokenTags t : lines) {
 			t.refreshFilter(filter, delafStyle);
@@ -131,51 +113,12 @@ public class TfstTableModel extends AbstractTableModel {
 				.equals("THIS SENTENCE AUTOMATON HAS BEEN EMPTIED");
 	}
 
-	/**
-	 * We explore boxes until we have to move to the next token. We obtain then
-	 * in 'tmp' a list of boxes that form an interpretation for a token
-	 * sequence. This interpretation is then added to the TfstTableModel.
-	 */
-	private void exploreBox(TfstGraphBox t, ArrayList<TfstGraphBox> list) {
-		list.add(t);
-		final ArrayList<GenericGraphBox> transitions = t.getTransitions();
-		if (transitions.size() == 0) {
-			return;
-		}
-		TfstGraphBox tmp = (TfstGraphBox) transitions.get(0);
-		if (!t.isNextBoxInSameToken(tmp)) {
-			addInterpretation(list);
-		} else {
-			for (final GenericGraphBox b : transitions) {
-				tmp = (TfstGraphBox) b;
-				exploreBox(tmp, list);
-			}
-		}
-		/* Don't forget to remove the element we added */
-		list.remove(list.size() - 1);
-	}
-
-	/**
-	 * Adding an interpretation to the TfstTableModel
-	 */
-	private void addInterpretation(ArrayList<TfstGraphBox> list) {
-		final int start = list.get(0).getBounds().getStart_in_tokens();
-		final int end = list.get(list.size() - 1).getBounds()
-				.getEnd_in_tokens();
-		final String tokenSequence = TokensInfo.getTokenSequence(start, end);
-		final TokenTags tags = getTokenTags(start, end, tokenSequence);
-		final ArrayList<Tag> interpretation = new ArrayList<Tag>();
-		for (final TfstGraphBox b : list) {
-			interpretation.add(new Tag(b.getContent()));
-		}
-		tags.addInterpretation(interpretation);
-	}
-
 	/**
 	 * Returns the TokenTags object for the given token sequence, inserting it
 	 * if needed, so that the TokenTags list is sorted.
 	 */
-	private TokenTags getTokenTags(int start, int end, String tokenSequence) {
+	private static TokenTags getTokenTags(ArrayList<TokenTags> lines,
+			int start, int end, String tokenSequence) {
 		for (int i = 0; i < lines.size(); i++) {
 			TokenTags t = lines.get(i);
 			if (t.getStart() == start && t.getEnd() == end
@@ -198,4 +141,240 @@ public class TfstTableModel extends AbstractTableModel {
 	public TokenTags getTokenTags(int j) {
 		return lines.get(j);
 	}
+
+	/**
+	 * Computes the rows that init would produce for the graph of the given
+	 * sentence, working directly on the sentence automaton, without building
+	 * any box. This can be used by several threads at the same time.
+	 */
+	public static ArrayList<TokenTags> getTokenTags(TfstSentence sentence,
+			TagFilter filter, boolean delafStyle) {
+		final ArrayList<TokenTags> lines = new ArrayList<TokenTags>();
+		if (sentence.isEmptied()) {
+			return lines;
+		}
+		computeRows(new SentenceAutomatonBoxes(sentence), lines);
+		for (final TokenTags t : lines) {
+			t.refreshFilter(filter, delafStyle);
+		}
+		return lines;
+	}
+
+	/**
+	 * The boxes of a sentence automaton, designated by their numbers, the box
+	 * #0 being the initial state. The rows are computed the same way whether
+	 * the automaton comes from graph boxes or directly from a TfstSentence.
+	 */
+	private interface SentenceBoxes {
+		int getBoxCount();
+
+		/**
+		 * @return false for the initial and final states
+		 */
+		boolean isNormalBox(int box);
+
+		int[] getTransitions(int box);
+
+		boolean isNextBoxInSameToken(int box, int next);
+
+		int getStartInTokens(int box);
+
+		int getEndInTokens(int box);
+
+		String getContent(int box);
+
+		String getTokenSequence(int start, int end);
+	}
+
+	private static class GraphBoxes implements SentenceBoxes {
+		private final ArrayList<GenericGraphBox> boxes;
+		private final TokensInfo tokens;
+		private final int[][] transitions;
+
+		GraphBoxes(ArrayList<GenericGraphBox> boxes, TokensInfo tokens) {
+			this.boxes = boxes;
+			this.tokens = tokens;
+			final IdentityHashMap<GenericGraphBox, Integer> index = new IdentityHashMap<GenericGraphBox, Integer>();
+			for (int i = 0; i < boxes.size(); i++) {
+				index.put(boxes.get(i), i);
+			}
+			transitions = new int[boxes.size()][];
+			for (int i = 0; i < boxes.size(); i++) {
+				final ArrayList<GenericGraphBox> l = boxes.get(i)
+						.getTransitions();
+				transitions[i] = new int[l.size()];
+				for (int j = 0; j < l.size(); j++) {
+					transitions[i][j] = index.get(l.get(j));
+				}
+			}
+		}
+
+		private TfstGraphBox get(int box) {
+			return (TfstGraphBox) boxes.get(box);
+		}
+
+		@Override
+		public int getBoxCount() {
+			return boxes.size();
+		}
+
+		@Override
+		public boolean isNormalBox(int box) {
+			return boxes.get(box).getType() == GenericGraphBox.NORMAL;
+		}
+
+		@Override
+		public int[] getTransitions(int box) {
+			return transitions[box];
+		}
+
+		@Override
+		public boolean isNextBoxInSameToken(int box, int next) {
+			return get(box).isNextBoxInSameToken(get(next));
+		}
+
+		@Override
+		public int getStartInTokens(int box) {
+			return get(box).getBounds().getStart_in_tokens();
+		}
+
+		@Override
+		public int getEndInTokens(int box) {
+			return get(box).getBounds().getEnd_in_tokens();
+		}
+
+		@Override
+		public String getContent(int box) {
+			return get(box).getContent();
+		}
+
+		@Override
+		public String getTokenSequence(int start, int end) {
+			return tokens.getTokenSequence(start, end);
+		}
+	}
+
+	private static class SentenceAutomatonBoxes implements SentenceBoxes {
+		private final TfstSentence sentence;
+
+		SentenceAutomatonBoxes(TfstSentence sentence) {
+			this.sentence = sentence;
+		}
+
+		@Override
+		public int getBoxCount() {
+			return sentence.getBoxCount();
+		}
+
+		@Override
+		public boolean isNormalBox(int box) {
+			return box >= 2;
+		}
+
+		@Override
+		public int[] getTransitions(int box) {
+			return sentence.getBoxTransitions(box);
+		}
+
+		/**
+		 * Same as TfstGraphBox.isNextBoxInSameToken
+		 */
+		@Override
+		public boolean isNextBoxInSameToken(int box, int next) {
+			final int[] bounds = sentence.getBoxBounds(box);
+			final int[] nextBounds = sentence.getBoxBounds(next);
+			if (nextBounds == null) {
+				return false;
+			}
+			if (bounds != null && bounds[3] < nextBounds[0]) {
+				return false;
+			}
+			final String content = sentence.getBoxContent(box);
+			return nextBounds[1] != 0 || nextBounds[2] != 0
+					|| sentence.getBoxContent(next).startsWith("{<E>,")
+					|| Arrays.equals(bounds, nextBounds)
+					|| (content.startsWith("{<E>,") && bounds != null
+							&& bounds[3] == nextBounds[0] && bounds[4] == nextBounds[1]);
+		}
+
+		@Override
+		public int getStartInTokens(int box) {
+			return sentence.getBoxBounds(box)[0];
+		}
+
+		@Override
+		public int getEndInTokens(int box) {
+			return sentence.getBoxBounds(box)[3];
+		}
+
+		@Override
+		public String getContent(int box) {
+			return sentence.getBoxContent(box);
+		}
+
+		@Override
+		public String getTokenSequence(int start, int end) {
+			return sentence.getTokenSequence(start, end);
+		}
+	}
+
+	/**
+	 * Adds to lines the rows of the given automaton.
+	 */
+	private static void computeRows(SentenceBoxes boxes,
+			ArrayList<TokenTags> lines) {
+		final int n = boxes.getBoxCount();
+		final boolean[] boxStartingTokens = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			boxStartingTokens[i] = true;
+		}
+		for (int i = 1; i < n; i++) {
+			for (final int b2 : boxes.getTransitions(i)) {
+				if (boxes.isNextBoxInSameToken(i, b2)) {
+					/*
+					 * If b2 is connected to the initial state, there is need to
+					 * test whether it starts on a token or not
+					 */
+					boxStartingTokens[b2] = false;
+				}
+			}
+		}
+		final ArrayList<Integer> tmp = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++) {
+			if (boxes.isNormalBox(i) && boxStartingTokens[i]) {
+				exploreBox(boxes, i, tmp, lines);
+			}
+		}
+	}
+
+	/**
+	 * We explore boxes until we have to move to the next token. We obtain then
+	 * in 'list' a list of boxes that form an interpretation for a token
+	 * sequence. This interpretation is then added to the rows.
+	 */
+	private static void exploreBox(SentenceBoxes boxes, int box,
+			ArrayList<Integer> list, ArrayList<TokenTags> lines) {
+		list.add(box);
+		final int[] transitions = boxes.getTransitions(box);
+		if (transitions.length == 0) {
+			return;
+		}
+		if (!boxes.isNextBoxInSameToken(box, transitions[0])) {
+			final int start = boxes.getStartInTokens(list.get(0));
+			final int end = boxes.getEndInTokens(list.get(list.size() - 1));
+			final TokenTags tags = getTokenTags(lines, start, end,
+					boxes.getTokenSequence(start, end));
+			final ArrayList<Tag> interpretation = new ArrayList<Tag>();
+			for (final Integer b : list) {
+				interpretation.add(new Tag(boxes.getContent(b)));
+			}
+			tags.addInterpretation(interpretation);
+		} else {
+			for (final int b : transitions) {
+				exploreBox(boxes, b, list, lines);
+			}
+		}
+		/* Don't forget to remove the element we added */
+		list.remove(list.size() - 1);
+	}
 }
\ No newline at end of file
@@ -21,95 +21,132 @@
 package fr.umlv.unitex.tfst;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Scanner;
 
 import fr.umlv.unitex.io.Encoding;
 
+/**
+ * This class describes the tokens of a sentence, as given by the token numbers
+ * and lengths of a .tfst file. Tokens are not stored as strings, but as
+ * offsets in the sentence text, so that a TokensInfo is cheap to build and can
+ * be kept with the sentence it describes. Instances are immutable, so that
+ * different sentences can be used at the same time by several frames or
+ * threads.
+ */
 public class TokensInfo {
-	private static int[] info;
-	private static ArrayList<String> tokens = new ArrayList<String>();
-
-	public static int getToken(int n) {
-		return info[2 * n];
-	}
+	private final String sentence;
+	/* Token numbers and lengths */
+	private final int[] info;
+	/* Position of each token in the sentence, plus the sentence length */
+	private final int[] start;
 
-	public static int getTokenLength(int n) {
-		return info[2 * n + 1];
+	/**
+	 * @param tokenInfo
+	 *            the token numbers and lengths of the sentence, as they are
+	 *            stored in a .tfst file
+	 * @param sentence
+	 *            the sentence text
+	 */
+	public TokensInfo(int[] tokenInfo, String sentence) {
+		if (tokenInfo.length % 2 != 0) {
+			throw new IllegalArgumentException("Odd token info length");
+		}
+		this.sentence = sentence;
+		this.info = tokenInfo.clone();
+		this.start = new int[info.length / 2 + 1];
+		for (int i = 0; i < info.length; i = i + 2) {
+			if (info[i] < 0) {
+				throw new AssertionError("Negative token number: " + info[i]);
+			}
+			final int n = info[i + 1];
+			if (n < 0) {
+				throw new AssertionError("Invalid token length: " + n
+						+ " ; should be >=0");
+			}
+			start[i / 2 + 1] = start[i / 2] + n;
+		}
+		if (start[start.length - 1] != sentence.length()) {
+			throw new IllegalStateException("Inconsistency in sentence tokens");
+		}
 	}
 
-	public static void loadTokensInfo(File f, String sentence) {
-		final Scanner scanner = Encoding.getScanner(f);
-		final ArrayList<Integer> l = new ArrayList<Integer>();
-		tokens.clear();
-		int currentPos = 0;
-		while (scanner.hasNextInt()) {
-			int n = scanner.nextInt();
-			if (n < 0) {
-				throw new AssertionError("Negative token number: " + n);
+	/**
+	 * Loads the token information saved by Tfst2Grf in a .tok file, that
+	 * contains the token numbers and lengths separated by spaces.
+	 */
+	public static TokensInfo load(File f, String sentence) {
+		final String s = Encoding.getContent(f);
+		if (s == null) {
+			throw new AssertionError("Cannot read token info file " + f);
+		}
+		int[] tmp = new int[64];
+		int size = 0;
+		final int length = s.length();
+		int pos = 0;
+		while (true) {
+			while (pos < length && Character.isWhitespace(s.charAt(pos))) {
+				pos++;
 			}
-			/* Reading token number */
-			l.add(n);
-			if (!scanner.hasNextInt()) {
-				throw new AssertionError("Invalid token info file");
+			if (pos == length) {
+				break;
 			}
-			/* Reading token length */
-			n = scanner.nextInt();
-			if (n < -1) {
-				throw new AssertionError("Invalid token bound: " + n
-						+ " ; should be >=-1");
+			int n = 0;
+			final int first = pos;
+			while (pos < length && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') {
+				n = n * 10 + (s.charAt(pos) - '0');
+				pos++;
 			}
-			l.add(n);
-			/* Then we compute the token itself */
-			tokens.add(sentence.substring(currentPos, currentPos + n));
-			currentPos = currentPos + n;
-		}
-		if (scanner.hasNext()) {
-			throw new AssertionError(
-					"Invalid token info file: unexpected remaining token <"
-							+ scanner.next() + ">");
-		}
-		scanner.close();
-		final int size = l.size();
-		info = new int[size];
-		for (int i = 0; i < size; i++) {
-			info[i] = l.get(i);
+			if (pos == first
+					|| (pos < length && !Character.isWhitespace(s.charAt(pos)))) {
+				throw new AssertionError(
+						"Invalid token info file: unexpected remaining token <"
+								+ s.substring(first).trim() + ">");
+			}
+			if (size == tmp.length) {
+				final int[] bigger = new int[2 * size];
+				System.arraycopy(tmp, 0, bigger, 0, size);
+				tmp = bigger;
+			}
+			tmp[size++] = n;
 		}
-		if (currentPos != sentence.length()) {
-			throw new IllegalStateException("Inconsistency in sentence tokens");
+		if (size % 2 != 0) {
+			throw new AssertionError("Invalid token info file");
 		}
+		final int[] res = new int[size];
+		System.arraycopy(tmp, 0, res, 0, size);
+		return new TokensInfo(res, sentence);
 	}
 
-	public static String getTokenSequence(int start, int end) {
-		final StringBuilder b = new StringBuilder();
-		for (int i = start; i <= end; i++) {
-			b.append(tokens.get(i));
-		}
-		return b.toString();
+	public String getSentence() {
+		return sentence;
+	}
+
+	public int getToken(int n) {
+		return info[2 * n];
 	}
 
-	public static int getTokenCount() {
-		return tokens.size();
+	public int getTokenLength(int n) {
+		return info[2 * n + 1];
 	}
 
-	public static String getTokenAsString(int n) {
-		return tokens.get(n);
+	/**
+	 * @return the position of the given token in the sentence
+	 */
+	public int getTokenStart(int n) {
+		return start[n];
 	}
 
-	private static int[] infoBackup;
-	private static ArrayList<String> tokensBackup;
+	public int getTokenCount() {
+		return start.length - 1;
+	}
 
-	public static void save() {
-		infoBackup = info;
-		info = null;
-		tokensBackup = tokens;
-		tokens = new ArrayList<String>();
+	public String getTokenAsString(int n) {
+		return sentence.substring(start[n], start[n + 1]);
 	}
 
-	public static void restore() {
-		info = infoBackup;
-		infoBackup = null;
-		tokens = tokensBackup;
-		tokensBackup = null;
+	/**
+	 * @return the text of the tokens [start;end]
+	 */
+	public String getTokenSequence(int first, int last) {
+		return sentence.substring(start[first], start[last + 1]);
 	}
 }
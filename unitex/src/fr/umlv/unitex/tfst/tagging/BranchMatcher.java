@@ -0,0 +1,457 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.tfst.tagging;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * This class checks whether the boxes added to a sentence automaton between
+ * two factorization nodes spell the same text as the existing paths between
+ * those nodes. Existing paths are never enumerated: they are seen as an
+ * automaton whose states are the positions in the texts of their boxes, and
+ * the new paths are matched against it with a single pass over the nodes, in
+ * topological order, that computes for each node the set of positions that
+ * can be reached after it. A second pass in reverse order keeps the positions
+ * from which the end node can be reached, so that a box is accepted if and
+ * only if it lies on at least one path whose text is correct.
+ * 
+ * Nodes are given by their rank in a topological order. Consecutive boxes
+ * are separated by a space when the tokens between them are a single space,
+ * that is when the first token of the second one is two tokens after the last
+ * token of the first one. As the tokens of new boxes are not known, such a
+ * space can be omitted between two boxes of a new path.
+ */
+class BranchMatcher {
+	private final int[][] transitions;
+	private final int start;
+	private final int end;
+	private final String[] texts;
+	private final int[] firstTokens;
+	private final int[] lastTokens;
+	private final BitSet candidates;
+	/* Positions: base[i]+k is the position after k chars of the text of i */
+	private final int[] base;
+	private final int[] rankOfPosition;
+	private final int nPositions;
+	/* Positions reached before and after the text of each candidate node */
+	private final BitSet[] before;
+	private final BitSet[] after;
+	/* Positions of after[i] from which the end node can be reached */
+	private final BitSet[] accepting;
+	private final ArrayList<ArrayList<Integer>> predecessors;
+
+	/**
+	 * @param transitions
+	 *            transitions[i] contains the ranks of the successors of the
+	 *            node of rank i
+	 * @param start
+	 *            the rank of the first node, that is not matched
+	 * @param end
+	 *            the rank of the last node, that is not matched
+	 * @param texts
+	 *            the text of each node, empty for nodes that do not match any
+	 *            text
+	 * @param firstTokens
+	 *            the first token of each node of the existing paths, or -1 if
+	 *            it has no bounds
+	 * @param lastTokens
+	 *            the last token of each node of the existing paths, or -1 if
+	 *            it has no bounds
+	 * @param reference
+	 *            the nodes of the existing paths, including start and end
+	 * @param candidates
+	 *            the nodes that can be used by a new path, including the
+	 *            nodes of the existing paths
+	 */
+	BranchMatcher(int[][] transitions, int start, int end, String[] texts,
+			int[] firstTokens, int[] lastTokens, BitSet reference,
+			BitSet candidates) {
+		this.transitions = transitions;
+		this.start = start;
+		this.end = end;
+		this.texts = texts;
+		this.firstTokens = firstTokens;
+		this.lastTokens = lastTokens;
+		this.candidates = candidates;
+		final int n = transitions.length;
+		base = new int[n];
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			if (i >= start && i <= end && reference.get(i)) {
+				base[i] = size;
+				size = size + texts[i].length() + 1;
+			} else {
+				base[i] = -1;
+			}
+		}
+		nPositions = size;
+		rankOfPosition = new int[size];
+		for (int i = start; i <= end && i < n; i++) {
+			if (base[i] != -1) {
+				for (int k = 0; k <= texts[i].length(); k++) {
+					rankOfPosition[base[i] + k] = i;
+				}
+			}
+		}
+		before = new BitSet[n];
+		after = new BitSet[n];
+		accepting = new BitSet[n];
+		predecessors = new ArrayList<ArrayList<Integer>>(n);
+		for (int i = 0; i < n; i++) {
+			predecessors.add(new ArrayList<Integer>());
+		}
+		if (start < 0 || end >= n || start >= end || base[start] == -1
+				|| base[end] == -1) {
+			return;
+		}
+		for (int i = start; i < end; i++) {
+			if (i == start || candidates.get(i)) {
+				for (final int dest : transitions[i]) {
+					if (dest <= end && (dest == end || candidates.get(dest))) {
+						predecessors.get(dest).add(i);
+					}
+				}
+			}
+		}
+		computeAfter();
+		computeAccepting();
+	}
+
+	private void computeAfter() {
+		after[start] = new BitSet(nPositions);
+		after[start].set(base[start] + texts[start].length());
+		for (int i = start + 1; i < end; i++) {
+			if (!candidates.get(i)) {
+				continue;
+			}
+			before[i] = new BitSet(nPositions);
+			for (final int p : predecessors.get(i)) {
+				if (after[p] != null) {
+					before[i].or(after[p]);
+				}
+			}
+			close(before[i], true);
+			after[i] = read(texts[i], before[i]);
+		}
+	}
+
+	private void computeAccepting() {
+		for (int i = end - 1; i >= start; i--) {
+			if (after[i] == null) {
+				continue;
+			}
+			accepting[i] = new BitSet(nPositions);
+			for (int pos = after[i].nextSetBit(0); pos >= 0; pos = after[i]
+					.nextSetBit(pos + 1)) {
+				if (isAccepting(i, pos)) {
+					accepting[i].set(pos);
+				}
+			}
+		}
+	}
+
+	private boolean isAccepting(int node, int pos) {
+		final BitSet s = new BitSet(nPositions);
+		s.set(pos);
+		close(s, true);
+		for (final int dest : transitions[node]) {
+			if (dest == end) {
+				if (s.get(base[end])) {
+					return true;
+				}
+			} else if (dest < end && accepting[dest] != null
+					&& read(texts[dest], s).intersects(accepting[dest])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if there is at least one existing path between the start
+	 *         and end nodes
+	 */
+	boolean hasReferencePath() {
+		if (base[start] == -1 || base[end] == -1) {
+			return false;
+		}
+		final BitSet s = new BitSet(nPositions);
+		s.set(base[start] + texts[start].length());
+		/* We only look for a path, so we ignore the texts */
+		for (int pos = s.nextSetBit(0); pos >= 0; pos = s.nextSetBit(pos + 1)) {
+			final int i = rankOfPosition[pos];
+			for (final int dest : transitions[i]) {
+				if (dest <= end && base[dest] != -1) {
+					s.set(base[dest]);
+				}
+			}
+		}
+		return s.get(base[end]);
+	}
+
+	/**
+	 * Finds how the text of the given node matches the existing paths, on a
+	 * path whose text is correct.
+	 * 
+	 * @return the tokens of the first and last chars of the text of the node,
+	 *         -1 when they are not known, or null if the node does not lie on
+	 *         a correct path
+	 */
+	int[] align(int node) {
+		if (accepting[node] == null || accepting[node].isEmpty()) {
+			return null;
+		}
+		final String text = texts[node];
+		final int length = text.length();
+		if (length == 0) {
+			return new int[] { -1, -1 };
+		}
+		/*
+		 * We look for a sequence of moves in the positions that reads the
+		 * text, with a breadth-first search on the (position,number of chars
+		 * read) pairs. For each pair, we keep the one it comes from and the
+		 * token of the char read to reach it, if any.
+		 */
+		final int nPairs = nPositions * (length + 1);
+		final int[] from = new int[nPairs];
+		final int[] token = new int[nPairs];
+		final boolean[] seen = new boolean[nPairs];
+		final int[] queue = new int[nPairs];
+		int head = 0;
+		int tail = 0;
+		for (int pos = before[node].nextSetBit(0); pos >= 0; pos = before[node]
+				.nextSetBit(pos + 1)) {
+			seen[pos] = true;
+			from[pos] = -1;
+			token[pos] = -1;
+			queue[tail++] = pos;
+		}
+		while (head < tail) {
+			final int pair = queue[head++];
+			final int n = pair / nPositions;
+			final int pos = pair % nPositions;
+			if (n == length && accepting[node].get(pos)) {
+				return getTokens(pair, from, token);
+			}
+			final int i = rankOfPosition[pos];
+			final int k = pos - base[i];
+			if (k < texts[i].length()) {
+				if (n < length && texts[i].charAt(k) == text.charAt(n)) {
+					tail = push(pair, pair + nPositions + 1, tokenOf(i, k),
+							from, token, seen, queue, tail);
+				}
+				continue;
+			}
+			for (final int dest : transitions[i]) {
+				if (dest > end || base[dest] == -1) {
+					continue;
+				}
+				if (!isSpace(i, dest)) {
+					tail = push(pair, n * nPositions + base[dest], -1, from,
+							token, seen, queue, tail);
+				} else if (n < length && text.charAt(n) == ' ') {
+					tail = push(pair, (n + 1) * nPositions + base[dest],
+							lastTokens[i] + 1, from, token, seen, queue, tail);
+				}
+			}
+		}
+		/* Should not happen, since the node is accepted */
+		return null;
+	}
+
+	private static int push(int pair, int next, int t, int[] from,
+			int[] token, boolean[] seen, int[] queue, int tail) {
+		if (seen[next]) {
+			return tail;
+		}
+		seen[next] = true;
+		from[next] = pair;
+		token[next] = t;
+		queue[tail] = next;
+		return tail + 1;
+	}
+
+	private int[] getTokens(int pair, int[] from, int[] token) {
+		int first = -1;
+		int last = -1;
+		boolean lastFound = false;
+		for (int p = pair; from[p] != -1; p = from[p]) {
+			if (from[p] / nPositions != p / nPositions) {
+				/* This move has read a char */
+				if (!lastFound) {
+					last = token[p];
+					lastFound = true;
+				}
+				first = token[p];
+			}
+		}
+		return new int[] { first, last };
+	}
+
+	/**
+	 * @return the token of the char k of the text of the given node, with the
+	 *         tokens separated by spaces
+	 */
+	private int tokenOf(int node, int k) {
+		if (firstTokens[node] == -1) {
+			return -1;
+		}
+		if (k == texts[node].length() - 1) {
+			return lastTokens[node];
+		}
+		int t = firstTokens[node];
+		for (int j = 0; j < k; j++) {
+			if (texts[node].charAt(j) == ' ') {
+				t = t + 2;
+			}
+		}
+		return Math.min(t, lastTokens[node]);
+	}
+
+	/**
+	 * @return a path from the start node to the end node that goes through the
+	 *         given node, without start and end, or an empty list if there is
+	 *         none
+	 */
+	ArrayList<Integer> getPathThrough(int node) {
+		final ArrayList<Integer> path = new ArrayList<Integer>();
+		final BitSet fromStart = new BitSet(transitions.length);
+		fromStart.set(start);
+		for (int i = start; i < end; i++) {
+			if (fromStart.get(i)) {
+				for (final int dest : transitions[i]) {
+					if (dest <= end && (dest == end || candidates.get(dest))) {
+						fromStart.set(dest);
+					}
+				}
+			}
+		}
+		if (!fromStart.get(node)) {
+			return path;
+		}
+		for (int i = node; i != start;) {
+			path.add(0, i);
+			int p = -1;
+			for (final int pred : predecessors.get(i)) {
+				if (fromStart.get(pred)) {
+					p = pred;
+					break;
+				}
+			}
+			if (p == -1) {
+				return new ArrayList<Integer>();
+			}
+			i = p;
+		}
+		final BitSet toEnd = new BitSet(transitions.length);
+		toEnd.set(end);
+		for (int i = end - 1; i > node; i--) {
+			if (candidates.get(i)) {
+				for (final int dest : transitions[i]) {
+					if (toEnd.get(dest)) {
+						toEnd.set(i);
+						break;
+					}
+				}
+			}
+		}
+		for (int i = node; i != end;) {
+			int next = -1;
+			for (final int dest : transitions[i]) {
+				if (dest <= end && toEnd.get(dest)) {
+					next = dest;
+					break;
+				}
+			}
+			if (next == -1) {
+				return new ArrayList<Integer>();
+			}
+			if (next != end) {
+				path.add(next);
+			}
+			i = next;
+		}
+		return path;
+	}
+
+	private boolean isSpace(int src, int dest) {
+		return lastTokens[src] != -1 && firstTokens[dest] != -1
+				&& lastTokens[src] + 2 == firstTokens[dest];
+	}
+
+	/**
+	 * Adds to s the positions that can be reached without reading any char.
+	 * 
+	 * @param boundary
+	 *            true if we are between two boxes of the new path, so that a
+	 *            space of the existing paths can be omitted
+	 */
+	private void close(BitSet s, boolean boundary) {
+		for (int pos = s.nextSetBit(0); pos >= 0; pos = s.nextSetBit(pos + 1)) {
+			final int i = rankOfPosition[pos];
+			if (pos - base[i] != texts[i].length()) {
+				continue;
+			}
+			for (final int dest : transitions[i]) {
+				if (dest <= end && base[dest] != -1
+						&& (boundary || !isSpace(i, dest))) {
+					/*
+					 * As dest > i, its positions are after pos, so the loop
+					 * will visit them
+					 */
+					s.set(base[dest]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the positions reached by reading the given text from the given
+	 *         ones
+	 */
+	private BitSet read(String text, BitSet positions) {
+		BitSet s = (BitSet) positions.clone();
+		close(s, false);
+		for (int n = 0; n < text.length(); n++) {
+			final char c = text.charAt(n);
+			final BitSet next = new BitSet(nPositions);
+			for (int pos = s.nextSetBit(0); pos >= 0; pos = s.nextSetBit(pos + 1)) {
+				final int i = rankOfPosition[pos];
+				final int k = pos - base[i];
+				if (k < texts[i].length()) {
+					if (texts[i].charAt(k) == c) {
+						next.set(pos + 1);
+					}
+				} else if (c == ' ') {
+					for (final int dest : transitions[i]) {
+						if (dest <= end && base[dest] != -1 && isSpace(i, dest)) {
+							next.set(base[dest]);
+						}
+					}
+				}
+			}
+			close(next, false);
+			s = next;
+		}
+		return s;
+	}
+}
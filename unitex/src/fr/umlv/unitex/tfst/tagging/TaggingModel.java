@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 
 import javax.swing.JOptionPane;
@@ -39,6 +40,7 @@ import fr.umlv.unitex.graphrendering.GenericGraphBox;
 import fr.umlv.unitex.graphrendering.TfstGraphBox;
 import fr.umlv.unitex.graphrendering.TfstGraphicalZone;
 import fr.umlv.unitex.listeners.GraphListener;
+import fr.umlv.unitex.tfst.Bounds;
 
 /**
  * This class is used to know whether a sentence automaton box has been
@@ -48,32 +50,6 @@ import fr.umlv.unitex.listeners.GraphListener;
  */
 public class TaggingModel {
 	
-	public class Context{
-		ArrayList<Integer> path = new ArrayList<>();
-		int pos;
-		int currentBox;
-		public boolean space;
-		
-		public Context(String s) {
-			String [] tmp = s.split("-");
-			for (String string : tmp) {
-				path.add(Integer.valueOf(string));
-			}
-			pos = 0;
-			currentBox = 1;
-			space = false;
-		}
-
-		/*
-		* Only for debugging
-		*/
-		public void display() {
-			System.out.println("\n\n\nDISPLAYING\n\n");
-			System.out.println("path : " + path + "\npos : " + pos + "\ncurrentBox : " + currentBox
-					+ "\nnum box : " + path.get(currentBox) + "\ntexte : " + getTextBoxe(boxes[sortedNodes[path.get(currentBox)]]));
-		}
-	}
-	
 	TfstGraphicalZone zone;
 
 	/*
@@ -90,16 +66,6 @@ public class TaggingModel {
 	int finalState;
 	private boolean linearTfst;
 
-	ArrayList<Context> lstContext = new ArrayList<>();
-	
-	/*The next 2 fields are used to keep all sentences in the automaton and their path
-	 * The first element of lstTok is the text of the first path 
-	 * between 2 factorizations nodes and the first element in lstPath is the 
-	 * path (composed of box numbers)
-	 * */
-	private ArrayList<String> lstTok = new ArrayList<String>();
-	private ArrayList<String> lstPath = new ArrayList<>();
-	
 	String regex;
 	File alphabetFile;
 	ActionListener actionListener=new ActionListener() {
@@ -180,9 +146,6 @@ public class TaggingModel {
 		generateAlphabet();
 		generateTokensList();
 		zone.unSelectAllBoxes();
-		lstTok.clear();
-		lstPath.clear();
-		
 	}
 	
 	void generateAlphabet() {
@@ -269,113 +232,84 @@ public class TaggingModel {
 	    }
 	}
 	
-	/**  This function creates all the paths we can have between the first box
-	 *  "bfp" and the last box "bfs" (factorization nodes) and put them in allPaths. Then, it keeps only
-	 *  paths that contain at least a box which is tagged USELESS and set its state to TO_CHECK
+	/**  This function looks for the boxes tagged USELESS that lie on a path
+	 *  between the first box "bfp" and the last box "bfs" (factorization nodes),
+	 *  and sets their state to TO_CHECK. Paths are not enumerated: accessibility
+	 *  is computed on the topological order.
 	 * 
 	 * @param bfp 
-	 * 			The number of the first box in the path
+	 * 			The rank of the first box in the path
 	 * 
 	 * @param bfs
-	 * 			The number of the last box in the path
-	 * 
-	 * @param allPaths
-	 * 			The list of all path which contains at least a box USELESS
+	 * 			The rank of the last box in the path
 	 */		
-	void computeAllPaths( int bfp, int bfs, ArrayList<ArrayList<Integer>> allPaths ){
-		ArrayList<ArrayList<Integer>> lstRemove = new ArrayList<>();
-		
-		computePath(boxes[sortedNodes[bfp]], boxes[sortedNodes[bfs]], new ArrayList<Integer>(), allPaths);
- 		for (int tmp = 0; tmp < allPaths.size(); tmp++) {
-			allPaths.get(tmp).remove(0);
-			if(!containsUseless(allPaths.get(tmp))){
-				lstRemove.add(allPaths.get(tmp));
+	void markBoxesToCheck( int bfp, int bfs ){
+		final BitSet useless = new BitSet(boxes.length);
+		for (int i = 0; i < boxes.length; i++) {
+			if (taggingStates[sortedNodes[i]] == TaggingState.USELESS) {
+				useless.set(i);
 			}
 		}
-		for(int i = 0; i < lstRemove.size(); i++){
-			allPaths.remove(lstRemove.get(i));
-		}
-		
-		for (ArrayList<Integer> arrayList : allPaths) {
-			for (int i = 0; i < arrayList.size(); i++) {
-				if(taggingStates[sortedNodes[arrayList.get(i)]] == TaggingState.USELESS){
-					setBoxStateInternal(sortedNodes[arrayList.get(i)], TaggingState.TO_CHECK);
-				}		
-			}
-			
+		final UselessPaths paths = new UselessPaths(getSortedTransitions(), useless, bfp, bfs);
+		final BitSet toCheck = paths.getUselessNodesOnPaths();
+		for (int i = toCheck.nextSetBit(0); i >= 0; i = toCheck.nextSetBit(i + 1)) {
+			setBoxStateInternal(sortedNodes[i], TaggingState.TO_CHECK);
 		}
 	}
 	
-	/** @Aissa
-	 * 
-	 * This function checks if at least one box of the boxes in arrayList
-	 * is in state "USELESS"
-	 * 
-	 * @param arrayList 
-	 * 			ArrayList of the number of each box of the path
-	 * 
-	 * @return  true if at least one box is USELESS
-	 * 			false if not
-	 */			
-	private boolean containsUseless(ArrayList<Integer> arrayList) {
-		for(int i = 0; i < arrayList.size(); i++) {
-			if(taggingStates[sortedNodes[arrayList.get(i)]] == TaggingState.USELESS)
-				return true;
-		}
-		return false;
-	}
-
-	/** This function creates all paths between the first box bfp and the last box bfs 
-	 * Put a path in "current"
-	 * When the path is complete, put it in allPaths
-	 * Then we restart
-	 * 
-	 * @param box
-	 * 			The first box in the path
-	 * 
-	 * @param last
-	 * 			The last box in the path
-	 * 
-	 * @param currentPath
-	 * 			The list of boxes of the current path
-	 * 
-	 * @param allPath
-	 * 			The list of all paths between the box bfp and bfs
-	 */	
-	void computePath(GenericGraphBox box, GenericGraphBox last, ArrayList<Integer> currentPath, ArrayList<ArrayList<Integer>> allPaths) {
-		if(box.equals(last)){
-			allPaths.add(currentPath);
-		} else {
-			currentPath.add(renumber[box.getBoxNumber()]);
-			for (GenericGraphBox next : box.transitions) {
-				computePath(boxes[next.getBoxNumber()], last, new ArrayList<Integer>(currentPath), allPaths);
+	/**
+	 * @return the transitions of the boxes, where both boxes and destinations
+	 *         are given by their rank in the topological order
+	 */
+	private int[][] getSortedTransitions() {
+		final int[][] transitions = new int[boxes.length][];
+		for (int i = 0; i < boxes.length; i++) {
+			final ArrayList<GenericGraphBox> t = boxes[sortedNodes[i]].transitions;
+			transitions[i] = new int[t.size()];
+			for (int j = 0; j < transitions[i].length; j++) {
+				transitions[i][j] = renumber[t.get(j).getBoxNumber()];
 			}
-			
 		}
+		return transitions;
 	}
 	
-	void clearList() {
-		lstTok.clear();
-		lstPath.clear();
-	}
-	
-	void createLstContext() {
-		lstContext.clear();
-		for (String arrayList : lstPath){
-			lstContext.add(new Context(arrayList));
-		}
-		for (Context c : lstContext) {
-			for (int i = 0; i < c.path.size(); i++) {
-				if (getTextBoxe(boxes[sortedNodes[c.path.get(i)]]).equals("<E>")
-						&& (boxes[sortedNodes[c.path.get(i)]]).type != GenericGraphBox.INITIAL
-					&& (boxes[sortedNodes[c.path.get(i)]]).type != GenericGraphBox.FINAL) {
-					if (c.currentBox > i){
-						c.currentBox--;
-					}
-					c.path.remove(i);
+	/**
+	 * Builds the matcher of the new boxes between the factorization nodes of
+	 * ranks bfp and bfs against the existing paths between them, that are made
+	 * of the boxes that are neither USELESS nor TO_CHECK.
+	 */
+	private BranchMatcher createBranchMatcher(int bfp, int bfs) {
+		final int n = boxes.length;
+		final String[] texts = new String[n];
+		final int[] firstTokens = new int[n];
+		final int[] lastTokens = new int[n];
+		final BitSet reference = new BitSet(n);
+		final BitSet candidates = new BitSet(n);
+		for (int i = 0; i < n; i++) {
+			final TfstGraphBox box = boxes[sortedNodes[i]];
+			final TaggingState state = taggingStates[sortedNodes[i]];
+			final String text = getTextBoxe(box);
+			texts[i] = (box.type != GenericGraphBox.NORMAL || text.equals("<E>")) ? ""
+					: Normalizer.normalize(text, Normalizer.Form.NFD);
+			if (state != TaggingState.USELESS) {
+				candidates.set(i);
+				if (state != TaggingState.TO_CHECK) {
+					reference.set(i);
 				}
 			}
+			if (box.type == GenericGraphBox.NORMAL && box.getBounds() != null
+					&& state != TaggingState.TO_CHECK) {
+				firstTokens[i] = box.getBounds().getStart_in_tokens();
+				lastTokens[i] = box.getBounds().getEnd_in_tokens();
+			} else {
+				firstTokens[i] = -1;
+				lastTokens[i] = -1;
+			}
 		}
+		reference.set(bfp);
+		reference.set(bfs);
+		return new BranchMatcher(getSortedTransitions(), bfp, bfs, texts,
+				firstTokens, lastTokens, reference, candidates);
 	}
 	
 	/** This function checks if the new branch can be added to the automaton or not
@@ -385,24 +319,14 @@ public class TaggingModel {
 	void checkNewBranch( int i ){
 		int prev = getPreviousFactorizationNodeIndex(i);
 		int next = getNextFactorizationNodeIndex(i);
-		ArrayList<ArrayList<Integer>> allPaths = new ArrayList<>();		
-		
-		computeAllPaths( renumber[prev], renumber[next], allPaths );
-		clearList();
-		findString(boxes[sortedNodes[renumber[prev]]], boxes[sortedNodes[renumber[next]]], 
-			new StringBuilder(), boxes[sortedNodes[renumber[prev]]], new StringBuilder());
-		createLstContext();
-		
-		int cpt = 0;
-		for (Context c : lstContext) {
-			cpt++;
-		}
 		
-		if(cpt == 0) {
+		markBoxesToCheck( renumber[prev], renumber[next] );
+		final BranchMatcher matcher = createBranchMatcher(renumber[prev], renumber[next]);
+		if (!matcher.hasReferencePath()) {
 			return;
 		}
 		
-		boolean b = verifyAllPath(allPaths, sortedNodes[renumber[prev]], sortedNodes[renumber[next]]);
+		boolean b = verifyNewBoxes(matcher, renumber[prev], renumber[next]);
 		int n = zone.graphBoxes.size();
 		for (int i1 = 0; i1 < n; i1++) {
 			boxes[i1] = (TfstGraphBox) zone.graphBoxes.get(i1);
@@ -432,100 +356,83 @@ public class TaggingModel {
 		}
 	}
 
-	private boolean verifyAllPath(ArrayList<ArrayList<Integer>> allPaths, int bfp, int bfs) {
-		int newBegin;
-		ArrayList<Integer> lstText = new ArrayList<>();
-		
-		for (ArrayList<Integer> lst : allPaths) {
-			createLstContext();
-			ArrayList<Context> copyContext = (ArrayList<Context>) lstContext.clone();
-			
-			for (int i = 0; i < lst.size(); i++) {
-				if(getTextBoxe(boxes[sortedNodes[lst.get(i)]]).equals("<E>")) {
-					newBegin = findPreviousTokenStart(boxes[sortedNodes[lst.get(i)]]);
-					boxes[sortedNodes[lst.get(i)]].getBounds().setEnd_in_chars(2);
-					if(taggingStates[sortedNodes[lst.get(i)]] == TaggingState.TO_CHECK) {
-						boxes[sortedNodes[lst.get(i)]].getBounds().setStart_in_tokens(newBegin);
-						boxes[sortedNodes[lst.get(i)]].getBounds().setEnd_in_tokens(findLastToken(boxes[sortedNodes[lst.get(i)]],
-						 copyContext));
-					}
-				}
-				else {					
-					for (Context context : copyContext) {
-						String sequence = findSequence(lst);
-						if(context.currentBox >= context.path.size()) {
-							JOptionPane.showMessageDialog(null,
-									sequence + " isn't correct",
-									"Matching Error",
-									JOptionPane.PLAIN_MESSAGE);
-							return false;
-						}
-					}
-					if(i == 0) {
-						newBegin = findNextTokenNumber(boxes[bfp]);
-					}
-					else {
-						int tmp = findNewBegin(lstContext);
-						if(tmp != -1){
-							newBegin = boxes[sortedNodes[lst.get(i-1)]].getBounds().getEnd_in_tokens() + tmp;
-						} else {
-							newBegin = boxes[sortedNodes[lst.get(i-1)]].getBounds().getStart_in_tokens();
-						}
-					}
-					if(taggingStates[sortedNodes[lst.get(i)]] == TaggingState.TO_CHECK){
-						boxes[sortedNodes[lst.get(i)]].getBounds().setStart_in_tokens(newBegin);
-					}	
-					if(!verifyBox(boxes[sortedNodes[lst.get(i)]], copyContext)) {
-						String sentence = findSequence(lst);
-						JOptionPane.showMessageDialog(null,
-								sentence + " isn't correct",
-								"Matching Error",
-								JOptionPane.PLAIN_MESSAGE);
-						return false;
-					}
-					
-					
-					if(taggingStates[sortedNodes[lst.get(i)]] == TaggingState.TO_CHECK) {
-						boxes[sortedNodes[lst.get(i)]].getBounds().setEnd_in_tokens(findLastToken(boxes[sortedNodes[lst.get(i)]], 
-							copyContext));
-						
-					}
-					String s = Normalizer.normalize(getTextBoxe(boxes[sortedNodes[lst.get(i)]]), Normalizer.Form.NFKC);
-					StringBuilder sb = new StringBuilder();
-					sb.append(s.charAt(s.length() - 1));
-					String tmp = Normalizer.normalize(sb, Normalizer.Form.NFD);
-					if(isKorean(tmp.charAt(0))) {
-						
-						
-						int cpt = 0;
-						for(int k = 0; k < tmp.length(); k++) {
-							if(isSimpleKoreanLetter(tmp.charAt(k))) {
-								cpt += 1;
-							}
-							else {
-								cpt += 2;
-							}
-						}
-						boxes[sortedNodes[lst.get(i)]].getBounds().setEnd_in_letters(cpt - 1);
-					}
-				}
-				lstText = lst;
+	/**
+	 * Checks that each TO_CHECK box between the factorization nodes of ranks
+	 * bfp and bfs lies on a path whose text is the one of the existing paths,
+	 * and sets its bounds according to the tokens it matches.
+	 * 
+	 * @return false if a box does not lie on such a path
+	 */
+	private boolean verifyNewBoxes(BranchMatcher matcher, int bfp, int bfs) {
+		boolean found = false;
+		for (int rank = bfp + 1; rank < bfs; rank++) {
+			if (taggingStates[sortedNodes[rank]] != TaggingState.TO_CHECK) {
+				continue;
 			}
-		
-			for (Context context : copyContext) {
-				if(context.currentBox < context.path.size() && 
-					boxes[sortedNodes[context.path.get(context.currentBox)]].equals(boxes[bfs])) {
-					return true;
+			found = true;
+			final TfstGraphBox box = boxes[sortedNodes[rank]];
+			final int[] tokens = matcher.align(rank);
+			if (tokens == null) {
+				showMatchingError(findSequence(matcher.getPathThrough(rank)));
+				return false;
+			}
+			final Bounds bounds = box.getBounds();
+			if (bounds == null) {
+				continue;
+			}
+			if (getTextBoxe(box).equals("<E>")) {
+				/* An empty box covers the tokens of the box before it */
+				final TfstGraphBox previous = findPreviousBox(box);
+				bounds.setEnd_in_chars(2);
+				bounds.setStart_in_tokens(findPreviousTokenStart(box));
+				if (previous != null && previous.getBounds() != null) {
+					bounds.setEnd_in_tokens(previous.getBounds().getEnd_in_tokens());
 				}
+				continue;
+			}
+			if (tokens[0] != -1) {
+				bounds.setStart_in_tokens(tokens[0]);
 			}
+			if (tokens[1] != -1) {
+				bounds.setEnd_in_tokens(tokens[1]);
+			}
+			updateKoreanLetters(box);
+		}
+		if (!found) {
+			showMatchingError("");
+			return false;
 		}
-		String sequence = findSequence(lstText);
+		return true;
+	}
+	
+	private void showMatchingError(String sequence) {
 		JOptionPane.showMessageDialog(null,
 				sequence + " isn't correct",
 				"Matching Error",
 				JOptionPane.PLAIN_MESSAGE);
-		return false;
-		
+	}
+	
+	/**
+	 * Sets the end of the bounds in letters when the box ends with a Korean
+	 * letter
+	 */
+	private void updateKoreanLetters(TfstGraphBox box) {
+		String s = Normalizer.normalize(getTextBoxe(box), Normalizer.Form.NFKC);
+		StringBuilder sb = new StringBuilder();
+		sb.append(s.charAt(s.length() - 1));
+		String tmp = Normalizer.normalize(sb, Normalizer.Form.NFD);
+		if(isKorean(tmp.charAt(0))) {
+			int cpt = 0;
+			for(int k = 0; k < tmp.length(); k++) {
+				if(isSimpleKoreanLetter(tmp.charAt(k))) {
+					cpt += 1;
+				}
+				else {
+					cpt += 2;
+				}
+			}
+			box.getBounds().setEnd_in_letters(cpt - 1);
+		}
 	}
 	
 	/**
@@ -587,239 +494,6 @@ public class TaggingModel {
 		return null;
 	}
 
-	/** @Aissa
-	 * 
-	 * This function finds the end coordinate of each direct predecessor of boxes in lstContext 
-	 * If no one is corresponding with the coordinate, we compute the value with the number
-	 * of characters
-	 * 
-	 * @param current
-	 * 			The current GenericGraphBox
-	 * 
-	 * @param lstContext
-	 * 			The list of actual contexts
-	 * 
-	 * @return the last coordinated of the current box
-	 * 			
-	 */	
-	private int findLastToken(GenericGraphBox current, ArrayList<Context> lstContext) {
-		String txt = getTextBoxe(current);
-		if(txt.equals("<E>")) {
-			if(findPreviousBox(current).getBounds() != null)
-				return findPreviousBox(current).getBounds().getEnd_in_tokens();
-		}
-		
-		for (Context context : lstContext) {
-			if(context.pos == 0 && context.currentBox > 1){
-				return boxes[sortedNodes[context.path.get(context.currentBox - 1)]].getBounds().getEnd_in_tokens();
-			}
-		}
-		
-		int size = txt.length();
-		int last = 0;
-		for(int i = 0; i < size; i++) {
-			if(txt.charAt(i) == ' ' && i <= size-2 && txt.charAt(i+1) != ' ') {
-				last += 2;
-			}
-		}
-		return boxes[current.getBoxNumber()].getBounds().getStart_in_tokens() + last;
-	}
-
-
-	/** @Aissa
-	 * 
-	 * This function finds the first coordinate of one of the next box of the current one
-	 * which is not tagged USELESS
-	 * 
-	 * @param current
-	 * 			The current GenericGraphBox
-	 * 	
-	 * @return the first coordinated of the next box not USELESS
-	 * 
-	 */		
-	private int findNextTokenNumber(GenericGraphBox current) {
-		for (GenericGraphBox next : current.transitions) {
-			if(taggingStates[next.getBoxNumber()] != TaggingState.USELESS){
-				return boxes[next.getBoxNumber()].getBounds().getStart_in_tokens();
-			}
-		}
-		return 0;
-	}
-
-	
-	/** @Aissa
-	 * 
-	 * This function finds the first coordinated of boxes which are in lstContext
-	 * These boxes are in lstContext means that they are corresponding with the current box
-	 * 
-	 * @param lstContext
-	 * 			The list of all context
-	 * 
-	 * @return the distance with the first coordinated of the current box
-	 */		
-	private int findNewBegin(ArrayList<Context> lstContext) {
-		boolean hasSpace = false;
-		
-		for (Context context : lstContext) {
-				if(context.space){
-					hasSpace = true;
-				}
-				context.space = false;
-		}
-		
-		if(hasSpace)
-			return 2;
-		
-		for (Context context : lstContext) {
-			if(context.pos == 0) {
-				if(boxes[sortedNodes[context.path.get(context.currentBox - 1)]].getBounds() != null)
-					return boxes[sortedNodes[context.path.get(context.currentBox)]].getBounds().getStart_in_tokens() -
-							boxes[sortedNodes[context.path.get(context.currentBox - 1)]].getBounds().getEnd_in_tokens();
-				else
-					return boxes[sortedNodes[context.path.get(context.currentBox)]].getBounds().getStart_in_tokens();
-		
-			}
-		}
-		return -1;
-	}
-
-	private boolean verifyBox(GenericGraphBox box, ArrayList<Context> copyContext) {
-		String txt = Normalizer.normalize(getTextBoxe(box), Normalizer.Form.NFD);
-		int size = txt.length();
-		ArrayList<Context> ctxtRemove = new ArrayList<>();
-		if(txt.equals("<E>"))
-			return true;
-		
-		for (Context context : copyContext) {
-			
-			if(context.currentBox >= context.path.size()) {
-				ctxtRemove.add(context);
-				continue;
-			}
-			int numBox = context.path.get(context.currentBox);
-			String txtBis = Normalizer.normalize(getTextBoxe(boxes[sortedNodes[numBox]]), Normalizer.Form.NFD);
-				
-			for(int i = 0; i < size; i++) {
-				if(context.currentBox >= context.path.size()) {
-					ctxtRemove.add(context);
-					break;
-				}
-				numBox = context.path.get(context.currentBox);
-				txtBis =  Normalizer.normalize(getTextBoxe(boxes[sortedNodes[numBox]]), Normalizer.Form.NFD);
-
-				if(context.space == true && i != 0) {
-					if(txt.charAt(i) != ' ') {
-						ctxtRemove.add(context);
-					}
-					context.space = false;
-				}
-				else {
-					if(context.pos >= txtBis.length()) {
-						context.pos = 0;
-						context.currentBox ++;
-					}
-					if(txt.charAt(i) != txtBis.charAt(context.pos)) {
-						ctxtRemove.add(context);
-					}
-					context.pos ++;
-					if(context.pos >= txtBis.length()) {
-						if(context.currentBox + 1 < context.path.size() && 
-								boxes[sortedNodes[context.path.get(context.currentBox+1)]].type != GenericGraphBox.FINAL &&
-					 			boxes[sortedNodes[context.path.get(context.currentBox+1)]].getBounds().getStart_in_tokens() -
-								boxes[sortedNodes[numBox]].getBounds().getEnd_in_tokens() == 2){
-							context.space = true;
-						}	
-						context.pos = 0;
-						context.currentBox ++;
-					}
-				}
-			}
-			if(context.pos < txtBis.length() && txtBis.charAt(context.pos) == ' ') {
-				context.space = true;
-				context.pos++;
-			}
-		}
-		
-		if(taggingStates[box.getBoxNumber()] != TaggingState.TO_CHECK){
-			return true;
-		}
-		
-		for (Context context : ctxtRemove){
-			copyContext.remove(context);
-		}
-
-		if(copyContext.isEmpty()){
-			return false;
-		}
-		
-		return true;
-	}
-	
-	
-	/** @Aissa
-	 * 
-	 * This function is used to find all sequences between the 2 factorization nodes
-	 * (one at the beginning of the branch and one at the end)
-	 * It constructs the sentence and the path (composed of the number of each box in the path)
-	 * It puts the sentence in the ArrayList lstTok and the path in lstPath
-	 * 
-	 * @param begin 
-	 * 				the GenericGraphBox of the previous factorization box
-	 * 
-	 * @param end 
-	 * 				the GenericGraphBox of the next factorization box
-	 * 
-	 * @param sb
-	 * 				the StringBuilder which will contain the sentence of the current path
-	 * 
-	 * @param b
-	 * 				the current GenericGraphBox 
-	 * 
-	 * @param path
-	 * 				the StringBuilder which will contain the actual path 
-	 * 
-	 * @return
-	 */
-	void findString(GenericGraphBox begin, GenericGraphBox end, StringBuilder sb, GenericGraphBox b, StringBuilder path) {
-		int num_box = b.getBoxNumber();	
-		
-		if(end.equals(b)) {
-			if(b.type != GenericGraphBox.FINAL) {
-				sb.append(boxes[num_box].getContentText());
-			}
-			path.append(renumber[num_box]);
-			lstTok.add(sb.toString());
-			lstPath.add(path.toString());
-			return ;
-		}
-		
-		int nb_transition_out = b.transitions.size();
-		path.append(renumber[num_box]).append("-");
-				
-		if(boxes[num_box].type != GenericGraphBox.INITIAL && !boxes[num_box].getContentText().equals("<E>")){
-			sb.append(boxes[num_box].getContentText());
-		}
-		
-		for(int i = 0; i < nb_transition_out; i++) {
-			int num_next_box = b.transitions.get(i).getBoxNumber();
-			int start = sb.length();
-			int startPath = path.length();
-			if(taggingStates[num_next_box] != TaggingState.TO_CHECK
-					|| boxes[num_next_box].equals(end)) {
-				if(boxes[num_box].type != GenericGraphBox.INITIAL 
-						&& boxes[num_next_box].type != GenericGraphBox.FINAL
-						&& (boxes[num_box].getBounds().getEnd_in_tokens() 
-						== boxes[num_next_box].getBounds().getStart_in_tokens() - 2)) {
-					sb.append(" ");
-				}
-				findString(begin, end, sb, b.transitions.get(i), path);
-				int last = sb.length();
-				sb.delete(start, last);
-				path.delete(startPath, path.length());
-			}
-		}
-	}
-	
 	/* Return the text contained in the box */
 	String getTextBoxe(GenericGraphBox box) {
 		if(box.getContent().contains("{")  ){
@@ -830,16 +504,6 @@ public class TaggingModel {
 	}
 	
 	
-	/* Only for debugging 
-	Diplay all sentences in lstTok and their path in lstPath */
-	private void displayAllSentence() {
-		System.out.println("Diplaying list token");
-		for (int i = 0; i < lstTok.size(); i++) {
-			System.out.println("Sentence " + (i+1) + " : \"" + lstTok.get(i) + "\" -> " + lstPath.get(i));
-		}
-		System.out.println("Finish displaying");
-	}
-	
 	private void  updateNodes() {
 		if (boxes.length == 0)
 			return;
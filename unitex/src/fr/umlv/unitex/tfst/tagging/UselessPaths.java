@@ -0,0 +1,104 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.tfst.tagging;
+
+import java.util.BitSet;
+
+/**
+ * This class finds the useless boxes of an acyclic sentence automaton that lie
+ * on a path between two nodes. Nodes are given by their rank in a topological
+ * order, so that a single pass over the nodes between the two bounds in each
+ * direction tells which nodes can be reached from the first one and which
+ * ones can reach the last one, without building any path.
+ */
+class UselessPaths {
+	private final int[][] transitions;
+	private final BitSet useless;
+	private final int start;
+	private final int end;
+	private final BitSet accessible;
+	private final BitSet coaccessible;
+
+	/**
+	 * @param transitions
+	 *            transitions[i] contains the ranks of the successors of the
+	 *            node of rank i
+	 * @param useless
+	 *            the ranks of the useless nodes
+	 * @param start
+	 *            the rank of the first node of the paths, that is not
+	 *            considered as part of them
+	 * @param end
+	 *            the rank of the last node of the paths, that is not
+	 *            considered as part of them
+	 */
+	UselessPaths(int[][] transitions, BitSet useless, int start, int end) {
+		this.transitions = transitions;
+		this.useless = (BitSet) useless.clone();
+		this.start = start;
+		this.end = end;
+		final int n = transitions.length;
+		accessible = new BitSet(n);
+		coaccessible = new BitSet(n);
+		if (start < 0 || end >= n || start >= end) {
+			return;
+		}
+		/*
+		 * As nodes are sorted, a path from start to end only goes through
+		 * nodes whose rank is between start and end
+		 */
+		coaccessible.set(end);
+		for (int i = end - 1; i >= start; i--) {
+			for (final int dest : transitions[i]) {
+				if (coaccessible.get(dest)) {
+					coaccessible.set(i);
+					break;
+				}
+			}
+		}
+		accessible.set(start);
+		for (int i = start; i < end; i++) {
+			if (!accessible.get(i)) {
+				continue;
+			}
+			for (final int dest : transitions[i]) {
+				if (dest <= end) {
+					accessible.set(dest);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the ranks of the useless nodes that belong to at least one path
+	 *         between the two nodes
+	 */
+	BitSet getUselessNodesOnPaths() {
+		final BitSet res = new BitSet(transitions.length);
+		for (int i = useless.nextSetBit(start + 1); i >= 0 && i < end; i = useless
+				.nextSetBit(i + 1)) {
+			if (accessible.get(i) && coaccessible.get(i)) {
+				res.set(i);
+			}
+		}
+		return res;
+	}
+}
@@ -80,7 +80,7 @@ public class AddBoxEdit extends AbstractUndoableEdit {
 			g = aTransitionsToBoxe;
 			g.setSelected(true);
 		}
-		zone.removeTransitionTo(boxe);
+		boxe.removeAllIncomingTransitions();
 	}
 
 	/**
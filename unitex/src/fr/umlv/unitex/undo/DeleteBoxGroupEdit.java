@@ -21,7 +21,9 @@
 package fr.umlv.unitex.undo;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Set;
 
 import javax.swing.undo.AbstractUndoableEdit;
@@ -99,6 +101,10 @@ public class DeleteBoxGroupEdit extends AbstractUndoableEdit {
 		ArrayList<GenericGraphBox> transitionsFromBoxe;
 		final Set<GenericGraphBox> keys = selectedBoxesAndTransitionsTo
 				.keySet();
+		/* same content as selectedBoxes, for fast lookups */
+		final Set<GenericGraphBox> selected = Collections
+				.newSetFromMap(new IdentityHashMap<GenericGraphBox, Boolean>());
+		selected.addAll(selectedBoxes);
 		// for each selected boxes before delete
 		for (final GenericGraphBox key : keys) {
 			g = key;
@@ -111,6 +117,7 @@ public class DeleteBoxGroupEdit extends AbstractUndoableEdit {
 			// select this boxe
 			g.setSelected(true);
 			selectedBoxes.add(g);
+			selected.add(g);
 			if (g.type != GenericGraphBox.FINAL) {
 				zone.initText(g.getContent());
 			}
@@ -119,7 +126,7 @@ public class DeleteBoxGroupEdit extends AbstractUndoableEdit {
 				g.addTransitionTo(g);
 			for (final GenericGraphBox aTransitionsToBoxe : transitionsToBoxe) {
 				g2 = aTransitionsToBoxe;
-				if (!selectedBoxes.contains(g2))
+				if (!selected.contains(g2))
 					g2.onlyAddTransitionTo(g);
 			}
 			// add transitions from each boxe
@@ -91,6 +91,6 @@ public class RemoveBoxEdit extends AbstractUndoableEdit {
 	public void redo() {
 		super.redo();
 		boxes.remove(box);
-		zone.removeTransitionTo(box);
+		box.removeAllIncomingTransitions();
 	}
 }
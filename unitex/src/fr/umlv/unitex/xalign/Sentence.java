@@ -36,7 +36,7 @@ class Sentence {
 	final long start;
 	final long end;
 
-	Sentence(String ID, int start, int end) {
+	Sentence(String ID, long start, long end) {
 		this.ID = ID;
 		this.start = start;
 		this.end = end;
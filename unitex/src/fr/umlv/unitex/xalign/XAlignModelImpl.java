@@ -21,14 +21,11 @@
 package fr.umlv.unitex.xalign;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -36,6 +33,8 @@ import java.util.concurrent.ExecutionException;
 
 import javax.swing.SwingWorker;
 
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedRegion;
 import fr.umlv.unitex.listeners.AlignmentListener;
 
 public class XAlignModelImpl implements XAlignModel {
@@ -94,13 +93,10 @@ public class XAlignModelImpl implements XAlignModel {
 		alignments = new ArrayList<Couple>();
 	}
 
-	private MappedByteBuffer buffer;
+	private MappedRegion region;
 	private int dataLength = 0;
 	private SwingWorker<Void, PublishInfo> worker;
-	private FileChannel channel;
-	private FileInputStream stream;
 	private File file;
-	Charset utf8 = Charset.forName("UTF-8");
 
 	@Override
 	public void load(File f) throws IOException {
@@ -110,10 +106,12 @@ public class XAlignModelImpl implements XAlignModel {
 		}
 		setDataLength((int) file.length());
 		group = new HashMap<String, ArrayList<String>>();
-		stream = new FileInputStream(file);
-		channel = stream.getChannel();
-		setBuffer(channel
-				.map(FileChannel.MapMode.READ_ONLY, 0, getDataLength()));
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			region = MappedRegion.map(raf.getChannel(), 0, getDataLength());
+		} finally {
+			raf.close();
+		}
 		worker = new SwingWorker<Void, PublishInfo>() {
 			@Override
 			protected Void doInBackground() throws Exception {
@@ -142,12 +140,12 @@ public class XAlignModelImpl implements XAlignModel {
 								&& getBuffer().get(pos - 5) == 'r'
 								&& getBuffer().get(pos - 6) == 'a' && getBuffer()
 								.get(pos - 7) == 't'));
-						String target = "";
 						pos++;
+						final int targetStart = pos;
 						do {
-							target = target + (char) getBuffer().get(pos);
 							pos++;
 						} while (getBuffer().get(pos) != '"');
+						final String target = decode(targetStart, pos);
 						/*
 						 * Then we check if it was the source or destination
 						 * file
@@ -234,12 +232,12 @@ public class XAlignModelImpl implements XAlignModel {
 								&& getBuffer().get(pos - 6) == 'r'
 								&& getBuffer().get(pos - 7) == 'a' && getBuffer()
 								.get(pos - 8) == 't'));
-						String targets = "";
 						pos++;
+						final int targetsStart = pos;
 						do {
-							targets = targets + (char) getBuffer().get(pos);
 							pos++;
 						} while (getBuffer().get(pos) != '"');
+						final String targets = decode(targetsStart, pos);
 						/* Then we read the link type */
 						do {
 							pos++;
@@ -249,12 +247,12 @@ public class XAlignModelImpl implements XAlignModel {
 								&& getBuffer().get(pos - 3) == 'p'
 								&& getBuffer().get(pos - 4) == 'y' && getBuffer()
 								.get(pos - 5) == 't'));
-						String type = "";
 						pos++;
+						final int typeStart = pos;
 						do {
-							type = type + (char) getBuffer().get(pos);
 							pos++;
 						} while (getBuffer().get(pos) != '"');
+						final String type = decode(typeStart, pos);
 						final ArrayList<String> l = split(targets);
 						if (type.equals("alignment")) {
 							/* If we have an alignement */
@@ -280,12 +278,12 @@ public class XAlignModelImpl implements XAlignModel {
 									&& getBuffer().get(pos - 5) == 'l'
 									&& getBuffer().get(pos - 6) == 'm' && getBuffer()
 									.get(pos - 7) == 'x'));
-							String id = "";
 							pos++;
+							final int idStart = pos;
 							do {
-								id = id + (char) getBuffer().get(pos);
 								pos++;
 							} while (getBuffer().get(pos) != '"');
+							final String id = decode(idStart, pos);
 							publish(new PublishInfo(id, null, l));
 						}
 						/* Then we look for the end of the tag */
@@ -296,8 +294,7 @@ public class XAlignModelImpl implements XAlignModel {
 					}
 				}
 				setProgress(100);
-				setBuffer(null);
-				System.gc();
+				reset();
 				return null;
 			}
 
@@ -671,9 +668,19 @@ public class XAlignModelImpl implements XAlignModel {
 
 	@Override
 	public void reset() {
-		if (getBuffer() != null)
-			setBuffer(null);
-		System.gc();
+		if (region != null) {
+			region.close();
+			region = null;
+		}
+	}
+
+	/**
+	 * Decodes the bytes [start;end[ of the buffer.
+	 */
+	String decode(int start, int end) {
+		final char[] chars = new char[end - start];
+		final int n = Encoding.UTF8.decode(getBuffer(), start, end, chars);
+		return new String(chars, 0, n);
 	}
 
 	@Override
@@ -690,11 +697,7 @@ public class XAlignModelImpl implements XAlignModel {
 		return dataLength;
 	}
 
-	public void setBuffer(MappedByteBuffer buffer) {
-		this.buffer = buffer;
-	}
-
-	public MappedByteBuffer getBuffer() {
-		return buffer;
+	public ByteBuffer getBuffer() {
+		return region.getBuffer();
 	}
 }
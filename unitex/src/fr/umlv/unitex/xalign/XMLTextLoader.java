@@ -21,14 +21,14 @@
 package fr.umlv.unitex.xalign;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutionException;
 
 import javax.swing.SwingWorker;
 
+import fr.umlv.unitex.io.MappedFile;
+
 /**
  * This is a loader for XML text files manipulated by XAlign.
  * 
@@ -36,10 +36,20 @@ import javax.swing.SwingWorker;
  */
 public class XMLTextLoader {
 
+	private static final int SEARCH_TAG = 0;
+	private static final int SEARCH_ID = 1;
+	private static final int READ_ID = 2;
+	private static final int SEARCH_TEXT = 3;
+	private static final int READ_TEXT = 4;
+
+	/* "<s " and "xml:id=\"" as big endian byte sequences */
+	private static final long SENTENCE_TAG = tag("<s ");
+	private static final long ID_ATTRIBUTE = tag("xml:id=\"");
+
 	final XMLTextModel model;
-	final MappedByteBuffer buffer;
+	final MappedFile buffer;
 
-	public XMLTextLoader(XMLTextModel model, MappedByteBuffer buffer) {
+	public XMLTextLoader(XMLTextModel model, MappedFile buffer) {
 		this.model = model;
 		this.buffer = buffer;
 	}
@@ -48,45 +58,77 @@ public class XMLTextLoader {
 		final SwingWorker<Void, Sentence> worker = new SwingWorker<Void, Sentence>() {
 			@Override
 			protected Void doInBackground() throws Exception {
-				final int dataLength = buffer.capacity();
-				final StringBuilder ID = new StringBuilder();
-				int start, end;
-				for (int pos = 0; pos < dataLength; pos = pos + 1) {
-					if (buffer.get(pos) == '<' && buffer.get(pos + 1) == 's'
-							&& buffer.get(pos + 2) == ' ') {
-						/* If we have a sentence tag, we read its id */
-						do {
-							pos++;
-						} while (!(buffer.get(pos) == '"'
-								&& buffer.get(pos - 1) == '='
-								&& buffer.get(pos - 2) == 'd'
-								&& buffer.get(pos - 3) == 'i'
-								&& buffer.get(pos - 4) == ':'
-								&& buffer.get(pos - 5) == 'l'
-								&& buffer.get(pos - 6) == 'm' && buffer
-								.get(pos - 7) == 'x'));
-						ID.setLength(0);
-						pos++;
-						do {
-							ID.append((char) buffer.get(pos));
-							pos++;
-						} while (buffer.get(pos) != '"');
-						/*
-						 * Then we look for the beginning of the sentence, i.e.
-						 * after the '>' char
-						 */
-						while (buffer.get(pos - 1) != '>') {
-							pos++;
+				final long dataLength = buffer.length();
+				/*
+				 * The file is scanned window by window, so the parsing is a
+				 * state machine whose state survives from one window to the
+				 * next. The last bytes read are kept in a shift register to
+				 * recognize the tags.
+				 */
+				buffer.scan(0, new MappedFile.Visitor() {
+					final StringBuilder ID = new StringBuilder();
+					int state = SEARCH_TAG;
+					long history = 0;
+					long start;
+
+					@Override
+					public boolean visit(ByteBuffer b, long offset, int end) {
+						for (int i = b.position(); i < end; i++) {
+							final byte c = b.get(i);
+							switch (state) {
+							case SEARCH_TAG: {
+								history = (history << 8) | (c & 0xFF);
+								if ((history & 0xFFFFFF) == SENTENCE_TAG) {
+									/* We have a sentence tag, we look for its id */
+									history = 0;
+									state = SEARCH_ID;
+								}
+								break;
+							}
+							case SEARCH_ID: {
+								history = (history << 8) | (c & 0xFF);
+								if (history == ID_ATTRIBUTE) {
+									ID.setLength(0);
+									state = READ_ID;
+								}
+								break;
+							}
+							case READ_ID: {
+								if (c == '"') {
+									state = SEARCH_TEXT;
+								} else {
+									ID.append((char) c);
+								}
+								break;
+							}
+							case SEARCH_TEXT: {
+								/*
+								 * The sentence starts after the '>' char that
+								 * closes the tag
+								 */
+								if (c == '>') {
+									start = offset + i + 1;
+									state = READ_TEXT;
+								}
+								break;
+							}
+							case READ_TEXT: {
+								if (c == '<') {
+									final long pos = offset + i;
+									publish(new Sentence(ID.toString(), start,
+											pos - 1));
+									setProgress((int) (100. * pos / dataLength));
+									history = 0;
+									state = SEARCH_TAG;
+								}
+								break;
+							}
+							}
 						}
-						start = pos;
-						do {
-							pos++;
-						} while (buffer.get(pos - 1) != '<');
-						end = pos - 2;
-						publish(new Sentence(ID.toString(), start, end));
-						setProgress((int) (100. * pos / dataLength));
+						b.position(end);
+						return true;
 					}
-				}
+				});
 				setProgress(100);
 				return null;
 			}
@@ -106,16 +148,19 @@ public class XMLTextLoader {
 		}
 	}
 
+	private static long tag(String s) {
+		long res = 0;
+		for (int i = 0; i < s.length(); i++) {
+			res = (res << 8) | s.charAt(i);
+		}
+		return res;
+	}
+
 	/**
-	 * Builds and returns a read-only mapped byte buffer for the given file.
+	 * Builds and returns a read-only mapped view of the given file.
 	 */
-	public static MappedByteBuffer buildMappedByteBuffer(File file)
+	public static MappedFile buildMappedByteBuffer(File file)
 			throws IOException {
-		final FileInputStream fileInputStream = new FileInputStream(file);
-		final FileChannel channel = fileInputStream.getChannel();
-		final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY,
-				0, file.length());
-		fileInputStream.close();
-		return map;
+		return new MappedFile(file);
 	}
 }
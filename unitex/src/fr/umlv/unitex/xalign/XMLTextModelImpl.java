@@ -20,8 +20,8 @@
  */
 package fr.umlv.unitex.xalign;
 
-import java.nio.MappedByteBuffer;
-import java.nio.charset.Charset;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,6 +29,9 @@ import java.util.List;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+
 /**
  * This is a model for representing a XML text file as the list of its
  * sentences. It is used for alignements.
@@ -36,12 +39,11 @@ import javax.swing.event.ListDataListener;
  * @author Sébastien Paumier
  */
 public class XMLTextModelImpl implements XMLTextModel {
-	private MappedByteBuffer buffer;
-	private static final Charset utf8 = Charset.forName("UTF-8");
+	private MappedFile buffer;
 	private final ArrayList<Sentence> sentences;
 	private final HashMap<String, Integer> id;
 
-	public XMLTextModelImpl(MappedByteBuffer buffer) {
+	public XMLTextModelImpl(MappedFile buffer) {
 		this.buffer = buffer;
 		sentences = new ArrayList<Sentence>();
 		id = new HashMap<String, Integer>();
@@ -58,36 +60,48 @@ public class XMLTextModelImpl implements XMLTextModel {
 			throw new IndexOutOfBoundsException();
 		}
 		final Sentence s = sentences.get(i);
-		final long start = s.start;
-		final long end = s.end;
-		final byte[] tmp = new byte[(int) (end - start + 1)];
+		final byte[] raw = new byte[(int) (s.end - s.start + 1)];
+		try {
+			buffer.read(s.start, raw, 0, raw.length);
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return "";
+		}
+		final byte[] tmp = new byte[raw.length];
 		int z = 0;
-		for (long pos = start; pos <= end; pos++) {
-			if (buffer.get((int) pos) == '&') {
-				if (buffer.get((int) pos + 1) == 'a'
-						&& buffer.get((int) pos + 2) == 'm'
-						&& buffer.get((int) pos + 3) == 'p'
-						&& buffer.get((int) pos + 4) == ';') {
+		for (int pos = 0; pos < raw.length; pos++) {
+			if (raw[pos] == '&') {
+				if (matches(raw, pos + 1, "amp;")) {
 					tmp[z++] = '&';
 					pos = pos + 4;
-				} else if (buffer.get((int) pos + 1) == 'l'
-						&& buffer.get((int) pos + 2) == 't'
-						&& buffer.get((int) pos + 3) == ';') {
+				} else if (matches(raw, pos + 1, "lt;")) {
 					tmp[z++] = '<';
 					pos = pos + 3;
-				} else if (buffer.get((int) pos + 1) == 'g'
-						&& buffer.get((int) pos + 2) == 't'
-						&& buffer.get((int) pos + 3) == ';') {
+				} else if (matches(raw, pos + 1, "gt;")) {
 					tmp[z++] = '>';
 					pos = pos + 3;
 				} else {
-					tmp[z++] = buffer.get((int) pos);
+					tmp[z++] = raw[pos];
 				}
 			} else {
-				tmp[z++] = buffer.get((int) pos);
+				tmp[z++] = raw[pos];
+			}
+		}
+		final char[] chars = new char[z];
+		final int n = Encoding.UTF8.decode(ByteBuffer.wrap(tmp), 0, z, chars);
+		return new String(chars, 0, n);
+	}
+
+	private static boolean matches(byte[] raw, int pos, String s) {
+		if (pos + s.length() > raw.length) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (raw[pos + i] != s.charAt(i)) {
+				return false;
 			}
 		}
-		return new String(tmp, 0, z, utf8);
+		return true;
 	}
 
 	@Override
@@ -144,8 +158,9 @@ public class XMLTextModelImpl implements XMLTextModel {
 
 	@Override
 	public void reset() {
-		if (buffer != null)
+		if (buffer != null) {
+			buffer.close();
 			buffer = null;
-		System.gc();
+		}
 	}
 }
@@ -0,0 +1,118 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import fr.umlv.unitex.io.Encoding;
+
+/**
+ * Checks that the char offsets of the lines of a text match the positions of
+ * the same lines in the decoded Java string, including for lines that contain
+ * supplementary chars, which are decoded as surrogate pairs. This is a plain
+ * program, run by the "test" target of build.xml, that fails with an
+ * exception.
+ */
+public class TextAsListModelImplTest {
+	private static final String[] LINES = {
+			"plain ascii line",
+			"emoji 😀 in the middle",
+			/* Long enough to be counted 8 bytes at a time */
+			"😀😁😂😃😄 and more text after",
+			"CJK Ext-B 𠀀𠀁 and BMP é中",
+			"", "last line without newline 𠀂" };
+
+	public static void main(String[] args) throws Exception {
+		final StringBuilder b = new StringBuilder();
+		for (int i = 0; i < LINES.length; i++) {
+			if (i != 0) {
+				b.append('\n');
+			}
+			b.append(LINES[i]);
+		}
+		final String text = b.toString();
+		check(text, Encoding.UTF8, false);
+		check(text, Encoding.UTF16LE, true);
+		System.out.println("TextAsListModelImplTest: OK");
+	}
+
+	private static void check(String text, Encoding encoding, boolean bom)
+			throws Exception {
+		final File f = File.createTempFile("unitex", ".txt");
+		f.deleteOnExit();
+		write(f, text, encoding, bom);
+		final TextAsListModelImpl model = new TextAsListModelImpl();
+		model.load(f);
+		final long timeout = System.currentTimeMillis() + 10000;
+		while (model.getSize() < LINES.length) {
+			if (System.currentTimeMillis() > timeout) {
+				throw new AssertionError(encoding + ": " + model.getSize()
+						+ " lines indexed instead of " + LINES.length);
+			}
+			Thread.sleep(10);
+		}
+		int start = 0;
+		for (int i = 0; i < LINES.length; i++) {
+			final Interval interval = model.getInterval(i);
+			/* Each interval includes the newline that ends the line, if any */
+			final int end = start + LINES[i].length()
+					- ((i == LINES.length - 1) ? 1 : 0);
+			if (interval.getStartInChars() != start
+					|| interval.getEndInChars() != end) {
+				throw new AssertionError(encoding + ": line " + i + " is ["
+						+ interval.getStartInChars() + ";"
+						+ interval.getEndInChars() + "] instead of [" + start
+						+ ";" + end + "]");
+			}
+			if (!model.getElementAt(i).equals(LINES[i])) {
+				throw new AssertionError(encoding + ": line " + i
+						+ " decoded as " + model.getElementAt(i));
+			}
+			if (model.getElementContainingPositionInChars(end) != i) {
+				throw new AssertionError(encoding + ": position " + end
+						+ " not found in line " + i);
+			}
+			start = start + LINES[i].length() + 1;
+		}
+		model.reset();
+	}
+
+	private static void write(File f, String text, Encoding encoding,
+			boolean bom) throws IOException {
+		final OutputStream out = new FileOutputStream(f);
+		try {
+			if (encoding == Encoding.UTF8) {
+				out.write(text.getBytes("UTF-8"));
+			} else {
+				if (bom) {
+					out.write(0xFF);
+					out.write(0xFE);
+				}
+				out.write(text.getBytes("UTF-16LE"));
+			}
+		} finally {
+			out.close();
+		}
+	}
+}